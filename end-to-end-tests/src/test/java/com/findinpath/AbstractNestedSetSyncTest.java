@@ -255,6 +255,13 @@ public abstract class AbstractNestedSetSyncTest {
         config.put("validate.non.null", "false");
         config.put("incrementing.column.name", "id");
         config.put("topic.prefix", topicPrefix);
+        // key the records by the id of the nested set node in order to allow the log compaction of the topic
+        config.put("transforms", "createKey,extractId");
+        config.put("transforms.createKey.type", "org.apache.kafka.connect.transforms.ValueToKey");
+        config.put("transforms.createKey.fields", "id");
+        config.put("transforms.extractId.type", "org.apache.kafka.connect.transforms.ExtractField$Key");
+        config.put("transforms.extractId.field", "id");
+        config.put("key.converter", "org.apache.kafka.connect.storage.StringConverter");
 
         return new ConnectorConfiguration(connectorName, config);
     }
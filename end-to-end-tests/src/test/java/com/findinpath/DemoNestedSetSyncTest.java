@@ -1,11 +1,11 @@
 package com.findinpath;
 
 
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.kafka.NestedSetLogConsumer;
 import com.findinpath.sink.service.NestedSetLogService;
 import com.findinpath.sink.service.NestedSetSyncService;
 import com.findinpath.sink.service.SquashingNestedSetLogUpdateListener;
-import com.google.common.eventbus.EventBus;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -61,13 +61,13 @@ public class DemoNestedSetSyncTest extends AbstractNestedSetSyncTest {
     }
 
     private void setupSinkServices() {
-        var sinkEventBus = new EventBus();
-        sinkNestedSetService = new com.findinpath.sink.service.NestedSetService(sinkConnectionProvider, sinkEventBus);
-        var sinkNestedSetLogService = new NestedSetLogService(sinkEventBus, sinkConnectionProvider);
-        var sinkNestedSetSyncService = new NestedSetSyncService(sinkConnectionProvider, sinkEventBus);
+        var sinkEventDispatcher = new EventDispatcher();
+        sinkNestedSetService = new com.findinpath.sink.service.NestedSetService(sinkConnectionProvider, sinkEventDispatcher);
+        var sinkNestedSetLogService = new NestedSetLogService(sinkEventDispatcher, sinkConnectionProvider);
+        var sinkNestedSetSyncService = new NestedSetSyncService(sinkConnectionProvider, sinkEventDispatcher);
         sinkNestedSetLogUpdateListener = new SquashingNestedSetLogUpdateListener(
                 nestedSetLogUpdatedEvent -> sinkNestedSetSyncService.onNestedSetLogUpdate(),
-                sinkEventBus);
+                sinkEventDispatcher);
 
         sinkNestedSetLogConsumer = new NestedSetLogConsumer(kafkaContainer.getBootstrapServersUrl(),
                 schemaRegistryContainer.getUrl(),
@@ -0,0 +1,78 @@
+package com.findinpath.sink.event;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of the dispatch metrics of one or several listeners.
+ * The dispatch latency is measured from the moment when the event is posted
+ * until the moment when the listener starts handling it.
+ */
+public class EventDispatchMetrics {
+    public static final EventDispatchMetrics EMPTY = new EventDispatchMetrics(0, 0, 0, 0, 0);
+
+    private final long dispatchedCount;
+    private final long failedCount;
+    private final long queuedCount;
+    private final long totalDispatchLatencyNanos;
+    private final long maxDispatchLatencyNanos;
+
+    public EventDispatchMetrics(long dispatchedCount,
+                                long failedCount,
+                                long queuedCount,
+                                long totalDispatchLatencyNanos,
+                                long maxDispatchLatencyNanos) {
+        this.dispatchedCount = dispatchedCount;
+        this.failedCount = failedCount;
+        this.queuedCount = queuedCount;
+        this.totalDispatchLatencyNanos = totalDispatchLatencyNanos;
+        this.maxDispatchLatencyNanos = maxDispatchLatencyNanos;
+    }
+
+    /**
+     * @return the number of events handled by the listeners, including the failed ones
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * @return the number of events for which the listeners have thrown an exception
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the number of events waiting to be handled by the listeners having their own executor
+     */
+    public long getQueuedCount() {
+        return queuedCount;
+    }
+
+    public Duration getAverageDispatchLatency() {
+        return dispatchedCount == 0 ? Duration.ZERO : Duration.ofNanos(totalDispatchLatencyNanos / dispatchedCount);
+    }
+
+    public Duration getMaxDispatchLatency() {
+        return Duration.ofNanos(maxDispatchLatencyNanos);
+    }
+
+    EventDispatchMetrics plus(EventDispatchMetrics other) {
+        return new EventDispatchMetrics(dispatchedCount + other.dispatchedCount,
+                failedCount + other.failedCount,
+                queuedCount + other.queuedCount,
+                totalDispatchLatencyNanos + other.totalDispatchLatencyNanos,
+                Math.max(maxDispatchLatencyNanos, other.maxDispatchLatencyNanos));
+    }
+
+    @Override
+    public String toString() {
+        return "EventDispatchMetrics{" +
+                "dispatchedCount=" + dispatchedCount +
+                ", failedCount=" + failedCount +
+                ", queuedCount=" + queuedCount +
+                ", averageDispatchLatency=" + getAverageDispatchLatency() +
+                ", maxDispatchLatency=" + getMaxDispatchLatency() +
+                '}';
+    }
+}
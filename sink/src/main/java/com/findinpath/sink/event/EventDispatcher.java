@@ -0,0 +1,114 @@
+package com.findinpath.sink.event;
+
+import com.findinpath.sink.Utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches the events of the sink (e.g. : new entries in the <code>nested_set_node_log</code> table,
+ * updates of the <code>nested_set_node</code> table, changes of the leadership) towards the listeners
+ * registered explicitly for their type.
+ * <p>
+ * The listeners are looked up by the exact class of the posted event in a copy-on-write list,
+ * so that posting an event takes neither a lock nor reflection. The listeners registered inline are called
+ * on the posting thread in their registration order and the exceptions which they throw are propagated
+ * to the posting thread once the event has been dispatched to all the listeners. The listeners having their own
+ * executor get the event through a bounded queue and the exceptions which they throw are logged and counted
+ * in their {@link EventDispatchMetrics}.
+ */
+public class EventDispatcher {
+
+    private final Map<Class<?>, List<EventRegistration<?>>> eventType2Registrations = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a listener handling the events inline, on the thread posting them.
+     */
+    public <E> EventRegistration<E> register(Class<E> eventType, EventListener<? super E> listener) {
+        return register(new EventRegistration<>(this, eventType, listener, null, 0));
+    }
+
+    /**
+     * Registers a listener handling the events on its own executor.
+     *
+     * @param executor      the executor on which the listener handles the events.
+     *                      A single threaded executor preserves the order of the events.
+     * @param queueCapacity the maximum number of events waiting to be handled by the listener
+     *                      before the posting threads get blocked
+     */
+    public <E> EventRegistration<E> register(Class<E> eventType, EventListener<? super E> listener,
+                                             Executor executor, int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("The queue capacity needs to be positive");
+        }
+        return register(new EventRegistration<>(this, eventType, listener, executor, queueCapacity));
+    }
+
+    private <E> EventRegistration<E> register(EventRegistration<E> registration) {
+        eventType2Registrations.computeIfAbsent(registration.getEventType(), eventType -> new CopyOnWriteArrayList<>())
+                .add(registration);
+        return registration;
+    }
+
+    void unregister(EventRegistration<?> registration) {
+        var registrations = eventType2Registrations.get(registration.getEventType());
+        if (registrations != null) {
+            registrations.remove(registration);
+        }
+    }
+
+    /**
+     * Dispatches the event towards the listeners registered for its class.
+     * The events without listeners are discarded.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> void post(E event) {
+        var registrations = eventType2Registrations.get(event.getClass());
+        if (registrations == null) {
+            return;
+        }
+        var postedNanos = System.nanoTime();
+        Exception listenerException = null;
+        for (var registration : registrations) {
+            try {
+                ((EventRegistration<E>) registration).dispatch(event, postedNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                listenerException = addSuppressed(listenerException, e);
+                break;
+            } catch (Exception e) {
+                listenerException = addSuppressed(listenerException, e);
+            }
+        }
+        if (listenerException != null) {
+            Utils.sneakyThrow(listenerException);
+        }
+    }
+
+    /**
+     * Retrieves the dispatch metrics of the listeners summed up by the type of the events.
+     */
+    public Map<Class<?>, EventDispatchMetrics> getMetrics() {
+        var eventType2Metrics = new HashMap<Class<?>, EventDispatchMetrics>();
+        eventType2Registrations.forEach((eventType, registrations) -> {
+            var metrics = EventDispatchMetrics.EMPTY;
+            for (var registration : registrations) {
+                metrics = metrics.plus(registration.getMetrics());
+            }
+            eventType2Metrics.put(eventType, metrics);
+        });
+        return eventType2Metrics;
+    }
+
+    private static Exception addSuppressed(Exception listenerException, Exception e) {
+        if (listenerException == null) {
+            return e;
+        }
+        listenerException.addSuppressed(e);
+        return listenerException;
+    }
+}
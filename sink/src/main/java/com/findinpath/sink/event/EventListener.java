@@ -0,0 +1,12 @@
+package com.findinpath.sink.event;
+
+/**
+ * Listener registered on the {@link EventDispatcher} for the events of a single type.
+ *
+ * @param <E> the type of the events
+ */
+@FunctionalInterface
+public interface EventListener<E> {
+
+    void onEvent(E event);
+}
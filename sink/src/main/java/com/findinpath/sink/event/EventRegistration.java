@@ -0,0 +1,118 @@
+package com.findinpath.sink.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registration of a listener on the {@link EventDispatcher}.
+ * <p>
+ * The listeners registered without an executor handle the events inline, on the thread posting them.
+ * The listeners registered with an executor handle the events on the executor and the number of their
+ * pending events is bounded by the capacity of their queue, the posting thread being blocked while the queue is full.
+ *
+ * @param <E> the type of the events
+ */
+public class EventRegistration<E> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventRegistration.class);
+
+    private final EventDispatcher dispatcher;
+    private final Class<E> eventType;
+    private final EventListener<? super E> listener;
+    /**
+     * The executor of the listener or <code>null</code> when the events are handled inline.
+     */
+    private final Executor executor;
+    private final Semaphore queuePermits;
+    private final int queueCapacity;
+
+    private final LongAdder dispatchedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder totalDispatchLatencyNanos = new LongAdder();
+    private final LongAccumulator maxDispatchLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong queuedCount = new AtomicLong();
+
+    EventRegistration(EventDispatcher dispatcher,
+                      Class<E> eventType,
+                      EventListener<? super E> listener,
+                      Executor executor,
+                      int queueCapacity) {
+        this.dispatcher = dispatcher;
+        this.eventType = eventType;
+        this.listener = listener;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.queuePermits = executor == null ? null : new Semaphore(queueCapacity);
+    }
+
+    public Class<E> getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Stops the dispatch of the events towards the listener.
+     * The events already queued for a listener having its own executor are still handled.
+     */
+    public void unregister() {
+        dispatcher.unregister(this);
+    }
+
+    public EventDispatchMetrics getMetrics() {
+        return new EventDispatchMetrics(dispatchedCount.sum(),
+                failedCount.sum(),
+                queuedCount.get(),
+                totalDispatchLatencyNanos.sum(),
+                maxDispatchLatencyNanos.get());
+    }
+
+    /**
+     * Dispatches the event towards the listener.
+     *
+     * @throws Exception the exception thrown by a listener handling the events inline
+     */
+    void dispatch(E event, long postedNanos) throws Exception {
+        if (executor == null) {
+            handle(event, postedNanos);
+            return;
+        }
+
+        queuePermits.acquire();
+        queuedCount.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                queuedCount.decrementAndGet();
+                queuePermits.release();
+                try {
+                    handle(event, postedNanos);
+                } catch (Exception e) {
+                    LOGGER.error("The listener " + listener + " failed to handle the event " + event, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedCount.decrementAndGet();
+            queuePermits.release();
+            failedCount.increment();
+            LOGGER.error("The event " + event + " could not be queued for the listener " + listener
+                    + " having a queue capacity of " + queueCapacity, e);
+        }
+    }
+
+    private void handle(E event, long postedNanos) throws Exception {
+        var dispatchLatencyNanos = System.nanoTime() - postedNanos;
+        dispatchedCount.increment();
+        totalDispatchLatencyNanos.add(dispatchLatencyNanos);
+        maxDispatchLatencyNanos.accumulate(dispatchLatencyNanos);
+        try {
+            listener.onEvent(event);
+        } catch (Exception e) {
+            failedCount.increment();
+            throw e;
+        }
+    }
+}
@@ -3,17 +3,40 @@ package com.findinpath.sink.jdbc;
 import com.findinpath.sink.Utils;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * This class acts as a provider for a {@link Connection} from
  * {@link HikariDataSource}.
+ * <p>
+ * The connections can be taken from separate pools for the ingestion, the sync and the reads
+ * of the sink. The read connections are spread over the replicas of the sink database, if any,
+ * skipping for a while the replicas which couldn't hand out a connection, and fall back
+ * to the read pool of the primary database when none of the replicas is available.
+ * The replicas may lag behind the primary database, which is why the reads needing the latest commits
+ * use the read pool of the primary database instead.
  */
 public class ConnectionProvider implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionProvider.class);
 
-    private final HikariDataSource dataSource;
+    private static final Duration REPLICA_CONNECTION_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration REPLICA_RETRY_INTERVAL = Duration.ofSeconds(30);
+
+    private final Map<ConnectionPurpose, HikariDataSource> purpose2DataSource = new EnumMap<>(ConnectionPurpose.class);
+    private final List<Replica> replicas;
+    private final AtomicInteger nextReplicaIndex = new AtomicInteger();
 
     public ConnectionProvider(String driverClassName,
                               String jdbcUrl,
@@ -24,23 +47,156 @@ public class ConnectionProvider implements AutoCloseable {
         config.setDriverClassName(driverClassName);
         config.setUsername(username);
         config.setPassword(password);
-        this.dataSource = new HikariDataSource(config);
-
+        var dataSource = new HikariDataSource(config);
+        for (var purpose : ConnectionPurpose.values()) {
+            purpose2DataSource.put(purpose, dataSource);
+        }
+        this.replicas = List.of();
     }
 
+    /**
+     * @param ingestPoolSize   the maximum number of connections used for the ingestion of the consumed records
+     * @param syncPoolSize     the maximum number of connections used for the sync
+     * @param readPoolSize     the maximum number of connections used for the reads on the primary database
+     *                         and on each of the replicas
+     * @param replicaJdbcUrls  the JDBC URLs of the read-only replicas of the sink database
+     */
+    public ConnectionProvider(String driverClassName,
+                              String jdbcUrl,
+                              String username,
+                              String password,
+                              int ingestPoolSize,
+                              int syncPoolSize,
+                              int readPoolSize,
+                              List<String> replicaJdbcUrls) {
+        purpose2DataSource.put(ConnectionPurpose.INGEST,
+                createDataSource(driverClassName, jdbcUrl, username, password, "sink-ingest", ingestPoolSize));
+        purpose2DataSource.put(ConnectionPurpose.SYNC,
+                createDataSource(driverClassName, jdbcUrl, username, password, "sink-sync", syncPoolSize));
+        purpose2DataSource.put(ConnectionPurpose.READ,
+                createDataSource(driverClassName, jdbcUrl, username, password, "sink-read", readPoolSize));
+        purpose2DataSource.put(ConnectionPurpose.PRIMARY_READ, purpose2DataSource.get(ConnectionPurpose.READ));
+        var replicaIndex = new AtomicInteger();
+        this.replicas = replicaJdbcUrls.stream()
+                .map(replicaJdbcUrl -> {
+                    var config = createConfig(driverClassName, replicaJdbcUrl, username, password,
+                            "sink-read-replica-" + replicaIndex.getAndIncrement(), readPoolSize);
+                    config.setReadOnly(true);
+                    config.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT.toMillis());
+                    // an unavailable replica must not prevent the sink from starting
+                    config.setInitializationFailTimeout(-1);
+                    return new Replica(replicaJdbcUrl, new HikariDataSource(config));
+                })
+                .collect(Collectors.toList());
+    }
 
+    /**
+     * Retrieves a connection to the primary database from the sync pool.
+     */
     public Connection getConnection(){
+        return getConnection(ConnectionPurpose.SYNC);
+    }
+
+    /**
+     * Opens a connection to the primary database outside of the pools, for the sessions which need
+     * to be bound to a single physical connection (e.g. : advisory locks, <code>LISTEN</code>).
+     * Closing the connection ends its session.
+     */
+    public Connection getDedicatedConnection() {
+        var dataSource = purpose2DataSource.get(ConnectionPurpose.SYNC);
         try {
-            return dataSource.getConnection();
+            return DriverManager.getConnection(dataSource.getJdbcUrl(), dataSource.getUsername(), dataSource.getPassword());
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the maximum number of connections of the pool serving the specified purpose on the primary database.
+     */
+    public int getMaximumPoolSize(ConnectionPurpose purpose) {
+        return purpose2DataSource.get(purpose).getMaximumPoolSize();
+    }
+
+    public Connection getConnection(ConnectionPurpose purpose) {
+        if (purpose == ConnectionPurpose.READ && !replicas.isEmpty()) {
+            var connection = getReplicaConnection();
+            if (connection != null) {
+                return connection;
+            }
+        }
+        try {
+            return purpose2DataSource.get(purpose).getConnection();
         }catch(SQLException e){
             Utils.sneakyThrow(e);
             return null;
         }
     }
 
+    /**
+     * Takes the replicas in turns, skipping the ones which recently failed to hand out a connection.
+     *
+     * @return a connection to one of the available replicas or <code>null</code> if none is available
+     */
+    private Connection getReplicaConnection() {
+        var startIndex = Math.floorMod(nextReplicaIndex.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            var replica = replicas.get((startIndex + i) % replicas.size());
+            if (System.nanoTime() - replica.failedNanos < REPLICA_RETRY_INTERVAL.toNanos()) {
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                LOGGER.warn("The replica " + replica.jdbcUrl + " is skipped for "
+                        + REPLICA_RETRY_INTERVAL.toSeconds() + " seconds because no connection could be retrieved", e);
+                replica.failedNanos = System.nanoTime();
+            }
+        }
+        return null;
+    }
+
+    private static HikariDataSource createDataSource(String driverClassName, String jdbcUrl,
+                                                     String username, String password,
+                                                     String poolName, int poolSize) {
+        return new HikariDataSource(createConfig(driverClassName, jdbcUrl, username, password, poolName, poolSize));
+    }
+
+    private static HikariConfig createConfig(String driverClassName, String jdbcUrl,
+                                             String username, String password,
+                                             String poolName, int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setDriverClassName(driverClassName);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setPoolName(poolName);
+        config.setMaximumPoolSize(poolSize);
+        return config;
+    }
 
     @Override
     public void close() throws Exception {
-        dataSource.close();
+        // the same data source may serve several purposes
+        var dataSources = new IdentityHashMap<HikariDataSource, Boolean>();
+        purpose2DataSource.values().forEach(dataSource -> dataSources.put(dataSource, true));
+        replicas.forEach(replica -> dataSources.put(replica.dataSource, true));
+        dataSources.keySet().forEach(HikariDataSource::close);
+    }
+
+    private static class Replica {
+        private final String jdbcUrl;
+        private final HikariDataSource dataSource;
+        /**
+         * The moment of the last failure to retrieve a connection from the replica.
+         */
+        private volatile long failedNanos;
+
+        private Replica(String jdbcUrl, HikariDataSource dataSource) {
+            this.jdbcUrl = jdbcUrl;
+            this.dataSource = dataSource;
+            this.failedNanos = System.nanoTime() - REPLICA_RETRY_INTERVAL.toNanos();
+        }
     }
 }
@@ -0,0 +1,25 @@
+package com.findinpath.sink.jdbc;
+
+/**
+ * The work for which a connection is taken from the {@link ConnectionProvider}.
+ * Each purpose has its own pool so that a kind of work can't starve the others of connections.
+ */
+public enum ConnectionPurpose {
+    /**
+     * Writing the records consumed from Kafka into the logs.
+     */
+    INGEST,
+    /**
+     * Syncing the nested set nodes from the logs, bootstrapping and maintaining the sink database.
+     */
+    SYNC,
+    /**
+     * Read-only queries serving the synced trees, routed to the replicas when there are any.
+     */
+    READ,
+    /**
+     * Read-only queries which need to see the latest commits of the sync (e.g. : the nodes notified
+     * as written), served by the read pool of the primary database even when there are replicas.
+     */
+    PRIMARY_READ
+}
@@ -0,0 +1,137 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
+import com.findinpath.sink.storage.LogOffsetStore;
+import com.findinpath.sink.storage.NestedSetNodeLogStore;
+import com.findinpath.sink.storage.NestedSetNodeShiftLogStore;
+import com.findinpath.sink.storage.NestedSetNodeStore;
+import com.findinpath.sink.storage.NestedSetOperationLogStore;
+import com.findinpath.sink.storage.SinkStorage;
+import com.findinpath.sink.storage.SinkStorageTransaction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Storage of the sink in the PostgreSQL tables accessed through the JDBC repositories.
+ * Each transaction holds a connection of the pool until it gets closed.
+ */
+public class JdbcSinkStorage implements SinkStorage {
+
+    private final ConnectionProvider connectionProvider;
+    private final ConnectionPurpose connectionPurpose;
+
+    public JdbcSinkStorage(ConnectionProvider connectionProvider) {
+        this(connectionProvider, ConnectionPurpose.SYNC);
+    }
+
+    /**
+     * @param connectionPurpose the pool from which the connections of the transactions are taken
+     */
+    public JdbcSinkStorage(ConnectionProvider connectionProvider, ConnectionPurpose connectionPurpose) {
+        this.connectionProvider = connectionProvider;
+        this.connectionPurpose = connectionPurpose;
+    }
+
+    @Override
+    public SinkStorageTransaction beginTransaction() {
+        var connection = connectionProvider.getConnection(connectionPurpose);
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            close(connection);
+            Utils.sneakyThrow(e);
+        }
+        return new JdbcSinkStorageTransaction(connection);
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    private static class JdbcSinkStorageTransaction implements SinkStorageTransaction {
+        private final Connection connection;
+        private final NestedSetNodeRepository nestedSetNodeRepository;
+        private final NestedSetNodeLogRepository nestedSetNodeLogRepository;
+        private final NestedSetNodeShiftLogRepository nestedSetNodeShiftLogRepository;
+        private final NestedSetOperationLogRepository nestedSetOperationLogRepository;
+        private final LogOffsetRepository logOffsetRepository;
+
+        private JdbcSinkStorageTransaction(Connection connection) {
+            this.connection = connection;
+            this.nestedSetNodeRepository = new NestedSetNodeRepository(connection);
+            this.nestedSetNodeLogRepository = new NestedSetNodeLogRepository(connection);
+            this.nestedSetNodeShiftLogRepository = new NestedSetNodeShiftLogRepository(connection);
+            this.nestedSetOperationLogRepository = new NestedSetOperationLogRepository(connection);
+            this.logOffsetRepository = new LogOffsetRepository(connection);
+        }
+
+        @Override
+        public NestedSetNodeStore getNestedSetNodeStore() {
+            return nestedSetNodeRepository;
+        }
+
+        @Override
+        public NestedSetNodeLogStore getNestedSetNodeLogStore() {
+            return nestedSetNodeLogRepository;
+        }
+
+        @Override
+        public NestedSetNodeShiftLogStore getNestedSetNodeShiftLogStore() {
+            return nestedSetNodeShiftLogRepository;
+        }
+
+        @Override
+        public NestedSetOperationLogStore getNestedSetOperationLogStore() {
+            return nestedSetOperationLogRepository;
+        }
+
+        @Override
+        public LogOffsetStore getLogOffsetStore() {
+            return logOffsetRepository;
+        }
+
+        @Override
+        public void notifyNestedSetTreeUpdated(NestedSetTreeUpdatedNotification notification) {
+            new SinkCoordinationRepository(connection).notify(NestedSetTreeUpdatedNotification.CHANNEL,
+                    notification.toPayload());
+        }
+
+        @Override
+        public void lock(String name) {
+            new SinkCoordinationRepository(connection).lockForTransaction(name);
+        }
+
+        @Override
+        public boolean isSessionLockHeld(String name, long sessionId) {
+            return new SinkCoordinationRepository(connection).isLockHeld(name, sessionId);
+        }
+
+        @Override
+        public void commit() {
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                Utils.sneakyThrow(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                // discards the changes which have not been committed before the connection returns to the pool
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                Utils.sneakyThrow(e);
+            } finally {
+                JdbcSinkStorage.close(connection);
+            }
+        }
+    }
+}
@@ -1,17 +1,23 @@
 package com.findinpath.sink.jdbc;
 
 import com.findinpath.sink.Utils;
+import com.findinpath.sink.storage.LogOffsetStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Optional;
 
-public class LogOffsetRepository {
-    private static final String UPDATE_LOG_OFFSET_SQL = "UPDATE log_offset " +
-            "SET value = ? " +
+public class LogOffsetRepository implements LogOffsetStore {
+    private static final String SELECT_LOG_OFFSET_SQL = "SELECT value " +
+            "FROM log_offset " +
             "WHERE name = ?";
+    private static final String UPDATE_LOG_OFFSET_SQL = "INSERT INTO log_offset (name, value) " +
+            "VALUES (?, ?) " +
+            "ON CONFLICT (name) DO UPDATE SET value = EXCLUDED.value";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LogOffsetRepository.class);
 
@@ -22,13 +28,44 @@ public class LogOffsetRepository {
         this.connection = connection;
     }
 
+    /**
+     * Retrieves the name of the offset kept for the specified partition of the topic.
+     * The offset of the partition <code>0</code> keeps the name without suffix
+     * which corresponds to consuming a topic having a single partition.
+     */
+    public static String getPartitionOffsetName(String name, int partition) {
+        return partition == 0 ? name : name + "." + partition;
+    }
+
+    /**
+     * Retrieves the name of the offset kept for the specified tree of a partition of the topic.
+     */
+    public static String getTreeOffsetName(String name, int partition, long treeId) {
+        return getPartitionOffsetName(name, partition) + ".tree." + treeId;
+    }
+
+    public Optional<Long> getNestedSetLogOffset(String name) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_LOG_OFFSET_SQL)) {
+            pstmt.setString(1, name);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        return Optional.empty();
+    }
+
     public void saveNestedSetLogOffset(String name, long value) {
         LOGGER.info("Updating the log_offset for name " + name + " to " + value);
 
         try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_LOG_OFFSET_SQL)) {
 
-            pstmt.setLong(1, value);
-            pstmt.setString(2, name);
+            pstmt.setString(1, name);
+            pstmt.setLong(2, value);
 
             pstmt.executeUpdate();
         } catch (SQLException e) {
@@ -0,0 +1,178 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetNodeLog;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary encoding of a batch of log entries stored in a single row of the
+ * <code>nested_set_node_log_batch</code> table or in a record of the local ingestion journal.
+ * <p>
+ * The batch starts with the format version and the number of log entries. Each log entry
+ * is laid out as fixed width fields followed by its optional fields:
+ * <pre>
+ * tree_node_id (8) | tree_id (8) | lft (4) | rgt (4) | created (8) | updated (8) | flags (1)
+ * [txn_version (8)] [txn_row_count (4)] [coordinates_version (8)] [label length (4) | label UTF-8 bytes]
+ * </pre>
+ */
+public final class NestedSetNodeLogBatchCodec {
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int ACTIVE_FLAG = 1;
+    private static final int TXN_VERSION_FLAG = 1 << 1;
+    private static final int TXN_ROW_COUNT_FLAG = 1 << 2;
+    private static final int COORDINATES_VERSION_FLAG = 1 << 3;
+    private static final int LABEL_FLAG = 1 << 4;
+
+    private static final int HEADER_SIZE = 1 + 4;
+    private static final int FIXED_ENTRY_SIZE = 8 + 8 + 4 + 4 + 8 + 8 + 1;
+
+    private NestedSetNodeLogBatchCodec() {
+    }
+
+    public static byte[] encode(List<NestedSetNodeLog> nestedSetNodeLogs, boolean compressed) {
+        var labels = new byte[nestedSetNodeLogs.size()][];
+        var size = HEADER_SIZE;
+        for (int i = 0; i < nestedSetNodeLogs.size(); i++) {
+            var nestedSetNodeLog = nestedSetNodeLogs.get(i);
+            var label = nestedSetNodeLog.getNestedSetNode().getLabel();
+            labels[i] = label == null ? null : label.getBytes(StandardCharsets.UTF_8);
+            size += FIXED_ENTRY_SIZE
+                    + (nestedSetNodeLog.getTxnVersion() != null ? 8 : 0)
+                    + (nestedSetNodeLog.getTxnRowCount() != null ? 4 : 0)
+                    + (nestedSetNodeLog.getCoordinatesVersion() != null ? 8 : 0)
+                    + (labels[i] != null ? 4 + labels[i].length : 0);
+        }
+
+        var buffer = ByteBuffer.allocate(size);
+        buffer.put(FORMAT_VERSION);
+        buffer.putInt(nestedSetNodeLogs.size());
+        for (int i = 0; i < nestedSetNodeLogs.size(); i++) {
+            var nestedSetNodeLog = nestedSetNodeLogs.get(i);
+            var nestedSetNode = nestedSetNodeLog.getNestedSetNode();
+            buffer.putLong(nestedSetNode.getId());
+            buffer.putLong(nestedSetNode.getTreeId());
+            buffer.putInt(nestedSetNode.getLeft());
+            buffer.putInt(nestedSetNode.getRight());
+            buffer.putLong(nestedSetNode.getCreated().toEpochMilli());
+            buffer.putLong(nestedSetNode.getUpdated().toEpochMilli());
+            buffer.put((byte) ((nestedSetNode.isActive() ? ACTIVE_FLAG : 0)
+                    | (nestedSetNodeLog.getTxnVersion() != null ? TXN_VERSION_FLAG : 0)
+                    | (nestedSetNodeLog.getTxnRowCount() != null ? TXN_ROW_COUNT_FLAG : 0)
+                    | (nestedSetNodeLog.getCoordinatesVersion() != null ? COORDINATES_VERSION_FLAG : 0)
+                    | (labels[i] != null ? LABEL_FLAG : 0)));
+            if (nestedSetNodeLog.getTxnVersion() != null) {
+                buffer.putLong(nestedSetNodeLog.getTxnVersion());
+            }
+            if (nestedSetNodeLog.getTxnRowCount() != null) {
+                buffer.putInt(nestedSetNodeLog.getTxnRowCount());
+            }
+            if (nestedSetNodeLog.getCoordinatesVersion() != null) {
+                buffer.putLong(nestedSetNodeLog.getCoordinatesVersion());
+            }
+            if (labels[i] != null) {
+                buffer.putInt(labels[i].length);
+                buffer.put(labels[i]);
+            }
+        }
+
+        return compressed ? compress(buffer.array()) : buffer.array();
+    }
+
+    /**
+     * Decodes the log entries of a batch. The log entries share the id of the batch
+     * and keep the order in which they have been consumed.
+     */
+    static List<NestedSetNodeLog> decode(int batchId, int partition, byte[] data, boolean compressed) {
+        var nestedSetNodeLogs = decode(partition, ByteBuffer.wrap(compressed ? decompress(data) : data));
+        for (var nestedSetNodeLog : nestedSetNodeLogs) {
+            nestedSetNodeLog.setId(batchId);
+            nestedSetNodeLog.setPacked(true);
+        }
+        return nestedSetNodeLogs;
+    }
+
+    /**
+     * Decodes the uncompressed log entries starting from the current position of the buffer.
+     */
+    public static List<NestedSetNodeLog> decode(int partition, ByteBuffer buffer) {
+        var formatVersion = buffer.get();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported format version " + formatVersion
+                    + " of the nested set node log batch");
+        }
+        var count = buffer.getInt();
+        var nestedSetNodeLogs = new ArrayList<NestedSetNodeLog>(count);
+        for (int i = 0; i < count; i++) {
+            var nestedSetNode = new NestedSetNode();
+            nestedSetNode.setId(buffer.getLong());
+            nestedSetNode.setTreeId(buffer.getLong());
+            nestedSetNode.setLeft(buffer.getInt());
+            nestedSetNode.setRight(buffer.getInt());
+            nestedSetNode.setCreated(Instant.ofEpochMilli(buffer.getLong()));
+            nestedSetNode.setUpdated(Instant.ofEpochMilli(buffer.getLong()));
+            var flags = buffer.get();
+            nestedSetNode.setActive((flags & ACTIVE_FLAG) != 0);
+            var nestedSetNodeLog = new NestedSetNodeLog(0, nestedSetNode,
+                    (flags & TXN_VERSION_FLAG) != 0 ? buffer.getLong() : null,
+                    (flags & TXN_ROW_COUNT_FLAG) != 0 ? buffer.getInt() : null);
+            if ((flags & COORDINATES_VERSION_FLAG) != 0) {
+                nestedSetNodeLog.setCoordinatesVersion(buffer.getLong());
+            }
+            if ((flags & LABEL_FLAG) != 0) {
+                var label = new byte[buffer.getInt()];
+                buffer.get(label);
+                nestedSetNode.setLabel(new String(label, StandardCharsets.UTF_8));
+            }
+            nestedSetNodeLog.setPartition(partition);
+            nestedSetNodeLogs.add(nestedSetNodeLog);
+        }
+        return nestedSetNodeLogs;
+    }
+
+    private static byte[] compress(byte[] data) {
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(data.length / 2 + 64);
+            var chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            var out = new ByteArrayOutputStream(data.length * 4);
+            var chunk = new byte[8192];
+            while (!inflater.finished()) {
+                var inflatedCount = inflater.inflate(chunk);
+                if (inflatedCount == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed nested set node log batch");
+                }
+                out.write(chunk, 0, inflatedCount);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed nested set node log batch", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.model.NestedSetNodeLogPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the id range partitions of the <code>nested_set_node_log</code> table.
+ */
+public class NestedSetNodeLogPartitionRepository {
+    public static final String PARTITION_NAME_PREFIX = "nested_set_node_log_";
+    public static final String DEFAULT_PARTITION_NAME = PARTITION_NAME_PREFIX + "default";
+
+    private static final String SELECT_PARTITIONS_SQL =
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) " +
+                    "FROM pg_inherits i " +
+                    "JOIN pg_class c ON c.oid = i.inhrelid " +
+                    "WHERE i.inhparent = 'nested_set_node_log'::regclass";
+    private static final Pattern PARTITION_BOUND_PATTERN =
+            Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+    private static final String SELECT_LAST_LOG_ID_SQL =
+            "SELECT last_value FROM nested_set_node_log_id_seq";
+    private static final String SELECT_DEFAULT_PARTITION_MAX_ID_SQL =
+            "SELECT MAX(id) FROM " + DEFAULT_PARTITION_NAME;
+    /**
+     * Serializes the changes on the partitions of the log done by concurrent sink instances.
+     */
+    private static final String LOCK_PARTITIONS_SQL =
+            "SELECT pg_advisory_xact_lock(hashtext('nested_set_node_log'))";
+    private static final String CREATE_PARTITION_SQL =
+            "CREATE TABLE IF NOT EXISTS " + PARTITION_NAME_PREFIX + "%d " +
+                    "PARTITION OF nested_set_node_log FOR VALUES FROM (%d) TO (%d)";
+    private static final String DROP_TABLE_SQL = "DROP TABLE IF EXISTS ";
+    /**
+     * The offsets of the log partitions are the ids starting from which the log entries
+     * are still pending. The log partitions without offset haven't been synced yet.
+     */
+    private static final String LOG_OFFSET_JOIN_SQL =
+            "LEFT JOIN log_offset o ON o.name = CASE WHEN l.log_partition = 0 THEN 'nested_set_node_log' " +
+                    "ELSE 'nested_set_node_log.' || l.log_partition END ";
+    private static final String IS_PARTITION_SYNCED_SQL =
+            "SELECT NOT EXISTS (" +
+                    "SELECT 1 " +
+                    "FROM (SELECT log_partition, MAX(id) AS max_id FROM %s GROUP BY log_partition) l " +
+                    LOG_OFFSET_JOIN_SQL +
+                    "WHERE o.value IS NULL OR l.max_id + ? >= o.value)";
+    private static final String DELETE_SYNCED_DEFAULT_PARTITION_ENTRIES_SQL =
+            "DELETE FROM " + DEFAULT_PARTITION_NAME + " l " +
+                    "USING log_offset o " +
+                    "WHERE o.name = CASE WHEN l.log_partition = 0 THEN 'nested_set_node_log' " +
+                    "ELSE 'nested_set_node_log.' || l.log_partition END " +
+                    "AND l.id + ? < o.value";
+    private static final String DELETE_SYNCED_LOG_BATCHES_SQL =
+            "DELETE FROM nested_set_node_log_batch l " +
+                    "USING log_offset o " +
+                    "WHERE o.name = CASE WHEN l.log_partition = 0 THEN 'nested_set_node_log' " +
+                    "ELSE 'nested_set_node_log.' || l.log_partition END " +
+                    "AND l.id + ? < o.value";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetNodeLogPartitionRepository.class);
+
+    private final Connection connection;
+
+    public NestedSetNodeLogPartitionRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Retrieves the id range partitions of the log ordered by their ranges.
+     * The default partition is not part of the result.
+     */
+    public List<NestedSetNodeLogPartition> getPartitions() {
+        var partitions = new ArrayList<NestedSetNodeLogPartition>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_PARTITIONS_SQL)) {
+            while (rs.next()) {
+                var matcher = PARTITION_BOUND_PATTERN.matcher(rs.getString(2));
+                if (matcher.find()) {
+                    partitions.add(new NestedSetNodeLogPartition(rs.getString(1),
+                            Long.parseLong(matcher.group(1)),
+                            Long.parseLong(matcher.group(2))));
+                }
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        partitions.sort(Comparator.comparingLong(NestedSetNodeLogPartition::getFrom));
+        return partitions;
+    }
+
+    /**
+     * Retrieves the last id handed out for the log entries.
+     */
+    public long getLastLogId() {
+        return selectLong(SELECT_LAST_LOG_ID_SQL).orElse(0L);
+    }
+
+    /**
+     * Retrieves the highest id of the log entries written beyond the id ranges of the partitions.
+     */
+    public Optional<Long> getDefaultPartitionMaxId() {
+        return selectLong(SELECT_DEFAULT_PARTITION_MAX_ID_SQL);
+    }
+
+    /**
+     * Locks the partitions of the log until the end of the current transaction.
+     */
+    public void lockPartitions() {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(LOCK_PARTITIONS_SQL);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    public void createPartition(long from, long to) {
+        LOGGER.info("Creating the partition of the nested_set_node_log table for the ids from " + from + " to " + to);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(String.format(CREATE_PARTITION_SQL, from, from, to));
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Verifies whether all the log entries of the partition are below the log offset
+     * of their log partition by more than the specified number of retained entries.
+     */
+    public boolean isPartitionSynced(NestedSetNodeLogPartition partition, long retainedLogEntries) {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                String.format(IS_PARTITION_SYNCED_SQL, getValidPartitionName(partition)))) {
+            pstmt.setLong(1, retainedLogEntries);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    public void dropPartition(NestedSetNodeLogPartition partition) {
+        LOGGER.info("Dropping the synced partition " + partition);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_TABLE_SQL + getValidPartitionName(partition));
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Deletes the synced log entries written in the default partition.
+     *
+     * @return the number of deleted log entries
+     */
+    public int deleteSyncedDefaultPartitionEntries(long retainedLogEntries) {
+        try (PreparedStatement pstmt = connection.prepareStatement(DELETE_SYNCED_DEFAULT_PARTITION_ENTRIES_SQL)) {
+            pstmt.setLong(1, retainedLogEntries);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes the synced packed batches of log entries.
+     *
+     * @return the number of deleted batches
+     */
+    public int deleteSyncedLogBatches(long retainedLogEntries) {
+        try (PreparedStatement pstmt = connection.prepareStatement(DELETE_SYNCED_LOG_BATCHES_SQL)) {
+            pstmt.setLong(1, retainedLogEntries);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return 0;
+        }
+    }
+
+    private static String getValidPartitionName(NestedSetNodeLogPartition partition) {
+        if (!partition.getName().equals(PARTITION_NAME_PREFIX + partition.getFrom())) {
+            throw new IllegalArgumentException("Invalid partition name " + partition.getName());
+        }
+        return partition.getName();
+    }
+
+    private Optional<Long> selectLong(String sql) {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            if (rs.next()) {
+                var value = rs.getLong(1);
+                return rs.wasNull() ? Optional.empty() : Optional.of(value);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        return Optional.empty();
+    }
+}
@@ -3,25 +3,73 @@ package com.findinpath.sink.jdbc;
 import com.findinpath.sink.Utils;
 import com.findinpath.sink.model.NestedSetNode;
 import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.storage.NestedSetNodeLogStore;
 
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.StringReader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.findinpath.sink.jdbc.Constants.TZ_UTC;
 
-public class NestedSetNodeLogRepository {
+public class NestedSetNodeLogRepository implements NestedSetNodeLogStore {
+    private static final String NESTED_SET_NODE_LOG_OFFSET_NAME = "nested_set_node_log";
+
     private static final String SELECT_NESTED_SET_LOG_UPDATES_SQL =
-            "SELECT id, tree_node_id, label, lft, rgt, active, created, updated " +
+            "SELECT id, tree_node_id, label, lft, rgt, active, created, updated, txn_version, txn_row_count, coordinates_version, tree_id " +
                     "FROM nested_set_node_log " +
-                    "WHERE id >= GREATEST((SELECT value FROM log_offset WHERE name = 'nested_set_node_log'), 0)";
+                    "WHERE log_partition = ? " +
+                    "AND id >= GREATEST((SELECT value FROM log_offset WHERE name = ?), 0)";
+    private static final String SELECT_NESTED_SET_LOG_BATCHES_SQL =
+            "SELECT id, compressed, nodes " +
+                    "FROM nested_set_node_log_batch " +
+                    "WHERE log_partition = ? " +
+                    "AND id >= GREATEST((SELECT value FROM log_offset WHERE name = ?), 0)";
+    private static final String COPY_NESTED_SET_LOGS_SQL =
+            "COPY nested_set_node_log (tree_node_id, label, lft, rgt, active, created, updated, txn_version, txn_row_count, coordinates_version, tree_id, log_partition) " +
+                    "FROM STDIN WITH (FORMAT csv)";
+    private static final String INSERT_INTO_NESTED_SET_LOG_BATCH_SQL =
+            "INSERT INTO nested_set_node_log_batch (log_partition, node_count, compressed, nodes) " +
+                    "VALUES (?, ?, ?, ?)";
+    /**
+     * Deletes the pending log entries without transaction version which are superseded
+     * by a newer pending log entry of the same node. The sync takes anyway only the newest
+     * log entry of each node into account.
+     * The log entries written concurrently get higher ids and are therefore never deleted.
+     */
+    private static final String DELETE_SUPERSEDED_NESTED_SET_LOG_UPDATES_SQL =
+            "DELETE FROM nested_set_node_log " +
+                    "WHERE id IN (" +
+                    "    SELECT id FROM (" +
+                    "        SELECT id, ROW_NUMBER() OVER (PARTITION BY tree_node_id ORDER BY id DESC) AS version_rank " +
+                    "        FROM nested_set_node_log " +
+                    "        WHERE log_partition = ? " +
+                    "        AND txn_version IS NULL " +
+                    "        AND id >= GREATEST((SELECT value FROM log_offset WHERE name = ?), 0)" +
+                    "    ) pending " +
+                    "    WHERE version_rank > 1" +
+                    ")";
     private static final String INSERT_INTO_NESTED_SET_LOG_SQL =
-            "INSERT INTO nested_set_node_log (tree_node_id, label, lft, rgt, active, created, updated) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+            "INSERT INTO nested_set_node_log (tree_node_id, label, lft, rgt, active, created, updated, txn_version, txn_row_count, coordinates_version, tree_id, log_partition) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * The ratio of pending log entries to distinct nodes for which the pending log entries are never compacted.
+     */
+    public static final double NO_COMPACTION = Double.POSITIVE_INFINITY;
 
     private final Connection connection;
 
@@ -30,36 +78,123 @@ public class NestedSetNodeLogRepository {
     }
 
     public List<NestedSetNodeLog> getNestedSetLogUpdates() {
+        return getNestedSetLogUpdates(NestedSetNodeLog.DEFAULT_PARTITION);
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_LOG_UPDATES_SQL);
-             ResultSet rs = pstmt.executeQuery()) {
-            var result = new ArrayList<NestedSetNodeLog>();
-            while (rs.next()) {
-                var nestedSetLogId = rs.getInt(1);
-                var nestedSetNode = new NestedSetNode();
-                nestedSetNode.setId(rs.getInt(2));
-                nestedSetNode.setLabel(rs.getString(3));
-                nestedSetNode.setLeft(rs.getInt(4));
-                nestedSetNode.setRight(rs.getInt(5));
-                nestedSetNode.setActive(rs.getBoolean(6));
-                nestedSetNode.setCreated(rs.getTimestamp(7, TZ_UTC).toInstant());
-                nestedSetNode.setUpdated(rs.getTimestamp(8, TZ_UTC).toInstant());
-                var nestedSetNodeLog = new NestedSetNodeLog(nestedSetLogId, nestedSetNode);
-                result.add(nestedSetNodeLog);
+    /**
+     * Retrieves the log entries consumed from the specified partition of the topic
+     * starting from the log offset of the partition.
+     */
+    public List<NestedSetNodeLog> getNestedSetLogUpdates(int partition) {
+
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_LOG_UPDATES_SQL)) {
+            pstmt.setInt(1, partition);
+            pstmt.setString(2, LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_LOG_OFFSET_NAME, partition));
+
+            List<NestedSetNodeLog> nestedSetLogUpdates;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                nestedSetLogUpdates = getNestedSetLogUpdates(rs, partition);
+            }
+            var packedNestedSetLogUpdates = getPackedNestedSetLogUpdates(partition);
+            if (!packedNestedSetLogUpdates.isEmpty()) {
+                nestedSetLogUpdates.addAll(packedNestedSetLogUpdates);
+                // the sort is stable and keeps therefore the order of the log entries sharing the id of their batch
+                nestedSetLogUpdates.sort(Comparator.comparingInt(NestedSetNodeLog::getId));
             }
+            return nestedSetLogUpdates;
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the log entries decoded from the pending packed batches of the specified partition of the topic.
+     * The log entries of a batch share the id of the batch.
+     */
+    private List<NestedSetNodeLog> getPackedNestedSetLogUpdates(int partition) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_LOG_BATCHES_SQL)) {
+            pstmt.setInt(1, partition);
+            pstmt.setString(2, LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_LOG_OFFSET_NAME, partition));
 
+            var result = new ArrayList<NestedSetNodeLog>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    result.addAll(NestedSetNodeLogBatchCodec.decode(rs.getInt(1), partition,
+                            rs.getBytes(3), rs.getBoolean(2)));
+                }
+            }
             return result;
+        }
+    }
+
+    /**
+     * Compacts the pending log entries of the specified partition of the topic by keeping
+     * only the newest log entry of each node among the log entries without transaction version.
+     * The log entries of the source transactions are left untouched because they are needed
+     * for verifying the completeness of the transactions.
+     *
+     * @return the number of deleted log entries
+     */
+    public int compactNestedSetLogUpdates(int partition) {
+        try (PreparedStatement pstmt = connection.prepareStatement(DELETE_SUPERSEDED_NESTED_SET_LOG_UPDATES_SQL)) {
+            pstmt.setInt(1, partition);
+            pstmt.setString(2, LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_LOG_OFFSET_NAME, partition));
+            return pstmt.executeUpdate();
         } catch (SQLException e) {
             Utils.sneakyThrow(e);
-            return null;
+            return 0;
+        }
+    }
+
+    private static List<NestedSetNodeLog> getNestedSetLogUpdates(ResultSet rs, int partition) throws SQLException {
+        var result = new ArrayList<NestedSetNodeLog>();
+        while (rs.next()) {
+            var nestedSetLogId = rs.getInt(1);
+            var nestedSetNode = new NestedSetNode();
+            nestedSetNode.setId(rs.getInt(2));
+            nestedSetNode.setLabel(rs.getString(3));
+            nestedSetNode.setLeft(rs.getInt(4));
+            nestedSetNode.setRight(rs.getInt(5));
+            nestedSetNode.setActive(rs.getBoolean(6));
+            nestedSetNode.setCreated(rs.getTimestamp(7, TZ_UTC).toInstant());
+            nestedSetNode.setUpdated(rs.getTimestamp(8, TZ_UTC).toInstant());
+            nestedSetNode.setTreeId(rs.getLong(12));
+            var txnVersion = rs.getLong(9);
+            var txnVersionAvailable = !rs.wasNull();
+            var txnRowCount = rs.getInt(10);
+            var txnRowCountAvailable = !rs.wasNull();
+            var nestedSetNodeLog = new NestedSetNodeLog(nestedSetLogId, nestedSetNode,
+                    txnVersionAvailable ? txnVersion : null,
+                    txnRowCountAvailable ? txnRowCount : null);
+            var coordinatesVersion = rs.getLong(11);
+            nestedSetNodeLog.setCoordinatesVersion(rs.wasNull() ? null : coordinatesVersion);
+            nestedSetNodeLog.setPartition(partition);
+            result.add(nestedSetNodeLog);
         }
+
+        return result;
     }
 
     public void saveAll(Iterable<NestedSetNode> nestedSetNodes) {
+        var nestedSetNodeLogs = new ArrayList<NestedSetNodeLog>();
+        for (var nestedSetNode : nestedSetNodes) {
+            nestedSetNodeLogs.add(new NestedSetNodeLog(0, nestedSetNode));
+        }
+        saveAllLogs(nestedSetNodeLogs);
+    }
+
+    /**
+     * Appends the nested set nodes along with the information about the
+     * source transactions in which they were written.
+     * The ids of the log entries are generated by the database.
+     */
+    public void saveAllLogs(Iterable<NestedSetNodeLog> nestedSetNodeLogs) {
 
         try (PreparedStatement pstmt = connection.prepareStatement(INSERT_INTO_NESTED_SET_LOG_SQL)) {
 
-            for (var nestedSetNode : nestedSetNodes) {
+            for (var nestedSetNodeLog : nestedSetNodeLogs) {
+                var nestedSetNode = nestedSetNodeLog.getNestedSetNode();
                 pstmt.setLong(1, nestedSetNode.getId());
                 pstmt.setString(2, nestedSetNode.getLabel());
                 pstmt.setInt(3, nestedSetNode.getLeft());
@@ -67,6 +202,23 @@ public class NestedSetNodeLogRepository {
                 pstmt.setBoolean(5, nestedSetNode.isActive());
                 pstmt.setTimestamp(6, new Timestamp(nestedSetNode.getCreated().toEpochMilli()), TZ_UTC);
                 pstmt.setTimestamp(7, new Timestamp(nestedSetNode.getUpdated().toEpochMilli()), TZ_UTC);
+                if (nestedSetNodeLog.getTxnVersion() != null) {
+                    pstmt.setLong(8, nestedSetNodeLog.getTxnVersion());
+                } else {
+                    pstmt.setNull(8, Types.BIGINT);
+                }
+                if (nestedSetNodeLog.getTxnRowCount() != null) {
+                    pstmt.setInt(9, nestedSetNodeLog.getTxnRowCount());
+                } else {
+                    pstmt.setNull(9, Types.INTEGER);
+                }
+                if (nestedSetNodeLog.getCoordinatesVersion() != null) {
+                    pstmt.setLong(10, nestedSetNodeLog.getCoordinatesVersion());
+                } else {
+                    pstmt.setNull(10, Types.BIGINT);
+                }
+                pstmt.setLong(11, nestedSetNode.getTreeId());
+                pstmt.setInt(12, nestedSetNodeLog.getPartition());
                 pstmt.addBatch();
             }
 
@@ -77,4 +229,67 @@ public class NestedSetNodeLogRepository {
 
     }
 
+    /**
+     * Bulk loads the log entries through the PostgreSQL <code>COPY</code> command
+     * which is significantly faster than batched inserts for large amounts of log entries.
+     */
+    public void copyAllLogs(Iterable<NestedSetNodeLog> nestedSetNodeLogs) {
+        var csv = new StringBuilder();
+        for (var nestedSetNodeLog : nestedSetNodeLogs) {
+            var nestedSetNode = nestedSetNodeLog.getNestedSetNode();
+            csv.append(nestedSetNode.getId()).append(',');
+            if (nestedSetNode.getLabel() != null) {
+                csv.append('"').append(nestedSetNode.getLabel().replace("\"", "\"\"")).append('"');
+            }
+            csv.append(',').append(nestedSetNode.getLeft())
+                    .append(',').append(nestedSetNode.getRight())
+                    .append(',').append(nestedSetNode.isActive())
+                    .append(',').append(LocalDateTime.ofInstant(nestedSetNode.getCreated(), ZoneOffset.UTC))
+                    .append(',').append(LocalDateTime.ofInstant(nestedSetNode.getUpdated(), ZoneOffset.UTC))
+                    .append(',').append(toCsvValue(nestedSetNodeLog.getTxnVersion()))
+                    .append(',').append(toCsvValue(nestedSetNodeLog.getTxnRowCount()))
+                    .append(',').append(toCsvValue(nestedSetNodeLog.getCoordinatesVersion()))
+                    .append(',').append(nestedSetNode.getTreeId())
+                    .append(',').append(nestedSetNodeLog.getPartition())
+                    .append('\n');
+        }
+
+        try {
+            var copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            copyManager.copyIn(COPY_NESTED_SET_LOGS_SQL, new StringReader(csv.toString()));
+        } catch (SQLException | IOException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    private static String toCsvValue(Object value) {
+        // an unquoted empty value stands for NULL
+        return value == null ? "" : value.toString();
+    }
+
+    /**
+     * Appends the log entries of each of the partitions of the topic as a single packed batch
+     * instead of writing a row for each of the log entries.
+     *
+     * @param compressed whether the binary encoded log entries get compressed
+     */
+    public void saveAllPackedLogs(List<NestedSetNodeLog> nestedSetNodeLogs, boolean compressed) {
+        var partition2NestedSetNodeLogs = nestedSetNodeLogs.stream()
+                .collect(Collectors.groupingBy(NestedSetNodeLog::getPartition, LinkedHashMap::new, Collectors.toList()));
+
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_INTO_NESTED_SET_LOG_BATCH_SQL)) {
+            for (var entry : partition2NestedSetNodeLogs.entrySet()) {
+                pstmt.setInt(1, entry.getKey());
+                pstmt.setInt(2, entry.getValue().size());
+                pstmt.setBoolean(3, compressed);
+                pstmt.setBytes(4, NestedSetNodeLogBatchCodec.encode(entry.getValue(), compressed));
+                pstmt.addBatch();
+            }
+
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
 }
@@ -2,37 +2,143 @@ package com.findinpath.sink.jdbc;
 
 import com.findinpath.sink.Utils;
 import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.storage.NestedSetNodeStore;
+import org.postgresql.PGConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.TimeZone;
 
 import static com.findinpath.sink.jdbc.Constants.TZ_UTC;
 
-public class NestedSetNodeRepository {
+public class NestedSetNodeRepository implements NestedSetNodeStore {
     private static final String SELECT_NESTED_SET_NODE_SQL =
-            "SELECT id, label, lft, rgt, active, created, updated " +
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
                     "FROM nested_set_node " +
                     "WHERE id = ?";
     private static final String SELECT_NESTED_SET_NODES_SQL =
-            "SELECT id, label, lft, rgt, active, created, updated " +
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
                     "FROM nested_set_node ";
+    private static final String SELECT_TREES_NESTED_SET_NODES_SQL =
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
+                    "FROM nested_set_node " +
+                    "WHERE tree_id = ANY(?)";
+    private static final String SELECT_NESTED_SET_NODES_BY_IDS_SQL =
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
+                    "FROM nested_set_node " +
+                    "WHERE id = ANY(?)";
     private static final String INSERT_NESTED_SET_NODE_SQL =
-            "INSERT INTO nested_set_node (id, label, lft, rgt, active, created, updated) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+            "INSERT INTO nested_set_node (id, label, lft, rgt, active, created, updated, tree_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
     private static final String UPDATE_NESTED_SET_NODE_SQL =
             "UPDATE nested_set_node " +
                     "SET label = ?, lft = ?, rgt = ?, active = ?, updated = ? " +
                     "WHERE id = ?";
+    /**
+     * Merges the nodes of the tree with the latest log entries of its nodes starting from the log offset
+     * and applies the log entries only if the merged nodes form a valid nested set model.
+     * The coordinates of a valid nested set model are unique, each node is closed on the same depth
+     * on which it was opened (i.e. : the nodes are properly nested) and a single root node encloses all the nodes.
+     * For dense coordinates, the coordinates additionally need to be the numbers <code>1..2n</code>.
+     */
+    private static final String APPLY_VALID_LOG_UPDATES_SQL =
+            "WITH pending AS (" +
+                    "    SELECT DISTINCT ON (tree_node_id) tree_node_id AS id, label, lft, rgt, active, created, updated, tree_id " +
+                    "    FROM nested_set_node_log " +
+                    "    WHERE log_partition = ? " +
+                    "    AND tree_id = ? " +
+                    "    AND id >= ? " +
+                    "    ORDER BY tree_node_id, id DESC" +
+                    "), merged AS (" +
+                    "    SELECT id, lft, rgt FROM pending " +
+                    "    UNION ALL " +
+                    "    SELECT id, lft, rgt FROM nested_set_node " +
+                    "    WHERE tree_id = ? AND id NOT IN (SELECT id FROM pending)" +
+                    "), coordinates AS (" +
+                    "    SELECT coordinate, SUM(step) OVER (ORDER BY coordinate) AS depth " +
+                    "    FROM (SELECT lft AS coordinate, 1 AS step FROM merged " +
+                    "          UNION ALL " +
+                    "          SELECT rgt AS coordinate, -1 AS step FROM merged) steps" +
+                    "), bounds AS (" +
+                    "    SELECT MIN(coordinate) AS min_coordinate, MAX(coordinate) AS max_coordinate, " +
+                    "           COUNT(DISTINCT coordinate) = COUNT(*) AS unique_coordinates " +
+                    "    FROM coordinates" +
+                    "), validation AS (" +
+                    "    SELECT COALESCE(BOOL_AND(m.lft < m.rgt AND l.depth = r.depth + 1) " +
+                    "           AND (SELECT unique_coordinates FROM bounds) " +
+                    "           AND COUNT(*) FILTER (WHERE m.lft = (SELECT min_coordinate FROM bounds) " +
+                    "                                AND m.rgt = (SELECT max_coordinate FROM bounds)) = 1 " +
+                    "           AND (NOT ? OR ((SELECT min_coordinate FROM bounds) = 1 " +
+                    "                          AND (SELECT max_coordinate FROM bounds) = 2 * COUNT(*))), FALSE) AS is_valid " +
+                    "    FROM merged m " +
+                    "    JOIN coordinates l ON l.coordinate = m.lft " +
+                    "    JOIN coordinates r ON r.coordinate = m.rgt" +
+                    "), upserted AS (" +
+                    "    INSERT INTO nested_set_node (id, label, lft, rgt, active, created, updated, tree_id) " +
+                    "    SELECT id, label, lft, rgt, active, created, updated, tree_id " +
+                    "    FROM pending " +
+                    "    WHERE (SELECT is_valid FROM validation) " +
+                    "    ON CONFLICT (id) DO UPDATE " +
+                    "    SET label = EXCLUDED.label, lft = EXCLUDED.lft, rgt = EXCLUDED.rgt, " +
+                    "        active = EXCLUDED.active, updated = EXCLUDED.updated " +
+                    "    WHERE (nested_set_node.label, nested_set_node.lft, nested_set_node.rgt, nested_set_node.active) " +
+                    "          IS DISTINCT FROM (EXCLUDED.label, EXCLUDED.lft, EXCLUDED.rgt, EXCLUDED.active) " +
+                    "    OR (NOT ? AND nested_set_node.updated IS DISTINCT FROM EXCLUDED.updated) " +
+                    "    RETURNING id" +
+                    ") " +
+                    "SELECT (SELECT is_valid FROM validation), (SELECT COUNT(*) FROM upserted)";
+
+    private static final String SELECT_IS_TABLE_EMPTY_SQL =
+            "SELECT NOT EXISTS (SELECT 1 FROM nested_set_node)";
+    private static final String COPY_NESTED_SET_NODES_SQL =
+            "COPY nested_set_node (id, label, lft, rgt, active, created, updated, tree_id) FROM STDIN WITH (FORMAT csv)";
+
+    private static final String COUNT_TREES_NESTED_SET_NODES_SQL =
+            "SELECT COUNT(*) FROM nested_set_node WHERE tree_id = ANY(?)";
+    private static final String SELECT_ESTIMATED_ROW_COUNT_SQL =
+            "SELECT reltuples::bigint FROM pg_class WHERE oid = 'nested_set_node'::regclass";
+    private static final String LOCK_NESTED_SET_NODE_TABLE_SQL =
+            "LOCK TABLE nested_set_node IN EXCLUSIVE MODE";
+    private static final String SELECT_CURRENT_TXID_SQL =
+            "SELECT txid_current()";
+    private static final String CREATE_REPLACEMENT_TABLE_SQL =
+            "CREATE TABLE nested_set_node_replacement (LIKE nested_set_node INCLUDING ALL)";
+    private static final String INSERT_UNCHANGED_NESTED_SET_NODES_INTO_REPLACEMENT_TABLE_SQL =
+            "INSERT INTO nested_set_node_replacement " +
+                    "SELECT * FROM nested_set_node " +
+                    "WHERE NOT (id = ANY(?))";
+    private static final String COPY_NESTED_SET_NODES_INTO_REPLACEMENT_TABLE_SQL =
+            "COPY nested_set_node_replacement (id, label, lft, rgt, active, created, updated, tree_id) FROM STDIN WITH (FORMAT csv)";
+    private static final String RENAME_NESTED_SET_NODE_TABLE_SQL =
+            "ALTER TABLE nested_set_node RENAME TO ";
+    private static final String RENAME_REPLACEMENT_TABLE_SQL =
+            "ALTER TABLE nested_set_node_replacement RENAME TO nested_set_node";
+    private static final String ANALYZE_NESTED_SET_NODE_TABLE_SQL =
+            "ANALYZE nested_set_node";
+    private static final String DROP_TABLE_SQL =
+            "DROP TABLE IF EXISTS ";
+    private static final String REPLACED_TABLE_NAME_PREFIX = "nested_set_node_replaced_";
+
+    /**
+     * The threshold for which the table is never swapped.
+     */
+    public static final double NO_TABLE_SWAP = Double.POSITIVE_INFINITY;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetNodeRepository.class);
 
@@ -58,6 +164,7 @@ public class NestedSetNodeRepository {
                     nestedSetNode.setActive(rs.getBoolean(5));
                     nestedSetNode.setCreated(rs.getTimestamp(6, TZ_UTC).toInstant());
                     nestedSetNode.setUpdated(rs.getTimestamp(7, TZ_UTC).toInstant());
+                    nestedSetNode.setTreeId(rs.getLong(8));
                     return Optional.of(nestedSetNode);
                 }
             }
@@ -71,26 +178,62 @@ public class NestedSetNodeRepository {
     public List<NestedSetNode> getNestedSetNodes() {
         try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_NODES_SQL);
              ResultSet rs = pstmt.executeQuery()) {
-            var result = new ArrayList<NestedSetNode>();
-            while (rs.next()) {
-                var nestedSetNode = new NestedSetNode();
-                nestedSetNode.setId(rs.getInt(1));
-                nestedSetNode.setLabel(rs.getString(2));
-                nestedSetNode.setLeft(rs.getInt(3));
-                nestedSetNode.setRight(rs.getInt(4));
-                nestedSetNode.setActive(rs.getBoolean(5));
-                nestedSetNode.setCreated(rs.getTimestamp(6, TZ_UTC).toInstant());
-                nestedSetNode.setUpdated(rs.getTimestamp(7, TZ_UTC).toInstant());
-                result.add(nestedSetNode);
+            return getNestedSetNodes(rs);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the nested set nodes of the specified trees.
+     */
+    public List<NestedSetNode> getNestedSetNodes(Collection<Long> treeIds) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_TREES_NESTED_SET_NODES_SQL)) {
+            pstmt.setArray(1, connection.createArrayOf("bigint", treeIds.toArray()));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return getNestedSetNodes(rs);
             }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the persisted state of the specified nested set nodes.
+     */
+    public List<NestedSetNode> getNestedSetNodesByIds(Collection<Long> ids) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_NODES_BY_IDS_SQL)) {
+            pstmt.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
 
-            return result;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return getNestedSetNodes(rs);
+            }
         } catch (SQLException e) {
             Utils.sneakyThrow(e);
             return null;
         }
     }
 
+    private static List<NestedSetNode> getNestedSetNodes(ResultSet rs) throws SQLException {
+        var result = new ArrayList<NestedSetNode>();
+        while (rs.next()) {
+            var nestedSetNode = new NestedSetNode();
+            nestedSetNode.setId(rs.getInt(1));
+            nestedSetNode.setLabel(rs.getString(2));
+            nestedSetNode.setLeft(rs.getInt(3));
+            nestedSetNode.setRight(rs.getInt(4));
+            nestedSetNode.setActive(rs.getBoolean(5));
+            nestedSetNode.setCreated(rs.getTimestamp(6, TZ_UTC).toInstant());
+            nestedSetNode.setUpdated(rs.getTimestamp(7, TZ_UTC).toInstant());
+            nestedSetNode.setTreeId(rs.getLong(8));
+            result.add(nestedSetNode);
+        }
+        return result;
+    }
+
     public void insertAll(Iterable<NestedSetNode> nestedSetNodes) {
         LOGGER.info("Inserting new values in the nested_set_node table");
 
@@ -104,6 +247,7 @@ public class NestedSetNodeRepository {
                 pstmt.setBoolean(5, nestedSetNode.isActive());
                 pstmt.setTimestamp(6, new Timestamp(nestedSetNode.getCreated().toEpochMilli()), TZ_UTC);
                 pstmt.setTimestamp(7, new Timestamp(nestedSetNode.getUpdated().toEpochMilli()), TZ_UTC);
+                pstmt.setLong(8, nestedSetNode.getTreeId());
                 pstmt.addBatch();
             }
 
@@ -133,4 +277,177 @@ public class NestedSetNodeRepository {
             Utils.sneakyThrow(e);
         }
     }
+
+    /**
+     * Validates within the database the nodes of the tree merged with the pending log entries
+     * of the partition and applies the log entries in case that they lead to a valid nested set model.
+     *
+     * The log entries which don't change the persisted nodes are not written.
+     *
+     * @param firstLogId               the id of the first pending log entry of the tree
+     * @param denseCoordinates         whether the coordinates need to be the consecutive numbers <code>1..2n</code>
+     * @param ignoreUpdatedOnlyChanges whether the log entries changing only the <code>updated</code> column are not written
+     * @return the number of the nodes written or empty if the log entries don't lead to a valid nested set model
+     */
+    public OptionalInt applyValidLogUpdates(int partition, long treeId, int firstLogId,
+                                            boolean denseCoordinates, boolean ignoreUpdatedOnlyChanges) {
+        try (PreparedStatement pstmt = connection.prepareStatement(APPLY_VALID_LOG_UPDATES_SQL)) {
+            pstmt.setInt(1, partition);
+            pstmt.setLong(2, treeId);
+            pstmt.setInt(3, firstLogId);
+            pstmt.setLong(4, treeId);
+            pstmt.setBoolean(5, denseCoordinates);
+            pstmt.setBoolean(6, ignoreUpdatedOnlyChanges);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getBoolean(1)) {
+                    return OptionalInt.of(rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        return OptionalInt.empty();
+    }
+
+    public boolean isTableEmpty() {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_IS_TABLE_EMPTY_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    public void saveAll(List<NestedSetNode> newNestedSetNodes,
+                        List<NestedSetNode> updatedNestedSetNodes) {
+        insertAll(newNestedSetNodes);
+        updateAll(updatedNestedSetNodes);
+    }
+
+    public long countNestedSetNodes(Collection<Long> treeIds) {
+        try (PreparedStatement pstmt = connection.prepareStatement(COUNT_TREES_NESTED_SET_NODES_SQL)) {
+            pstmt.setArray(1, connection.createArrayOf("bigint", treeIds.toArray()));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return 0;
+        }
+    }
+
+    /**
+     * Retrieves the number of rows of the table estimated by the latest <code>ANALYZE</code>.
+     * The row count of a table which has not yet been analyzed is unknown.
+     */
+    public long getEstimatedNestedSetNodesCount() {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_ESTIMATED_ROW_COUNT_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? Math.max(rs.getLong(1), 0) : 0;
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return 0;
+        }
+    }
+
+    /**
+     * When the changed nodes amount to a large fraction of the rows of the table, updating them row by row
+     * creates more WAL volume and table bloat than rewriting the whole table. A new version of the table
+     * is bulk loaded instead and swapped in within the current transaction.
+     *
+     * @return the name of the replaced version of the table, which is to be dropped after the transaction commits
+     */
+    public String replaceAll(List<NestedSetNode> changedNestedSetNodes) {
+        return swapTable(changedNestedSetNodes);
+    }
+
+    /**
+     * Builds a new version of the <code>nested_set_node</code> table containing the unchanged rows
+     * along with the changed nested set nodes and swaps it in place of the current table by renaming.
+     * The writes of the concurrent transactions are blocked until the transaction ends. The reads
+     * of the previous version of the table go on while the new version is being loaded, but the renaming
+     * takes an <code>ACCESS EXCLUSIVE</code> lock, so that the reads are blocked as well from
+     * the renaming until the transaction ends.
+     *
+     * @return the name under which the previous version of the table is kept
+     */
+    private String swapTable(List<NestedSetNode> changedNestedSetNodes) {
+        LOGGER.info("Swapping the nested_set_node table for writing " + changedNestedSetNodes.size() + " nested set nodes");
+
+        String replacedTableName = null;
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(LOCK_NESTED_SET_NODE_TABLE_SQL);
+            try (ResultSet rs = stmt.executeQuery(SELECT_CURRENT_TXID_SQL)) {
+                rs.next();
+                replacedTableName = REPLACED_TABLE_NAME_PREFIX + rs.getLong(1);
+            }
+            stmt.execute(CREATE_REPLACEMENT_TABLE_SQL);
+            try (PreparedStatement pstmt = connection.prepareStatement(INSERT_UNCHANGED_NESTED_SET_NODES_INTO_REPLACEMENT_TABLE_SQL)) {
+                var changedNestedSetNodeIds = changedNestedSetNodes.stream()
+                        .map(NestedSetNode::getId)
+                        .toArray(Long[]::new);
+                pstmt.setArray(1, connection.createArrayOf("bigint", changedNestedSetNodeIds));
+                pstmt.executeUpdate();
+            }
+            copyAll(COPY_NESTED_SET_NODES_INTO_REPLACEMENT_TABLE_SQL, changedNestedSetNodes);
+            stmt.execute(RENAME_NESTED_SET_NODE_TABLE_SQL + replacedTableName);
+            stmt.execute(RENAME_REPLACEMENT_TABLE_SQL);
+            stmt.execute(ANALYZE_NESTED_SET_NODE_TABLE_SQL);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        return replacedTableName;
+    }
+
+    /**
+     * Drops a version of the <code>nested_set_node</code> table replaced through {@link #replaceAll(List)}.
+     */
+    public void dropReplacedTable(String replacedTableName) {
+        if (!replacedTableName.startsWith(REPLACED_TABLE_NAME_PREFIX)) {
+            throw new IllegalArgumentException("Invalid replaced table name " + replacedTableName);
+        }
+        LOGGER.info("Dropping the replaced table " + replacedTableName);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_TABLE_SQL + replacedTableName);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Bulk loads the nested set nodes through the PostgreSQL <code>COPY</code> command
+     * which is significantly faster than batched inserts when loading the whole nested set model.
+     */
+    public void copyAll(Iterable<NestedSetNode> nestedSetNodes) {
+        LOGGER.info("Copying values in the nested_set_node table");
+
+        copyAll(COPY_NESTED_SET_NODES_SQL, nestedSetNodes);
+    }
+
+    private void copyAll(String copySql, Iterable<NestedSetNode> nestedSetNodes) {
+        var csv = new StringBuilder();
+        for (var nestedSetNode : nestedSetNodes) {
+            csv.append(nestedSetNode.getId()).append(',');
+            if (nestedSetNode.getLabel() != null) {
+                csv.append('"').append(nestedSetNode.getLabel().replace("\"", "\"\"")).append('"');
+            }
+            csv.append(',').append(nestedSetNode.getLeft())
+                    .append(',').append(nestedSetNode.getRight())
+                    .append(',').append(nestedSetNode.isActive())
+                    .append(',').append(LocalDateTime.ofInstant(nestedSetNode.getCreated(), ZoneOffset.UTC))
+                    .append(',').append(LocalDateTime.ofInstant(nestedSetNode.getUpdated(), ZoneOffset.UTC))
+                    .append(',').append(nestedSetNode.getTreeId())
+                    .append('\n');
+        }
+
+        try {
+            var copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            copyManager.copyIn(copySql, new StringReader(csv.toString()));
+        } catch (SQLException | IOException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.model.NestedSetNodeShift;
+import com.findinpath.sink.storage.NestedSetNodeShiftLogStore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NestedSetNodeShiftLogRepository implements NestedSetNodeShiftLogStore {
+    private static final String SELECT_NESTED_SET_NODE_SHIFTS_SQL =
+            "SELECT id, shift_id, coordinate, range_from, range_to, delta, txn_version, txn_row_count, tree_id " +
+                    "FROM nested_set_node_shift_log " +
+                    "WHERE log_partition = ? AND txn_version > ? " +
+                    "ORDER BY txn_version, shift_id";
+    private static final String INSERT_INTO_NESTED_SET_NODE_SHIFT_LOG_SQL =
+            "INSERT INTO nested_set_node_shift_log (shift_id, coordinate, range_from, range_to, delta, txn_version, txn_row_count, tree_id, log_partition) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final Connection connection;
+
+    public NestedSetNodeShiftLogRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Retrieves the coordinate shifts consumed from the specified partition of the topic
+     * for the source transactions having a version greater than the specified one.
+     */
+    public List<NestedSetNodeShift> getNestedSetNodeShifts(int partition, long afterTxnVersion) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_NODE_SHIFTS_SQL)) {
+            pstmt.setInt(1, partition);
+            pstmt.setLong(2, afterTxnVersion);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                var result = new ArrayList<NestedSetNodeShift>();
+                while (rs.next()) {
+                    var nestedSetNodeShift = new NestedSetNodeShift(rs.getLong(2),
+                            rs.getString(3),
+                            rs.getInt(4),
+                            rs.getInt(5),
+                            rs.getInt(6),
+                            rs.getLong(7),
+                            rs.getInt(8));
+                    nestedSetNodeShift.setId(rs.getLong(1));
+                    nestedSetNodeShift.setTreeId(rs.getLong(9));
+                    nestedSetNodeShift.setPartition(partition);
+                    result.add(nestedSetNodeShift);
+                }
+                return result;
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    public void saveAll(Iterable<NestedSetNodeShift> nestedSetNodeShifts) {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_INTO_NESTED_SET_NODE_SHIFT_LOG_SQL)) {
+
+            for (var nestedSetNodeShift : nestedSetNodeShifts) {
+                pstmt.setLong(1, nestedSetNodeShift.getShiftId());
+                pstmt.setString(2, nestedSetNodeShift.getCoordinate());
+                pstmt.setInt(3, nestedSetNodeShift.getRangeFrom());
+                pstmt.setInt(4, nestedSetNodeShift.getRangeTo());
+                pstmt.setInt(5, nestedSetNodeShift.getDelta());
+                pstmt.setLong(6, nestedSetNodeShift.getTxnVersion());
+                pstmt.setInt(7, nestedSetNodeShift.getTxnRowCount());
+                pstmt.setLong(8, nestedSetNodeShift.getTreeId());
+                pstmt.setInt(9, nestedSetNodeShift.getPartition());
+                pstmt.addBatch();
+            }
+
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.model.NestedSetOperation;
+import com.findinpath.sink.storage.NestedSetOperationLogStore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.findinpath.sink.jdbc.Constants.TZ_UTC;
+
+public class NestedSetOperationLogRepository implements NestedSetOperationLogStore {
+    private static final String SELECT_NESTED_SET_OPERATIONS_SQL =
+            "SELECT id, outbox_id, operation, tree_id, node_id, parent_id, label, lft, rgt, txn_version, created " +
+                    "FROM nested_set_operation_log " +
+                    "WHERE txn_version > ? " +
+                    "ORDER BY txn_version, outbox_id";
+    private static final String INSERT_INTO_NESTED_SET_OPERATION_LOG_SQL =
+            "INSERT INTO nested_set_operation_log (outbox_id, operation, tree_id, node_id, parent_id, label, lft, rgt, txn_version, created) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final Connection connection;
+
+    public NestedSetOperationLogRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Retrieves the logged operations of the source transactions having a version
+     * greater than the specified one, in the order in which they have been performed.
+     */
+    public List<NestedSetOperation> getNestedSetOperations(long afterTxnVersion) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_OPERATIONS_SQL)) {
+            pstmt.setLong(1, afterTxnVersion);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                var result = new ArrayList<NestedSetOperation>();
+                while (rs.next()) {
+                    var nestedSetOperation = new NestedSetOperation();
+                    nestedSetOperation.setId(rs.getLong(1));
+                    nestedSetOperation.setOutboxId(rs.getLong(2));
+                    nestedSetOperation.setType(NestedSetOperation.Type.valueOf(rs.getString(3)));
+                    nestedSetOperation.setTreeId(rs.getLong(4));
+                    nestedSetOperation.setNodeId(rs.getLong(5));
+                    var parentId = rs.getLong(6);
+                    nestedSetOperation.setParentId(rs.wasNull() ? null : parentId);
+                    nestedSetOperation.setLabel(rs.getString(7));
+                    var left = rs.getInt(8);
+                    nestedSetOperation.setLeft(rs.wasNull() ? null : left);
+                    var right = rs.getInt(9);
+                    nestedSetOperation.setRight(rs.wasNull() ? null : right);
+                    nestedSetOperation.setTxnVersion(rs.getLong(10));
+                    nestedSetOperation.setCreated(rs.getTimestamp(11, TZ_UTC).toInstant());
+                    result.add(nestedSetOperation);
+                }
+                return result;
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    public void saveAll(Iterable<NestedSetOperation> nestedSetOperations) {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_INTO_NESTED_SET_OPERATION_LOG_SQL)) {
+
+            for (var nestedSetOperation : nestedSetOperations) {
+                pstmt.setLong(1, nestedSetOperation.getOutboxId());
+                pstmt.setString(2, nestedSetOperation.getType().name());
+                pstmt.setLong(3, nestedSetOperation.getTreeId());
+                pstmt.setLong(4, nestedSetOperation.getNodeId());
+                if (nestedSetOperation.getParentId() != null) {
+                    pstmt.setLong(5, nestedSetOperation.getParentId());
+                } else {
+                    pstmt.setNull(5, Types.BIGINT);
+                }
+                pstmt.setString(6, nestedSetOperation.getLabel());
+                if (nestedSetOperation.getLeft() != null) {
+                    pstmt.setInt(7, nestedSetOperation.getLeft());
+                    pstmt.setInt(8, nestedSetOperation.getRight());
+                } else {
+                    pstmt.setNull(7, Types.INTEGER);
+                    pstmt.setNull(8, Types.INTEGER);
+                }
+                pstmt.setLong(9, nestedSetOperation.getTxnVersion());
+                pstmt.setTimestamp(10, new Timestamp(nestedSetOperation.getCreated().toEpochMilli()), TZ_UTC);
+                pstmt.addBatch();
+            }
+
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+}
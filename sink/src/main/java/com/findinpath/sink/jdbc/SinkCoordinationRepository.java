@@ -0,0 +1,180 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.Utils;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coordinates the sink instances sharing the same sink database through session level
+ * advisory locks and <code>LISTEN</code>/<code>NOTIFY</code> channels.
+ * The locks and the subscriptions to the channels are bound to the connection of the repository.
+ */
+public class SinkCoordinationRepository {
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(hashtext(?))";
+    private static final String LOCK_FOR_TRANSACTION_SQL = "SELECT pg_advisory_xact_lock(hashtext(?))";
+    private static final String SELECT_SESSION_ID_SQL = "SELECT pg_backend_pid()";
+    /**
+     * The <code>bigint</code> key of an advisory lock is shown in <code>pg_locks</code> with its high-order half
+     * in the <code>classid</code> column and its low-order half in the <code>objid</code> column.
+     */
+    private static final String SELECT_IS_LOCK_HELD_SQL =
+            "SELECT EXISTS (" +
+                    "    SELECT 1 FROM pg_locks " +
+                    "    WHERE locktype = 'advisory' AND granted AND pid = ? AND objsubid = 1 " +
+                    "    AND database = (SELECT oid FROM pg_database WHERE datname = current_database()) " +
+                    "    AND classid = ((hashtext(?)::bigint >> 32) & 4294967295)::oid " +
+                    "    AND objid = (hashtext(?)::bigint & 4294967295)::oid" +
+                    ")";
+    private static final String NOTIFY_SQL = "SELECT pg_notify(?, ?)";
+    private static final String LISTEN_SQL = "LISTEN ";
+    /**
+     * Round trip to the database which delivers the pending notifications to the connection.
+     */
+    private static final String RECEIVE_NOTIFICATIONS_SQL = "SELECT 1";
+
+    private final Connection connection;
+
+    public SinkCoordinationRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Tries to take the advisory lock with the specified name for the lifetime of the connection.
+     *
+     * @return <code>true</code> if the lock is held by the connection
+     */
+    public boolean tryLock(String name) {
+        try (PreparedStatement pstmt = connection.prepareStatement(TRY_LOCK_SQL)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    /**
+     * Takes the advisory lock with the specified name until the end of the current transaction,
+     * waiting for the other sessions holding it.
+     */
+    public void lockForTransaction(String name) {
+        try (PreparedStatement pstmt = connection.prepareStatement(LOCK_FOR_TRANSACTION_SQL)) {
+            pstmt.setString(1, name);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Retrieves the id of the database session of the connection.
+     */
+    public long getSessionId() {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_SESSION_ID_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return 0;
+        }
+    }
+
+    /**
+     * Verifies whether the session level advisory lock with the specified name is held
+     * by the database session with the specified id.
+     */
+    public boolean isLockHeld(String name, long sessionId) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_IS_LOCK_HELD_SQL)) {
+            pstmt.setLong(1, sessionId);
+            pstmt.setString(2, name);
+            pstmt.setString(3, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    /**
+     * Subscribes the connection to the channel. The channel name is used as an identifier.
+     */
+    public void listen(String channel) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid channel name " + channel);
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(LISTEN_SQL + channel);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Sends the payload on the channel. Within a transaction the notification is delivered on commit.
+     */
+    public void notify(String channel, String payload) {
+        try (PreparedStatement pstmt = connection.prepareStatement(NOTIFY_SQL)) {
+            pstmt.setString(1, channel);
+            pstmt.setString(2, payload);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Retrieves the payloads of the notifications received on the channel by the connection since the last call.
+     * The notifications received on other channels are discarded.
+     */
+    public List<String> getNotifications(String channel) {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeQuery(RECEIVE_NOTIFICATIONS_SQL).close();
+            return getPayloads(channel, connection.unwrap(PGConnection.class).getNotifications());
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Waits up to the specified timeout for notifications on the connection, without sending any query to the database.
+     * The notifications received on other channels are discarded.
+     */
+    public List<String> getNotifications(String channel, Duration timeout) {
+        try {
+            return getPayloads(channel, connection.unwrap(PGConnection.class)
+                    .getNotifications((int) Math.max(1, timeout.toMillis())));
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return List.of();
+        }
+    }
+
+    private static List<String> getPayloads(String channel, PGNotification[] notifications) {
+        var payloads = new ArrayList<String>();
+        if (notifications != null) {
+            for (var notification : notifications) {
+                if (notification.getName().equals(channel)) {
+                    payloads.add(notification.getParameter());
+                }
+            }
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,156 @@
+package com.findinpath.sink.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped segment file of the journal.
+ * <p>
+ * The segment holds consecutive records laid out as:
+ * <pre>
+ * payload length (4) | CRC32C of the payload (4) | payload
+ * </pre>
+ * The unused tail of the segment is zero filled, so a zero length marks the end of the records.
+ * The segment file is named after the journal position of its first record.
+ */
+class JournalSegment {
+    static final int RECORD_HEADER_SIZE = 4 + 4;
+    static final String FILE_SUFFIX = ".journal";
+
+    private final long startPosition;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    /**
+     * The size of the records written in the segment.
+     */
+    private volatile int limit;
+
+    private JournalSegment(long startPosition, Path path, FileChannel channel, MappedByteBuffer buffer, int limit) {
+        this.startPosition = startPosition;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    static JournalSegment create(Path directory, long startPosition, int capacity) throws IOException {
+        var path = directory.resolve(String.format("%020d%s", startPosition, FILE_SUFFIX));
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new JournalSegment(startPosition, path, channel,
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), 0);
+    }
+
+    /**
+     * Opens an existing segment and recovers the records written in it up to the first
+     * incomplete or corrupt record, which is what a crash in the middle of an append leaves behind.
+     */
+    static JournalSegment open(Path path) throws IOException {
+        var fileName = path.getFileName().toString();
+        var startPosition = Long.parseLong(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()));
+        var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+        var limit = 0;
+        while (true) {
+            var recordSize = getRecordSize(buffer, limit);
+            if (recordSize == 0) {
+                break;
+            }
+            limit += recordSize;
+        }
+        return new JournalSegment(startPosition, path, channel, buffer, limit);
+    }
+
+    long getStartPosition() {
+        return startPosition;
+    }
+
+    long getEndPosition() {
+        return startPosition + limit;
+    }
+
+    int getRemaining() {
+        return buffer.capacity() - limit;
+    }
+
+    /**
+     * Zero fills the tail of the segment after the valid records so that the remains
+     * of an incomplete record can't be mistaken for a record once new records get appended.
+     */
+    void clearTail() {
+        var tail = buffer.duplicate();
+        tail.position(limit);
+        while (tail.hasRemaining()) {
+            tail.put((byte) 0);
+        }
+        buffer.force();
+    }
+
+    /**
+     * Appends a record holding the payload. The caller makes sure that the record fits in the segment.
+     */
+    void append(byte[] payload) {
+        var crc = new CRC32C();
+        crc.update(payload);
+        var record = buffer.duplicate();
+        record.position(limit);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        limit += RECORD_HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * Retrieves the payload of the record written at the specified offset within the segment.
+     */
+    ByteBuffer getPayload(int offset) {
+        var payload = buffer.duplicate();
+        payload.position(offset + RECORD_HEADER_SIZE);
+        payload.limit(offset + RECORD_HEADER_SIZE + buffer.getInt(offset));
+        return payload.slice();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the size of the valid record starting at the offset or <code>0</code> when
+     * there is no valid record at the offset
+     */
+    private static int getRecordSize(ByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER_SIZE > buffer.capacity()) {
+            return 0;
+        }
+        var payloadLength = buffer.getInt(offset);
+        if (payloadLength <= 0 || offset + RECORD_HEADER_SIZE + payloadLength > buffer.capacity()) {
+            return 0;
+        }
+        var payload = buffer.duplicate();
+        payload.position(offset + RECORD_HEADER_SIZE);
+        payload.limit(offset + RECORD_HEADER_SIZE + payloadLength);
+        var crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return 0;
+        }
+        return RECORD_HEADER_SIZE + payloadLength;
+    }
+}
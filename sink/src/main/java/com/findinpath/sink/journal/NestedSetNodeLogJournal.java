@@ -0,0 +1,348 @@
+package com.findinpath.sink.journal;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.ConnectionPurpose;
+import com.findinpath.sink.jdbc.LogOffsetRepository;
+import com.findinpath.sink.jdbc.NestedSetNodeLogBatchCodec;
+import com.findinpath.sink.jdbc.NestedSetNodeLogRepository;
+import com.findinpath.sink.kafka.NestedSetLogUpdatedEvent;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only local journal decoupling the consumption of the log entries from Apache Kafka
+ * from the latency of writing them into the <code>nested_set_node_log</code> table.
+ * <p>
+ * The consumed log entries are appended to memory-mapped segment files as CRC checked records
+ * (one record for each partition of the topic within a poll) and {@link #append(List)} returns only
+ * after the records have been forced to the disk. The concurrent appends share the same force
+ * of the segment files.
+ * <p>
+ * A background flusher moves the log entries from the journal into the <code>nested_set_node_log</code>
+ * table in large <code>COPY</code> batches and saves within the same transaction the journal position
+ * up to which the log entries have been flushed in the <code>log_offset</code> table.
+ * After a crash, the log entries appended after this position are replayed from the segment files,
+ * so that each of them is flushed exactly once. The segment files which have been entirely flushed get deleted.
+ */
+public class NestedSetNodeLogJournal {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_FLUSH_BATCH_SIZE = 50_000;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+
+    private static final String JOURNAL_OFFSET_NAME_PREFIX = "nested_set_node_journal.";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetNodeLogJournal.class);
+
+    private final Path directory;
+    private final String offsetName;
+    private final ConnectionProvider connectionProvider;
+    private final EventDispatcher eventDispatcher;
+    private final int segmentSize;
+    private final int flushBatchSize;
+    private final Duration flushInterval;
+
+    private final ConcurrentSkipListMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object flushSignal = new Object();
+    private final ExecutorService flushExecutor;
+
+    private JournalSegment activeSegment;
+    private volatile long writtenPosition;
+    private volatile long syncedPosition;
+    private volatile long flushedPosition;
+    private volatile boolean stopping;
+
+    /**
+     * @param directory   the directory holding the segment files of the journal
+     * @param journalName the name of the journal, unique among the sink instances sharing the database
+     */
+    public NestedSetNodeLogJournal(Path directory,
+                                   String journalName,
+                                   ConnectionProvider connectionProvider,
+                                   EventDispatcher eventDispatcher) {
+        this(directory, journalName, connectionProvider, eventDispatcher,
+                DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param directory      the directory holding the segment files of the journal
+     * @param journalName    the name of the journal, unique among the sink instances sharing the database
+     * @param segmentSize    the size in bytes of the segment files
+     * @param flushBatchSize the maximum number of log entries copied at once into the database
+     * @param flushInterval  how long the flusher waits for new log entries when the journal is flushed
+     */
+    public NestedSetNodeLogJournal(Path directory,
+                                   String journalName,
+                                   ConnectionProvider connectionProvider,
+                                   EventDispatcher eventDispatcher,
+                                   int segmentSize,
+                                   int flushBatchSize,
+                                   Duration flushInterval) {
+        this.directory = directory;
+        this.offsetName = JOURNAL_OFFSET_NAME_PREFIX + journalName;
+        this.connectionProvider = connectionProvider;
+        this.eventDispatcher = eventDispatcher;
+        this.segmentSize = segmentSize;
+        this.flushBatchSize = flushBatchSize;
+        this.flushInterval = flushInterval;
+        this.flushExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Recovers the segment files of the journal and starts flushing
+     * in the background the log entries which haven't been flushed yet.
+     */
+    public void start() {
+        try {
+            recover();
+        } catch (IOException e) {
+            Utils.sneakyThrow(e);
+        }
+        flushExecutor.execute(this::flushContinuously);
+    }
+
+    public void stop() {
+        stopping = true;
+        synchronized (flushSignal) {
+            flushSignal.notifyAll();
+        }
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                flushExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flushExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        for (var segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                LOGGER.warn("Exception occurred while closing the journal segment " + segment.getStartPosition(), e);
+            }
+        }
+    }
+
+    /**
+     * Appends durably the log entries to the journal.
+     */
+    public void append(List<NestedSetNodeLog> nestedSetNodeLogs) {
+        var partition2NestedSetNodeLogs = nestedSetNodeLogs.stream()
+                .collect(Collectors.groupingBy(NestedSetNodeLog::getPartition, LinkedHashMap::new, Collectors.toList()));
+        long appendedPosition;
+        synchronized (writeLock) {
+            for (var entry : partition2NestedSetNodeLogs.entrySet()) {
+                var encodedNestedSetNodeLogs = NestedSetNodeLogBatchCodec.encode(entry.getValue(), false);
+                var payload = ByteBuffer.allocate(4 + encodedNestedSetNodeLogs.length)
+                        .putInt(entry.getKey())
+                        .put(encodedNestedSetNodeLogs)
+                        .array();
+                var recordSize = JournalSegment.RECORD_HEADER_SIZE + payload.length;
+                if (activeSegment.getRemaining() < recordSize) {
+                    rollSegment(recordSize);
+                }
+                activeSegment.append(payload);
+            }
+            writtenPosition = activeSegment.getEndPosition();
+            appendedPosition = writtenPosition;
+        }
+
+        sync(appendedPosition);
+    }
+
+    /**
+     * Retrieves the number of bytes appended to the journal which haven't been flushed yet into the database.
+     */
+    public long getUnflushedSize() {
+        return syncedPosition - flushedPosition;
+    }
+
+    /**
+     * Forces the segment files up to the specified position. The appends waiting meanwhile
+     * for the force of the segment files get covered by the same force.
+     */
+    private void sync(long position) {
+        synchronized (syncLock) {
+            if (syncedPosition < position) {
+                var endPosition = writtenPosition;
+                var fromSegmentStartPosition = segments.floorKey(syncedPosition);
+                var segmentsToForce = fromSegmentStartPosition == null
+                        ? segments.values()
+                        : segments.tailMap(fromSegmentStartPosition).values();
+                segmentsToForce.forEach(JournalSegment::force);
+                syncedPosition = endPosition;
+            }
+        }
+        synchronized (flushSignal) {
+            flushSignal.notifyAll();
+        }
+    }
+
+    private void rollSegment(int recordSize) {
+        activeSegment.force();
+        try {
+            activeSegment = JournalSegment.create(directory, activeSegment.getEndPosition(),
+                    Math.max(segmentSize, recordSize));
+        } catch (IOException e) {
+            Utils.sneakyThrow(e);
+        }
+        segments.put(activeSegment.getStartPosition(), activeSegment);
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segmentPaths;
+        try (var paths = Files.list(directory)) {
+            segmentPaths = paths
+                    .filter(path -> path.getFileName().toString().endsWith(JournalSegment.FILE_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (var segmentPath : segmentPaths) {
+            var segment = JournalSegment.open(segmentPath);
+            segments.put(segment.getStartPosition(), segment);
+        }
+
+        var savedFlushedPosition = inTransaction(connection ->
+                new LogOffsetRepository(connection).getNestedSetLogOffset(offsetName));
+        flushedPosition = segments.isEmpty()
+                ? savedFlushedPosition.orElse(0L)
+                : Math.max(savedFlushedPosition.orElse(0L), segments.firstKey());
+
+        if (segments.isEmpty() || segments.lastEntry().getValue().getEndPosition() < flushedPosition) {
+            // the segment files have been lost or removed meanwhile
+            segments.values().forEach(this::deleteSegment);
+            segments.clear();
+            activeSegment = JournalSegment.create(directory, flushedPosition, segmentSize);
+            segments.put(activeSegment.getStartPosition(), activeSegment);
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+            activeSegment.clearTail();
+        }
+        writtenPosition = activeSegment.getEndPosition();
+        syncedPosition = writtenPosition;
+        deleteFlushedSegments();
+        LOGGER.info("Recovered the journal " + offsetName + " having " + getUnflushedSize() + " bytes to be flushed");
+    }
+
+    private void flushContinuously() {
+        while (!stopping) {
+            try {
+                if (!flush()) {
+                    synchronized (flushSignal) {
+                        if (flushedPosition >= syncedPosition && !stopping) {
+                            flushSignal.wait(flushInterval.toMillis());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Exception occurred while flushing the journal " + offsetName, e);
+                try {
+                    Thread.sleep(flushInterval.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the next batch of log entries from the journal into the <code>nested_set_node_log</code> table.
+     *
+     * @return <code>true</code> if log entries have been flushed
+     */
+    private boolean flush() {
+        var position = flushedPosition;
+        var endPosition = syncedPosition;
+        var nestedSetNodeLogs = new ArrayList<NestedSetNodeLog>();
+        while (position < endPosition && nestedSetNodeLogs.size() < flushBatchSize) {
+            var segment = segments.floorEntry(position).getValue();
+            var payload = segment.getPayload((int) (position - segment.getStartPosition()));
+            var payloadSize = payload.remaining();
+            var partition = payload.getInt();
+            nestedSetNodeLogs.addAll(NestedSetNodeLogBatchCodec.decode(partition, payload));
+            position += JournalSegment.RECORD_HEADER_SIZE + payloadSize;
+        }
+        if (nestedSetNodeLogs.isEmpty()) {
+            return false;
+        }
+
+        var newFlushedPosition = position;
+        inTransaction(connection -> {
+            new NestedSetNodeLogRepository(connection).copyAllLogs(nestedSetNodeLogs);
+            new LogOffsetRepository(connection).saveNestedSetLogOffset(offsetName, newFlushedPosition);
+            return null;
+        });
+        flushedPosition = newFlushedPosition;
+        deleteFlushedSegments();
+
+        Set<Integer> partitions = new HashSet<>();
+        nestedSetNodeLogs.forEach(nestedSetNodeLog -> partitions.add(nestedSetNodeLog.getPartition()));
+        eventDispatcher.post(new NestedSetLogUpdatedEvent(partitions));
+        return true;
+    }
+
+    private void deleteFlushedSegments() {
+        for (var segment : segments.headMap(activeSegment.getStartPosition()).values()) {
+            if (segment.getEndPosition() <= flushedPosition) {
+                segments.remove(segment.getStartPosition());
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    private void deleteSegment(JournalSegment segment) {
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            LOGGER.warn("Exception occurred while deleting the journal segment " + segment.getStartPosition(), e);
+        }
+    }
+
+    private <T> T inTransaction(Function<Connection, T> action) {
+        try (Connection connection = connectionProvider.getConnection(ConnectionPurpose.INGEST)) {
+            connection.setAutoCommit(false);
+            try {
+                var result = action.apply(connection);
+                connection.commit();
+                return result;
+            } catch (RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.findinpath.sink.kafka;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.model.NestedSetLeadershipChangedEvent;
+import com.findinpath.sink.service.LeadershipLostException;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.serializers.KafkaAvroDeserializer;
+import io.confluent.kafka.serializers.KafkaAvroDeserializerConfig;
+import io.confluent.kafka.serializers.KafkaAvroSerializerConfig;
+import io.confluent.kafka.serializers.subject.TopicNameStrategy;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Base class for the consumers polling the Avro records published by the source
+ * and handing them over, converted, to the sink.
+ *
+ * @param <T> the type to which the Avro records are converted
+ */
+public abstract class AbstractNestedSetConsumer<T> implements Runnable {
+
+    private static final long POLL_INTERVAL_MS = 100L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractNestedSetConsumer.class);
+
+    private final KafkaConsumer<String, GenericRecord> consumer;
+    private final String topicName;
+
+    private volatile boolean stopping;   // indicates whether the Worker has asked the task to stop
+    /**
+     * Whether the consumer polls the topic. The consumers of the sink instances which are not
+     * the leader stay unsubscribed, so that their partitions get assigned to the leader.
+     * The consumers following the leadership start inactive, until their sink instance gets elected.
+     */
+    private volatile boolean active = true;
+    private boolean subscribed;
+
+
+    protected AbstractNestedSetConsumer(String kafkaBootstrapServers,
+                                        String schemaRegistryUrl,
+                                        String consumerGroupId,
+                                        String topicName) {
+        this.consumer = createKafkaConsumer(kafkaBootstrapServers, schemaRegistryUrl, consumerGroupId, true);
+        this.topicName = topicName;
+    }
+
+    protected abstract T convert(ConsumerRecord<String, GenericRecord> record);
+
+    protected abstract void saveAll(List<T> values);
+
+    protected boolean isStopping() {
+        return stopping;
+    }
+
+    @Override
+    public void run() {
+        try {
+            initializeAndStart();
+        } finally {
+            doClose();
+        }
+    }
+
+    private void doClose() {
+        try {
+            close();
+        } catch (Throwable t) {
+            LOGGER.error("{} Task threw an uncaught and unrecoverable exception during shutdown", this, t);
+            throw t;
+        }
+    }
+
+    private void close() {
+        consumer.close();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            stopping = true;
+        }
+    }
+
+    /**
+     * Pauses the consumption of the topic while the sink instance is not the leader of the sink instances.
+     * The consumer doesn't poll anything before its sink instance gets elected as leader.
+     * This method needs to be called before starting the consumer.
+     */
+    public void followLeadership(EventDispatcher eventDispatcher) {
+        active = false;
+        eventDispatcher.register(NestedSetLeadershipChangedEvent.class, this::onLeadershipChanged);
+    }
+
+    private void onLeadershipChanged(NestedSetLeadershipChangedEvent event) {
+        active = event.isLeader();
+    }
+
+    private void initializeAndStart() {
+        iteration();
+    }
+
+    private void iteration() {
+        while (!isStopping()) {
+            if (!active) {
+                if (subscribed) {
+                    LOGGER.info("Unsubscribing from the topic {} because the sink instance is not the leader", topicName);
+                    consumer.unsubscribe();
+                    subscribed = false;
+                }
+                pause();
+                continue;
+            }
+            if (!subscribed) {
+                consumer.subscribe(Collections.singletonList(topicName));
+                subscribed = true;
+            }
+            final ConsumerRecords<String, GenericRecord> consumerRecords = consumer
+                    .poll(Duration.ofMillis(POLL_INTERVAL_MS));
+            if (!consumerRecords.isEmpty()) {
+
+                var values = StreamSupport
+                        .stream(consumerRecords.spliterator(), false)
+                        .map(this::convert)
+                        .collect(Collectors.toList());
+                try {
+                    saveAll(values);
+                } catch (LeadershipLostException e) {
+                    LOGGER.warn("The records polled from the topic {} have been discarded because the leadership has been lost",
+                            topicName);
+                    rewind(consumerRecords);
+                    active = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the consumer back to the first of the polled records on each of the partitions,
+     * so that the offsets committed while unsubscribing don't skip the discarded records.
+     */
+    private void rewind(ConsumerRecords<String, GenericRecord> consumerRecords) {
+        for (TopicPartition topicPartition : consumerRecords.partitions()) {
+            var partitionRecords = consumerRecords.records(topicPartition);
+            consumer.seek(topicPartition, partitionRecords.get(0).offset());
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+        }
+    }
+
+    static KafkaConsumer<String, GenericRecord> createKafkaConsumer(
+            String bootstrapServers,
+            String schemaRegistryUrl,
+            String consumerGroupId,
+            boolean enableAutoCommit) {
+        final Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, consumerGroupId);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, String.valueOf(enableAutoCommit));
+        props.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, "1000");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG,
+                schemaRegistryUrl);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, KafkaAvroDeserializer.class);
+        props.put(KafkaAvroDeserializerConfig.SPECIFIC_AVRO_READER_CONFIG, false);
+        props.put(KafkaAvroSerializerConfig.VALUE_SUBJECT_NAME_STRATEGY,
+                TopicNameStrategy.class.getName());
+        return new KafkaConsumer<>(props);
+    }
+}
@@ -0,0 +1,144 @@
+package com.findinpath.sink.kafka;
+
+import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.service.NestedSetBootstrapService;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Bootstraps a freshly started sink from the log-compacted topic keyed by the id of the nested set nodes.
+ * <p>
+ * The topic is read, from the beginning, up to its end offsets into memory keeping only the latest
+ * state of each of the nested set nodes. The resulting snapshot is validated once and loaded in
+ * bulk in the <code>nested_set_node</code> table. In case that the snapshot is not valid (e.g. : the
+ * end of the topic contains only a part of a source transaction), the topic is read further
+ * up to its new end offsets.
+ * <p>
+ * The consumed offsets are saved in the <code>log_offset</code> table in the same transaction as the snapshot
+ * and are committed afterwards for the consumer group of the {@link NestedSetLogConsumer} which continues
+ * with the incremental sync. When the sink stopped after loading the snapshot, but before committing
+ * the offsets, the saved offsets are committed on the next start instead of consuming again the whole topic.
+ */
+public class NestedSetBootstrapConsumer {
+
+    private static final int MAX_BOOTSTRAP_ATTEMPTS = 10;
+    private static final long POLL_INTERVAL_MS = 100L;
+    private static final long ATTEMPTS_INTERVAL_MS = 1000L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetBootstrapConsumer.class);
+
+    private final String kafkaBootstrapServers;
+    private final String schemaRegistryUrl;
+    private final String topicName;
+    private final NestedSetBootstrapService nestedSetBootstrapService;
+
+    public NestedSetBootstrapConsumer(String kafkaBootstrapServers,
+                                      String schemaRegistryUrl,
+                                      String topicName,
+                                      NestedSetBootstrapService nestedSetBootstrapService) {
+        this.kafkaBootstrapServers = kafkaBootstrapServers;
+        this.schemaRegistryUrl = schemaRegistryUrl;
+        this.topicName = topicName;
+        this.nestedSetBootstrapService = nestedSetBootstrapService;
+    }
+
+    /**
+     * @return <code>true</code> if the sink has been bootstrapped, <code>false</code> if the
+     * sink already contains a nested set model.
+     */
+    public boolean bootstrap() {
+        try (var consumer = AbstractNestedSetConsumer.createKafkaConsumer(kafkaBootstrapServers,
+                schemaRegistryUrl, NestedSetLogConsumer.CONSUMER_GROUP_ID, false)) {
+            var topicPartitions = consumer.partitionsFor(topicName).stream()
+                    .map(partitionInfo -> new TopicPartition(partitionInfo.topic(), partitionInfo.partition()))
+                    .collect(Collectors.toList());
+            if (!nestedSetBootstrapService.isBootstrapRequired()) {
+                LOGGER.info("The nested_set_node table is not empty, skipping the bootstrap");
+                commitLoadedOffsets(consumer, topicPartitions);
+                return false;
+            }
+
+            consumer.assign(topicPartitions);
+            consumer.seekToBeginning(topicPartitions);
+
+            var id2NestedSetNodeLog = new LinkedHashMap<Long, NestedSetNodeLog>();
+            for (int attempt = 1; attempt <= MAX_BOOTSTRAP_ATTEMPTS; attempt++) {
+                var endOffsets = consumer.endOffsets(topicPartitions);
+                while (endOffsets.entrySet().stream()
+                        .anyMatch(entry -> consumer.position(entry.getKey()) < entry.getValue())) {
+                    for (var record : consumer.poll(Duration.ofMillis(POLL_INTERVAL_MS))) {
+                        if (record.value() == null) {
+                            // tombstone of a compacted topic
+                            id2NestedSetNodeLog.remove(Long.valueOf(record.key()));
+                            continue;
+                        }
+                        var nestedSetNodeLog = NestedSetLogConsumer.toNestedSetNodeLog(record.value());
+                        nestedSetNodeLog.setPartition(record.partition());
+                        id2NestedSetNodeLog.put(nestedSetNodeLog.getNestedSetNode().getId(), nestedSetNodeLog);
+                    }
+                }
+
+                LOGGER.info("Read " + id2NestedSetNodeLog.size() + " nodes from the topic " + topicName
+                        + " up to the offsets " + endOffsets);
+                Map<Integer, Long> partition2TopicOffset = topicPartitions.stream()
+                        .collect(Collectors.toMap(TopicPartition::partition, consumer::position));
+                if (nestedSetBootstrapService.load(id2NestedSetNodeLog.values(), partition2TopicOffset)) {
+                    Map<TopicPartition, OffsetAndMetadata> offsets = topicPartitions.stream()
+                            .collect(Collectors.toMap(topicPartition -> topicPartition,
+                                    topicPartition -> new OffsetAndMetadata(
+                                            partition2TopicOffset.get(topicPartition.partition()))));
+                    consumer.commitSync(offsets);
+                    return true;
+                }
+                waitForFurtherRecords();
+            }
+        }
+        throw new IllegalStateException("The topic " + topicName + " doesn't contain a valid nested set model after "
+                + MAX_BOOTSTRAP_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Commits the offsets up to which the loaded snapshot has been read, unless the consumer group
+     * has already committed these or further offsets.
+     */
+    private void commitLoadedOffsets(KafkaConsumer<String, GenericRecord> consumer, List<TopicPartition> topicPartitions) {
+        var partition2TopicOffset = nestedSetBootstrapService.getTopicOffsets(topicPartitions.stream()
+                .map(TopicPartition::partition)
+                .collect(Collectors.toList()));
+        var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (var topicPartition : topicPartitions) {
+            var topicOffset = partition2TopicOffset.get(topicPartition.partition());
+            if (topicOffset == null) {
+                continue;
+            }
+            var committedOffset = consumer.committed(topicPartition);
+            if (committedOffset == null || committedOffset.offset() < topicOffset) {
+                offsets.put(topicPartition, new OffsetAndMetadata(topicOffset));
+            }
+        }
+        if (!offsets.isEmpty()) {
+            LOGGER.info("Committing the offsets " + offsets + " up to which the loaded snapshot has been read");
+            consumer.commitSync(offsets);
+        }
+    }
+
+    private static void waitForFurtherRecords() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(ATTEMPTS_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The bootstrap has been interrupted", e);
+        }
+    }
+}
@@ -1,4 +1,23 @@
 package com.findinpath.sink.kafka;
 
+import java.util.Set;
+
 public class NestedSetLogUpdatedEvent {
+    /**
+     * The partitions of the topic for which new log entries have been written.
+     * An empty set stands for log entries which are not tied to a partition.
+     */
+    private final Set<Integer> partitions;
+
+    public NestedSetLogUpdatedEvent() {
+        this(Set.of());
+    }
+
+    public NestedSetLogUpdatedEvent(Set<Integer> partitions) {
+        this.partitions = partitions;
+    }
+
+    public Set<Integer> getPartitions() {
+        return partitions;
+    }
 }
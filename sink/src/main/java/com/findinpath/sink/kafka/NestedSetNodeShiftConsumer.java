@@ -0,0 +1,50 @@
+package com.findinpath.sink.kafka;
+
+import com.findinpath.sink.model.NestedSetNodeShift;
+import com.findinpath.sink.service.NestedSetLogService;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.List;
+
+/**
+ * Consumes the records of the topic fed from the <code>nested_set_node_shift</code> source table.
+ */
+public class NestedSetNodeShiftConsumer extends AbstractNestedSetConsumer<NestedSetNodeShift> {
+
+    public static final String CONSUMER_GROUP_ID = "nested-set-node-shift.sink";
+
+
+    private final NestedSetLogService nestedSetLogService;
+
+
+    public NestedSetNodeShiftConsumer(String kafkaBootstrapServers,
+                                      String schemaRegistryUrl,
+                                      String topicName,
+                                      NestedSetLogService nestedSetLogService) {
+        super(kafkaBootstrapServers, schemaRegistryUrl, CONSUMER_GROUP_ID, topicName);
+        this.nestedSetLogService = nestedSetLogService;
+    }
+
+    @Override
+    protected void saveAll(List<NestedSetNodeShift> nestedSetNodeShifts) {
+        nestedSetLogService.saveAllShifts(nestedSetNodeShifts);
+    }
+
+    @Override
+    protected NestedSetNodeShift convert(ConsumerRecord<String, GenericRecord> record) {
+        var recordValue = record.value();
+        var nestedSetNodeShift = new NestedSetNodeShift((Long) recordValue.get("id"),
+                recordValue.get("coordinate").toString(),
+                (Integer) recordValue.get("range_from"),
+                (Integer) recordValue.get("range_to"),
+                (Integer) recordValue.get("delta"),
+                (Long) recordValue.get("txn_version"),
+                (Integer) recordValue.get("txn_row_count"));
+        if (recordValue.getSchema().getField("tree_id") != null) {
+            nestedSetNodeShift.setTreeId((Long) recordValue.get("tree_id"));
+        }
+        nestedSetNodeShift.setPartition(record.partition());
+        return nestedSetNodeShift;
+    }
+}
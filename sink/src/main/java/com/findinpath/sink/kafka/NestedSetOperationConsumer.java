@@ -0,0 +1,54 @@
+package com.findinpath.sink.kafka;
+
+import com.findinpath.sink.model.NestedSetOperation;
+import com.findinpath.sink.service.NestedSetLogService;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Consumes the records of the topic fed from the <code>nested_set_outbox</code> source table.
+ */
+public class NestedSetOperationConsumer extends AbstractNestedSetConsumer<NestedSetOperation> {
+
+    public static final String CONSUMER_GROUP_ID = "nested-set-operation.sink";
+
+
+    private final NestedSetLogService nestedSetLogService;
+
+
+    public NestedSetOperationConsumer(String kafkaBootstrapServers,
+                                      String schemaRegistryUrl,
+                                      String topicName,
+                                      NestedSetLogService nestedSetLogService) {
+        super(kafkaBootstrapServers, schemaRegistryUrl, CONSUMER_GROUP_ID, topicName);
+        this.nestedSetLogService = nestedSetLogService;
+    }
+
+    @Override
+    protected void saveAll(List<NestedSetOperation> nestedSetOperations) {
+        nestedSetLogService.saveAllOperations(nestedSetOperations);
+    }
+
+    @Override
+    protected NestedSetOperation convert(ConsumerRecord<String, GenericRecord> record) {
+        var recordValue = record.value();
+        var nestedSetOperation = new NestedSetOperation();
+        nestedSetOperation.setOutboxId((Long) recordValue.get("id"));
+        nestedSetOperation.setType(NestedSetOperation.Type.valueOf(recordValue.get("operation").toString()));
+        if (recordValue.getSchema().getField("tree_id") != null) {
+            nestedSetOperation.setTreeId((Long) recordValue.get("tree_id"));
+        }
+        nestedSetOperation.setNodeId((Long) recordValue.get("node_id"));
+        nestedSetOperation.setParentId((Long) recordValue.get("parent_id"));
+        var label = recordValue.get("label");
+        nestedSetOperation.setLabel(label != null ? label.toString() : null);
+        nestedSetOperation.setLeft((Integer) recordValue.get("lft"));
+        nestedSetOperation.setRight((Integer) recordValue.get("rgt"));
+        nestedSetOperation.setTxnVersion((Long) recordValue.get("txn_version"));
+        nestedSetOperation.setCreated(Instant.ofEpochMilli((Long) recordValue.get("created")));
+        return nestedSetOperation;
+    }
+}
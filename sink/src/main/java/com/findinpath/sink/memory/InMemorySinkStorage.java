@@ -0,0 +1,341 @@
+package com.findinpath.sink.memory;
+
+import com.findinpath.sink.jdbc.LogOffsetRepository;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.model.NestedSetNodeShift;
+import com.findinpath.sink.model.NestedSetOperation;
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
+import com.findinpath.sink.storage.LogOffsetStore;
+import com.findinpath.sink.storage.NestedSetNodeLogStore;
+import com.findinpath.sink.storage.NestedSetNodeShiftLogStore;
+import com.findinpath.sink.storage.NestedSetNodeStore;
+import com.findinpath.sink.storage.NestedSetOperationLogStore;
+import com.findinpath.sink.storage.SinkStorage;
+import com.findinpath.sink.storage.SinkStorageTransaction;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Storage of the sink kept in the memory of the JVM on top of concurrent collections,
+ * which allows profiling the sync without I/O and embedding the sink in other services.
+ * <p>
+ * The changes are visible to the other transactions as soon as they are done and the transactions
+ * can't be rolled back. The storage can't validate the nested set model on its own, which is why
+ * the sync services working on it need to validate the updates in the JVM.
+ * The nodes and the log entries are copied on their way in and out of the storage
+ * so that the callers can't change the stored state by mutating them.
+ */
+public class InMemorySinkStorage implements SinkStorage {
+    private static final String NESTED_SET_NODE_LOG_OFFSET_NAME = "nested_set_node_log";
+
+    private final Map<Long, NestedSetNode> id2NestedSetNode = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> treeId2NestedSetNodeIds = new ConcurrentHashMap<>();
+    private final Map<Integer, ConcurrentNavigableMap<Integer, NestedSetNodeLog>> partition2NestedSetNodeLogs = new ConcurrentHashMap<>();
+    private final AtomicInteger nestedSetNodeLogIdSequence = new AtomicInteger();
+    private final Collection<NestedSetNodeShift> nestedSetNodeShifts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nestedSetNodeShiftIdSequence = new AtomicLong();
+    private final Collection<NestedSetOperation> nestedSetOperations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nestedSetOperationIdSequence = new AtomicLong();
+    private final Map<String, Long> name2LogOffset = new ConcurrentHashMap<>();
+
+    private final NestedSetNodeStore nestedSetNodeStore = new InMemoryNestedSetNodeStore();
+    private final NestedSetNodeLogStore nestedSetNodeLogStore = new InMemoryNestedSetNodeLogStore();
+    private final NestedSetNodeShiftLogStore nestedSetNodeShiftLogStore = new InMemoryNestedSetNodeShiftLogStore();
+    private final NestedSetOperationLogStore nestedSetOperationLogStore = new InMemoryNestedSetOperationLogStore();
+    private final LogOffsetStore logOffsetStore = new InMemoryLogOffsetStore();
+
+    @Override
+    public SinkStorageTransaction beginTransaction() {
+        return new SinkStorageTransaction() {
+            @Override
+            public NestedSetNodeStore getNestedSetNodeStore() {
+                return nestedSetNodeStore;
+            }
+
+            @Override
+            public NestedSetNodeLogStore getNestedSetNodeLogStore() {
+                return nestedSetNodeLogStore;
+            }
+
+            @Override
+            public NestedSetNodeShiftLogStore getNestedSetNodeShiftLogStore() {
+                return nestedSetNodeShiftLogStore;
+            }
+
+            @Override
+            public NestedSetOperationLogStore getNestedSetOperationLogStore() {
+                return nestedSetOperationLogStore;
+            }
+
+            @Override
+            public LogOffsetStore getLogOffsetStore() {
+                return logOffsetStore;
+            }
+
+            @Override
+            public void notifyNestedSetTreeUpdated(NestedSetTreeUpdatedNotification notification) {
+                // the storage is not shared with other processes
+            }
+
+            @Override
+            public void lock(String name) {
+                // the storage is not shared with other processes
+            }
+
+            @Override
+            public boolean isSessionLockHeld(String name, long sessionId) {
+                return true;
+            }
+
+            @Override
+            public void commit() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static NestedSetNode copy(NestedSetNode nestedSetNode) {
+        var nestedSetNodeCopy = new NestedSetNode(nestedSetNode.getId(),
+                nestedSetNode.getLabel(),
+                nestedSetNode.getLeft(),
+                nestedSetNode.getRight(),
+                nestedSetNode.isActive(),
+                nestedSetNode.getCreated(),
+                nestedSetNode.getUpdated());
+        nestedSetNodeCopy.setTreeId(nestedSetNode.getTreeId());
+        return nestedSetNodeCopy;
+    }
+
+    private static NestedSetNodeLog copy(NestedSetNodeLog nestedSetNodeLog) {
+        var nestedSetNodeLogCopy = new NestedSetNodeLog(nestedSetNodeLog.getId(),
+                copy(nestedSetNodeLog.getNestedSetNode()),
+                nestedSetNodeLog.getTxnVersion(),
+                nestedSetNodeLog.getTxnRowCount());
+        nestedSetNodeLogCopy.setPartition(nestedSetNodeLog.getPartition());
+        nestedSetNodeLogCopy.setCoordinatesVersion(nestedSetNodeLog.getCoordinatesVersion());
+        return nestedSetNodeLogCopy;
+    }
+
+    private class InMemoryNestedSetNodeStore implements NestedSetNodeStore {
+
+        @Override
+        public Optional<NestedSetNode> getNestedSetNode(long id) {
+            return Optional.ofNullable(id2NestedSetNode.get(id)).map(InMemorySinkStorage::copy);
+        }
+
+        @Override
+        public List<NestedSetNode> getNestedSetNodes() {
+            return id2NestedSetNode.values().stream()
+                    .map(InMemorySinkStorage::copy)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public List<NestedSetNode> getNestedSetNodes(Collection<Long> treeIds) {
+            return treeIds.stream()
+                    .distinct()
+                    .flatMap(treeId -> treeId2NestedSetNodeIds.getOrDefault(treeId, Set.of()).stream())
+                    .map(id2NestedSetNode::get)
+                    // the node may have been moved meanwhile to another tree
+                    .filter(nestedSetNode -> nestedSetNode != null && treeIds.contains(nestedSetNode.getTreeId()))
+                    .map(InMemorySinkStorage::copy)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public List<NestedSetNode> getNestedSetNodesByIds(Collection<Long> ids) {
+            return ids.stream()
+                    .distinct()
+                    .map(id2NestedSetNode::get)
+                    .filter(Objects::nonNull)
+                    .map(InMemorySinkStorage::copy)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public void updateAll(Iterable<NestedSetNode> nestedSetNodes) {
+            for (var nestedSetNode : nestedSetNodes) {
+                var nestedSetNodeCopy = copy(nestedSetNode);
+                treeId2NestedSetNodeIds.computeIfAbsent(nestedSetNodeCopy.getTreeId(), treeId -> ConcurrentHashMap.newKeySet())
+                        .add(nestedSetNodeCopy.getId());
+                var previousNestedSetNode = id2NestedSetNode.put(nestedSetNodeCopy.getId(), nestedSetNodeCopy);
+                if (previousNestedSetNode != null && previousNestedSetNode.getTreeId() != nestedSetNodeCopy.getTreeId()) {
+                    treeId2NestedSetNodeIds.getOrDefault(previousNestedSetNode.getTreeId(), Set.of())
+                            .remove(nestedSetNodeCopy.getId());
+                }
+            }
+        }
+
+        @Override
+        public long countNestedSetNodes(Collection<Long> treeIds) {
+            return getNestedSetNodes(treeIds).size();
+        }
+
+        /**
+         * The estimate is unknown, so that the table swap is never chosen, because there is no table to swap.
+         */
+        @Override
+        public long getEstimatedNestedSetNodesCount() {
+            return 0;
+        }
+
+        @Override
+        public void saveAll(List<NestedSetNode> newNestedSetNodes,
+                            List<NestedSetNode> updatedNestedSetNodes) {
+            updateAll(newNestedSetNodes);
+            updateAll(updatedNestedSetNodes);
+        }
+
+        /**
+         * The nodes are always written one by one, because there is no table to swap.
+         * Dropping the returned name of the replaced version has therefore no effect.
+         */
+        @Override
+        public String replaceAll(List<NestedSetNode> changedNestedSetNodes) {
+            updateAll(changedNestedSetNodes);
+            return "nested_set_node";
+        }
+
+        @Override
+        public void dropReplacedTable(String replacedTableName) {
+        }
+
+        @Override
+        public OptionalInt applyValidLogUpdates(int partition, long treeId, int firstLogId,
+                                                boolean denseCoordinates, boolean ignoreUpdatedOnlyChanges) {
+            throw new UnsupportedOperationException("The in-memory storage can't validate the nested set model. " +
+                    "The updates need to be validated in the JVM");
+        }
+    }
+
+    private class InMemoryNestedSetNodeLogStore implements NestedSetNodeLogStore {
+
+        @Override
+        public List<NestedSetNodeLog> getNestedSetLogUpdates(int partition) {
+            return getPendingNestedSetNodeLogs(partition).values().stream()
+                    .map(InMemorySinkStorage::copy)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public int compactNestedSetLogUpdates(int partition) {
+            var pendingNestedSetNodeLogs = getPendingNestedSetNodeLogs(partition);
+            var nestedSetNodeId2LatestLogId = new HashMap<Long, Integer>();
+            pendingNestedSetNodeLogs.values().stream()
+                    .filter(nestedSetNodeLog -> nestedSetNodeLog.getTxnVersion() == null)
+                    .forEach(nestedSetNodeLog -> nestedSetNodeId2LatestLogId.merge(nestedSetNodeLog.getNestedSetNode().getId(),
+                            nestedSetNodeLog.getId(), Math::max));
+            var supersededLogIds = new HashSet<Integer>();
+            pendingNestedSetNodeLogs.values().stream()
+                    .filter(nestedSetNodeLog -> nestedSetNodeLog.getTxnVersion() == null)
+                    .filter(nestedSetNodeLog -> nestedSetNodeLog.getId()
+                            != nestedSetNodeId2LatestLogId.get(nestedSetNodeLog.getNestedSetNode().getId()))
+                    .forEach(nestedSetNodeLog -> supersededLogIds.add(nestedSetNodeLog.getId()));
+            supersededLogIds.forEach(pendingNestedSetNodeLogs::remove);
+            return supersededLogIds.size();
+        }
+
+        @Override
+        public void saveAllLogs(Iterable<NestedSetNodeLog> nestedSetNodeLogs) {
+            for (var nestedSetNodeLog : nestedSetNodeLogs) {
+                var nestedSetNodeLogCopy = copy(nestedSetNodeLog);
+                nestedSetNodeLogCopy.setId(nestedSetNodeLogIdSequence.incrementAndGet());
+                partition2NestedSetNodeLogs
+                        .computeIfAbsent(nestedSetNodeLogCopy.getPartition(), partition -> new ConcurrentSkipListMap<>())
+                        .put(nestedSetNodeLogCopy.getId(), nestedSetNodeLogCopy);
+            }
+        }
+
+        /**
+         * The log entries are kept in memory as they are, because packing them wouldn't save any I/O.
+         */
+        @Override
+        public void saveAllPackedLogs(List<NestedSetNodeLog> nestedSetNodeLogs, boolean compressed) {
+            saveAllLogs(nestedSetNodeLogs);
+        }
+
+        private ConcurrentNavigableMap<Integer, NestedSetNodeLog> getPendingNestedSetNodeLogs(int partition) {
+            var nestedSetNodeLogs = partition2NestedSetNodeLogs.get(partition);
+            if (nestedSetNodeLogs == null) {
+                return new ConcurrentSkipListMap<>();
+            }
+            var logOffset = name2LogOffset.getOrDefault(
+                    LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_LOG_OFFSET_NAME, partition), 0L);
+            return nestedSetNodeLogs.tailMap((int) Math.max(logOffset, 0), true);
+        }
+    }
+
+    private class InMemoryNestedSetNodeShiftLogStore implements NestedSetNodeShiftLogStore {
+
+        @Override
+        public List<NestedSetNodeShift> getNestedSetNodeShifts(int partition, long afterTxnVersion) {
+            return nestedSetNodeShifts.stream()
+                    .filter(nestedSetNodeShift -> nestedSetNodeShift.getPartition() == partition
+                            && nestedSetNodeShift.getTxnVersion() > afterTxnVersion)
+                    .sorted(Comparator.comparing(NestedSetNodeShift::getTxnVersion)
+                            .thenComparing(NestedSetNodeShift::getShiftId))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public void saveAll(Iterable<NestedSetNodeShift> nestedSetNodeShifts) {
+            for (var nestedSetNodeShift : nestedSetNodeShifts) {
+                nestedSetNodeShift.setId(nestedSetNodeShiftIdSequence.incrementAndGet());
+                InMemorySinkStorage.this.nestedSetNodeShifts.add(nestedSetNodeShift);
+            }
+        }
+    }
+
+    private class InMemoryNestedSetOperationLogStore implements NestedSetOperationLogStore {
+
+        @Override
+        public List<NestedSetOperation> getNestedSetOperations(long afterTxnVersion) {
+            return nestedSetOperations.stream()
+                    .filter(nestedSetOperation -> nestedSetOperation.getTxnVersion() > afterTxnVersion)
+                    .sorted(Comparator.comparing(NestedSetOperation::getTxnVersion)
+                            .thenComparing(NestedSetOperation::getOutboxId))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public void saveAll(Iterable<NestedSetOperation> nestedSetOperations) {
+            for (var nestedSetOperation : nestedSetOperations) {
+                nestedSetOperation.setId(nestedSetOperationIdSequence.incrementAndGet());
+                InMemorySinkStorage.this.nestedSetOperations.add(nestedSetOperation);
+            }
+        }
+    }
+
+    private class InMemoryLogOffsetStore implements LogOffsetStore {
+
+        @Override
+        public Optional<Long> getNestedSetLogOffset(String name) {
+            return Optional.ofNullable(name2LogOffset.get(name));
+        }
+
+        @Override
+        public void saveNestedSetLogOffset(String name, long value) {
+            name2LogOffset.put(name, value);
+        }
+    }
+}
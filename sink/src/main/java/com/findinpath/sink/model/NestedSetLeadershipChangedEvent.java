@@ -0,0 +1,24 @@
+package com.findinpath.sink.model;
+
+/**
+ * Notifies that the sink instance has been elected as leader or has lost the leadership.
+ * Only the leader ingests the consumed records and syncs the nested set nodes.
+ */
+public class NestedSetLeadershipChangedEvent {
+    private final boolean leader;
+
+    public NestedSetLeadershipChangedEvent(boolean leader) {
+        this.leader = leader;
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetLeadershipChangedEvent{" +
+                "leader=" + leader +
+                '}';
+    }
+}
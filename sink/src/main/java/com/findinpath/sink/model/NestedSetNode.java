@@ -9,7 +9,14 @@ import java.util.Objects;
  * @see <a href="https://en.wikipedia.org/wiki/Nested_set_model">Nested Set Model</a>
  */
 public class NestedSetNode {
+    public static final long DEFAULT_TREE_ID = 0L;
+
     private long id;
+    /**
+     * The id of the tree to which the node belongs or {@link #DEFAULT_TREE_ID}
+     * when the source doesn't provide it.
+     */
+    private long treeId = DEFAULT_TREE_ID;
     private String label;
 
     private int left;
@@ -39,6 +46,14 @@ public class NestedSetNode {
         this.id = id;
     }
 
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public void setTreeId(long treeId) {
+        this.treeId = treeId;
+    }
+
     public String getLabel() {
         return label;
     }
@@ -94,6 +109,7 @@ public class NestedSetNode {
         if (o == null || getClass() != o.getClass()) return false;
         NestedSetNode that = (NestedSetNode) o;
         return id == that.id &&
+                treeId == that.treeId &&
                 left == that.left &&
                 right == that.right &&
                 active == that.active &&
@@ -104,13 +120,14 @@ public class NestedSetNode {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, label, left, right, active, created, updated);
+        return Objects.hash(id, treeId, label, left, right, active, created, updated);
     }
 
     @Override
     public String toString() {
         return "NestedSetNode{" +
                 "id=" + id +
+                ", treeId=" + treeId +
                 ", data=" + label +
                 ", left=" + left +
                 ", right=" + right +
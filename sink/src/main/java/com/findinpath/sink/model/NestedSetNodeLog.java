@@ -1,14 +1,45 @@
 package com.findinpath.sink.model;
 
 public class NestedSetNodeLog {
+    public static final int DEFAULT_PARTITION = 0;
+
     private int id;
+    /**
+     * The partition of the topic from which the log entry has been consumed.
+     */
+    private int partition = DEFAULT_PARTITION;
     private NestedSetNode nestedSetNode;
+    /**
+     * The version of the source transaction which wrote the nested set node
+     * or <code>null</code> when the source doesn't provide transaction versions.
+     */
+    private Long txnVersion;
+    /**
+     * The number of nested set nodes and coordinate shifts written by the source transaction.
+     */
+    private Integer txnRowCount;
+    /**
+     * The version of the latest source transaction which shifted the coordinates
+     * of the nested set node without republishing it.
+     */
+    private Long coordinatesVersion;
+    /**
+     * Whether the log entry has been read from a packed batch of log entries
+     * (in which case it shares the id of the batch) instead of a row of the log.
+     */
+    private boolean packed;
 
     public NestedSetNodeLog(int id, NestedSetNode nestedSetNode) {
         this.id = id;
         this.nestedSetNode = nestedSetNode;
     }
 
+    public NestedSetNodeLog(int id, NestedSetNode nestedSetNode, Long txnVersion, Integer txnRowCount) {
+        this(id, nestedSetNode);
+        this.txnVersion = txnVersion;
+        this.txnRowCount = txnRowCount;
+    }
+
     public int getId() {
         return id;
     }
@@ -17,6 +48,14 @@ public class NestedSetNodeLog {
         this.id = id;
     }
 
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
     public NestedSetNode getNestedSetNode() {
         return nestedSetNode;
     }
@@ -25,11 +64,48 @@ public class NestedSetNodeLog {
         this.nestedSetNode = nestedSetNode;
     }
 
+    public Long getTxnVersion() {
+        return txnVersion;
+    }
+
+    public void setTxnVersion(Long txnVersion) {
+        this.txnVersion = txnVersion;
+    }
+
+    public Integer getTxnRowCount() {
+        return txnRowCount;
+    }
+
+    public void setTxnRowCount(Integer txnRowCount) {
+        this.txnRowCount = txnRowCount;
+    }
+
+    public Long getCoordinatesVersion() {
+        return coordinatesVersion;
+    }
+
+    public void setCoordinatesVersion(Long coordinatesVersion) {
+        this.coordinatesVersion = coordinatesVersion;
+    }
+
+    public boolean isPacked() {
+        return packed;
+    }
+
+    public void setPacked(boolean packed) {
+        this.packed = packed;
+    }
+
     @Override
     public String toString() {
         return "NestedSetNodeLog{" +
                 "id=" + id +
+                ", partition=" + partition +
                 ", nestedSetNode=" + nestedSetNode +
+                ", txnVersion=" + txnVersion +
+                ", txnRowCount=" + txnRowCount +
+                ", coordinatesVersion=" + coordinatesVersion +
+                ", packed=" + packed +
                 '}';
     }
 }
@@ -0,0 +1,39 @@
+package com.findinpath.sink.model;
+
+/**
+ * Models a range partition of the <code>nested_set_node_log</code> table
+ * holding the log entries with the ids between <code>from</code> (inclusive)
+ * and <code>to</code> (exclusive).
+ */
+public class NestedSetNodeLogPartition {
+    private final String name;
+    private final long from;
+    private final long to;
+
+    public NestedSetNodeLogPartition(String name, long from, long to) {
+        this.name = name;
+        this.from = from;
+        this.to = to;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetNodeLogPartition{" +
+                "name='" + name + '\'' +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+}
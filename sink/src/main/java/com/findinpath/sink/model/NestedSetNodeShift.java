@@ -0,0 +1,152 @@
+package com.findinpath.sink.model;
+
+/**
+ * Models a shift of the coordinates of the nested set nodes performed by a source transaction:
+ * add <code>delta</code> to the <code>coordinate</code> (<code>lft</code> or <code>rgt</code>)
+ * of the nodes for which the coordinate is between <code>rangeFrom</code> and <code>rangeTo</code>.
+ * <p>
+ * The shifts of a transaction are applied simultaneously on the coordinates preceding the transaction.
+ */
+public class NestedSetNodeShift {
+
+    public static final String LEFT_COORDINATE = "lft";
+    public static final String RIGHT_COORDINATE = "rgt";
+
+    private long id;
+    /**
+     * The partition of the topic from which the shift has been consumed.
+     */
+    private int partition = NestedSetNodeLog.DEFAULT_PARTITION;
+    private long shiftId;
+    /**
+     * The id of the tree of which the nodes get shifted.
+     */
+    private long treeId = NestedSetNode.DEFAULT_TREE_ID;
+    private String coordinate;
+    private int rangeFrom;
+    private int rangeTo;
+    private int delta;
+    private long txnVersion;
+    private int txnRowCount;
+
+    public NestedSetNodeShift() {
+    }
+
+    public NestedSetNodeShift(long shiftId, String coordinate, int rangeFrom, int rangeTo, int delta,
+                              long txnVersion, int txnRowCount) {
+        this.shiftId = shiftId;
+        this.coordinate = coordinate;
+        this.rangeFrom = rangeFrom;
+        this.rangeTo = rangeTo;
+        this.delta = delta;
+        this.txnVersion = txnVersion;
+        this.txnRowCount = txnRowCount;
+    }
+
+    /**
+     * @return the shifted value of the coordinate or the coordinate itself if it is out of the shifted range
+     */
+    public int shift(int value) {
+        return value >= rangeFrom && value <= rangeTo ? value + delta : value;
+    }
+
+    public boolean isShifting(int value) {
+        return value >= rangeFrom && value <= rangeTo;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public void setTreeId(long treeId) {
+        this.treeId = treeId;
+    }
+
+    public long getShiftId() {
+        return shiftId;
+    }
+
+    public void setShiftId(long shiftId) {
+        this.shiftId = shiftId;
+    }
+
+    public String getCoordinate() {
+        return coordinate;
+    }
+
+    public void setCoordinate(String coordinate) {
+        this.coordinate = coordinate;
+    }
+
+    public int getRangeFrom() {
+        return rangeFrom;
+    }
+
+    public void setRangeFrom(int rangeFrom) {
+        this.rangeFrom = rangeFrom;
+    }
+
+    public int getRangeTo() {
+        return rangeTo;
+    }
+
+    public void setRangeTo(int rangeTo) {
+        this.rangeTo = rangeTo;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    public void setDelta(int delta) {
+        this.delta = delta;
+    }
+
+    public long getTxnVersion() {
+        return txnVersion;
+    }
+
+    public void setTxnVersion(long txnVersion) {
+        this.txnVersion = txnVersion;
+    }
+
+    public int getTxnRowCount() {
+        return txnRowCount;
+    }
+
+    public void setTxnRowCount(int txnRowCount) {
+        this.txnRowCount = txnRowCount;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetNodeShift{" +
+                "id=" + id +
+                ", partition=" + partition +
+                ", shiftId=" + shiftId +
+                ", treeId=" + treeId +
+                ", coordinate=" + coordinate +
+                ", rangeFrom=" + rangeFrom +
+                ", rangeTo=" + rangeTo +
+                ", delta=" + delta +
+                ", txnVersion=" + txnVersion +
+                ", txnRowCount=" + txnRowCount +
+                '}';
+    }
+}
@@ -0,0 +1,139 @@
+package com.findinpath.sink.model;
+
+import java.time.Instant;
+
+/**
+ * Models a logical operation performed on the source nested set model
+ * as published through the transactional outbox of the source.
+ * The coordinates are relative to the tree of the node, each tree being numbered independently.
+ */
+public class NestedSetOperation {
+
+    public enum Type {
+        INSERT_ROOT,
+        INSERT,
+        MOVE,
+        RELABEL,
+        DEACTIVATE
+    }
+
+    private long id;
+    private long outboxId;
+    private Type type;
+    private long treeId = NestedSetNode.DEFAULT_TREE_ID;
+    private long nodeId;
+    private Long parentId;
+    private String label;
+    private Integer left;
+    private Integer right;
+    private long txnVersion;
+    private Instant created;
+
+    public NestedSetOperation() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getOutboxId() {
+        return outboxId;
+    }
+
+    public void setOutboxId(long outboxId) {
+        this.outboxId = outboxId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public void setTreeId(long treeId) {
+        this.treeId = treeId;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public Integer getLeft() {
+        return left;
+    }
+
+    public void setLeft(Integer left) {
+        this.left = left;
+    }
+
+    public Integer getRight() {
+        return right;
+    }
+
+    public void setRight(Integer right) {
+        this.right = right;
+    }
+
+    public long getTxnVersion() {
+        return txnVersion;
+    }
+
+    public void setTxnVersion(long txnVersion) {
+        this.txnVersion = txnVersion;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public void setCreated(Instant created) {
+        this.created = created;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetOperation{" +
+                "id=" + id +
+                ", outboxId=" + outboxId +
+                ", type=" + type +
+                ", treeId=" + treeId +
+                ", nodeId=" + nodeId +
+                ", parentId=" + parentId +
+                ", label=" + label +
+                ", left=" + left +
+                ", right=" + right +
+                ", txnVersion=" + txnVersion +
+                ", created=" + created +
+                '}';
+    }
+}
@@ -0,0 +1,107 @@
+package com.findinpath.sink.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Notification sent to the other sink processes through <code>NOTIFY</code> when the sync commits
+ * the updates of a tree.
+ * <p>
+ * The payload is laid out as <code>origin;treeId;version;id1,id2,...</code>. The ids of the written nodes
+ * are replaced by <code>*</code> when they don't fit in the payload of a notification.
+ */
+public class NestedSetTreeUpdatedNotification {
+    public static final String CHANNEL = "nested_set_tree_updated";
+
+    /**
+     * Identifies the notifications sent by the current process, which have been already
+     * applied on its caches through a {@link NestedSetUpdatedEvent}.
+     */
+    public static final String LOCAL_ORIGIN = UUID.randomUUID().toString();
+
+    /**
+     * PostgreSQL refuses payloads of 8000 bytes or longer.
+     */
+    private static final int MAX_PAYLOAD_LENGTH = 7900;
+    private static final String ALL_NODES = "*";
+
+    private final String origin;
+    private final long treeId;
+    /**
+     * The transaction version applied on the tree or, for the updates without transaction versions,
+     * the id of the latest applied log entry of the tree.
+     */
+    private final long version;
+    /**
+     * The ids of the written nodes or <code>null</code> when they are not known.
+     */
+    private final Set<Long> nestedSetNodeIds;
+
+    public NestedSetTreeUpdatedNotification(long treeId, long version, Set<Long> nestedSetNodeIds) {
+        this(LOCAL_ORIGIN, treeId, version, nestedSetNodeIds);
+    }
+
+    private NestedSetTreeUpdatedNotification(String origin, long treeId, long version, Set<Long> nestedSetNodeIds) {
+        this.origin = origin;
+        this.treeId = treeId;
+        this.version = version;
+        this.nestedSetNodeIds = nestedSetNodeIds;
+    }
+
+    public static NestedSetTreeUpdatedNotification fromPayload(String payload) {
+        var fields = payload.split(";", 4);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Invalid nested set tree update notification " + payload);
+        }
+        Set<Long> nestedSetNodeIds = null;
+        if (!ALL_NODES.equals(fields[3])) {
+            nestedSetNodeIds = fields[3].isEmpty()
+                    ? Set.of()
+                    : Arrays.stream(fields[3].split(","))
+                    .map(Long::valueOf)
+                    .collect(Collectors.toSet());
+        }
+        return new NestedSetTreeUpdatedNotification(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                nestedSetNodeIds);
+    }
+
+    public String toPayload() {
+        var prefix = origin + ";" + treeId + ";" + version + ";";
+        if (nestedSetNodeIds == null) {
+            return prefix + ALL_NODES;
+        }
+        var payload = prefix + nestedSetNodeIds.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+        return payload.length() <= MAX_PAYLOAD_LENGTH ? payload : prefix + ALL_NODES;
+    }
+
+    public boolean isLocal() {
+        return LOCAL_ORIGIN.equals(origin);
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Optional<Set<Long>> getNestedSetNodeIds() {
+        return Optional.ofNullable(nestedSetNodeIds);
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetTreeUpdatedNotification{" +
+                "origin='" + origin + '\'' +
+                ", treeId=" + treeId +
+                ", version=" + version +
+                ", nestedSetNodeIds=" + nestedSetNodeIds +
+                '}';
+    }
+}
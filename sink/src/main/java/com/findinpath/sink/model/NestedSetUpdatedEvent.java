@@ -1,4 +1,24 @@
 package com.findinpath.sink.model;
 
+import java.util.Optional;
+import java.util.Set;
+
 public class NestedSetUpdatedEvent {
+    /**
+     * The ids of the nested set nodes which have been written or <code>null</code>
+     * when it is not known which of the nodes have been written.
+     */
+    private final Set<Long> nestedSetNodeIds;
+
+    public NestedSetUpdatedEvent() {
+        this(null);
+    }
+
+    public NestedSetUpdatedEvent(Set<Long> nestedSetNodeIds) {
+        this.nestedSetNodeIds = nestedSetNodeIds;
+    }
+
+    public Optional<Set<Long>> getNestedSetNodeIds() {
+        return Optional.ofNullable(nestedSetNodeIds);
+    }
 }
@@ -0,0 +1,17 @@
+package com.findinpath.sink.service;
+
+/**
+ * Describes how the coordinates of the nested set model nodes are expected to be laid out.
+ */
+public enum CoordinatesMode {
+    /**
+     * The classic nested set model where the coordinates of the nodes are
+     * the consecutive numbers <code>1..2n</code>.
+     */
+    DENSE,
+    /**
+     * The nested set model where gaps are allowed between the coordinates of the nodes.
+     * The nodes need to be properly nested and their coordinates need to be unique.
+     */
+    SPARSE
+}
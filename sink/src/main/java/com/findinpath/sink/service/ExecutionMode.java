@@ -0,0 +1,16 @@
+package com.findinpath.sink.service;
+
+/**
+ * Describes on which kind of threads the blocking work of the sink (e.g. : JDBC calls) is executed.
+ */
+public enum ExecutionMode {
+    /**
+     * The work is executed on pools having a fixed number of platform threads.
+     */
+    PLATFORM_THREADS,
+    /**
+     * The work is executed on a virtual thread per task, when the JVM supports virtual threads (Java 21 or later).
+     * On older JVMs the sink falls back to {@link #PLATFORM_THREADS}.
+     */
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,12 @@
+package com.findinpath.sink.service;
+
+/**
+ * Thrown when committing the writes of a sink instance which is no longer the leader
+ * of the sink instances sharing the same sink database. The writes of the transaction are discarded.
+ */
+public class LeadershipLostException extends RuntimeException {
+
+    public LeadershipLostException(String message) {
+        super(message);
+    }
+}
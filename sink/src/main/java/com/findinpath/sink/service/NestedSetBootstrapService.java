@@ -0,0 +1,144 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.LogOffsetRepository;
+import com.findinpath.sink.jdbc.NestedSetNodeRepository;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.model.NestedSetUpdatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Loads in bulk a snapshot of the nested set model into the empty <code>nested_set_node</code> table
+ * of a freshly started sink, instead of replaying the whole history of the nested set nodes
+ * through the <code>nested_set_node_log</code> table.
+ */
+public class NestedSetBootstrapService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetBootstrapService.class);
+
+    /**
+     * Name of the offsets, per partition of the topic, up to which the loaded snapshot has been read.
+     */
+    static final String NESTED_SET_NODE_TOPIC_OFFSET = "nested_set_node_topic_offset";
+
+    private final ConnectionProvider connectionProvider;
+    private final EventDispatcher eventDispatcher;
+    private final CoordinatesMode coordinatesMode;
+
+    public NestedSetBootstrapService(ConnectionProvider connectionProvider,
+                                     EventDispatcher eventDispatcher) {
+        this(connectionProvider, eventDispatcher, CoordinatesMode.DENSE);
+    }
+
+    public NestedSetBootstrapService(ConnectionProvider connectionProvider,
+                                     EventDispatcher eventDispatcher,
+                                     CoordinatesMode coordinatesMode) {
+        this.connectionProvider = connectionProvider;
+        this.eventDispatcher = eventDispatcher;
+        this.coordinatesMode = coordinatesMode;
+    }
+
+    public boolean isBootstrapRequired() {
+        try (Connection connection = connectionProvider.getConnection()) {
+            return new NestedSetNodeRepository(connection).isTableEmpty();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    public boolean load(Collection<NestedSetNodeLog> nestedSetNodeLogs) {
+        return load(nestedSetNodeLogs, Map.of());
+    }
+
+    /**
+     * Loads the snapshot of the nested set model only if it represents a valid nested set model.
+     * In case that the snapshot contains the versions of the source transactions, the version of the
+     * latest transaction of each of the partitions is saved in the <code>log_offset</code> table in order
+     * to ignore afterwards the already loaded transactions.
+     * <p>
+     * The offsets of the topic up to which the snapshot has been read are saved in the <code>log_offset</code>
+     * table in the same transaction as the snapshot, so that they can be committed afterwards
+     * for the consumer group of the incremental sync even if the sink stopped right after the load.
+     *
+     * @param nestedSetNodeLogs     the latest state of each of the nested set nodes
+     * @param partition2TopicOffset the offsets, per partition, of the next records of the topic to be consumed
+     * @return <code>true</code> if the snapshot has been loaded
+     */
+    public boolean load(Collection<NestedSetNodeLog> nestedSetNodeLogs, Map<Integer, Long> partition2TopicOffset) {
+        var nestedSetNodes = nestedSetNodeLogs.stream()
+                .map(NestedSetNodeLog::getNestedSetNode)
+                .collect(Collectors.toList());
+        if (TreeUtils.buildForest(nestedSetNodes, coordinatesMode).isEmpty()) {
+            LOGGER.info("The snapshot of " + nestedSetNodes.size() + " nodes is not a valid nested set model");
+            return false;
+        }
+
+        var isTransactionVersioned = nestedSetNodeLogs.stream()
+                .map(NestedSetNodeLog::getTxnVersion)
+                .allMatch(Objects::nonNull);
+        try (Connection connection = connectionProvider.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                var nestedSetNodeRepository = new NestedSetNodeRepository(connection);
+                nestedSetNodeRepository.copyAll(nestedSetNodes);
+                var logOffsetRepository = new LogOffsetRepository(connection);
+                partition2TopicOffset.forEach((partition, topicOffset) -> logOffsetRepository.saveNestedSetLogOffset(
+                        LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_TOPIC_OFFSET, partition), topicOffset));
+                if (isTransactionVersioned) {
+                    nestedSetNodeLogs.stream()
+                            .collect(Collectors.toMap(NestedSetNodeLog::getPartition,
+                                    NestedSetNodeLog::getTxnVersion,
+                                    Math::max))
+                            .forEach((partition, latestTxnVersion) -> logOffsetRepository.saveNestedSetLogOffset(
+                                    LogOffsetRepository.getPartitionOffsetName(NestedSetSyncService.NESTED_SET_NODE_TXN_VERSION, partition),
+                                    latestTxnVersion));
+                }
+                connection.commit();
+            } catch (Throwable e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+
+        LOGGER.info("Loaded the snapshot of " + nestedSetNodes.size() + " nodes in the nested_set_node table");
+        eventDispatcher.post(new NestedSetUpdatedEvent());
+        return true;
+    }
+
+    /**
+     * Retrieves the offsets of the topic up to which the loaded snapshot has been read.
+     *
+     * @return the offsets of the next records to be consumed, for the partitions having any
+     */
+    public Map<Integer, Long> getTopicOffsets(Collection<Integer> partitions) {
+        try (Connection connection = connectionProvider.getConnection()) {
+            var logOffsetRepository = new LogOffsetRepository(connection);
+            var partition2TopicOffset = new HashMap<Integer, Long>();
+            for (var partition : partitions) {
+                logOffsetRepository.getNestedSetLogOffset(
+                        LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_TOPIC_OFFSET, partition))
+                        .ifPresent(topicOffset -> partition2TopicOffset.put(partition, topicOffset));
+            }
+            return partition2TopicOffset;
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.SinkCoordinationRepository;
+import com.findinpath.sink.model.NestedSetLeadershipChangedEvent;
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
+import com.findinpath.sink.storage.LogOffsetStore;
+import com.findinpath.sink.storage.NestedSetNodeLogStore;
+import com.findinpath.sink.storage.NestedSetNodeShiftLogStore;
+import com.findinpath.sink.storage.NestedSetNodeStore;
+import com.findinpath.sink.storage.NestedSetOperationLogStore;
+import com.findinpath.sink.storage.SinkStorage;
+import com.findinpath.sink.storage.SinkStorageTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects, among the sink instances sharing the same sink database, the leader which
+ * ingests the consumed records and syncs the nested set nodes.
+ * <p>
+ * The leader holds a session level advisory lock on a dedicated connection, so the lock gets released
+ * by the database as soon as the session of the leader ends. The followers try periodically to take the lock
+ * and the leader verifies periodically its connection, giving up the leadership when the connection is broken.
+ * The failover happens therefore within the check interval after the database has ended the session of the leader.
+ * The changes of the leadership are posted as {@link NestedSetLeadershipChangedEvent} on the event dispatcher.
+ * <p>
+ * The followers get notified about the updates synced by the leader through the {@link NestedSetUpdateNotificationListener}.
+ * <p>
+ * A leader which lost its lock may still have syncs queued or running. The storages returned by
+ * {@link #fence(SinkStorage)} verify therefore, before committing each of their transactions, that the database
+ * session of the leader still holds the lock, and discard the writes of the transaction otherwise.
+ */
+public class NestedSetLeaderElectionService {
+    public static final String DEFAULT_LOCK_NAME = "nested_set_sink";
+    public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(1);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetLeaderElectionService.class);
+    private static final int CONNECTION_VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final ConnectionProvider connectionProvider;
+    private final EventDispatcher eventDispatcher;
+    private final String lockName;
+    private final Duration checkInterval;
+    private final ScheduledExecutorService electionExecutor;
+
+    /**
+     * The connection holding the lock of the leader or trying to take the lock.
+     * It is used only on the election thread.
+     */
+    private Connection connection;
+    private Boolean announcedLeader;
+    private volatile boolean leader;
+    /**
+     * The id of the database session holding the lock of the leader, <code>null</code> while not leader.
+     */
+    private volatile Long leaderSessionId;
+
+    public NestedSetLeaderElectionService(ConnectionProvider connectionProvider, EventDispatcher eventDispatcher) {
+        this(connectionProvider, eventDispatcher, DEFAULT_LOCK_NAME, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * @param lockName      the name of the advisory lock shared by the sink instances
+     * @param checkInterval how often the followers try to take over the leadership
+     *                      and the leader verifies its connection
+     */
+    public NestedSetLeaderElectionService(ConnectionProvider connectionProvider, EventDispatcher eventDispatcher,
+                                          String lockName, Duration checkInterval) {
+        this.connectionProvider = connectionProvider;
+        this.eventDispatcher = eventDispatcher;
+        this.lockName = lockName;
+        this.checkInterval = checkInterval;
+        this.electionExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Runs the election in the background. The outcome of the first round of the election
+     * is announced through a {@link NestedSetLeadershipChangedEvent} as well.
+     */
+    public void start() {
+        electionExecutor.scheduleWithFixedDelay(this::elect, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the election and gives up the leadership by closing the connection holding the lock.
+     */
+    public void stop() {
+        electionExecutor.shutdownNow();
+        try {
+            electionExecutor.awaitTermination(checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeConnection();
+        announce(false);
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    /**
+     * Wraps the storage in order to fence the writes of the sink instance: each transaction
+     * verifies before committing that the database session of this instance still holds the lock
+     * of the leader and throws {@link LeadershipLostException} otherwise.
+     */
+    public SinkStorage fence(SinkStorage storage) {
+        return () -> new FencedSinkStorageTransaction(storage.beginTransaction());
+    }
+
+    private void elect() {
+        try {
+            if (connection == null || !connection.isValid(CONNECTION_VALIDATION_TIMEOUT_SECONDS)) {
+                closeConnection();
+                if (leader) {
+                    // the lock of the leader is gone along with its session
+                    announce(false);
+                }
+                connection = connectionProvider.getDedicatedConnection();
+            }
+            var sinkCoordinationRepository = new SinkCoordinationRepository(connection);
+            if (!leader && sinkCoordinationRepository.tryLock(lockName)) {
+                LOGGER.info("Elected as leader of the sink instances");
+                leaderSessionId = sinkCoordinationRepository.getSessionId();
+                announce(true);
+            } else if (!leader) {
+                announce(false);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Exception occurred while electing the leader of the sink instances", e);
+            closeConnection();
+            announce(false);
+        }
+    }
+
+    private void announce(boolean isLeader) {
+        if (announcedLeader != null && announcedLeader == isLeader) {
+            return;
+        }
+        if (!isLeader && Boolean.TRUE.equals(announcedLeader)) {
+            LOGGER.warn("Lost the leadership of the sink instances");
+        }
+        if (!isLeader) {
+            leaderSessionId = null;
+        }
+        leader = isLeader;
+        announcedLeader = isLeader;
+        eventDispatcher.post(new NestedSetLeadershipChangedEvent(isLeader));
+    }
+
+    /**
+     * Closing the dedicated connection ends its session and releases therefore the lock of the leader.
+     */
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.warn("Exception occurred while closing the connection of the leader election", e);
+        }
+        connection = null;
+    }
+
+    /**
+     * Transaction verifying before each commit that the sink instance is still the leader.
+     * The verification happens within the transaction, so that the transactions which took
+     * a lock (e.g. : the one of a tree) before their writes can't interleave with the writes
+     * done by the next leader.
+     */
+    private class FencedSinkStorageTransaction implements SinkStorageTransaction {
+        private final SinkStorageTransaction transaction;
+
+        FencedSinkStorageTransaction(SinkStorageTransaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public NestedSetNodeStore getNestedSetNodeStore() {
+            return transaction.getNestedSetNodeStore();
+        }
+
+        @Override
+        public NestedSetNodeLogStore getNestedSetNodeLogStore() {
+            return transaction.getNestedSetNodeLogStore();
+        }
+
+        @Override
+        public NestedSetNodeShiftLogStore getNestedSetNodeShiftLogStore() {
+            return transaction.getNestedSetNodeShiftLogStore();
+        }
+
+        @Override
+        public NestedSetOperationLogStore getNestedSetOperationLogStore() {
+            return transaction.getNestedSetOperationLogStore();
+        }
+
+        @Override
+        public LogOffsetStore getLogOffsetStore() {
+            return transaction.getLogOffsetStore();
+        }
+
+        @Override
+        public void notifyNestedSetTreeUpdated(NestedSetTreeUpdatedNotification notification) {
+            transaction.notifyNestedSetTreeUpdated(notification);
+        }
+
+        @Override
+        public void lock(String name) {
+            transaction.lock(name);
+        }
+
+        @Override
+        public boolean isSessionLockHeld(String name, long sessionId) {
+            return transaction.isSessionLockHeld(name, sessionId);
+        }
+
+        @Override
+        public void commit() {
+            var sessionId = leaderSessionId;
+            if (sessionId == null || !transaction.isSessionLockHeld(lockName, sessionId)) {
+                throw new LeadershipLostException("The sink instance is not the leader anymore");
+            }
+            transaction.commit();
+        }
+
+        @Override
+        public void close() {
+            transaction.close();
+        }
+    }
+}
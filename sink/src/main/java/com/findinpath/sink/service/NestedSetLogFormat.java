@@ -0,0 +1,20 @@
+package com.findinpath.sink.service;
+
+/**
+ * Describes how the log entries consumed from Apache Kafka are stored on the sink database.
+ */
+public enum NestedSetLogFormat {
+    /**
+     * Each log entry is written as a row of the <code>nested_set_node_log</code> table.
+     */
+    ROWS,
+    /**
+     * The log entries of a partition consumed within a poll are binary encoded together
+     * into a single row of the <code>nested_set_node_log_batch</code> table.
+     */
+    PACKED,
+    /**
+     * Same as {@link #PACKED}, but the binary encoded log entries are additionally compressed.
+     */
+    PACKED_COMPRESSED
+}
@@ -1,37 +1,117 @@
 package com.findinpath.sink.service;
 
-import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.jdbc.ConnectionProvider;
-import com.findinpath.sink.jdbc.NestedSetNodeLogRepository;
+import com.findinpath.sink.jdbc.ConnectionPurpose;
+import com.findinpath.sink.jdbc.JdbcSinkStorage;
 import com.findinpath.sink.kafka.NestedSetLogUpdatedEvent;
 import com.findinpath.sink.model.NestedSetNode;
-import com.google.common.eventbus.EventBus;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.model.NestedSetNodeShift;
+import com.findinpath.sink.model.NestedSetOperation;
+import com.findinpath.sink.storage.SinkStorage;
 
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 public class NestedSetLogService {
 
-    private final EventBus eventBus;
-    private final ConnectionProvider connectionProvider;
+    private final EventDispatcher eventDispatcher;
+    private final SinkStorage storage;
+    private final Optional<NestedSetNodeLogDuplicateFilter> duplicateFilter;
+    private final NestedSetLogFormat logFormat;
 
-    public NestedSetLogService(EventBus eventBus, ConnectionProvider connectionProvider) {
-        this.eventBus = eventBus;
-        this.connectionProvider = connectionProvider;
+    public NestedSetLogService(EventDispatcher eventDispatcher, ConnectionProvider connectionProvider) {
+        this(eventDispatcher, connectionProvider, 0);
+    }
+
+    /**
+     * @param duplicateFilterSize the maximum number of nodes for which the fingerprint of the last
+     *                            written log entry is kept in order to drop the duplicated deliveries
+     *                            of the same row version before writing them into the
+     *                            <code>nested_set_node_log</code> table. <code>0</code> disables the filter.
+     */
+    public NestedSetLogService(EventDispatcher eventDispatcher, ConnectionProvider connectionProvider, long duplicateFilterSize) {
+        this(eventDispatcher, connectionProvider, duplicateFilterSize, NestedSetLogFormat.ROWS);
+    }
+
+    /**
+     * @param duplicateFilterSize the maximum number of nodes for which the fingerprint of the last
+     *                            written log entry is kept. <code>0</code> disables the filter.
+     * @param logFormat           how the log entries are stored
+     */
+    public NestedSetLogService(EventDispatcher eventDispatcher, ConnectionProvider connectionProvider, long duplicateFilterSize,
+                               NestedSetLogFormat logFormat) {
+        this(eventDispatcher, new JdbcSinkStorage(connectionProvider, ConnectionPurpose.INGEST), duplicateFilterSize, logFormat);
+    }
+
+    /**
+     * @param storage             the storage in which the logs are written
+     * @param duplicateFilterSize the maximum number of nodes for which the fingerprint of the last
+     *                            written log entry is kept. <code>0</code> disables the filter.
+     * @param logFormat           how the log entries are stored
+     */
+    public NestedSetLogService(EventDispatcher eventDispatcher, SinkStorage storage, long duplicateFilterSize,
+                               NestedSetLogFormat logFormat) {
+        this.eventDispatcher = eventDispatcher;
+        this.storage = storage;
+        this.duplicateFilter = duplicateFilterSize > 0
+                ? Optional.of(new NestedSetNodeLogDuplicateFilter(duplicateFilterSize))
+                : Optional.empty();
+        this.logFormat = logFormat;
     }
 
     public void saveAll(List<NestedSetNode> nestedSetNodeList) {
-        try (Connection connection = connectionProvider.getConnection()) {
-            connection.setAutoCommit(false);
-            var nestedSetLogRepository = new NestedSetNodeLogRepository(connection);
-            nestedSetLogRepository.saveAll(nestedSetNodeList);
-            connection.commit();
-        } catch (SQLException e) {
-            Utils.sneakyThrow(e);
+        var nestedSetNodeLogs = nestedSetNodeList.stream()
+                .map(nestedSetNode -> new NestedSetNodeLog(0, nestedSetNode))
+                .collect(Collectors.toList());
+        saveAllLogs(nestedSetNodeLogs);
+    }
+
+    public void saveAllLogs(List<NestedSetNodeLog> receivedNestedSetNodeLogs) {
+        var nestedSetNodeLogs = duplicateFilter
+                .map(filter -> filter.filter(receivedNestedSetNodeLogs))
+                .orElse(receivedNestedSetNodeLogs);
+        if (nestedSetNodeLogs.isEmpty()) {
+            return;
+        }
+
+        try (var transaction = storage.beginTransaction()) {
+            var nestedSetNodeLogStore = transaction.getNestedSetNodeLogStore();
+            if (logFormat == NestedSetLogFormat.ROWS) {
+                nestedSetNodeLogStore.saveAllLogs(nestedSetNodeLogs);
+            } else {
+                nestedSetNodeLogStore.saveAllPackedLogs(nestedSetNodeLogs,
+                        logFormat == NestedSetLogFormat.PACKED_COMPRESSED);
+            }
+            transaction.commit();
         }
+        duplicateFilter.ifPresent(filter -> filter.markWritten(nestedSetNodeLogs));
+
+        eventDispatcher.post(new NestedSetLogUpdatedEvent(nestedSetNodeLogs.stream()
+                .map(NestedSetNodeLog::getPartition)
+                .collect(Collectors.toSet())));
 
-        eventBus.post(new NestedSetLogUpdatedEvent());
+    }
+
+    public void saveAllShifts(List<NestedSetNodeShift> nestedSetNodeShifts) {
+        try (var transaction = storage.beginTransaction()) {
+            transaction.getNestedSetNodeShiftLogStore().saveAll(nestedSetNodeShifts);
+            transaction.commit();
+        }
+
+        eventDispatcher.post(new NestedSetLogUpdatedEvent(nestedSetNodeShifts.stream()
+                .map(NestedSetNodeShift::getPartition)
+                .collect(Collectors.toSet())));
+    }
+
+    public void saveAllOperations(List<NestedSetOperation> nestedSetOperations) {
+        try (var transaction = storage.beginTransaction()) {
+            transaction.getNestedSetOperationLogStore().saveAll(nestedSetOperations);
+            transaction.commit();
+        }
 
+        eventDispatcher.post(new NestedSetLogUpdatedEvent());
     }
 }
@@ -0,0 +1,113 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Drops the nested set node log entries which have already been written into the
+ * <code>nested_set_node_log</code> table (e.g. : rows delivered again by kafka-connect-jdbc
+ * or after a rebalance of the consumer group).
+ * <p>
+ * The fingerprint of the last written version of each node is kept in a cache bounded
+ * to a maximum number of nodes. A duplicate of an evicted node is written once more and
+ * then left to the sync which is idempotent anyway.
+ */
+public class NestedSetNodeLogDuplicateFilter {
+
+    private final Cache<Long, Fingerprint> nodeId2Fingerprint;
+
+    /**
+     * @param maximumSize the maximum number of nodes for which the last written fingerprint is kept
+     */
+    public NestedSetNodeLogDuplicateFilter(long maximumSize) {
+        nodeId2Fingerprint = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Filters out the log entries whose fingerprint matches the last written one of their node,
+     * as well as the repeated entries within the list.
+     *
+     * @param nestedSetNodeLogs the log entries received
+     * @return the log entries to be written
+     */
+    public List<NestedSetNodeLog> filter(List<NestedSetNodeLog> nestedSetNodeLogs) {
+        var nodeId2BatchFingerprint = new HashMap<Long, Fingerprint>();
+        return nestedSetNodeLogs.stream()
+                .filter(nestedSetNodeLog -> {
+                    var nodeId = nestedSetNodeLog.getNestedSetNode().getId();
+                    var fingerprint = new Fingerprint(nestedSetNodeLog);
+                    var lastFingerprint = nodeId2BatchFingerprint.containsKey(nodeId)
+                            ? nodeId2BatchFingerprint.get(nodeId)
+                            : nodeId2Fingerprint.getIfPresent(nodeId);
+                    nodeId2BatchFingerprint.put(nodeId, fingerprint);
+                    return !fingerprint.equals(lastFingerprint);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Records the fingerprints of the log entries which have been committed
+     * into the <code>nested_set_node_log</code> table.
+     */
+    public void markWritten(List<NestedSetNodeLog> nestedSetNodeLogs) {
+        for (var nestedSetNodeLog : nestedSetNodeLogs) {
+            nodeId2Fingerprint.put(nestedSetNodeLog.getNestedSetNode().getId(), new Fingerprint(nestedSetNodeLog));
+        }
+    }
+
+    private static final class Fingerprint {
+        private final int partition;
+        private final long treeId;
+        private final int left;
+        private final int right;
+        private final boolean active;
+        private final int labelHash;
+        private final Instant updated;
+        private final Long txnVersion;
+        private final Long coordinatesVersion;
+
+        private Fingerprint(NestedSetNodeLog nestedSetNodeLog) {
+            NestedSetNode nestedSetNode = nestedSetNodeLog.getNestedSetNode();
+            this.partition = nestedSetNodeLog.getPartition();
+            this.treeId = nestedSetNode.getTreeId();
+            this.left = nestedSetNode.getLeft();
+            this.right = nestedSetNode.getRight();
+            this.active = nestedSetNode.isActive();
+            this.labelHash = Objects.hashCode(nestedSetNode.getLabel());
+            this.updated = nestedSetNode.getUpdated();
+            this.txnVersion = nestedSetNodeLog.getTxnVersion();
+            this.coordinatesVersion = nestedSetNodeLog.getCoordinatesVersion();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Fingerprint that = (Fingerprint) o;
+            return partition == that.partition &&
+                    treeId == that.treeId &&
+                    left == that.left &&
+                    right == that.right &&
+                    active == that.active &&
+                    labelHash == that.labelHash &&
+                    Objects.equals(updated, that.updated) &&
+                    Objects.equals(txnVersion, that.txnVersion) &&
+                    Objects.equals(coordinatesVersion, that.coordinatesVersion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(partition, treeId, left, right, active, labelHash, updated, txnVersion, coordinatesVersion);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.NestedSetNodeLogPartitionRepository;
+import com.findinpath.sink.model.NestedSetNodeLogPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the size of the <code>nested_set_node_log</code> table in line with the backlog
+ * of log entries which still need to be synced.
+ * <p>
+ * The log table is partitioned by ranges of ids. This service creates the ranges ahead of the
+ * ids handed out for the new log entries and drops entirely the ranges of which all the entries
+ * are below the log offsets of their partitions of the topic. An optional number of already synced
+ * log entries can be retained as history. The synced entries which have been written in the default
+ * partition of the table (because the ranges hadn't been created in time) and the synced packed batches
+ * of log entries are deleted row by row.
+ */
+public class NestedSetNodeLogRetentionService {
+    public static final long DEFAULT_PARTITION_SIZE = 1_000_000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetNodeLogRetentionService.class);
+
+    private final ConnectionProvider connectionProvider;
+    private final long partitionSize;
+    private final long retainedLogEntries;
+    private final ScheduledExecutorService retentionExecutor;
+
+    public NestedSetNodeLogRetentionService(ConnectionProvider connectionProvider) {
+        this(connectionProvider, DEFAULT_PARTITION_SIZE, 0);
+    }
+
+    /**
+     * @param partitionSize      the number of ids covered by each of the partitions of the log
+     * @param retainedLogEntries the number of synced log entries which are kept as history
+     *                           below the log offsets
+     */
+    public NestedSetNodeLogRetentionService(ConnectionProvider connectionProvider,
+                                            long partitionSize,
+                                            long retainedLogEntries) {
+        if (partitionSize <= 0) {
+            throw new IllegalArgumentException("The partition size must be positive");
+        }
+        this.connectionProvider = connectionProvider;
+        this.partitionSize = partitionSize;
+        this.retainedLogEntries = retainedLogEntries;
+        this.retentionExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Runs periodically the maintenance of the partitions of the log in the background.
+     */
+    public void start(Duration period) {
+        retentionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                maintainPartitions();
+            } catch (Exception e) {
+                LOGGER.error("Exception occurred while maintaining the partitions of the nested_set_node_log table", e);
+            }
+        }, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        retentionExecutor.shutdownNow();
+    }
+
+    /**
+     * Creates the partitions ahead of the log ids and drops the synced partitions of the log.
+     *
+     * @return the number of dropped partitions
+     */
+    public int maintainPartitions() {
+        createPartitionsAhead();
+
+        var lastLogId = inTransaction(NestedSetNodeLogPartitionRepository::getLastLogId);
+        var droppedPartitionsCount = 0;
+        for (var partition : inTransaction(NestedSetNodeLogPartitionRepository::getPartitions)) {
+            if (partition.getTo() <= lastLogId && dropPartitionIfSynced(partition)) {
+                droppedPartitionsCount++;
+            }
+        }
+
+        var deletedLogEntriesCount = inTransaction(repository ->
+                repository.deleteSyncedDefaultPartitionEntries(retainedLogEntries));
+        if (deletedLogEntriesCount > 0) {
+            LOGGER.info("Deleted " + deletedLogEntriesCount + " synced entries from the default partition " +
+                    "of the nested_set_node_log table");
+        }
+        var deletedLogBatchesCount = inTransaction(repository ->
+                repository.deleteSyncedLogBatches(retainedLogEntries));
+        if (deletedLogBatchesCount > 0) {
+            LOGGER.info("Deleted " + deletedLogBatchesCount + " synced packed batches of log entries");
+        }
+        return droppedPartitionsCount;
+    }
+
+    /**
+     * Makes sure that the ids following the last log id are covered by partitions for at least
+     * the size of a partition. The new partitions start after the entries which have been written
+     * meanwhile in the default partition, because PostgreSQL refuses to create a partition
+     * for a range of ids already present in the default partition.
+     */
+    private void createPartitionsAhead() {
+        inTransaction(repository -> {
+            repository.lockPartitions();
+            var lastLogId = repository.getLastLogId();
+            var upperBound = repository.getPartitions().stream()
+                    .mapToLong(NestedSetNodeLogPartition::getTo)
+                    .max()
+                    .orElse(0);
+            var defaultPartitionMaxId = repository.getDefaultPartitionMaxId();
+            while (upperBound <= lastLogId + partitionSize) {
+                var from = Math.max(upperBound, defaultPartitionMaxId.map(id -> id + 1).orElse(0L));
+                repository.createPartition(from, from + partitionSize);
+                upperBound = from + partitionSize;
+            }
+            return null;
+        });
+    }
+
+    private boolean dropPartitionIfSynced(NestedSetNodeLogPartition partition) {
+        return inTransaction(repository -> {
+            repository.lockPartitions();
+            if (!repository.isPartitionSynced(partition, retainedLogEntries)) {
+                return false;
+            }
+            repository.dropPartition(partition);
+            return true;
+        });
+    }
+
+    private <T> T inTransaction(Function<NestedSetNodeLogPartitionRepository, T> action) {
+        try (Connection connection = connectionProvider.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                var result = action.apply(new NestedSetNodeLogPartitionRepository(connection));
+                connection.commit();
+                return result;
+            } catch (RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+}
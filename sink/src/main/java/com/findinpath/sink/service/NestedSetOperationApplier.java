@@ -0,0 +1,189 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetOperation;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Replays the logical operations performed on the source nested set model
+ * on the in-memory representation of the nodes of the sink.
+ * <p>
+ * The nodes may belong to several trees numbered independently of each other, so an operation
+ * shifts only the coordinates of the nodes of its own tree.
+ * <p>
+ * The operations are replayed the same way the source performs them.
+ * The coordinates recorded by the source for the node on which the operation took
+ * place are used for verifying that the replay is consistent with the source.
+ * Whenever the replay is not possible (e.g. : the insert caused the renumbering of a
+ * region of a sparse nested set model) an {@link IllegalStateException} is thrown
+ * before changing any of the nodes.
+ */
+class NestedSetOperationApplier {
+
+    private NestedSetOperationApplier() {
+    }
+
+    /**
+     * @param id2NestedSetNode the nodes of the trees of the nested set model indexed by their id
+     * @param operation        the operation to replay
+     * @return the ids of the nodes which have been changed by the operation
+     */
+    static Set<Long> apply(Map<Long, NestedSetNode> id2NestedSetNode, NestedSetOperation operation) {
+        switch (operation.getType()) {
+            case INSERT_ROOT:
+                return insertRoot(id2NestedSetNode, operation);
+            case INSERT:
+                return insert(id2NestedSetNode, operation);
+            case MOVE:
+                return move(id2NestedSetNode, operation);
+            case RELABEL:
+                var relabeledNode = getNestedSetNode(id2NestedSetNode, operation.getNodeId());
+                relabeledNode.setLabel(operation.getLabel());
+                relabeledNode.setUpdated(operation.getCreated());
+                return Set.of(relabeledNode.getId());
+            case DEACTIVATE:
+                var deactivatedNode = getNestedSetNode(id2NestedSetNode, operation.getNodeId());
+                deactivatedNode.setActive(false);
+                deactivatedNode.setUpdated(operation.getCreated());
+                return Set.of(deactivatedNode.getId());
+            default:
+                throw new IllegalStateException("Unsupported operation " + operation);
+        }
+    }
+
+    private static Set<Long> insertRoot(Map<Long, NestedSetNode> id2NestedSetNode, NestedSetOperation operation) {
+        if (!getTreeNestedSetNodes(id2NestedSetNode, operation.getTreeId()).isEmpty()) {
+            throw new IllegalStateException("The root node can't be inserted in a non-empty tree " + operation);
+        }
+        addNestedSetNode(id2NestedSetNode, operation);
+        return Set.of(operation.getNodeId());
+    }
+
+    private static Set<Long> insert(Map<Long, NestedSetNode> id2NestedSetNode, NestedSetOperation operation) {
+        var parentNode = getTreeNestedSetNode(id2NestedSetNode, operation.getParentId(), operation);
+        int left = operation.getLeft();
+        int right = operation.getRight();
+        var changedNodeIds = new HashSet<Long>();
+        if (left == parentNode.getRight() && right == left + 1) {
+            // dense nested set: the new node takes the place of the right coordinate of its parent
+            for (var nestedSetNode : getTreeNestedSetNodes(id2NestedSetNode, operation.getTreeId())) {
+                var isChanged = false;
+                if (nestedSetNode.getLeft() > left) {
+                    nestedSetNode.setLeft(nestedSetNode.getLeft() + 2);
+                    isChanged = true;
+                }
+                if (nestedSetNode.getRight() >= left) {
+                    nestedSetNode.setRight(nestedSetNode.getRight() + 2);
+                    isChanged = true;
+                }
+                if (isChanged) {
+                    nestedSetNode.setUpdated(operation.getCreated());
+                    changedNodeIds.add(nestedSetNode.getId());
+                }
+            }
+        } else if (left <= parentNode.getLeft() || right >= parentNode.getRight()) {
+            throw new IllegalStateException("The operation can't be replayed within the parent node "
+                    + parentNode + " : " + operation);
+        }
+        addNestedSetNode(id2NestedSetNode, operation);
+        changedNodeIds.add(operation.getNodeId());
+        return changedNodeIds;
+    }
+
+    private static Set<Long> move(Map<Long, NestedSetNode> id2NestedSetNode, NestedSetOperation operation) {
+        var node = getTreeNestedSetNode(id2NestedSetNode, operation.getNodeId(), operation);
+        var parentNode = getTreeNestedSetNode(id2NestedSetNode, operation.getParentId(), operation);
+        int left = node.getLeft();
+        int right = node.getRight();
+        int parentRight = parentNode.getRight();
+
+        // the subtree and the nodes between the subtree and its new position get their coordinates rotated
+        var width = right - left + 1;
+        int subtreeShift, shiftedFrom, shiftedTo, shift;
+        if (parentRight > right) {
+            subtreeShift = parentRight - 1 - right;
+            shiftedFrom = right + 1;
+            shiftedTo = parentRight - 1;
+            shift = -width;
+        } else {
+            subtreeShift = parentRight - left;
+            shiftedFrom = parentRight;
+            shiftedTo = left - 1;
+            shift = width;
+        }
+        if (left + subtreeShift != operation.getLeft() || right + subtreeShift != operation.getRight()) {
+            throw new IllegalStateException("The replay of the operation is inconsistent with the source "
+                    + operation);
+        }
+
+        var changedNodeIds = new HashSet<Long>();
+        for (var nestedSetNode : getTreeNestedSetNodes(id2NestedSetNode, operation.getTreeId())) {
+            var movedLeft = rotate(nestedSetNode.getLeft(), left, right, subtreeShift, shiftedFrom, shiftedTo, shift);
+            var movedRight = rotate(nestedSetNode.getRight(), left, right, subtreeShift, shiftedFrom, shiftedTo, shift);
+            if (movedLeft != nestedSetNode.getLeft() || movedRight != nestedSetNode.getRight()) {
+                nestedSetNode.setLeft(movedLeft);
+                nestedSetNode.setRight(movedRight);
+                nestedSetNode.setUpdated(operation.getCreated());
+                changedNodeIds.add(nestedSetNode.getId());
+            }
+        }
+        return changedNodeIds;
+    }
+
+    private static int rotate(int coordinate, int left, int right, int subtreeShift,
+                              int shiftedFrom, int shiftedTo, int shift) {
+        if (coordinate >= left && coordinate <= right) {
+            return coordinate + subtreeShift;
+        } else if (coordinate >= shiftedFrom && coordinate <= shiftedTo) {
+            return coordinate + shift;
+        }
+        return coordinate;
+    }
+
+    private static void addNestedSetNode(Map<Long, NestedSetNode> id2NestedSetNode, NestedSetOperation operation) {
+        if (id2NestedSetNode.containsKey(operation.getNodeId())) {
+            throw new IllegalStateException("The node has already been inserted " + operation);
+        }
+        var nestedSetNode = new NestedSetNode(operation.getNodeId(),
+                operation.getLabel(),
+                operation.getLeft(),
+                operation.getRight(),
+                true,
+                operation.getCreated(),
+                operation.getCreated());
+        nestedSetNode.setTreeId(operation.getTreeId());
+        id2NestedSetNode.put(operation.getNodeId(), nestedSetNode);
+    }
+
+    private static List<NestedSetNode> getTreeNestedSetNodes(Map<Long, NestedSetNode> id2NestedSetNode, long treeId) {
+        return id2NestedSetNode.values().stream()
+                .filter(nestedSetNode -> nestedSetNode.getTreeId() == treeId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves a node which is expected to belong to the tree of the operation.
+     */
+    private static NestedSetNode getTreeNestedSetNode(Map<Long, NestedSetNode> id2NestedSetNode, Long id,
+                                                      NestedSetOperation operation) {
+        var nestedSetNode = getNestedSetNode(id2NestedSetNode, id);
+        if (nestedSetNode.getTreeId() != operation.getTreeId()) {
+            throw new IllegalStateException("The node with the id " + id + " doesn't belong to the tree of the operation "
+                    + operation);
+        }
+        return nestedSetNode;
+    }
+
+    private static NestedSetNode getNestedSetNode(Map<Long, NestedSetNode> id2NestedSetNode, Long id) {
+        var nestedSetNode = id == null ? null : id2NestedSetNode.get(id);
+        if (nestedSetNode == null) {
+            throw new IllegalStateException("The node with the id " + id + " is not available on the sink");
+        }
+        return nestedSetNode;
+    }
+}
@@ -0,0 +1,154 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.LogOffsetRepository;
+import com.findinpath.sink.jdbc.NestedSetNodeRepository;
+import com.findinpath.sink.jdbc.NestedSetOperationLogRepository;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetOperation;
+import com.findinpath.sink.model.NestedSetUpdatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Synchronizes the <code>nested_set_node</code> table by replaying the logical operations
+ * published through the transactional outbox of the source, instead of the nested set nodes
+ * which have been changed by the operations.
+ * <p>
+ * The source versions its transactions without gaps, which allows applying the
+ * transactions strictly in the order of their versions: when the next version is not yet
+ * available in the <code>nested_set_operation_log</code> table, the replay stops and is resumed
+ * on the next update of the log.
+ */
+public class NestedSetOperationSyncService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetOperationSyncService.class);
+
+    private static final String NESTED_SET_OPERATION_TXN_VERSION = "nested_set_operation_txn_version";
+
+    private final EventDispatcher eventDispatcher;
+    private final ConnectionProvider connectionProvider;
+    private final CoordinatesMode coordinatesMode;
+
+    public NestedSetOperationSyncService(ConnectionProvider connectionProvider,
+                                         EventDispatcher eventDispatcher) {
+        this(connectionProvider, eventDispatcher, CoordinatesMode.DENSE);
+    }
+
+    public NestedSetOperationSyncService(ConnectionProvider connectionProvider,
+                                         EventDispatcher eventDispatcher,
+                                         CoordinatesMode coordinatesMode) {
+        this.connectionProvider = connectionProvider;
+        this.eventDispatcher = eventDispatcher;
+        this.coordinatesMode = coordinatesMode;
+    }
+
+    public void onNestedSetOperationLogUpdate() {
+        LOGGER.info("Received notification about new updates on the nested_set_operation_log table");
+        try (Connection connection = connectionProvider.getConnection()) {
+            connection.setAutoCommit(false);
+
+            var isNestedTreeNodeTableUpdated = false;
+            try {
+                final LogOffsetRepository logOffsetRepository = new LogOffsetRepository(connection);
+                final NestedSetOperationLogRepository nestedSetOperationLogRepository = new NestedSetOperationLogRepository(connection);
+                final NestedSetNodeRepository nestedSetNodeRepository = new NestedSetNodeRepository(connection);
+
+                isNestedTreeNodeTableUpdated = applyOperations(logOffsetRepository,
+                        nestedSetOperationLogRepository, nestedSetNodeRepository);
+                connection.commit();
+                if (isNestedTreeNodeTableUpdated) {
+                    eventDispatcher.post(new NestedSetUpdatedEvent());
+                }
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Replays the operations of the consecutive transactions following the last applied transaction.
+     * The changes are saved only if the replay leads to a valid nested set model for each of the
+     * trees on which operations have been replayed.
+     *
+     * @return <code>true</code> if the <code>nested_set_node</code> table has been updated
+     */
+    private boolean applyOperations(LogOffsetRepository logOffsetRepository,
+                                    NestedSetOperationLogRepository nestedSetOperationLogRepository,
+                                    NestedSetNodeRepository nestedSetNodeRepository) {
+        var appliedTxnVersion = logOffsetRepository.getNestedSetLogOffset(NESTED_SET_OPERATION_TXN_VERSION).orElse(0L);
+
+        // the outbox entries may be received more than once from Kafka
+        var txnVersion2NestedSetOperations = nestedSetOperationLogRepository.getNestedSetOperations(appliedTxnVersion)
+                .stream()
+                .collect(Collectors.toMap(NestedSetOperation::getOutboxId, Function.identity(),
+                        (nestedSetOperation1, nestedSetOperation2) -> nestedSetOperation1, LinkedHashMap::new))
+                .values()
+                .stream()
+                .collect(Collectors.groupingBy(NestedSetOperation::getTxnVersion, TreeMap::new, Collectors.toList()));
+        if (txnVersion2NestedSetOperations.isEmpty()) {
+            return false;
+        }
+
+        var nestedSetNodes = nestedSetNodeRepository.getNestedSetNodes();
+        var id2NestedSetNode = nestedSetNodes.stream()
+                .collect(Collectors.toMap(NestedSetNode::getId, Function.identity(), (n1, n2) -> n1, LinkedHashMap::new));
+
+        var changedNestedSetNodeIds = new HashSet<Long>();
+        var changedTreeIds = new HashSet<Long>();
+        var lastAppliedTxnVersion = appliedTxnVersion;
+        for (var entry : txnVersion2NestedSetOperations.entrySet()) {
+            if (entry.getKey() != lastAppliedTxnVersion + 1) {
+                LOGGER.info("Waiting for the transaction with the version " + (lastAppliedTxnVersion + 1)
+                        + " to be received");
+                break;
+            }
+            try {
+                for (var nestedSetOperation : entry.getValue()) {
+                    changedNestedSetNodeIds.addAll(NestedSetOperationApplier.apply(id2NestedSetNode, nestedSetOperation));
+                    changedTreeIds.add(nestedSetOperation.getTreeId());
+                }
+            } catch (IllegalStateException e) {
+                LOGGER.error("The operations of the transaction with the version " + entry.getKey()
+                        + " can't be replayed", e);
+                return false;
+            }
+            lastAppliedTxnVersion = entry.getKey();
+        }
+        if (lastAppliedTxnVersion == appliedTxnVersion) {
+            return false;
+        }
+
+        var updatedNestedSetNodes = new ArrayList<>(id2NestedSetNode.values());
+        var changedTreesNestedSetNodes = updatedNestedSetNodes.stream()
+                .filter(nestedSetNode -> changedTreeIds.contains(nestedSetNode.getTreeId()))
+                .collect(Collectors.toList());
+        if (TreeUtils.buildForest(changedTreesNestedSetNodes, coordinatesMode).isEmpty()) {
+            LOGGER.error("The replay of the transactions up to the version " + lastAppliedTxnVersion
+                    + " leads to an invalid nested set model");
+            return false;
+        }
+
+        List<NestedSetNode> nestedSetNodesUpdates = updatedNestedSetNodes.stream()
+                .filter(nestedSetNode -> changedNestedSetNodeIds.contains(nestedSetNode.getId()))
+                .collect(Collectors.toList());
+        logOffsetRepository.saveNestedSetLogOffset(NESTED_SET_OPERATION_TXN_VERSION, lastAppliedTxnVersion);
+        NestedSetSyncService.saveNestedSetNodes(nestedSetNodeRepository, nestedSetNodes, nestedSetNodesUpdates);
+
+        return true;
+    }
+}
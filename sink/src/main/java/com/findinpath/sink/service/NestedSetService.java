@@ -1,36 +1,119 @@
 package com.findinpath.sink.service;
 
 import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.jdbc.ConnectionProvider;
-import com.findinpath.sink.jdbc.NestedSetNodeRepository;
+import com.findinpath.sink.jdbc.ConnectionPurpose;
+import com.findinpath.sink.jdbc.JdbcSinkStorage;
 import com.findinpath.sink.model.NestedSetNode;
 import com.findinpath.sink.model.NestedSetUpdatedEvent;
 import com.findinpath.sink.model.TreeNode;
+import com.findinpath.sink.storage.SinkStorage;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class NestedSetService {
+    /**
+     * The default maximum number of the nodes loaded at once into the cache of the nodes when the service
+     * is built on a storage. The services built on a connection provider are bounded instead by the size
+     * of its read pool.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_LOADS = 10;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetService.class);
 
     private static final String NESTED_SET_KEY = "tree";
 
-    private final ConnectionProvider connectionProvider;
+    private final SinkStorage storage;
+    /**
+     * The storage from which the notified nodes are read. It sees the commits of the sync
+     * as soon as they are notified, unlike the replicas to which the storage may route the reads.
+     */
+    private final SinkStorage notifiedNodesStorage;
+    private final CoordinatesMode coordinatesMode;
+    private final ExecutorService loadExecutor;
+    /**
+     * Bounds the number of the nodes loaded at once, which is otherwise unbounded on virtual threads.
+     */
+    private final Semaphore loadPermits;
     private final LoadingCache<String, Optional<TreeNode>> treeCache;
+    private final LoadingCache<Long, Optional<TreeNode>> treeId2TreeCache;
     private final LoadingCache<Long, Optional<NestedSetNode>> nestedSetNodeCache;
 
     public NestedSetService(ConnectionProvider connectionProvider,
-                            EventBus eventBus) {
-        this.connectionProvider = connectionProvider;
-        eventBus.register(this);
+                            EventDispatcher eventDispatcher) {
+        this(connectionProvider, eventDispatcher, CoordinatesMode.DENSE);
+    }
+
+    public NestedSetService(ConnectionProvider connectionProvider,
+                            EventDispatcher eventDispatcher,
+                            CoordinatesMode coordinatesMode) {
+        this(connectionProvider, eventDispatcher, coordinatesMode, ExecutionMode.PLATFORM_THREADS);
+    }
+
+    /**
+     * @param executionMode the kind of threads on which several nodes are loaded concurrently.
+     *                      The loads are bounded by the size of the read pool.
+     */
+    public NestedSetService(ConnectionProvider connectionProvider,
+                            EventDispatcher eventDispatcher,
+                            CoordinatesMode coordinatesMode,
+                            ExecutionMode executionMode) {
+        this(new JdbcSinkStorage(connectionProvider, ConnectionPurpose.READ),
+                new JdbcSinkStorage(connectionProvider, ConnectionPurpose.PRIMARY_READ), eventDispatcher, coordinatesMode,
+                executionMode, connectionProvider.getMaximumPoolSize(ConnectionPurpose.READ));
+    }
+
+    public NestedSetService(SinkStorage storage,
+                            EventDispatcher eventDispatcher,
+                            CoordinatesMode coordinatesMode) {
+        this(storage, eventDispatcher, coordinatesMode, ExecutionMode.PLATFORM_THREADS, DEFAULT_MAX_CONCURRENT_LOADS);
+    }
+
+    /**
+     * @param executionMode      the kind of threads on which several nodes are loaded concurrently
+     * @param maxConcurrentLoads the maximum number of nodes loaded at once from the storage
+     */
+    public NestedSetService(SinkStorage storage,
+                            EventDispatcher eventDispatcher,
+                            CoordinatesMode coordinatesMode,
+                            ExecutionMode executionMode,
+                            int maxConcurrentLoads) {
+        this(storage, storage, eventDispatcher, coordinatesMode, executionMode, maxConcurrentLoads);
+    }
+
+    private NestedSetService(SinkStorage storage,
+                             SinkStorage notifiedNodesStorage,
+                             EventDispatcher eventDispatcher,
+                             CoordinatesMode coordinatesMode,
+                             ExecutionMode executionMode,
+                             int maxConcurrentLoads) {
+        this.storage = storage;
+        this.notifiedNodesStorage = notifiedNodesStorage;
+        this.coordinatesMode = coordinatesMode;
+        this.loadExecutor = SinkExecutors.newExecutor(executionMode,
+                () -> SinkExecutors.newDaemonThreadPool(maxConcurrentLoads, "nested-set-node-loader"));
+        this.loadPermits = new Semaphore(maxConcurrentLoads);
 
         treeCache = CacheBuilder.newBuilder()
                 .build(
@@ -46,6 +129,16 @@ public class NestedSetService {
                         }
                 );
 
+        treeId2TreeCache = CacheBuilder.newBuilder()
+                .build(
+                        new CacheLoader<>() {
+                            @Override
+                            public Optional<TreeNode> load(Long key) {
+                                return buildTree(key);
+                            }
+                        }
+                );
+
         nestedSetNodeCache = CacheBuilder.newBuilder()
                 .build(
                         new CacheLoader<>() {
@@ -56,47 +149,235 @@ public class NestedSetService {
                             }
                         }
                 );
+
+        eventDispatcher.register(NestedSetUpdatedEvent.class, this::updateTree);
     }
 
     public Optional<TreeNode> getTree() {
         return treeCache.getUnchecked(NESTED_SET_KEY);
     }
 
-    public Optional<NestedSetNode> getNestedSetNode(long nodeId){
-        try (Connection connection = connectionProvider.getConnection()) {
-            var nestedSetNodeRepository = new NestedSetNodeRepository(connection);
-            return nestedSetNodeRepository.getNestedSetNode(nodeId);
+    /**
+     * Retrieves the tree having the specified id when the sink contains several trees.
+     */
+    public Optional<TreeNode> getTree(long treeId) {
+        return treeId2TreeCache.getUnchecked(treeId);
+    }
 
-        } catch (SQLException e) {
+    /**
+     * Retrieves the nodes having the specified ids through the cache of the nodes.
+     * The nodes missing from the cache are loaded concurrently, as a group of tasks which is awaited
+     * as a whole and cancelled as soon as one of the tasks fails.
+     *
+     * @return the found nodes by their ids
+     */
+    public Map<Long, NestedSetNode> getNestedSetNodes(Collection<Long> nodeIds) {
+        var id2NestedSetNode = new HashMap<Long, NestedSetNode>();
+        var missingNodeIds = new ArrayList<Long>();
+        for (var nodeId : nodeIds) {
+            var cachedNestedSetNode = nestedSetNodeCache.getIfPresent(nodeId);
+            if (cachedNestedSetNode == null) {
+                missingNodeIds.add(nodeId);
+            } else {
+                cachedNestedSetNode.ifPresent(nestedSetNode -> id2NestedSetNode.put(nodeId, nestedSetNode));
+            }
+        }
+
+        var loads = new ArrayList<Future<Optional<NestedSetNode>>>(missingNodeIds.size());
+        // tells, for each of the loads, whether its permit is in the hands of the task or has been taken back
+        var loadStarts = new ArrayList<AtomicBoolean>(missingNodeIds.size());
+        try {
+            for (var nodeId : missingNodeIds) {
+                // the permits are taken before submitting, so that the pending loads are bounded as well
+                loadPermits.acquire();
+                var started = new AtomicBoolean();
+                try {
+                    loads.add(loadExecutor.submit(() -> {
+                        if (!started.compareAndSet(false, true)) {
+                            return Optional.empty();
+                        }
+                        try {
+                            return nestedSetNodeCache.getUnchecked(nodeId);
+                        } finally {
+                            loadPermits.release();
+                        }
+                    }));
+                    loadStarts.add(started);
+                } catch (RejectedExecutionException e) {
+                    loadPermits.release();
+                    throw e;
+                }
+            }
+            for (var load : loads) {
+                load.get().ifPresent(nestedSetNode -> id2NestedSetNode.put(nestedSetNode.getId(), nestedSetNode));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelLoads(loads, loadStarts);
             Utils.sneakyThrow(e);
-            return Optional.empty();
+        } catch (ExecutionException e) {
+            cancelLoads(loads, loadStarts);
+            Utils.sneakyThrow(e.getCause());
+        } catch (RuntimeException e) {
+            cancelLoads(loads, loadStarts);
+            throw e;
+        }
+        return id2NestedSetNode;
+    }
+
+    /**
+     * The tasks cancelled before being started never run, so that their permits are released here.
+     */
+    private void cancelLoads(List<Future<Optional<NestedSetNode>>> loads, List<AtomicBoolean> loadStarts) {
+        for (var i = 0; i < loads.size(); i++) {
+            loads.get(i).cancel(true);
+            if (loadStarts.get(i).compareAndSet(false, true)) {
+                loadPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of the nodes which may still be loaded at once from the storage.
+     */
+    int getAvailableLoadPermits() {
+        return loadPermits.availablePermits();
+    }
+
+    public Optional<NestedSetNode> getNestedSetNode(long nodeId){
+        try (var transaction = storage.beginTransaction()) {
+            return transaction.getNestedSetNodeStore().getNestedSetNode(nodeId);
         }
     }
 
     private Optional<TreeNode> buildTree() {
         LOGGER.info("Building the tree from the persistence");
 
-        try (Connection connection = connectionProvider.getConnection()) {
-            var nestedSetNodeRepository = new NestedSetNodeRepository(connection);
-            var nestedSetNodes = nestedSetNodeRepository.getNestedSetNodes();
+        try (var transaction = storage.beginTransaction()) {
+            var nestedSetNodes = transaction.getNestedSetNodeStore().getNestedSetNodes();
             if (nestedSetNodes.isEmpty()) {
                 return Optional.empty();
             }
 
-            var tree = TreeUtils.buildTree(nestedSetNodes);
+            var tree = TreeUtils.buildTree(nestedSetNodes, coordinatesMode);
             if (tree.isEmpty()) {
                 LOGGER.error("The nested_set_node table content is corrupt");
             }
             return tree;
-        } catch (SQLException e) {
-            Utils.sneakyThrow(e);
+        }
+    }
+
+    private Optional<TreeNode> buildTree(long treeId) {
+        LOGGER.info("Building the tree " + treeId + " from the persistence");
+
+        try (var transaction = storage.beginTransaction()) {
+            var nestedSetNodes = transaction.getNestedSetNodeStore().getNestedSetNodes(List.of(treeId));
+            if (nestedSetNodes.isEmpty()) {
+                return Optional.empty();
+            }
+
+            var tree = TreeUtils.buildTree(nestedSetNodes, coordinatesMode);
+            if (tree.isEmpty()) {
+                LOGGER.error("The nested_set_node table content is corrupt for the tree " + treeId);
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * Refreshes the caches after the updates of the <code>nested_set_node</code> table.
+     * When the event tells which nodes have been written, only these nodes are read from the storage
+     * and merged into the cached trees. Otherwise, all the caches are invalidated.
+     * The written nodes are read from the primary database, because a replica may not have replayed
+     * yet the notified commit and its stale nodes would stay cached.
+     * <p>
+     * The events are posted inline by the sync of several partitions and by the notifications listener,
+     * which is why the refreshes of the caches are serialized.
+     */
+    public synchronized void updateTree(NestedSetUpdatedEvent event) {
+        var nestedSetNodeIds = event.getNestedSetNodeIds();
+        if (nestedSetNodeIds.isEmpty()) {
+            invalidateAll();
+            return;
+        }
+        if (nestedSetNodeIds.get().isEmpty()) {
+            return;
+        }
+
+        List<NestedSetNode> writtenNestedSetNodes;
+        try (var transaction = notifiedNodesStorage.beginTransaction()) {
+            writtenNestedSetNodes = transaction.getNestedSetNodeStore().getNestedSetNodesByIds(nestedSetNodeIds.get());
+        } catch (Exception e) {
+            LOGGER.error("The written nested set nodes could not be read in order to refresh the cached trees", e);
+            invalidateAll();
+            return;
+        }
+
+        var id2WrittenNestedSetNode = writtenNestedSetNodes.stream()
+                .collect(Collectors.toMap(NestedSetNode::getId, Function.identity()));
+        nestedSetNodeIds.get().forEach(nestedSetNodeId -> {
+            var writtenNestedSetNode = id2WrittenNestedSetNode.get(nestedSetNodeId);
+            if (writtenNestedSetNode == null) {
+                nestedSetNodeCache.invalidate(nestedSetNodeId);
+            } else {
+                nestedSetNodeCache.put(nestedSetNodeId, Optional.of(writtenNestedSetNode));
+            }
+        });
+
+        var cachedTree = treeCache.getIfPresent(NESTED_SET_KEY);
+        if (cachedTree != null) {
+            refreshTree(cachedTree, writtenNestedSetNodes, null)
+                    .ifPresentOrElse(tree -> treeCache.put(NESTED_SET_KEY, tree),
+                            () -> treeCache.invalidate(NESTED_SET_KEY));
+        }
+        // the written nodes may have been moved from a cached tree to another tree
+        Set<Long> writtenTreeIds = writtenNestedSetNodes.stream()
+                .map(NestedSetNode::getTreeId)
+                .collect(Collectors.toSet());
+        treeId2TreeCache.asMap().forEach((treeId, cachedTreeOfId) -> {
+            var isTreeWritten = writtenTreeIds.contains(treeId)
+                    || cachedTreeOfId.map(TreeUtils::getNestedSetNodes).orElse(List.of()).stream()
+                    .anyMatch(nestedSetNode -> id2WrittenNestedSetNode.containsKey(nestedSetNode.getId()));
+            if (isTreeWritten) {
+                refreshTree(cachedTreeOfId, writtenNestedSetNodes, treeId)
+                        .ifPresentOrElse(tree -> treeId2TreeCache.put(treeId, tree),
+                                () -> treeId2TreeCache.invalidate(treeId));
+            }
+        });
+    }
+
+    /**
+     * Merges the written nodes into the nodes of the cached tree.
+     *
+     * @param treeId the id of the cached tree or <code>null</code> for the tree containing all the nodes
+     * @return the refreshed tree or empty in case that the tree needs to be read again from the storage
+     */
+    private Optional<Optional<TreeNode>> refreshTree(Optional<TreeNode> cachedTree,
+                                                     List<NestedSetNode> writtenNestedSetNodes,
+                                                     Long treeId) {
+        if (cachedTree.isEmpty()) {
             return Optional.empty();
         }
+        var id2NestedSetNode = new LinkedHashMap<Long, NestedSetNode>();
+        TreeUtils.getNestedSetNodes(cachedTree.get())
+                .forEach(nestedSetNode -> id2NestedSetNode.put(nestedSetNode.getId(), nestedSetNode));
+        for (var writtenNestedSetNode : writtenNestedSetNodes) {
+            if (treeId == null || writtenNestedSetNode.getTreeId() == treeId) {
+                id2NestedSetNode.put(writtenNestedSetNode.getId(), writtenNestedSetNode);
+            } else {
+                id2NestedSetNode.remove(writtenNestedSetNode.getId());
+            }
+        }
+        if (id2NestedSetNode.isEmpty()) {
+            return Optional.of(Optional.empty());
+        }
+        return TreeUtils.buildTree(new ArrayList<>(id2NestedSetNode.values()), coordinatesMode)
+                .map(Optional::of);
     }
 
-    @Subscribe
-    public void updateTree(NestedSetUpdatedEvent event) {
+    private void invalidateAll() {
         treeCache.invalidate(NESTED_SET_KEY);
+        treeId2TreeCache.invalidateAll();
         nestedSetNodeCache.invalidateAll();
     }
 }
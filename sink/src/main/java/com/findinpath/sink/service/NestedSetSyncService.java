@@ -1,24 +1,47 @@
 package com.findinpath.sink.service;
 
 
-import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.ConnectionPurpose;
+import com.findinpath.sink.jdbc.JdbcSinkStorage;
 import com.findinpath.sink.jdbc.LogOffsetRepository;
 import com.findinpath.sink.jdbc.NestedSetNodeLogRepository;
 import com.findinpath.sink.jdbc.NestedSetNodeRepository;
 import com.findinpath.sink.model.NestedSetNode;
 import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.model.NestedSetNodeShift;
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
 import com.findinpath.sink.model.NestedSetUpdatedEvent;
+import com.findinpath.sink.storage.NestedSetNodeStore;
+import com.findinpath.sink.storage.SinkStorage;
+import com.findinpath.sink.storage.SinkStorageTransaction;
 import com.google.common.base.Functions;
-import com.google.common.eventbus.EventBus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.Connection;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BinaryOperator;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -26,81 +49,939 @@ public class NestedSetSyncService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetSyncService.class);
 
-    private static final String NESTED_SET_NODE_LOG_TABLE = "nested_set_node_log";
+    static final String NESTED_SET_NODE_LOG_TABLE = "nested_set_node_log";
+    static final String NESTED_SET_NODE_TXN_VERSION = "nested_set_node_txn_version";
+    static final String NESTED_SET_SYNC_LOCK = "nested_set_sync";
 
-    private final EventBus eventBus;
-    private final ConnectionProvider connectionProvider;
+    private final EventDispatcher eventDispatcher;
+    private final SinkStorage storage;
+    private final CoordinatesMode coordinatesMode;
+    private final ForkJoinPool forkJoinPool;
+    private final ValidationMode validationMode;
+    private final double tableSwapThreshold;
+    private final boolean ignoreUpdatedOnlyChanges;
+    private final double compactionRatio;
+    private final AtomicLong receivedUpdatesCount = new AtomicLong();
+    private final AtomicLong skippedUpdatesCount = new AtomicLong();
+    private final Map<Long, Integer> treeId2Lag = new ConcurrentHashMap<>();
 
     public NestedSetSyncService(ConnectionProvider connectionProvider,
-                                EventBus eventBus) {
-        this.connectionProvider = connectionProvider;
-        this.eventBus = eventBus;
+                                EventDispatcher eventDispatcher) {
+        this(connectionProvider, eventDispatcher, CoordinatesMode.DENSE);
+    }
+
+    public NestedSetSyncService(ConnectionProvider connectionProvider,
+                                EventDispatcher eventDispatcher,
+                                CoordinatesMode coordinatesMode) {
+        this(connectionProvider, eventDispatcher, coordinatesMode, NestedSetSyncSettings.defaults());
+    }
+
+    /**
+     * Unless the settings specify a pool, the trees are applied on a fork-join pool dedicated to the sync,
+     * having as many threads as the connections of the sync pool.
+     */
+    public NestedSetSyncService(ConnectionProvider connectionProvider,
+                                EventDispatcher eventDispatcher,
+                                CoordinatesMode coordinatesMode,
+                                NestedSetSyncSettings settings) {
+        this(new JdbcSinkStorage(connectionProvider), eventDispatcher, coordinatesMode,
+                settings.getForkJoinPool()
+                        .orElseGet(() -> newSyncPool(connectionProvider.getMaximumPoolSize(ConnectionPurpose.SYNC))),
+                settings);
+    }
+
+    /**
+     * Syncs the nested set nodes kept in the specified storage. The storages which can't validate
+     * the nested set model on their own (e.g. : the in-memory storage) require {@link ValidationMode#JVM}.
+     */
+    public NestedSetSyncService(SinkStorage storage,
+                                EventDispatcher eventDispatcher) {
+        this(storage, eventDispatcher, CoordinatesMode.DENSE, NestedSetSyncSettings.defaults());
+    }
+
+    /**
+     * Unless the settings specify a pool, the trees are applied on a fork-join pool dedicated to the sync,
+     * having as many threads as the processors.
+     */
+    public NestedSetSyncService(SinkStorage storage,
+                                EventDispatcher eventDispatcher,
+                                CoordinatesMode coordinatesMode,
+                                NestedSetSyncSettings settings) {
+        this(storage, eventDispatcher, coordinatesMode,
+                settings.getForkJoinPool()
+                        .orElseGet(() -> newSyncPool(Runtime.getRuntime().availableProcessors())),
+                settings);
+    }
+
+    private NestedSetSyncService(SinkStorage storage,
+                                 EventDispatcher eventDispatcher,
+                                 CoordinatesMode coordinatesMode,
+                                 ForkJoinPool forkJoinPool,
+                                 NestedSetSyncSettings settings) {
+        this.storage = storage;
+        this.eventDispatcher = eventDispatcher;
+        this.coordinatesMode = coordinatesMode;
+        this.forkJoinPool = forkJoinPool;
+        this.validationMode = settings.getValidationMode();
+        this.tableSwapThreshold = settings.getTableSwapThreshold();
+        this.ignoreUpdatedOnlyChanges = settings.isIgnoreUpdatedOnlyChanges();
+        this.compactionRatio = settings.getCompactionRatio();
+    }
+
+    private static ForkJoinPool newSyncPool(int parallelism) {
+        return SinkExecutors.newForkJoinPool(parallelism, "nested-set-sync");
     }
 
     public void onNestedSetLogUpdate() {
-        LOGGER.info("Received notification about new updates on the nested_set_node_log table");
-        try (Connection connection = connectionProvider.getConnection()) {
-            connection.setAutoCommit(false);
-
-            var isNestedTreeNodeTableUpdated = false;
-            try {
-                final LogOffsetRepository logOffsetRepository = new LogOffsetRepository(connection);
-                final NestedSetNodeLogRepository nestedSetNodeLogRepository = new NestedSetNodeLogRepository(connection);
-                final NestedSetNodeRepository nestedSetNodeRepository = new NestedSetNodeRepository(connection);
-
-                var nestedSetLogUpdates = nestedSetNodeLogRepository.getNestedSetLogUpdates();
-                if (!nestedSetLogUpdates.isEmpty()) {
-                    BinaryOperator<NestedSetNodeLog> takeNestedSetNodeLogWithTheMaxId = (nestedSetNodeLog1, nestedSetNodeLog2) ->
-                            nestedSetNodeLog1.getId() > nestedSetNodeLog2.getId() ? nestedSetNodeLog1 : nestedSetNodeLog2;
-
-                    var deduplicatedNestedSetLogUpdates = nestedSetLogUpdates
-                            .stream()
-                            .collect(Collectors.groupingBy(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getId()))
-                            .values()
-                            .stream()
-                            .map(nestedSetNodeLogsWithTheSameNodeId -> nestedSetNodeLogsWithTheSameNodeId.stream().reduce(takeNestedSetNodeLogWithTheMaxId))
-                            .map(Optional::get)
-                            .sorted(Comparator.comparing(NestedSetNodeLog::getId))
-                            .collect(Collectors.toList());
-
-
-                    var latestNestedSetLogId = deduplicatedNestedSetLogUpdates.get(deduplicatedNestedSetLogUpdates.size() - 1).getId();
-
-                    var nestedSetNodes = nestedSetNodeRepository.getNestedSetNodes();
-                    var id2NestedSetNodeMap = nestedSetNodes.stream()
-                            .collect(Collectors.toMap(NestedSetNode::getId, Functions.identity()));
-
-                    Predicate<NestedSetNode> isNestedSetNodeAlreadyPersisted = (NestedSetNode nestedSetNode) ->
-                            id2NestedSetNodeMap.containsKey(nestedSetNode.getId());
-                    var partitions = deduplicatedNestedSetLogUpdates
-                            .stream()
-                            .map(NestedSetNodeLog::getNestedSetNode)
-                            .collect(Collectors.partitioningBy(isNestedSetNodeAlreadyPersisted));
-                    var newNestedSetNodesSortedByLogId = partitions.get(false);
-                    var updatedNestedSetNodesSortedByLogId = partitions.get(true);
-
-                    var nestedSetNodesUpdates = deduplicatedNestedSetLogUpdates
-                            .stream()
-                            .map(NestedSetNodeLog::getNestedSetNode)
-                            .collect(Collectors.toList());
-                    var updatedTree = TreeUtils.applyUpdates(nestedSetNodes, nestedSetNodesUpdates);
-                    if (updatedTree.isPresent()) {
-                        logOffsetRepository.saveNestedSetLogOffset(NESTED_SET_NODE_LOG_TABLE, latestNestedSetLogId);
-                        nestedSetNodeRepository.insertAll(newNestedSetNodesSortedByLogId);
-                        nestedSetNodeRepository.updateAll(updatedNestedSetNodesSortedByLogId);
-
-                        isNestedTreeNodeTableUpdated = true;
-                    }
+        onNestedSetLogUpdate(NestedSetNodeLog.DEFAULT_PARTITION);
+    }
+
+    /**
+     * Syncs the updates consumed from the specified partition of the topic.
+     * <p>
+     * The partitions have their own offsets in the <code>log_offset</code> table and the trees
+     * don't span over several partitions. The partitions can be therefore synced in parallel
+     * while the updates of each of the trees are applied in their order.
+     * <p>
+     * No connection is held by the partition while its trees are applied in parallel: the pending
+     * log entries and the offsets are read in a short transaction, each tree is applied in its own
+     * transaction and the new offsets are saved afterwards in another short transaction. The partitions
+     * synced at once can therefore share a sync pool smaller than the number of trees without starving it.
+     * Saving the offsets only after the trees have been committed is safe, because applying again
+     * the updates of an already synced tree doesn't change the tree.
+     * <p>
+     * When the storage is fenced by the {@link NestedSetLeaderElectionService} and the sink instance lost
+     * its leadership, the sync is aborted without having written anything after the loss.
+     */
+    public void onNestedSetLogUpdate(int partition) {
+        LOGGER.info("Received notification about new updates on the nested_set_node_log table for the partition " + partition);
+        try {
+            syncPartition(partition);
+        } catch (LeadershipLostException e) {
+            LOGGER.warn("Aborted the sync of the partition " + partition + " because the leadership has been lost");
+        }
+    }
+
+    private void syncPartition(int partition) {
+        final List<NestedSetNodeLog> nestedSetLogUpdates;
+        try (var transaction = storage.beginTransaction()) {
+            nestedSetLogUpdates = transaction.getNestedSetNodeLogStore().getNestedSetLogUpdates(partition);
+        }
+
+        var isNestedTreeNodeTableUpdated = false;
+        var isCompactionNeeded = false;
+        var writtenNestedSetNodeIds = new WrittenNestedSetNodeIds();
+        var isTransactionVersioned = nestedSetLogUpdates.stream()
+                .allMatch(nestedSetNodeLog -> nestedSetNodeLog.getTxnVersion() != null
+                        && nestedSetNodeLog.getTxnRowCount() != null);
+        if (isTransactionVersioned) {
+            // the transactions which only shift coordinates don't have any entries in the nested_set_node_log table
+            isNestedTreeNodeTableUpdated = applyCompleteTransactions(partition, nestedSetLogUpdates,
+                    writtenNestedSetNodeIds);
+        } else {
+            isNestedTreeNodeTableUpdated = applyValidUpdates(partition, nestedSetLogUpdates, writtenNestedSetNodeIds);
+            isCompactionNeeded = isCompactionNeeded(nestedSetLogUpdates);
+        }
+        if (isNestedTreeNodeTableUpdated) {
+            eventDispatcher.post(writtenNestedSetNodeIds.toNestedSetUpdatedEvent());
+        }
+        if (isCompactionNeeded) {
+            try (var transaction = storage.beginTransaction()) {
+                transaction.lock(getPartitionLockName(partition));
+                var deletedLogEntriesCount = transaction.getNestedSetNodeLogStore().compactNestedSetLogUpdates(partition);
+                transaction.commit();
+                LOGGER.info("Compacted the pending log entries of the partition " + partition
+                        + " by deleting " + deletedLogEntriesCount + " superseded log entries");
+            }
+        }
+    }
+
+    private void saveNestedSetLogOffsets(int partition, Map<String, Long> name2Offset) {
+        if (name2Offset.isEmpty()) {
+            return;
+        }
+        try (var transaction = storage.beginTransaction()) {
+            transaction.lock(getPartitionLockName(partition));
+            var logOffsetStore = transaction.getLogOffsetStore();
+            name2Offset.forEach(logOffsetStore::saveNestedSetLogOffset);
+            transaction.commit();
+        }
+    }
+
+    /**
+     * Verifies whether the pending log entries contain so many versions of the same nodes
+     * (e.g. : while a tree waits for a missing node) that it pays off to compact them
+     * instead of reading all of them again on each sync.
+     */
+    private boolean isCompactionNeeded(List<NestedSetNodeLog> nestedSetLogUpdates) {
+        if (compactionRatio == NestedSetNodeLogRepository.NO_COMPACTION || nestedSetLogUpdates.isEmpty()) {
+            return false;
+        }
+        // the packed batches are not compacted
+        var nestedSetLogRowUpdates = nestedSetLogUpdates.stream()
+                .filter(nestedSetNodeLog -> !nestedSetNodeLog.isPacked())
+                .collect(Collectors.toList());
+        var distinctNodesCount = nestedSetLogRowUpdates.stream()
+                .map(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getId())
+                .distinct()
+                .count();
+        return distinctNodesCount > 0
+                && (double) nestedSetLogRowUpdates.size() / distinctNodesCount >= compactionRatio;
+    }
+
+    /**
+     * Applies the latest updates from the log only if they lead to a valid nested set model.
+     * <p>
+     * The trees are validated and committed independently of each other on the fork-join pool,
+     * so that the incomplete updates of a tree don't hold back the updates of the other trees.
+     * The log offset of the partition advances only up to the first log entry of the trees which could
+     * not be applied yet, while each applied tree saves, along with its nodes, the id of its latest applied
+     * log entry as its own offset. The log entries of the trees which are already synced are therefore
+     * skipped, instead of being diffed again on each sync while another tree of the partition is stuck.
+     *
+     * @return <code>true</code> if the <code>nested_set_node</code> table has been updated
+     */
+    private boolean applyValidUpdates(int partition,
+                                      List<NestedSetNodeLog> nestedSetLogUpdates,
+                                      WrittenNestedSetNodeIds writtenNestedSetNodeIds) {
+        var treeIds = nestedSetLogUpdates.stream()
+                .map(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getTreeId())
+                .collect(Collectors.toSet());
+        var treeId2LogOffset = new HashMap<Long, Long>();
+        try (var transaction = storage.beginTransaction()) {
+            var logOffsetStore = transaction.getLogOffsetStore();
+            for (var treeId : treeIds) {
+                logOffsetStore.getNestedSetLogOffset(
+                        LogOffsetRepository.getTreeOffsetName(NESTED_SET_NODE_LOG_TABLE, partition, treeId))
+                        .ifPresent(treeLogOffset -> treeId2LogOffset.put(treeId, treeLogOffset));
+            }
+        }
+        var pendingNestedSetLogUpdates = nestedSetLogUpdates.stream()
+                .filter(nestedSetNodeLog -> nestedSetNodeLog.getId()
+                        > treeId2LogOffset.getOrDefault(nestedSetNodeLog.getNestedSetNode().getTreeId(), -1L))
+                .collect(Collectors.toList());
+
+        BinaryOperator<NestedSetNodeLog> takeNestedSetNodeLogWithTheMaxId = (nestedSetNodeLog1, nestedSetNodeLog2) ->
+                nestedSetNodeLog1.getId() > nestedSetNodeLog2.getId() ? nestedSetNodeLog1 : nestedSetNodeLog2;
+
+        Map<Long, List<NestedSetNode>> treeId2NestedSetNodesUpdates = pendingNestedSetLogUpdates
+                .stream()
+                .collect(Collectors.groupingBy(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getId()))
+                .values()
+                .stream()
+                .map(nestedSetNodeLogsWithTheSameNodeId -> nestedSetNodeLogsWithTheSameNodeId.stream().reduce(takeNestedSetNodeLogWithTheMaxId))
+                .map(Optional::get)
+                .sorted(Comparator.comparing(NestedSetNodeLog::getId))
+                .map(NestedSetNodeLog::getNestedSetNode)
+                .collect(Collectors.groupingBy(NestedSetNode::getTreeId));
+
+        // the packed log entries can't be read within the database and their trees are therefore validated in the JVM
+        Set<Long> packedTreeIds = pendingNestedSetLogUpdates.stream()
+                .filter(NestedSetNodeLog::isPacked)
+                .map(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getTreeId())
+                .collect(Collectors.toSet());
+        // the id of the latest log entry of each tree is notified as the version of the tree
+        Map<Long, Integer> treeId2LatestLogId = pendingNestedSetLogUpdates.stream()
+                .collect(Collectors.toMap(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getTreeId(),
+                        NestedSetNodeLog::getId, Math::max));
+        Map<Long, Integer> treeId2FirstLogId = pendingNestedSetLogUpdates.stream()
+                .collect(Collectors.toMap(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getTreeId(),
+                        NestedSetNodeLog::getId, Math::min));
+        var isNestedSetNodeTableUpdated = new AtomicBoolean();
+        var isTableSwapped = isTableSwapWorthwhile(treeId2NestedSetNodesUpdates.values().stream()
+                .mapToLong(List::size)
+                .sum(), Set.of());
+        Set<Long> appliedTreeIds = applyTrees(partition, treeId2NestedSetNodesUpdates.keySet(), isTableSwapped,
+                (treeId, transaction, nestedSetNodeWrites) -> applyValidTreeUpdates(transaction, partition, treeId,
+                        treeId2FirstLogId.get(treeId), treeId2LatestLogId.get(treeId),
+                        treeId2NestedSetNodesUpdates.get(treeId),
+                        packedTreeIds.contains(treeId) ? ValidationMode.JVM : validationMode,
+                        isNestedSetNodeTableUpdated, writtenNestedSetNodeIds, nestedSetNodeWrites))
+                .entrySet()
+                .stream()
+                .filter(Map.Entry::getValue)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+
+        // the lag of the trees which have not been applied is the number of their pending log entries
+        var treeId2PendingLogEntriesCount = pendingNestedSetLogUpdates.stream()
+                .filter(nestedSetNodeLog -> !appliedTreeIds.contains(nestedSetNodeLog.getNestedSetNode().getTreeId()))
+                .collect(Collectors.groupingBy(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getTreeId(),
+                        Collectors.summingInt(nestedSetNodeLog -> 1)));
+        for (var treeId : treeIds) {
+            var pendingLogEntriesCount = treeId2PendingLogEntriesCount.get(treeId);
+            if (pendingLogEntriesCount == null) {
+                treeId2Lag.remove(treeId);
+            } else {
+                treeId2Lag.put(treeId, pendingLogEntriesCount);
+            }
+        }
+        if (appliedTreeIds.isEmpty() && pendingNestedSetLogUpdates.size() == nestedSetLogUpdates.size()) {
+            return isNestedSetNodeTableUpdated.get();
+        }
+
+        // the log entries of the trees which have not been applied need to be read again on the next sync
+        var nestedSetLogOffset = pendingNestedSetLogUpdates.stream()
+                .filter(nestedSetNodeLog -> !appliedTreeIds.contains(nestedSetNodeLog.getNestedSetNode().getTreeId()))
+                .mapToInt(NestedSetNodeLog::getId)
+                .min();
+        if (nestedSetLogOffset.isEmpty()) {
+            nestedSetLogOffset = nestedSetLogUpdates.stream().mapToInt(NestedSetNodeLog::getId).max();
+        }
+        saveNestedSetLogOffsets(partition, Map.of(
+                LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_LOG_TABLE, partition),
+                (long) nestedSetLogOffset.getAsInt()));
+
+        return !appliedTreeIds.isEmpty() || isNestedSetNodeTableUpdated.get();
+    }
+
+    /**
+     * Applies the updates of a tree only if they lead to a valid nested set model.
+     * Applying again the updates of an already synced tree doesn't change the tree.
+     * <p>
+     * The updates which don't change the coordinates of the nodes (e.g. : relabeling) are applied
+     * right away, without validating the tree, because they can't change its structure.
+     *
+     * @param firstLogId  the id of the first pending log entry of the tree
+     * @param treeVersion the id of the latest log entry of the tree, saved as the log offset of the tree once applied
+     * @return <code>true</code> if all the updates of the tree have been applied
+     */
+    private boolean applyValidTreeUpdates(SinkStorageTransaction transaction,
+                                          int partition, long treeId, int firstLogId, long treeVersion,
+                                          List<NestedSetNode> nestedSetNodesUpdates,
+                                          ValidationMode treeValidationMode,
+                                          AtomicBoolean isNestedSetNodeTableUpdated,
+                                          WrittenNestedSetNodeIds writtenNestedSetNodeIds,
+                                          NestedSetNodeWrites nestedSetNodeWrites) {
+        final var nestedSetNodeStore = transaction.getNestedSetNodeStore();
+
+        var id2PersistedNestedSetNode = nestedSetNodeStore.getNestedSetNodesByIds(nestedSetNodesUpdates.stream()
+                .map(NestedSetNode::getId)
+                .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(NestedSetNode::getId, Function.identity()));
+        var changedNestedSetNodesUpdates = getChangedNestedSetNodes(id2PersistedNestedSetNode, nestedSetNodesUpdates);
+        var partitions = changedNestedSetNodesUpdates.stream()
+                .collect(Collectors.partitioningBy(nestedSetNode ->
+                        hasUnchangedCoordinates(id2PersistedNestedSetNode.get(nestedSetNode.getId()), nestedSetNode)));
+        var nestedSetNodesNeutralUpdates = partitions.get(true);
+        var nestedSetNodesCoordinatesUpdates = partitions.get(false);
+        var treeWrittenNestedSetNodeIds = new HashSet<Long>();
+        if (!nestedSetNodesNeutralUpdates.isEmpty()) {
+            nestedSetNodeStore.updateAll(nestedSetNodesNeutralUpdates);
+            isNestedSetNodeTableUpdated.set(true);
+            nestedSetNodesNeutralUpdates.forEach(nestedSetNode -> treeWrittenNestedSetNodeIds.add(nestedSetNode.getId()));
+        }
+        var isTreeApplied = nestedSetNodesCoordinatesUpdates.isEmpty()
+                || (treeValidationMode == ValidationMode.DATABASE
+                ? applyValidTreeLogUpdates(partition, treeId, firstLogId, nestedSetNodeStore)
+                : applyValidTreeCoordinatesUpdates(treeId, nestedSetNodesCoordinatesUpdates,
+                nestedSetNodeStore, nestedSetNodeWrites));
+        if (isTreeApplied && !nestedSetNodesCoordinatesUpdates.isEmpty()) {
+            isNestedSetNodeTableUpdated.set(true);
+            nestedSetNodesCoordinatesUpdates.forEach(nestedSetNode -> treeWrittenNestedSetNodeIds.add(nestedSetNode.getId()));
+        }
+        if (isTreeApplied) {
+            transaction.getLogOffsetStore().saveNestedSetLogOffset(
+                    LogOffsetRepository.getTreeOffsetName(NESTED_SET_NODE_LOG_TABLE, partition, treeId), treeVersion);
+        }
+        var isWrittenWithinDatabase = isTreeApplied && !nestedSetNodesCoordinatesUpdates.isEmpty()
+                && treeValidationMode == ValidationMode.DATABASE;
+        notifyNestedSetTreeUpdated(transaction, treeId, treeVersion,
+                isWrittenWithinDatabase ? null : treeWrittenNestedSetNodeIds, writtenNestedSetNodeIds);
+        return isTreeApplied;
+    }
+
+    private boolean applyValidTreeLogUpdates(int partition, long treeId, int firstLogId,
+                                             NestedSetNodeStore nestedSetNodeStore) {
+        var writtenNestedSetNodesCount = nestedSetNodeStore.applyValidLogUpdates(partition,
+                treeId,
+                firstLogId,
+                coordinatesMode == CoordinatesMode.DENSE,
+                ignoreUpdatedOnlyChanges);
+        if (writtenNestedSetNodesCount.isEmpty()) {
+            LOGGER.info("Waiting for the updates of the tree " + treeId + " to lead to a valid nested set model");
+            return false;
+        }
+        LOGGER.info("Applied " + writtenNestedSetNodesCount.getAsInt() + " validated updates on the tree " + treeId);
+        return true;
+    }
+
+    private boolean applyValidTreeCoordinatesUpdates(long treeId, List<NestedSetNode> nestedSetNodesUpdates,
+                                                     NestedSetNodeStore nestedSetNodeStore,
+                                                     NestedSetNodeWrites nestedSetNodeWrites) {
+        var nestedSetNodes = nestedSetNodeStore.getNestedSetNodes(List.of(treeId));
+        if (TreeUtils.applyUpdates(nestedSetNodes, nestedSetNodesUpdates, coordinatesMode).isEmpty()) {
+            LOGGER.info("Waiting for the updates of the tree " + treeId + " to lead to a valid nested set model");
+            return false;
+        }
+        nestedSetNodeWrites.save(nestedSetNodeStore, nestedSetNodes, nestedSetNodesUpdates);
+        return true;
+    }
+
+    private static boolean hasUnchangedCoordinates(NestedSetNode persistedNestedSetNode, NestedSetNode nestedSetNode) {
+        return persistedNestedSetNode != null
+                && persistedNestedSetNode.getTreeId() == nestedSetNode.getTreeId()
+                && persistedNestedSetNode.getLeft() == nestedSetNode.getLeft()
+                && persistedNestedSetNode.getRight() == nestedSetNode.getRight();
+    }
+
+    /**
+     * Filters out the updates which would write again the persisted state of the nodes
+     * (e.g. : rows re-emitted unchanged by kafka-connect).
+     *
+     * @return the updates which actually change the persisted nodes
+     */
+    private List<NestedSetNode> getChangedNestedSetNodes(Map<Long, NestedSetNode> id2PersistedNestedSetNode,
+                                                         List<NestedSetNode> nestedSetNodesUpdates) {
+        var changedNestedSetNodes = nestedSetNodesUpdates.stream()
+                .filter(nestedSetNode -> isChanged(id2PersistedNestedSetNode.get(nestedSetNode.getId()), nestedSetNode))
+                .collect(Collectors.toList());
+        var skippedCount = nestedSetNodesUpdates.size() - changedNestedSetNodes.size();
+        receivedUpdatesCount.addAndGet(nestedSetNodesUpdates.size());
+        skippedUpdatesCount.addAndGet(skippedCount);
+        if (skippedCount > 0) {
+            LOGGER.info("Skipped " + skippedCount + " out of " + nestedSetNodesUpdates.size()
+                    + " updates which don't change the nested_set_node table");
+        }
+        return changedNestedSetNodes;
+    }
+
+    private boolean isChanged(NestedSetNode persistedNestedSetNode, NestedSetNode nestedSetNode) {
+        if (persistedNestedSetNode == null) {
+            return true;
+        }
+        return persistedNestedSetNode.getTreeId() != nestedSetNode.getTreeId()
+                || persistedNestedSetNode.getLeft() != nestedSetNode.getLeft()
+                || persistedNestedSetNode.getRight() != nestedSetNode.getRight()
+                || persistedNestedSetNode.isActive() != nestedSetNode.isActive()
+                || !Objects.equals(persistedNestedSetNode.getLabel(), nestedSetNode.getLabel())
+                || (!ignoreUpdatedOnlyChanges && !Objects.equals(persistedNestedSetNode.getUpdated(), nestedSetNode.getUpdated()));
+    }
+
+    /**
+     * Retrieves the fraction of the received updates which have been skipped
+     * because they wouldn't have changed the <code>nested_set_node</code> table.
+     */
+    public double getSkippedUpdatesRatio() {
+        var receivedCount = receivedUpdatesCount.get();
+        return receivedCount == 0 ? 0 : (double) skippedUpdatesCount.get() / receivedCount;
+    }
+
+    /**
+     * Drops asynchronously the replaced version of the <code>nested_set_node</code> table
+     * once the transaction swapping the table has been committed.
+     */
+    private void dropReplacedTable(String replacedTableName) {
+        forkJoinPool.execute(() -> {
+            try (var transaction = storage.beginTransaction()) {
+                transaction.getNestedSetNodeStore().dropReplacedTable(replacedTableName);
+                transaction.commit();
+            } catch (Exception e) {
+                LOGGER.error("The replaced table " + replacedTableName + " could not be dropped", e);
+            }
+        });
+    }
+
+    /**
+     * Applies, in the order of their versions, the source transactions for which all the
+     * written nested set nodes and coordinate shifts have been received. A transaction is complete
+     * when the number of distinct nodes and shifts received for its version matches the row count
+     * stamped by the source.
+     * <p>
+     * The transactions are applied tree by tree, in parallel on the fork-join pool, so that
+     * an incomplete transaction blocks only the tree which it writes. Each tree has its own applied
+     * transaction version in the <code>log_offset</code> table, saved along with the nodes of the tree,
+     * while the transaction version offset of the partition holds the version up to which all
+     * the trees have been synced.
+     *
+     * @return <code>true</code> if the <code>nested_set_node</code> table has been updated
+     */
+    private boolean applyCompleteTransactions(int partition,
+                                              List<NestedSetNodeLog> nestedSetLogUpdates,
+                                              WrittenNestedSetNodeIds writtenNestedSetNodeIds) {
+        var txnVersionOffsetName = LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_TXN_VERSION, partition);
+        final long appliedTxnVersion;
+        final List<NestedSetNodeShift> nestedSetNodeShifts;
+        try (var transaction = storage.beginTransaction()) {
+            appliedTxnVersion = transaction.getLogOffsetStore().getNestedSetLogOffset(txnVersionOffsetName).orElse(0L);
+            nestedSetNodeShifts = transaction.getNestedSetNodeShiftLogStore()
+                    .getNestedSetNodeShifts(partition, appliedTxnVersion);
+        }
+
+        // the log entries of the already applied transactions may be read again because the log offset is inclusive
+        SortedMap<Long, List<NestedSetNodeLog>> txnVersion2NestedSetNodeLogs = nestedSetLogUpdates.stream()
+                .filter(nestedSetNodeLog -> nestedSetNodeLog.getTxnVersion() > appliedTxnVersion)
+                .sorted(Comparator.comparing(NestedSetNodeLog::getId))
+                .collect(Collectors.groupingBy(NestedSetNodeLog::getTxnVersion, TreeMap::new, Collectors.toList()));
+        // the shifts may be received more than once from Kafka
+        SortedMap<Long, List<NestedSetNodeShift>> txnVersion2NestedSetNodeShifts = nestedSetNodeShifts
+                .stream()
+                .collect(Collectors.toMap(NestedSetNodeShift::getShiftId, Function.identity(),
+                        (nestedSetNodeShift1, nestedSetNodeShift2) -> nestedSetNodeShift1, LinkedHashMap::new))
+                .values()
+                .stream()
+                .collect(Collectors.groupingBy(NestedSetNodeShift::getTxnVersion, TreeMap::new, Collectors.toList()));
+        var txnVersions = new TreeSet<>(txnVersion2NestedSetNodeLogs.keySet());
+        txnVersions.addAll(txnVersion2NestedSetNodeShifts.keySet());
+        if (txnVersions.isEmpty()) {
+            return false;
+        }
+
+        // a source transaction is complete only when the rows of all the trees written by it have been received
+        var completeTxnVersions = txnVersions.stream()
+                .filter(txnVersion -> isCompleteTransaction(txnVersion2NestedSetNodeLogs.getOrDefault(txnVersion, List.of()),
+                        txnVersion2NestedSetNodeShifts.getOrDefault(txnVersion, List.of())))
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        var treeId2TxnVersions = new HashMap<Long, SortedSet<Long>>();
+        txnVersion2NestedSetNodeLogs.values().stream()
+                .flatMap(Collection::stream)
+                .forEach(nestedSetNodeLog -> treeId2TxnVersions
+                        .computeIfAbsent(nestedSetNodeLog.getNestedSetNode().getTreeId(), treeId -> new TreeSet<>())
+                        .add(nestedSetNodeLog.getTxnVersion()));
+        txnVersion2NestedSetNodeShifts.values().stream()
+                .flatMap(Collection::stream)
+                .forEach(nestedSetNodeShift -> treeId2TxnVersions
+                        .computeIfAbsent(nestedSetNodeShift.getTreeId(), treeId -> new TreeSet<>())
+                        .add(nestedSetNodeShift.getTxnVersion()));
+        // the coordinate shifts may move all the nodes of their trees
+        var shiftedTreeIds = txnVersion2NestedSetNodeShifts.values().stream()
+                .flatMap(Collection::stream)
+                .map(NestedSetNodeShift::getTreeId)
+                .collect(Collectors.toSet());
+        var isTableSwapped = isTableSwapWorthwhile(txnVersion2NestedSetNodeLogs.values().stream()
+                .flatMap(Collection::stream)
+                .map(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getId())
+                .distinct()
+                .count(), shiftedTreeIds);
+
+        var treeId2AppliedTxnVersion = new HashMap<Long, Long>();
+        try (var transaction = storage.beginTransaction()) {
+            var logOffsetStore = transaction.getLogOffsetStore();
+            for (var treeId : treeId2TxnVersions.keySet()) {
+                var treeAppliedTxnVersion = logOffsetStore.getNestedSetLogOffset(
+                        LogOffsetRepository.getTreeOffsetName(NESTED_SET_NODE_TXN_VERSION, partition, treeId))
+                        .orElse(0L);
+                treeId2AppliedTxnVersion.put(treeId, Math.max(appliedTxnVersion, treeAppliedTxnVersion));
+            }
+        }
+
+        // each of the trees having pending transactions gets one attempt per sync, bounded by the parallelism of the pool
+        Map<Long, Long> treeId2NewAppliedTxnVersion = applyTrees(partition, treeId2TxnVersions.keySet(), isTableSwapped,
+                (treeId, transaction, nestedSetNodeWrites) -> applyCompleteTreeTransactions(transaction,
+                        partition, treeId,
+                        treeId2AppliedTxnVersion.get(treeId),
+                        treeId2TxnVersions.get(treeId).tailSet(treeId2AppliedTxnVersion.get(treeId) + 1),
+                        completeTxnVersions,
+                        txnVersion2NestedSetNodeLogs,
+                        txnVersion2NestedSetNodeShifts,
+                        writtenNestedSetNodeIds,
+                        nestedSetNodeWrites));
+
+        var isNestedSetNodeTableUpdated = false;
+        var pendingTxnVersions = new TreeSet<Long>();
+        for (var entry : treeId2TxnVersions.entrySet()) {
+            var treeId = entry.getKey();
+            var newAppliedTxnVersion = treeId2NewAppliedTxnVersion.get(treeId);
+            if (newAppliedTxnVersion > treeId2AppliedTxnVersion.get(treeId)) {
+                isNestedSetNodeTableUpdated = true;
+            }
+            var treePendingTxnVersions = entry.getValue().tailSet(newAppliedTxnVersion + 1);
+            if (treePendingTxnVersions.isEmpty()) {
+                treeId2Lag.remove(treeId);
+            } else {
+                treeId2Lag.put(treeId, treePendingTxnVersions.size());
+                pendingTxnVersions.add(treePendingTxnVersions.first());
+            }
+        }
+
+        var newAppliedTxnVersion = pendingTxnVersions.isEmpty() ? txnVersions.last() : pendingTxnVersions.first() - 1;
+        var nestedSetLogOffset = txnVersion2NestedSetNodeLogs.values().stream()
+                .flatMap(Collection::stream)
+                .filter(nestedSetNodeLog -> nestedSetNodeLog.getTxnVersion()
+                        > treeId2NewAppliedTxnVersion.get(nestedSetNodeLog.getNestedSetNode().getTreeId()))
+                .mapToInt(NestedSetNodeLog::getId)
+                .min();
+        if (nestedSetLogOffset.isEmpty()) {
+            nestedSetLogOffset = nestedSetLogUpdates.stream().mapToInt(NestedSetNodeLog::getId).max();
+        }
+
+        var name2Offset = new HashMap<String, Long>();
+        if (newAppliedTxnVersion > appliedTxnVersion) {
+            name2Offset.put(txnVersionOffsetName, newAppliedTxnVersion);
+        }
+        if (nestedSetLogOffset.isPresent()) {
+            name2Offset.put(LogOffsetRepository.getPartitionOffsetName(NESTED_SET_NODE_LOG_TABLE, partition),
+                    (long) nestedSetLogOffset.getAsInt());
+        }
+        saveNestedSetLogOffsets(partition, name2Offset);
+
+        return isNestedSetNodeTableUpdated;
+    }
+
+    /**
+     * Applies the complete source transactions of a tree.
+     * <p>
+     * A transaction may never become complete when some of its tuples have been overwritten
+     * on the source by a later transaction before being published. Only in case that an incomplete
+     * transaction is followed by a complete one, the validation of the nested set model is used
+     * for finding out whether the updates up to the complete transaction can be applied.
+     *
+     * @return the version of the latest transaction applied on the tree
+     */
+    private long applyCompleteTreeTransactions(SinkStorageTransaction transaction,
+                                               int partition,
+                                               long treeId,
+                                               long treeAppliedTxnVersion,
+                                               SortedSet<Long> treeTxnVersions,
+                                               Set<Long> completeTxnVersions,
+                                               Map<Long, List<NestedSetNodeLog>> txnVersion2NestedSetNodeLogs,
+                                               Map<Long, List<NestedSetNodeShift>> txnVersion2NestedSetNodeShifts,
+                                               WrittenNestedSetNodeIds writtenNestedSetNodeIds,
+                                               NestedSetNodeWrites nestedSetNodeWrites) {
+        if (treeTxnVersions.isEmpty()) {
+            return treeAppliedTxnVersion;
+        }
+        Long lastApplicableTxnVersion = null;
+        Long latestCompleteTxnVersion = null;
+        var isIncompleteTransactionFound = false;
+        for (var txnVersion : treeTxnVersions) {
+            if (completeTxnVersions.contains(txnVersion)) {
+                latestCompleteTxnVersion = txnVersion;
+                if (!isIncompleteTransactionFound) {
+                    lastApplicableTxnVersion = txnVersion;
                 }
-                connection.commit();
-                if (isNestedTreeNodeTableUpdated) {
-                    eventBus.post(new NestedSetUpdatedEvent());
+            } else {
+                isIncompleteTransactionFound = true;
+            }
+        }
+        if (latestCompleteTxnVersion == null) {
+            LOGGER.info("Waiting for the transaction with the version "
+                    + treeTxnVersions.first() + " to be completely received for the tree " + treeId);
+            return treeAppliedTxnVersion;
+        }
+
+        // the transactions may write several trees
+        var treeTxnVersion2NestedSetNodeLogs = new HashMap<Long, List<NestedSetNodeLog>>();
+        var treeTxnVersion2NestedSetNodeShifts = new HashMap<Long, List<NestedSetNodeShift>>();
+        for (var txnVersion : treeTxnVersions) {
+            treeTxnVersion2NestedSetNodeLogs.put(txnVersion, txnVersion2NestedSetNodeLogs.getOrDefault(txnVersion, List.of())
+                    .stream()
+                    .filter(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getTreeId() == treeId)
+                    .collect(Collectors.toList()));
+            treeTxnVersion2NestedSetNodeShifts.put(txnVersion, txnVersion2NestedSetNodeShifts.getOrDefault(txnVersion, List.of())
+                    .stream()
+                    .filter(nestedSetNodeShift -> nestedSetNodeShift.getTreeId() == treeId)
+                    .collect(Collectors.toList()));
+        }
+
+        final var logOffsetStore = transaction.getLogOffsetStore();
+        final var nestedSetNodeStore = transaction.getNestedSetNodeStore();
+
+        var nestedSetNodes = nestedSetNodeStore.getNestedSetNodes(List.of(treeId));
+        if (!latestCompleteTxnVersion.equals(lastApplicableTxnVersion)) {
+            var nestedSetNodesUpdates = replayTransactions(nestedSetNodes, treeAppliedTxnVersion,
+                    treeTxnVersions.headSet(latestCompleteTxnVersion + 1),
+                    treeTxnVersion2NestedSetNodeLogs, treeTxnVersion2NestedSetNodeShifts);
+            if (TreeUtils.applyUpdates(nestedSetNodes, nestedSetNodesUpdates, coordinatesMode).isPresent()) {
+                LOGGER.info("The incomplete transactions preceding the transaction with the version "
+                        + latestCompleteTxnVersion + " have been superseded for the tree " + treeId);
+                lastApplicableTxnVersion = latestCompleteTxnVersion;
+            }
+        }
+        if (lastApplicableTxnVersion == null) {
+            LOGGER.info("Waiting for the transaction with the version "
+                    + treeTxnVersions.first() + " to be completely received for the tree " + treeId);
+            return treeAppliedTxnVersion;
+        }
+
+        var nestedSetNodesUpdates = replayTransactions(nestedSetNodes, treeAppliedTxnVersion,
+                treeTxnVersions.headSet(lastApplicableTxnVersion + 1),
+                treeTxnVersion2NestedSetNodeLogs, treeTxnVersion2NestedSetNodeShifts);
+        // the applied version is saved along with the nodes because the shifts can't be applied twice
+        logOffsetStore.saveNestedSetLogOffset(
+                LogOffsetRepository.getTreeOffsetName(NESTED_SET_NODE_TXN_VERSION, partition, treeId),
+                lastApplicableTxnVersion);
+        var id2PersistedNestedSetNode = nestedSetNodes.stream()
+                .collect(Collectors.toMap(NestedSetNode::getId, Function.identity()));
+        var changedNestedSetNodesUpdates = getChangedNestedSetNodes(id2PersistedNestedSetNode, nestedSetNodesUpdates);
+        nestedSetNodeWrites.save(nestedSetNodeStore, nestedSetNodes, changedNestedSetNodesUpdates);
+        notifyNestedSetTreeUpdated(transaction, treeId, lastApplicableTxnVersion,
+                changedNestedSetNodesUpdates.stream().map(NestedSetNode::getId).collect(Collectors.toSet()),
+                writtenNestedSetNodeIds);
+        return lastApplicableTxnVersion;
+    }
+
+    /**
+     * Notifies the other sink processes about the nodes of the tree written by the transaction.
+     * The notification is delivered only once the transaction gets committed.
+     *
+     * @param treeWrittenNestedSetNodeIds the ids of the written nodes of the tree or <code>null</code>
+     *                                    when they are not known
+     */
+    private static void notifyNestedSetTreeUpdated(SinkStorageTransaction transaction,
+                                                   long treeId,
+                                                   long treeVersion,
+                                                   Set<Long> treeWrittenNestedSetNodeIds,
+                                                   WrittenNestedSetNodeIds writtenNestedSetNodeIds) {
+        if (treeWrittenNestedSetNodeIds != null && treeWrittenNestedSetNodeIds.isEmpty()) {
+            return;
+        }
+        transaction.notifyNestedSetTreeUpdated(
+                new NestedSetTreeUpdatedNotification(treeId, treeVersion, treeWrittenNestedSetNodeIds));
+        writtenNestedSetNodeIds.addAll(treeWrittenNestedSetNodeIds);
+    }
+
+    /**
+     * Retrieves, for each of the trees lagging behind the source, the number of the received
+     * source transactions which have not been applied yet on the tree or, for the updates without
+     * transaction versions, the number of its pending log entries.
+     */
+    public Map<Long, Integer> getTreeLags() {
+        return Map.copyOf(treeId2Lag);
+    }
+
+    private static boolean isCompleteTransaction(List<NestedSetNodeLog> nestedSetNodeLogs,
+                                                 List<NestedSetNodeShift> nestedSetNodeShifts) {
+        var receivedNestedSetNodesCount = nestedSetNodeLogs.stream()
+                .map(nestedSetNodeLog -> nestedSetNodeLog.getNestedSetNode().getId())
+                .distinct()
+                .count();
+        var txnRowCount = nestedSetNodeLogs.isEmpty()
+                ? nestedSetNodeShifts.get(0).getTxnRowCount()
+                : nestedSetNodeLogs.get(0).getTxnRowCount();
+        return receivedNestedSetNodesCount + nestedSetNodeShifts.size() == txnRowCount;
+    }
+
+    /**
+     * Replays the transactions in their version order on a copy of the current nested set nodes.
+     * The coordinate shifts of a transaction are applied on the nodes of the shifted tree for which
+     * the coordinates don't already contain the shift, after which the nodes written by the transaction
+     * overwrite their previous state.
+     *
+     * @return the latest state of the nested set nodes changed by the transactions
+     */
+    private static List<NestedSetNode> replayTransactions(List<NestedSetNode> nestedSetNodes,
+                                                          long appliedTxnVersion,
+                                                          SortedSet<Long> txnVersions,
+                                                          Map<Long, List<NestedSetNodeLog>> txnVersion2NestedSetNodeLogs,
+                                                          Map<Long, List<NestedSetNodeShift>> txnVersion2NestedSetNodeShifts) {
+        var id2NestedSetNode = new LinkedHashMap<Long, NestedSetNode>();
+        for (var nestedSetNode : nestedSetNodes) {
+            var nestedSetNodeCopy = new NestedSetNode(nestedSetNode.getId(),
+                    nestedSetNode.getLabel(),
+                    nestedSetNode.getLeft(),
+                    nestedSetNode.getRight(),
+                    nestedSetNode.isActive(),
+                    nestedSetNode.getCreated(),
+                    nestedSetNode.getUpdated());
+            nestedSetNodeCopy.setTreeId(nestedSetNode.getTreeId());
+            id2NestedSetNode.put(nestedSetNode.getId(), nestedSetNodeCopy);
+        }
+        var id2CoordinatesVersion = new HashMap<Long, Long>();
+        var changedNestedSetNodeIds = new LinkedHashSet<Long>();
+        for (var txnVersion : txnVersions) {
+            var nestedSetNodeShifts = txnVersion2NestedSetNodeShifts.getOrDefault(txnVersion, List.of());
+            if (!nestedSetNodeShifts.isEmpty()) {
+                for (var nestedSetNode : id2NestedSetNode.values()) {
+                    if (id2CoordinatesVersion.getOrDefault(nestedSetNode.getId(), appliedTxnVersion) >= txnVersion) {
+                        continue;
+                    }
+                    var left = shiftCoordinate(nestedSetNode.getTreeId(), nestedSetNode.getLeft(),
+                            NestedSetNodeShift.LEFT_COORDINATE, nestedSetNodeShifts);
+                    var right = shiftCoordinate(nestedSetNode.getTreeId(), nestedSetNode.getRight(),
+                            NestedSetNodeShift.RIGHT_COORDINATE, nestedSetNodeShifts);
+                    if (left != nestedSetNode.getLeft() || right != nestedSetNode.getRight()) {
+                        nestedSetNode.setLeft(left);
+                        nestedSetNode.setRight(right);
+                        changedNestedSetNodeIds.add(nestedSetNode.getId());
+                    }
                 }
-            } finally {
-                connection.setAutoCommit(true);
             }
-        } catch (SQLException e) {
-            Utils.sneakyThrow(e);
+
+            for (var nestedSetNodeLog : txnVersion2NestedSetNodeLogs.getOrDefault(txnVersion, List.of())) {
+                var nestedSetNode = nestedSetNodeLog.getNestedSetNode();
+                id2NestedSetNode.put(nestedSetNode.getId(), nestedSetNode);
+                changedNestedSetNodeIds.add(nestedSetNode.getId());
+                var coordinatesVersion = nestedSetNodeLog.getCoordinatesVersion();
+                id2CoordinatesVersion.put(nestedSetNode.getId(),
+                        coordinatesVersion != null ? Math.max(txnVersion, coordinatesVersion) : txnVersion);
+            }
+        }
+
+        return changedNestedSetNodeIds.stream()
+                .map(id2NestedSetNode::get)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The shifts of a transaction are applied simultaneously, which is why the first shift
+     * having its range containing the original value of the coordinate is applied.
+     */
+    private static int shiftCoordinate(long treeId, int value, String coordinate, List<NestedSetNodeShift> nestedSetNodeShifts) {
+        for (var nestedSetNodeShift : nestedSetNodeShifts) {
+            if (nestedSetNodeShift.getTreeId() == treeId
+                    && nestedSetNodeShift.getCoordinate().equals(coordinate)
+                    && nestedSetNodeShift.isShifting(value)) {
+                return nestedSetNodeShift.shift(value);
+            }
+        }
+        return value;
+    }
+
+    static void saveNestedSetNodes(NestedSetNodeStore nestedSetNodeStore,
+                                   List<NestedSetNode> nestedSetNodes,
+                                   List<NestedSetNode> nestedSetNodesUpdates) {
+        var id2NestedSetNodeMap = nestedSetNodes.stream()
+                .collect(Collectors.toMap(NestedSetNode::getId, Functions.identity()));
+
+        Predicate<NestedSetNode> isNestedSetNodeAlreadyPersisted = (NestedSetNode nestedSetNode) ->
+                id2NestedSetNodeMap.containsKey(nestedSetNode.getId());
+        var partitions = nestedSetNodesUpdates
+                .stream()
+                .collect(Collectors.partitioningBy(isNestedSetNodeAlreadyPersisted));
+        var newNestedSetNodes = partitions.get(false);
+        var updatedNestedSetNodes = partitions.get(true);
+
+        nestedSetNodeStore.saveAll(newNestedSetNodes, updatedNestedSetNodes);
+    }
+
+    /**
+     * Verifies whether the nodes changed by the trees of a partition amount to at least the table swap threshold
+     * of the estimated number of stored nodes. The decision is taken for the partition as a whole, because
+     * a table swap rewrites the nodes of all the trees.
+     *
+     * @param pendingNestedSetNodesCount the number of the distinct nodes of the pending log entries
+     * @param shiftedTreeIds             the trees of the pending coordinate shifts, which may move all their nodes
+     */
+    private boolean isTableSwapWorthwhile(long pendingNestedSetNodesCount, Set<Long> shiftedTreeIds) {
+        if (tableSwapThreshold == NestedSetNodeRepository.NO_TABLE_SWAP) {
+            return false;
+        }
+        try (var transaction = storage.beginTransaction()) {
+            var nestedSetNodeStore = transaction.getNestedSetNodeStore();
+            var estimatedNestedSetNodesCount = nestedSetNodeStore.getEstimatedNestedSetNodesCount();
+            if (estimatedNestedSetNodesCount == 0) {
+                return false;
+            }
+            var changedNestedSetNodesCount = pendingNestedSetNodesCount
+                    + (shiftedTreeIds.isEmpty() ? 0 : nestedSetNodeStore.countNestedSetNodes(shiftedTreeIds));
+            return changedNestedSetNodesCount > 0
+                    && changedNestedSetNodesCount >= tableSwapThreshold * estimatedNestedSetNodesCount;
+        }
+    }
+
+    /**
+     * Applies the trees of a partition each in its own transaction, in parallel on the fork-join pool.
+     * When the table gets swapped, the trees are applied instead one after the other in a single transaction
+     * and their changed nodes are written all at once in the new version of the table, so that the concurrent
+     * tree transactions don't wait on the lock taken by the swap.
+     * <p>
+     * Each tree is locked within the transaction before being read, so that the transactions of a former leader
+     * can't interleave with the ones of the next leader on the same tree.
+     *
+     * @return the outcome of applying each of the trees
+     */
+    private <T> Map<Long, T> applyTrees(int partition, Set<Long> treeIds, boolean isTableSwapped,
+                                        TreeSync<T> treeSync) {
+        if (!isTableSwapped) {
+            return forkJoinPool.submit(() -> treeIds.parallelStream()
+                    .collect(Collectors.toMap(Function.identity(), treeId -> {
+                        try (var transaction = storage.beginTransaction()) {
+                            transaction.lock(getTreeLockName(partition, treeId));
+                            var treeOutcome = treeSync.apply(treeId, transaction, new NestedSetNodeWrites(false));
+                            transaction.commit();
+                            return treeOutcome;
+                        }
+                    })))
+                    .join();
+        }
+
+        try (var transaction = storage.beginTransaction()) {
+            var nestedSetNodeWrites = new NestedSetNodeWrites(true);
+            var treeId2Outcome = new HashMap<Long, T>();
+            for (var treeId : treeIds) {
+                transaction.lock(getTreeLockName(partition, treeId));
+                treeId2Outcome.put(treeId, treeSync.apply(treeId, transaction, nestedSetNodeWrites));
+            }
+            var replacedTableName = nestedSetNodeWrites.swapTable(transaction.getNestedSetNodeStore());
+            transaction.commit();
+            replacedTableName.ifPresent(this::dropReplacedTable);
+            return treeId2Outcome;
+        }
+    }
+
+    private static String getPartitionLockName(int partition) {
+        return NESTED_SET_SYNC_LOCK + "." + partition;
+    }
+
+    private static String getTreeLockName(int partition, long treeId) {
+        return getPartitionLockName(partition) + ".tree." + treeId;
+    }
+
+    /**
+     * Applies the pending updates of a tree within the specified transaction.
+     */
+    @FunctionalInterface
+    private interface TreeSync<T> {
+        T apply(long treeId, SinkStorageTransaction transaction, NestedSetNodeWrites nestedSetNodeWrites);
+    }
+
+    /**
+     * Writes the nodes changed by the trees either row by row or, when the table gets swapped,
+     * collects them for being written all at once in the new version of the table.
+     */
+    private static class NestedSetNodeWrites {
+        private final boolean isTableSwapped;
+        private final List<NestedSetNode> swappedNestedSetNodes = new ArrayList<>();
+
+        NestedSetNodeWrites(boolean isTableSwapped) {
+            this.isTableSwapped = isTableSwapped;
+        }
+
+        void save(NestedSetNodeStore nestedSetNodeStore,
+                  List<NestedSetNode> nestedSetNodes,
+                  List<NestedSetNode> nestedSetNodesUpdates) {
+            if (isTableSwapped) {
+                swappedNestedSetNodes.addAll(nestedSetNodesUpdates);
+            } else {
+                saveNestedSetNodes(nestedSetNodeStore, nestedSetNodes, nestedSetNodesUpdates);
+            }
+        }
+
+        /**
+         * @return the name of the replaced version of the <code>nested_set_node</code> table
+         * in case that the table has been swapped
+         */
+        Optional<String> swapTable(NestedSetNodeStore nestedSetNodeStore) {
+            if (swappedNestedSetNodes.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(nestedSetNodeStore.replaceAll(swappedNestedSetNodes));
+        }
+    }
+
+    /**
+     * Collects the ids of the nodes written by the trees synced in parallel for a partition.
+     */
+    private static class WrittenNestedSetNodeIds {
+        private final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        private volatile boolean isComplete = true;
+
+        /**
+         * @param writtenIds the ids of the written nodes or <code>null</code> when they are not known
+         */
+        void addAll(Set<Long> writtenIds) {
+            if (writtenIds == null) {
+                isComplete = false;
+            } else {
+                ids.addAll(writtenIds);
+            }
+        }
+
+        NestedSetUpdatedEvent toNestedSetUpdatedEvent() {
+            return isComplete ? new NestedSetUpdatedEvent(Set.copyOf(ids)) : new NestedSetUpdatedEvent();
         }
     }
 }
@@ -0,0 +1,120 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.jdbc.NestedSetNodeLogRepository;
+import com.findinpath.sink.jdbc.NestedSetNodeRepository;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings of the {@link NestedSetSyncService}. The settings which are not specified
+ * through the {@link Builder} keep their defaults.
+ */
+public class NestedSetSyncSettings {
+
+    private final ForkJoinPool forkJoinPool;
+    private final ValidationMode validationMode;
+    private final double tableSwapThreshold;
+    private final boolean ignoreUpdatedOnlyChanges;
+    private final double compactionRatio;
+
+    private NestedSetSyncSettings(Builder builder) {
+        this.forkJoinPool = builder.forkJoinPool;
+        this.validationMode = builder.validationMode;
+        this.tableSwapThreshold = builder.tableSwapThreshold;
+        this.ignoreUpdatedOnlyChanges = builder.ignoreUpdatedOnlyChanges;
+        this.compactionRatio = builder.compactionRatio;
+    }
+
+    public static NestedSetSyncSettings defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the pool on which the trees are validated and applied in parallel, or empty when
+     * the sync service creates a pool of its own
+     */
+    public Optional<ForkJoinPool> getForkJoinPool() {
+        return Optional.ofNullable(forkJoinPool);
+    }
+
+    public ValidationMode getValidationMode() {
+        return validationMode;
+    }
+
+    public double getTableSwapThreshold() {
+        return tableSwapThreshold;
+    }
+
+    public boolean isIgnoreUpdatedOnlyChanges() {
+        return ignoreUpdatedOnlyChanges;
+    }
+
+    public double getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    public static class Builder {
+        private ForkJoinPool forkJoinPool;
+        private ValidationMode validationMode = ValidationMode.JVM;
+        private double tableSwapThreshold = NestedSetNodeRepository.NO_TABLE_SWAP;
+        private boolean ignoreUpdatedOnlyChanges;
+        private double compactionRatio = NestedSetNodeLogRepository.NO_COMPACTION;
+
+        private Builder() {
+        }
+
+        /**
+         * @param forkJoinPool the pool on which the trees are validated and applied in parallel.
+         *                     The tasks of the pool block on the sync connections, so it shouldn't be
+         *                     the common pool of the JVM.
+         */
+        public Builder forkJoinPool(ForkJoinPool forkJoinPool) {
+            this.forkJoinPool = forkJoinPool;
+            return this;
+        }
+
+        /**
+         * @param validationMode where the updates without transaction versions are validated
+         */
+        public Builder validationMode(ValidationMode validationMode) {
+            this.validationMode = validationMode;
+            return this;
+        }
+
+        /**
+         * @param tableSwapThreshold the fraction of the rows of the <code>nested_set_node</code> table
+         *                           starting from which the table is rewritten and swapped instead of being updated row by row
+         */
+        public Builder tableSwapThreshold(double tableSwapThreshold) {
+            this.tableSwapThreshold = tableSwapThreshold;
+            return this;
+        }
+
+        /**
+         * @param ignoreUpdatedOnlyChanges whether the updates changing only the <code>updated</code> timestamp
+         *                                 of a node are skipped
+         */
+        public Builder ignoreUpdatedOnlyChanges(boolean ignoreUpdatedOnlyChanges) {
+            this.ignoreUpdatedOnlyChanges = ignoreUpdatedOnlyChanges;
+            return this;
+        }
+
+        /**
+         * @param compactionRatio the ratio of pending log entries to distinct nodes starting from which
+         *                        the superseded pending log entries of a partition are deleted after the sync
+         */
+        public Builder compactionRatio(double compactionRatio) {
+            this.compactionRatio = compactionRatio;
+            return this;
+        }
+
+        public NestedSetSyncSettings build() {
+            return new NestedSetSyncSettings(this);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.SinkCoordinationRepository;
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
+import com.findinpath.sink.model.NestedSetUpdatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listens on a dedicated connection for the notifications sent by the sync of the other sink processes
+ * sharing the same sink database and posts them as {@link NestedSetUpdatedEvent} on the event dispatcher,
+ * so that the {@link NestedSetService} of the current process refreshes only the written nodes in its caches.
+ * <p>
+ * The notifications sent by the current process are skipped, because its own sync posts them already
+ * on the event dispatcher. The notifications which may have been missed while the connection was broken
+ * are accounted for by posting a {@link NestedSetUpdatedEvent} for all the nodes after reconnecting.
+ */
+public class NestedSetUpdateNotificationListener {
+    public static final Duration DEFAULT_WAIT_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetUpdateNotificationListener.class);
+    private static final int CONNECTION_VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final ConnectionProvider connectionProvider;
+    private final EventDispatcher eventDispatcher;
+    private final Duration waitTimeout;
+    private final ExecutorService listenerExecutor;
+    private final Map<Long, Long> treeId2Version = new ConcurrentHashMap<>();
+
+    /**
+     * The connection subscribed to the notifications. It is used only on the listener thread.
+     */
+    private Connection connection;
+    private boolean isReconnect;
+    private volatile boolean running;
+
+    public NestedSetUpdateNotificationListener(ConnectionProvider connectionProvider, EventDispatcher eventDispatcher) {
+        this(connectionProvider, eventDispatcher, DEFAULT_WAIT_TIMEOUT);
+    }
+
+    /**
+     * @param waitTimeout how long the listener waits for notifications before verifying its connection
+     */
+    public NestedSetUpdateNotificationListener(ConnectionProvider connectionProvider, EventDispatcher eventDispatcher,
+                                               Duration waitTimeout) {
+        this.connectionProvider = connectionProvider;
+        this.eventDispatcher = eventDispatcher;
+        this.waitTimeout = waitTimeout;
+        this.listenerExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    public void start() {
+        running = true;
+        listenerExecutor.execute(() -> {
+            while (running) {
+                listen();
+            }
+        });
+    }
+
+    public void stop() {
+        running = false;
+        listenerExecutor.shutdown();
+        try {
+            // the listener thread is blocked at most for the wait timeout on the socket of the connection
+            if (!listenerExecutor.awaitTermination(waitTimeout.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                listenerExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeConnection();
+    }
+
+    /**
+     * Retrieves the latest version of the tree notified by the other sink processes.
+     */
+    public Optional<Long> getTreeVersion(long treeId) {
+        return Optional.ofNullable(treeId2Version.get(treeId));
+    }
+
+    private void listen() {
+        try {
+            if (connection == null) {
+                connection = connectionProvider.getDedicatedConnection();
+                new SinkCoordinationRepository(connection).listen(NestedSetTreeUpdatedNotification.CHANNEL);
+                if (isReconnect) {
+                    LOGGER.info("Reconnected to the notifications about the updates of the nested set trees");
+                    eventDispatcher.post(new NestedSetUpdatedEvent());
+                }
+                isReconnect = true;
+            }
+            var payloads = new SinkCoordinationRepository(connection)
+                    .getNotifications(NestedSetTreeUpdatedNotification.CHANNEL, waitTimeout);
+            if (payloads.isEmpty()) {
+                if (!connection.isValid(CONNECTION_VALIDATION_TIMEOUT_SECONDS)) {
+                    closeConnection();
+                }
+                return;
+            }
+            onNotifications(payloads);
+        } catch (Exception e) {
+            LOGGER.error("Exception occurred while listening for the updates of the nested set trees", e);
+            closeConnection();
+            sleep();
+        }
+    }
+
+    /**
+     * The notifications received together are posted as a single event.
+     */
+    private void onNotifications(Iterable<String> payloads) {
+        Set<Long> nestedSetNodeIds = new HashSet<>();
+        var isUpdated = false;
+        var isComplete = true;
+        for (var payload : payloads) {
+            var notification = NestedSetTreeUpdatedNotification.fromPayload(payload);
+            if (notification.isLocal()) {
+                continue;
+            }
+            isUpdated = true;
+            treeId2Version.merge(notification.getTreeId(), notification.getVersion(), Math::max);
+            var notifiedNestedSetNodeIds = notification.getNestedSetNodeIds();
+            if (notifiedNestedSetNodeIds.isPresent()) {
+                nestedSetNodeIds.addAll(notifiedNestedSetNodeIds.get());
+            } else {
+                isComplete = false;
+            }
+        }
+        if (isUpdated) {
+            eventDispatcher.post(isComplete ? new NestedSetUpdatedEvent(nestedSetNodeIds) : new NestedSetUpdatedEvent());
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(waitTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.warn("Exception occurred while closing the connection of the notifications listener", e);
+        }
+        connection = null;
+    }
+}
@@ -0,0 +1,80 @@
+package com.findinpath.sink.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Creates the executors of the sink for the configured {@link ExecutionMode}.
+ * <p>
+ * The sink is compiled for Java 11, which is why the executor running each task on its own virtual thread
+ * is looked up through reflection and used only when the JVM running the sink provides it.
+ */
+public final class SinkExecutors {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SinkExecutors.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+
+    private SinkExecutors() {
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param platformExecutor creates the executor used in the {@link ExecutionMode#PLATFORM_THREADS} mode
+     *                         or when the JVM doesn't support virtual threads
+     */
+    public static ExecutorService newExecutor(ExecutionMode executionMode, Supplier<ExecutorService> platformExecutor) {
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            if (isVirtualThreadsSupported()) {
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    LOGGER.warn("The virtual threads executor could not be created, falling back to platform threads", e);
+                }
+            } else {
+                LOGGER.warn("The JVM doesn't support virtual threads, falling back to platform threads");
+            }
+        }
+        return platformExecutor.get();
+    }
+
+    /**
+     * Creates a pool having a fixed number of daemon threads, for the executors which are not shut down
+     * along with the sink.
+     */
+    static ExecutorService newDaemonThreadPool(int threadsCount, String threadName) {
+        return Executors.newFixedThreadPool(threadsCount, runnable -> {
+            var thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a fork-join pool dedicated to the blocking work of the sink, so that it doesn't
+     * starve the users of the common pool of the JVM. The worker threads are daemon threads.
+     */
+    static ForkJoinPool newForkJoinPool(int parallelism, String threadName) {
+        return new ForkJoinPool(parallelism, pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(threadName + "-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    private static Method findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.findinpath.sink.service;
 
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.kafka.NestedSetLogUpdatedEvent;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
+import com.findinpath.sink.model.NestedSetLeadershipChangedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -31,11 +32,19 @@ import java.util.function.Consumer;
  *     <li>another thread would be busy trying to acquire the lock for doing consumption of the event</li>
  *     <li>this thread would verify if there is an event already enqueued, and if so it would complete the method call.</li>
  * </ul>
+ * <p>
+ * When consuming a topic having several partitions, a listener can be created for each of the partitions.
+ * Each of the listeners reacts only on the events concerning its partition and the partitions get
+ * therefore synced in parallel.
  */
 public class SquashingNestedSetLogUpdateListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(SquashingNestedSetLogUpdateListener.class);
 
     private final Consumer<NestedSetLogUpdatedEvent> consumer;
+    /**
+     * The partition of which the events are listened or <code>null</code> for listening all the events.
+     */
+    private final Integer partition;
     /**
      * The executor used by this listener for notifying
      * asynchronously the downstream services about updates in the nested set log
@@ -52,18 +61,61 @@ public class SquashingNestedSetLogUpdateListener {
      * @param consumer gets notified (in an async fashion) about updates in the nested set log
      */
     public SquashingNestedSetLogUpdateListener(Consumer<NestedSetLogUpdatedEvent> consumer,
-                                               EventBus eventBus) {
+                                               EventDispatcher eventDispatcher) {
+        this(null, consumer, eventDispatcher);
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param partition the partition of the topic for which the updates are listened
+     * @param consumer  gets notified (in an async fashion) about updates in the nested set log of the partition
+     */
+    public SquashingNestedSetLogUpdateListener(Integer partition,
+                                               Consumer<NestedSetLogUpdatedEvent> consumer,
+                                               EventDispatcher eventDispatcher) {
+        this(partition, consumer, eventDispatcher, ExecutionMode.PLATFORM_THREADS);
+    }
+
+    /**
+     * Constructor of the class.
+     *
+     * @param partition     the partition of the topic for which the updates are listened
+     * @param consumer      gets notified (in an async fashion) about updates in the nested set log of the partition
+     * @param executionMode the kind of threads on which the consumer gets notified. The squashing of the events
+     *                      doesn't depend on the number of threads, which is unbounded for virtual threads.
+     */
+    public SquashingNestedSetLogUpdateListener(Integer partition,
+                                               Consumer<NestedSetLogUpdatedEvent> consumer,
+                                               EventDispatcher eventDispatcher,
+                                               ExecutionMode executionMode) {
+        this.partition = partition;
         this.consumer = consumer;
-        this.notificationExecutor = Executors.newFixedThreadPool(3);
-        eventBus.register(this);
+        this.notificationExecutor = SinkExecutors.newExecutor(executionMode, () -> Executors.newFixedThreadPool(3));
+        eventDispatcher.register(NestedSetLogUpdatedEvent.class, this::onNestedSetLogUpdated);
+        eventDispatcher.register(NestedSetLeadershipChangedEvent.class, this::onLeadershipChanged);
     }
 
-    @Subscribe
     public void onNestedSetLogUpdated(NestedSetLogUpdatedEvent nestedSetLogUpdatedEvent) {
+        if (partition != null && !nestedSetLogUpdatedEvent.getPartitions().contains(partition)) {
+            return;
+        }
         LOGGER.info("Received NestedSetLogUpdatedEvent");
         notificationExecutor.execute(() -> this.notifySyncService(nestedSetLogUpdatedEvent));
     }
 
+    /**
+     * Syncs the log entries written, but not synced yet, by the previous leader
+     * when the sink instance takes over the leadership.
+     */
+    public void onLeadershipChanged(NestedSetLeadershipChangedEvent event) {
+        if (!event.isLeader()) {
+            return;
+        }
+        var nestedSetLogUpdatedEvent = new NestedSetLogUpdatedEvent(partition == null ? Set.of() : Set.of(partition));
+        notificationExecutor.execute(() -> this.notifySyncService(nestedSetLogUpdatedEvent));
+    }
+
     public void stop() {
         try {
             if (!notificationExecutor.awaitTermination(800, TimeUnit.MILLISECONDS)) {
@@ -80,8 +132,8 @@ public class SquashingNestedSetLogUpdateListener {
         if (isNotificationEnqueued) {
             try {
                 LOGGER.debug("Trying to acquire the notification lock");
-                while (!notificationLock.writeLock().tryLock()) {
-                }
+                // parking instead of spinning, so that a virtual thread waiting for the lock releases its carrier thread
+                notificationLock.writeLock().lock();
                 notificationEnqueued.set(false);
 
                 LOGGER.info("Notifying consumer about new updates on the nested_set_node_log table");
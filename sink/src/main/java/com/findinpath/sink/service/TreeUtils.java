@@ -16,10 +16,17 @@ import java.util.stream.Stream;
 
 import static com.google.common.collect.Comparators.isInStrictOrder;
 
-class TreeUtils {
+public class TreeUtils {
 
     public static Optional<TreeNode> buildTree(List<NestedSetNode> nestedSetNodes) {
-        if (!isValidNestedSet(nestedSetNodes)) return Optional.empty();
+        return buildTree(nestedSetNodes, CoordinatesMode.DENSE);
+    }
+
+    public static Optional<TreeNode> buildTree(List<NestedSetNode> nestedSetNodes, CoordinatesMode coordinatesMode) {
+        var isValid = coordinatesMode == CoordinatesMode.SPARSE
+                ? isValidSparseNestedSet(nestedSetNodes)
+                : isValidNestedSet(nestedSetNodes);
+        if (!isValid) return Optional.empty();
 
         var nestedSetNodeIterator = nestedSetNodes
                 .stream()
@@ -47,7 +54,7 @@ class TreeUtils {
         return Optional.of(root);
     }
 
-    private static boolean isValidNestedSet(List<NestedSetNode> nestedSetNodes) {
+    static boolean isValidNestedSet(List<NestedSetNode> nestedSetNodes) {
         if (nestedSetNodes == null || nestedSetNodes.isEmpty()) return false;
 
         var nestedSetNodeWithInvalidCoordinates = nestedSetNodes.stream()
@@ -89,6 +96,53 @@ class TreeUtils {
         return allCoordinates.get(allCoordinates.size() - 1) == nestedSetNodes.size() * 2;
     }
 
+    /**
+     * Verifies whether the nodes form a valid nested set model in which
+     * gaps are allowed between the coordinates of the nodes.
+     * As opposed to {@link #isValidNestedSet(List)} the maximum coordinate is not
+     * bound to the number of nodes, but the nesting of the nodes is verified explicitly.
+     */
+    static boolean isValidSparseNestedSet(List<NestedSetNode> nestedSetNodes) {
+        if (nestedSetNodes == null || nestedSetNodes.isEmpty()) return false;
+
+        var nestedSetNodeWithInvalidCoordinates = nestedSetNodes.stream()
+                .filter(nestedSetNode -> nestedSetNode.getLeft() >= nestedSetNode.getRight())
+                .findAny();
+        if (nestedSetNodeWithInvalidCoordinates.isPresent()) {
+            return false;
+        }
+
+        var allCoordinatesSorted = nestedSetNodes.stream()
+                .flatMap(nestedSetNode -> Stream.of(nestedSetNode.getLeft(), nestedSetNode.getRight()))
+                .sorted()
+                .collect(Collectors.toList());
+        // verify that there are no duplicated coordinates in the nested set
+        if (!isInStrictOrder(allCoordinatesSorted, Ordering.natural())) {
+            return false;
+        }
+
+        // verify that the nodes are properly nested within a single root node
+        var nestedSetNodesSortedByLeft = nestedSetNodes.stream()
+                .sorted(Comparator.comparing(NestedSetNode::getLeft))
+                .collect(Collectors.toList());
+        var rightCoordinatesStack = new Stack<Integer>();
+        for (var nestedSetNode : nestedSetNodesSortedByLeft) {
+            while (!rightCoordinatesStack.isEmpty() && rightCoordinatesStack.peek() < nestedSetNode.getLeft()) {
+                rightCoordinatesStack.pop();
+            }
+            if (rightCoordinatesStack.isEmpty() && nestedSetNode != nestedSetNodesSortedByLeft.get(0)) {
+                // there can be only one root node
+                return false;
+            }
+            if (!rightCoordinatesStack.isEmpty() && rightCoordinatesStack.peek() < nestedSetNode.getRight()) {
+                // the node overlaps its parent
+                return false;
+            }
+            rightCoordinatesStack.push(nestedSetNode.getRight());
+        }
+        return true;
+    }
+
     public static List<NestedSetNode> getNestedSetNodes(TreeNode root) {
         Stack<TreeNode> stack = new Stack<>();
         List<NestedSetNode> result = new ArrayList<>();
@@ -112,6 +166,12 @@ class TreeUtils {
 
     public static Optional<TreeNode> applyUpdates(List<NestedSetNode> currentNestedSetNodes,
                                                   List<NestedSetNode> updatedNestedSetNodes) {
+        return applyUpdates(currentNestedSetNodes, updatedNestedSetNodes, CoordinatesMode.DENSE);
+    }
+
+    public static Optional<TreeNode> applyUpdates(List<NestedSetNode> currentNestedSetNodes,
+                                                  List<NestedSetNode> updatedNestedSetNodes,
+                                                  CoordinatesMode coordinatesMode) {
         var nestedSetNodesMap = currentNestedSetNodes.stream()
                 .collect(Collectors.toMap(NestedSetNode::getId, Function.identity()));
 
@@ -119,7 +179,29 @@ class TreeUtils {
         updatedNestedSetNodes
                 .forEach(nestedSetNode -> nestedSetNodesMap.put(nestedSetNode.getId(), nestedSetNode));
 
-        return buildTree(new ArrayList<>(nestedSetNodesMap.values()));
+        return buildTree(new ArrayList<>(nestedSetNodesMap.values()), coordinatesMode);
+    }
+
+    /**
+     * Builds the trees of a forest in which each tree is numbered independently of the other trees.
+     * The nodes are grouped into trees by their tree id.
+     *
+     * @return the root nodes of the trees or empty if any of the trees is not a valid nested set model
+     */
+    public static Optional<List<TreeNode>> buildForest(List<NestedSetNode> nestedSetNodes,
+                                                       CoordinatesMode coordinatesMode) {
+        var treeId2NestedSetNodes = nestedSetNodes.stream()
+                .collect(Collectors.groupingBy(NestedSetNode::getTreeId));
+
+        var roots = new ArrayList<TreeNode>();
+        for (var treeNestedSetNodes : treeId2NestedSetNodes.values()) {
+            var root = buildTree(treeNestedSetNodes, coordinatesMode);
+            if (root.isEmpty()) {
+                return Optional.empty();
+            }
+            roots.add(root.get());
+        }
+        return Optional.of(roots);
     }
 
 }
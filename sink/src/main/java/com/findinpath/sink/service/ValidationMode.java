@@ -0,0 +1,17 @@
+package com.findinpath.sink.service;
+
+/**
+ * Describes where the nested set model is validated before applying the updates from the log.
+ */
+public enum ValidationMode {
+    /**
+     * The nodes of the tree are retrieved from the database and validated in the JVM.
+     */
+    JVM,
+    /**
+     * The nodes of the tree are merged with the pending log entries and validated within
+     * a single PostgreSQL statement which applies as well the updates if they are valid.
+     * Only the outcome of the validation and the number of changed nodes are retrieved.
+     */
+    DATABASE
+}
@@ -0,0 +1,13 @@
+package com.findinpath.sink.storage;
+
+import java.util.Optional;
+
+/**
+ * Store of the named offsets up to which the logs have been synced.
+ */
+public interface LogOffsetStore {
+
+    Optional<Long> getNestedSetLogOffset(String name);
+
+    void saveNestedSetLogOffset(String name, long value);
+}
@@ -0,0 +1,31 @@
+package com.findinpath.sink.storage;
+
+import com.findinpath.sink.model.NestedSetNodeLog;
+
+import java.util.List;
+
+/**
+ * Store of the log entries consumed from the partitions of the nested set node topic.
+ */
+public interface NestedSetNodeLogStore {
+
+    /**
+     * Retrieves, ordered by their ids, the log entries of the partition starting from the log offset of the partition.
+     */
+    List<NestedSetNodeLog> getNestedSetLogUpdates(int partition);
+
+    /**
+     * Deletes the pending log entries without transaction version of the partition
+     * which are superseded by a later log entry of the same node.
+     *
+     * @return the number of deleted log entries
+     */
+    int compactNestedSetLogUpdates(int partition);
+
+    void saveAllLogs(Iterable<NestedSetNodeLog> nestedSetNodeLogs);
+
+    /**
+     * Saves the log entries packed in batches. The storages without a packed format save them as they are.
+     */
+    void saveAllPackedLogs(List<NestedSetNodeLog> nestedSetNodeLogs, boolean compressed);
+}
@@ -0,0 +1,19 @@
+package com.findinpath.sink.storage;
+
+import com.findinpath.sink.model.NestedSetNodeShift;
+
+import java.util.List;
+
+/**
+ * Store of the coordinate shifts consumed from the partitions of the nested set node shift topic.
+ */
+public interface NestedSetNodeShiftLogStore {
+
+    /**
+     * Retrieves the shifts of the partition done by the source transactions having a version
+     * greater than the specified one, ordered by their transaction versions.
+     */
+    List<NestedSetNodeShift> getNestedSetNodeShifts(int partition, long afterTxnVersion);
+
+    void saveAll(Iterable<NestedSetNodeShift> nestedSetNodeShifts);
+}
@@ -0,0 +1,65 @@
+package com.findinpath.sink.storage;
+
+import com.findinpath.sink.model.NestedSetNode;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * Store of the synced nested set nodes.
+ */
+public interface NestedSetNodeStore {
+
+    Optional<NestedSetNode> getNestedSetNode(long id);
+
+    List<NestedSetNode> getNestedSetNodes();
+
+    /**
+     * Retrieves the nested set nodes of the specified trees.
+     */
+    List<NestedSetNode> getNestedSetNodes(Collection<Long> treeIds);
+
+    List<NestedSetNode> getNestedSetNodesByIds(Collection<Long> ids);
+
+    /**
+     * Counts the nested set nodes of the specified trees.
+     */
+    long countNestedSetNodes(Collection<Long> treeIds);
+
+    /**
+     * Retrieves the estimated number of the stored nodes or <code>0</code> when it is not known.
+     */
+    long getEstimatedNestedSetNodesCount();
+
+    void updateAll(Iterable<NestedSetNode> nestedSetNodes);
+
+    /**
+     * Saves the new and the updated nested set nodes one by one.
+     */
+    void saveAll(List<NestedSetNode> newNestedSetNodes,
+                 List<NestedSetNode> updatedNestedSetNodes);
+
+    /**
+     * Saves the changed nested set nodes by rewriting all the stored nodes in a replacement
+     * instead of updating them one by one.
+     *
+     * @return the name of the replaced version of the nodes which needs to be dropped
+     * through {@link #dropReplacedTable(String)} once the transaction has been committed
+     */
+    String replaceAll(List<NestedSetNode> changedNestedSetNodes);
+
+    void dropReplacedTable(String replacedTableName);
+
+    /**
+     * Validates and applies within the storage the pending log entries of a tree,
+     * starting from the log entry with the specified id.
+     * The storages which can't validate the nested set model on their own
+     * throw {@link UnsupportedOperationException}.
+     *
+     * @return the number of written nodes or nothing if the updates don't lead to a valid nested set model
+     */
+    OptionalInt applyValidLogUpdates(int partition, long treeId, int firstLogId,
+                                     boolean denseCoordinates, boolean ignoreUpdatedOnlyChanges);
+}
@@ -0,0 +1,19 @@
+package com.findinpath.sink.storage;
+
+import com.findinpath.sink.model.NestedSetOperation;
+
+import java.util.List;
+
+/**
+ * Store of the operations consumed from the nested set operation topic.
+ */
+public interface NestedSetOperationLogStore {
+
+    /**
+     * Retrieves the logged operations of the source transactions having a version
+     * greater than the specified one, in the order in which they have been performed.
+     */
+    List<NestedSetOperation> getNestedSetOperations(long afterTxnVersion);
+
+    void saveAll(Iterable<NestedSetOperation> nestedSetOperations);
+}
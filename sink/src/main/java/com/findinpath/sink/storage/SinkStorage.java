@@ -0,0 +1,16 @@
+package com.findinpath.sink.storage;
+
+/**
+ * Storage of the sink holding the nested set nodes, the logs of the consumed updates and the log offsets.
+ * <p>
+ * The services of the sink access the storage only through the stores of the transactions
+ * begun on it, which allows running the sync algorithm on top of other storages than PostgreSQL.
+ */
+public interface SinkStorage {
+
+    /**
+     * Begins a transaction on the storage. The changes done through the stores of the transaction
+     * which have not been committed when the transaction gets closed are discarded.
+     */
+    SinkStorageTransaction beginTransaction();
+}
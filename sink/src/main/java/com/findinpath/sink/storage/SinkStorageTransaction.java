@@ -0,0 +1,45 @@
+package com.findinpath.sink.storage;
+
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
+
+/**
+ * Transaction begun on a {@link SinkStorage} giving access to the stores of the sink.
+ */
+public interface SinkStorageTransaction extends AutoCloseable {
+
+    NestedSetNodeStore getNestedSetNodeStore();
+
+    NestedSetNodeLogStore getNestedSetNodeLogStore();
+
+    NestedSetNodeShiftLogStore getNestedSetNodeShiftLogStore();
+
+    NestedSetOperationLogStore getNestedSetOperationLogStore();
+
+    LogOffsetStore getLogOffsetStore();
+
+    /**
+     * Notifies the other processes sharing the storage about the updates of a tree
+     * once the transaction gets committed. The storages which are not shared between processes ignore the notification.
+     */
+    void notifyNestedSetTreeUpdated(NestedSetTreeUpdatedNotification notification);
+
+    /**
+     * Takes the lock with the specified name until the end of the transaction, waiting for the transactions
+     * of the other processes holding it. The storages which are not shared between processes don't lock.
+     */
+    void lock(String name);
+
+    /**
+     * Verifies whether the session level lock with the specified name is still held by the session
+     * with the specified id. The storages which are not shared between processes consider the lock held.
+     */
+    boolean isSessionLockHeld(String name, long sessionId);
+
+    /**
+     * Commits the changes done so far. The transaction can be used further after the commit.
+     */
+    void commit();
+
+    @Override
+    void close();
+}
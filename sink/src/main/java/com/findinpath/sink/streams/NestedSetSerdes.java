@@ -0,0 +1,160 @@
+package com.findinpath.sink.streams;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.model.NestedSetNode;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary serdes for the values kept in the state stores of the Kafka Streams sink.
+ * A nested set node is encoded as its fixed width fields followed by its length-prefixed UTF-8 label.
+ */
+public final class NestedSetSerdes {
+
+    private NestedSetSerdes() {
+    }
+
+    public static Serde<NestedSetNode> nestedSetNode() {
+        return Serdes.serdeFrom(serializer(NestedSetSerdes::writeNestedSetNode),
+                deserializer(NestedSetSerdes::readNestedSetNode));
+    }
+
+    public static Serde<NestedSetTreeState> nestedSetTreeState() {
+        return Serdes.serdeFrom(serializer(NestedSetSerdes::writeNestedSetTreeState),
+                deserializer(NestedSetSerdes::readNestedSetTreeState));
+    }
+
+    public static Serde<NestedSetTreeVersion> nestedSetTreeVersion() {
+        return Serdes.serdeFrom(serializer(NestedSetSerdes::writeNestedSetTreeVersion),
+                deserializer(NestedSetSerdes::readNestedSetTreeVersion));
+    }
+
+    private static void writeNestedSetNode(DataOutputStream out, NestedSetNode nestedSetNode) throws IOException {
+        out.writeLong(nestedSetNode.getId());
+        out.writeLong(nestedSetNode.getTreeId());
+        out.writeInt(nestedSetNode.getLeft());
+        out.writeInt(nestedSetNode.getRight());
+        out.writeBoolean(nestedSetNode.isActive());
+        out.writeLong(nestedSetNode.getCreated().toEpochMilli());
+        out.writeLong(nestedSetNode.getUpdated().toEpochMilli());
+        if (nestedSetNode.getLabel() == null) {
+            out.writeInt(-1);
+        } else {
+            var label = nestedSetNode.getLabel().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(label.length);
+            out.write(label);
+        }
+    }
+
+    private static NestedSetNode readNestedSetNode(DataInputStream in) throws IOException {
+        var nestedSetNode = new NestedSetNode();
+        nestedSetNode.setId(in.readLong());
+        nestedSetNode.setTreeId(in.readLong());
+        nestedSetNode.setLeft(in.readInt());
+        nestedSetNode.setRight(in.readInt());
+        nestedSetNode.setActive(in.readBoolean());
+        nestedSetNode.setCreated(Instant.ofEpochMilli(in.readLong()));
+        nestedSetNode.setUpdated(Instant.ofEpochMilli(in.readLong()));
+        var labelLength = in.readInt();
+        if (labelLength >= 0) {
+            var label = new byte[labelLength];
+            in.readFully(label);
+            nestedSetNode.setLabel(new String(label, StandardCharsets.UTF_8));
+        }
+        return nestedSetNode;
+    }
+
+    private static void writeNestedSetNodes(DataOutputStream out, List<NestedSetNode> nestedSetNodes) throws IOException {
+        out.writeInt(nestedSetNodes.size());
+        for (var nestedSetNode : nestedSetNodes) {
+            writeNestedSetNode(out, nestedSetNode);
+        }
+    }
+
+    private static List<NestedSetNode> readNestedSetNodes(DataInputStream in) throws IOException {
+        var nestedSetNodesCount = in.readInt();
+        var nestedSetNodes = new ArrayList<NestedSetNode>(nestedSetNodesCount);
+        for (int i = 0; i < nestedSetNodesCount; i++) {
+            nestedSetNodes.add(readNestedSetNode(in));
+        }
+        return nestedSetNodes;
+    }
+
+    private static void writeNestedSetTreeState(DataOutputStream out, NestedSetTreeState treeState) throws IOException {
+        out.writeLong(treeState.getTreeId());
+        out.writeLong(treeState.getValidatedVersion());
+        out.writeBoolean(treeState.isValidationPending());
+        out.writeInt(treeState.getConflictingCoordinatesCount());
+    }
+
+    private static NestedSetTreeState readNestedSetTreeState(DataInputStream in) throws IOException {
+        var treeId = in.readLong();
+        var validatedVersion = in.readLong();
+        var validationPending = in.readBoolean();
+        var conflictingCoordinatesCount = in.readInt();
+        return new NestedSetTreeState(treeId, validatedVersion, validationPending, conflictingCoordinatesCount);
+    }
+
+    private static void writeNestedSetTreeVersion(DataOutputStream out, NestedSetTreeVersion treeVersion) throws IOException {
+        out.writeLong(treeVersion.getTreeId());
+        out.writeLong(treeVersion.getVersion());
+        writeNestedSetNodes(out, treeVersion.getNestedSetNodes());
+    }
+
+    private static NestedSetTreeVersion readNestedSetTreeVersion(DataInputStream in) throws IOException {
+        var treeId = in.readLong();
+        var version = in.readLong();
+        return new NestedSetTreeVersion(treeId, version, readNestedSetNodes(in));
+    }
+
+    private static <T> Serializer<T> serializer(Writer<T> writer) {
+        return (topic, value) -> {
+            if (value == null) {
+                return null;
+            }
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                writer.write(out, value);
+            } catch (IOException e) {
+                Utils.sneakyThrow(e);
+            }
+            return bytes.toByteArray();
+        };
+    }
+
+    private static <T> Deserializer<T> deserializer(Reader<T> reader) {
+        return (topic, data) -> {
+            if (data == null) {
+                return null;
+            }
+            try (var in = new DataInputStream(new ByteArrayInputStream(data))) {
+                return reader.read(in);
+            } catch (IOException e) {
+                Utils.sneakyThrow(e);
+                return null;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(DataOutputStream out, T value) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+}
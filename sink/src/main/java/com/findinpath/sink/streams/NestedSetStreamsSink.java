@@ -0,0 +1,80 @@
+package com.findinpath.sink.streams;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.service.CoordinatesMode;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.serializers.KafkaAvroDeserializer;
+import io.confluent.kafka.serializers.KafkaAvroDeserializerConfig;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Runs the {@link NestedSetStreamsTopology} against a Kafka cluster and exposes
+ * the materialized nested set nodes through interactive queries.
+ */
+public class NestedSetStreamsSink {
+
+    public static final String APPLICATION_ID = "nested-set-node.sink-streams";
+
+    private final KafkaStreams kafkaStreams;
+
+    public NestedSetStreamsSink(String kafkaBootstrapServers,
+                                String schemaRegistryUrl,
+                                String inputTopic,
+                                String outputTopic) {
+        this(kafkaBootstrapServers, schemaRegistryUrl, inputTopic, outputTopic, CoordinatesMode.DENSE);
+    }
+
+    public NestedSetStreamsSink(String kafkaBootstrapServers,
+                                String schemaRegistryUrl,
+                                String inputTopic,
+                                String outputTopic,
+                                CoordinatesMode coordinatesMode) {
+        var topology = new NestedSetStreamsTopology(inputTopic, outputTopic,
+                createAvroSerde(schemaRegistryUrl), coordinatesMode).build();
+
+        final Properties props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, APPLICATION_ID);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
+        props.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE);
+        this.kafkaStreams = new KafkaStreams(topology, props);
+    }
+
+    public void start() {
+        kafkaStreams.start();
+    }
+
+    public void stop() {
+        kafkaStreams.close();
+    }
+
+    public Optional<NestedSetNode> getNestedSetNode(long nestedSetNodeId) {
+        var nodesStore = kafkaStreams.store(NestedSetStreamsTopology.NODES_STORE,
+                QueryableStoreTypes.<String, NestedSetNode>keyValueStore());
+        return Optional.ofNullable(nodesStore.get(String.valueOf(nestedSetNodeId)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Serde<GenericRecord> createAvroSerde(String schemaRegistryUrl) {
+        var config = Map.of(
+                AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl,
+                KafkaAvroDeserializerConfig.SPECIFIC_AVRO_READER_CONFIG, false);
+        Serializer<Object> serializer = new KafkaAvroSerializer();
+        Deserializer<Object> deserializer = new KafkaAvroDeserializer();
+        var serde = Serdes.serdeFrom((Serializer<GenericRecord>) (Serializer<?>) serializer,
+                (Deserializer<GenericRecord>) (Deserializer<?>) deserializer);
+        serde.configure(config, false);
+        return serde;
+    }
+}
@@ -0,0 +1,111 @@
+package com.findinpath.sink.streams;
+
+import com.findinpath.sink.kafka.NestedSetLogConsumer;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.service.CoordinatesMode;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+
+import java.time.Duration;
+
+/**
+ * Kafka Streams alternative to the JDBC based sink.
+ * <p>
+ * The nested set node records published by the source are materialized in the
+ * {@link #NODES_STORE} table keyed by the node id and they are additionally grouped per tree
+ * by the {@link NestedSetTreeValidator} in the {@link #TREE_NODES_STORE} state store, along with the
+ * occupancy of the coordinates of the trees in the {@link #TREE_COORDINATES_STORE} state store
+ * and the validation state of the trees in the {@link #TREES_STORE} state store.
+ * The changed trees are validated periodically and each time when a tree forms again a valid nested set model,
+ * its new version is published on the output topic keyed by the tree id.
+ * <p>
+ * The state of the trees is kept locally for each of the stream tasks, so all the nodes of a tree
+ * need to be published on the same partition of the input topic.
+ */
+public class NestedSetStreamsTopology {
+
+    public static final String NODES_STORE = "nested-set-nodes";
+    public static final String TREES_STORE = "nested-set-trees";
+    public static final String TREE_NODES_STORE = "nested-set-tree-nodes";
+    public static final String TREE_COORDINATES_STORE = "nested-set-tree-coordinates";
+    public static final Duration DEFAULT_VALIDATION_INTERVAL = Duration.ofMillis(100);
+
+    private final String inputTopic;
+    private final String outputTopic;
+    private final Serde<GenericRecord> valueSerde;
+    private final CoordinatesMode coordinatesMode;
+    private final Duration validationInterval;
+
+    public NestedSetStreamsTopology(String inputTopic,
+                                    String outputTopic,
+                                    Serde<GenericRecord> valueSerde) {
+        this(inputTopic, outputTopic, valueSerde, CoordinatesMode.DENSE);
+    }
+
+    public NestedSetStreamsTopology(String inputTopic,
+                                    String outputTopic,
+                                    Serde<GenericRecord> valueSerde,
+                                    CoordinatesMode coordinatesMode) {
+        this(inputTopic, outputTopic, valueSerde, coordinatesMode, DEFAULT_VALIDATION_INTERVAL);
+    }
+
+    /**
+     * @param validationInterval how often the trees changed in the meantime are validated
+     */
+    public NestedSetStreamsTopology(String inputTopic,
+                                    String outputTopic,
+                                    Serde<GenericRecord> valueSerde,
+                                    CoordinatesMode coordinatesMode,
+                                    Duration validationInterval) {
+        this.inputTopic = inputTopic;
+        this.outputTopic = outputTopic;
+        this.valueSerde = valueSerde;
+        this.coordinatesMode = coordinatesMode;
+        this.validationInterval = validationInterval;
+    }
+
+    public Topology build() {
+        var builder = new StreamsBuilder();
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(TREES_STORE),
+                Serdes.Long(),
+                NestedSetSerdes.nestedSetTreeState()));
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(TREE_NODES_STORE),
+                Serdes.String(),
+                NestedSetSerdes.nestedSetNode()));
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(TREE_COORDINATES_STORE),
+                Serdes.String(),
+                Serdes.Integer()));
+
+        var nestedSetNodes = builder.stream(inputTopic, Consumed.with(Serdes.String(), valueSerde))
+                .filter((key, value) -> value != null)
+                .mapValues(value -> NestedSetLogConsumer.toNestedSetNodeLog(value).getNestedSetNode());
+
+        // the key stays the same, so the table doesn't need any repartitioning
+        nestedSetNodes
+                .groupByKey(Grouped.with(Serdes.String(), NestedSetSerdes.nestedSetNode()))
+                .reduce((previousNestedSetNode, nestedSetNode) -> nestedSetNode,
+                        Materialized.<String, NestedSetNode, KeyValueStore<Bytes, byte[]>>as(NODES_STORE)
+                                .withKeySerde(Serdes.String())
+                                .withValueSerde(NestedSetSerdes.nestedSetNode()));
+
+        nestedSetNodes
+                .transform(() -> new NestedSetTreeValidator(coordinatesMode, validationInterval),
+                        TREES_STORE, TREE_NODES_STORE, TREE_COORDINATES_STORE)
+                .to(outputTopic, Produced.with(Serdes.Long(), NestedSetSerdes.nestedSetTreeVersion()));
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,93 @@
+package com.findinpath.sink.streams;
+
+/**
+ * The validation state of a tree along with the number of its coordinates occupied by more than one node.
+ * <p>
+ * While the updates of a source transaction are only partially received, several nodes occupy
+ * usually the same coordinate. Keeping track of the number of the coordinates occupied by more than
+ * one node allows skipping the validation of the whole tree as long as the tree is surely not valid.
+ * <p>
+ * The nodes of the tree and the occupancy of each of its coordinates are kept as separate entries
+ * of the state stores, so that a received node changes only a few small entries of the stores.
+ */
+public class NestedSetTreeState {
+    private final long treeId;
+
+    private long validatedVersion;
+    /**
+     * Whether the tree has changed since it has been validated for the last time.
+     */
+    private boolean validationPending;
+    private int conflictingCoordinatesCount;
+
+    public NestedSetTreeState(long treeId) {
+        this.treeId = treeId;
+    }
+
+    public NestedSetTreeState(long treeId, long validatedVersion, boolean validationPending,
+                              int conflictingCoordinatesCount) {
+        this(treeId);
+        this.validatedVersion = validatedVersion;
+        this.validationPending = validationPending;
+        this.conflictingCoordinatesCount = conflictingCoordinatesCount;
+    }
+
+    public void markChanged() {
+        validationPending = true;
+    }
+
+    /**
+     * @param nodesCount the number of nodes occupying the coordinate after it has been occupied by a node
+     */
+    public void onCoordinateOccupied(int nodesCount) {
+        if (nodesCount == 2) {
+            conflictingCoordinatesCount++;
+        }
+    }
+
+    /**
+     * @param nodesCount the number of nodes occupying the coordinate after it has been released by a node
+     */
+    public void onCoordinateReleased(int nodesCount) {
+        if (nodesCount == 1) {
+            conflictingCoordinatesCount--;
+        }
+    }
+
+    public boolean hasConflictingCoordinates() {
+        return conflictingCoordinatesCount > 0;
+    }
+
+    /**
+     * Marks the current state of the tree as validated.
+     *
+     * @return the new validated version of the tree
+     */
+    public long markValidated() {
+        validationPending = false;
+        return ++validatedVersion;
+    }
+
+    /**
+     * Marks the current state of the tree as checked, without being a valid nested set model.
+     */
+    public void markInvalid() {
+        validationPending = false;
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public long getValidatedVersion() {
+        return validatedVersion;
+    }
+
+    public boolean isValidationPending() {
+        return validationPending;
+    }
+
+    public int getConflictingCoordinatesCount() {
+        return conflictingCoordinatesCount;
+    }
+}
@@ -0,0 +1,166 @@
+package com.findinpath.sink.streams;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.service.CoordinatesMode;
+import com.findinpath.sink.service.TreeUtils;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps in the state stores of the {@link NestedSetStreamsTopology} the latest received state
+ * of the nodes of each of the trees and forwards a new {@link NestedSetTreeVersion} of a tree only when
+ * the tree forms a valid nested set model.
+ * <p>
+ * Each received node updates only its own entry in the {@link NestedSetStreamsTopology#TREE_NODES_STORE}
+ * state store and the occupancy counters of its coordinates in the
+ * {@link NestedSetStreamsTopology#TREE_COORDINATES_STORE} state store. The changed trees are validated
+ * periodically on a punctuation instead of on each record, so that the updates of a source transaction
+ * received in a burst lead to a single validation of the tree.
+ * <p>
+ * The tree is validated by using the same rules as {@link TreeUtils#buildTree(java.util.List, CoordinatesMode)},
+ * but only in case that none of its coordinates is occupied by more than one node.
+ */
+public class NestedSetTreeValidator implements Transformer<String, NestedSetNode, KeyValue<Long, NestedSetTreeVersion>> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetTreeValidator.class);
+
+    private final CoordinatesMode coordinatesMode;
+    private final Duration validationInterval;
+
+    private ProcessorContext context;
+    private KeyValueStore<Long, NestedSetTreeState> treesStore;
+    private KeyValueStore<String, NestedSetNode> treeNodesStore;
+    private KeyValueStore<String, Integer> treeCoordinatesStore;
+
+    /**
+     * @param validationInterval how often the trees changed in the meantime are validated
+     */
+    public NestedSetTreeValidator(CoordinatesMode coordinatesMode, Duration validationInterval) {
+        this.coordinatesMode = coordinatesMode;
+        this.validationInterval = validationInterval;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void init(ProcessorContext context) {
+        this.context = context;
+        treesStore = (KeyValueStore<Long, NestedSetTreeState>) context.getStateStore(NestedSetStreamsTopology.TREES_STORE);
+        treeNodesStore = (KeyValueStore<String, NestedSetNode>) context.getStateStore(NestedSetStreamsTopology.TREE_NODES_STORE);
+        treeCoordinatesStore = (KeyValueStore<String, Integer>) context.getStateStore(NestedSetStreamsTopology.TREE_COORDINATES_STORE);
+        context.schedule(validationInterval, PunctuationType.WALL_CLOCK_TIME, timestamp -> validateChangedTrees());
+    }
+
+    @Override
+    public KeyValue<Long, NestedSetTreeVersion> transform(String key, NestedSetNode nestedSetNode) {
+        var treeId = nestedSetNode.getTreeId();
+        var treeNodeKey = getTreeEntryKey(treeId, nestedSetNode.getId());
+        var previousNestedSetNode = treeNodesStore.get(treeNodeKey);
+        if (nestedSetNode.equals(previousNestedSetNode)) {
+            // the node has been received again without any changes
+            return null;
+        }
+
+        var treeState = treesStore.get(treeId);
+        if (treeState == null) {
+            treeState = new NestedSetTreeState(treeId);
+        }
+        if (previousNestedSetNode != null) {
+            releaseCoordinate(treeState, previousNestedSetNode.getLeft());
+            releaseCoordinate(treeState, previousNestedSetNode.getRight());
+        }
+        occupyCoordinate(treeState, nestedSetNode.getLeft());
+        occupyCoordinate(treeState, nestedSetNode.getRight());
+        treeNodesStore.put(treeNodeKey, nestedSetNode);
+        treeState.markChanged();
+        treesStore.put(treeId, treeState);
+        return null;
+    }
+
+    private void occupyCoordinate(NestedSetTreeState treeState, int coordinate) {
+        var coordinateKey = getTreeEntryKey(treeState.getTreeId(), coordinate);
+        var nodesCount = treeCoordinatesStore.get(coordinateKey);
+        var newNodesCount = nodesCount == null ? 1 : nodesCount + 1;
+        treeCoordinatesStore.put(coordinateKey, newNodesCount);
+        treeState.onCoordinateOccupied(newNodesCount);
+    }
+
+    private void releaseCoordinate(NestedSetTreeState treeState, int coordinate) {
+        var coordinateKey = getTreeEntryKey(treeState.getTreeId(), coordinate);
+        var nodesCount = treeCoordinatesStore.get(coordinateKey);
+        var newNodesCount = nodesCount == null ? 0 : nodesCount - 1;
+        if (newNodesCount <= 0) {
+            treeCoordinatesStore.delete(coordinateKey);
+        } else {
+            treeCoordinatesStore.put(coordinateKey, newNodesCount);
+        }
+        treeState.onCoordinateReleased(newNodesCount);
+    }
+
+    /**
+     * Validates the trees which have changed since their last validation and which don't have
+     * any coordinate occupied by several nodes.
+     */
+    private void validateChangedTrees() {
+        var changedTreeStates = new ArrayList<NestedSetTreeState>();
+        try (var treeStates = treesStore.all()) {
+            treeStates.forEachRemaining(entry -> {
+                if (entry.value.isValidationPending() && !entry.value.hasConflictingCoordinates()) {
+                    changedTreeStates.add(entry.value);
+                }
+            });
+        }
+
+        for (var treeState : changedTreeStates) {
+            var treeId = treeState.getTreeId();
+            var tree = TreeUtils.buildTree(getNestedSetNodes(treeId), coordinatesMode);
+            if (tree.isPresent()) {
+                var version = treeState.markValidated();
+                LOGGER.debug("Validated the version " + version + " of the tree " + treeId);
+                context.forward(treeId, new NestedSetTreeVersion(treeId, version, TreeUtils.getNestedSetNodes(tree.get())));
+            } else {
+                treeState.markInvalid();
+            }
+            treesStore.put(treeId, treeState);
+        }
+    }
+
+    private List<NestedSetNode> getNestedSetNodes(long treeId) {
+        var nestedSetNodes = new ArrayList<NestedSetNode>();
+        try (var treeNodes = treeNodesStore.range(getTreeKeyPrefix(treeId), getTreeKeyUpperBound(treeId))) {
+            treeNodes.forEachRemaining(entry -> nestedSetNodes.add(entry.value));
+        }
+        return nestedSetNodes;
+    }
+
+    /**
+     * The entries of a tree share the same key prefix, so that they can be read through a range query
+     * (e.g. : <code>12:345</code> for the node <code>345</code> of the tree <code>12</code>).
+     */
+    private static String getTreeEntryKey(long treeId, long entryId) {
+        return getTreeKeyPrefix(treeId) + entryId;
+    }
+
+    private static String getTreeKeyPrefix(long treeId) {
+        return treeId + ":";
+    }
+
+    /**
+     * The character following <code>:</code> bounds the keys of the tree without matching any of them.
+     */
+    private static String getTreeKeyUpperBound(long treeId) {
+        return treeId + ";";
+    }
+
+    @Override
+    public void close() {
+    }
+}
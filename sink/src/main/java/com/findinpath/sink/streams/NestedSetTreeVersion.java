@@ -0,0 +1,45 @@
+package com.findinpath.sink.streams;
+
+import com.findinpath.sink.model.NestedSetNode;
+
+import java.util.List;
+
+/**
+ * Models a state of a tree which has been validated to be a valid nested set model.
+ * The versions of a tree are increasing with each validated state.
+ */
+public class NestedSetTreeVersion {
+    private final long treeId;
+    private final long version;
+    /**
+     * The nodes of the tree in their preorder representation.
+     */
+    private final List<NestedSetNode> nestedSetNodes;
+
+    public NestedSetTreeVersion(long treeId, long version, List<NestedSetNode> nestedSetNodes) {
+        this.treeId = treeId;
+        this.version = version;
+        this.nestedSetNodes = nestedSetNodes;
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<NestedSetNode> getNestedSetNodes() {
+        return nestedSetNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetTreeVersion{" +
+                "treeId=" + treeId +
+                ", version=" + version +
+                ", nestedSetNodes=" + nestedSetNodes +
+                '}';
+    }
+}
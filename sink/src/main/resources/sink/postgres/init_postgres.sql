@@ -1,5 +1,6 @@
 CREATE TABLE nested_set_node(
     id bigint,
+    tree_id bigint NOT NULL DEFAULT 0,
     label varchar(256),
     lft int NOT NULL,
     rgt int NOT NULL,
@@ -9,23 +10,86 @@ CREATE TABLE nested_set_node(
     primary key (id)
 );
 
+CREATE INDEX nested_set_node_tree_id_idx ON nested_set_node (tree_id);
 
+
+-- the log entries are kept separately for each of the partitions of the topic from which they are consumed.
+-- The table is partitioned by ranges of ids so that the ranges already synced can be dropped entirely.
+-- The ranges are created ahead by the NestedSetNodeLogRetentionService and the default partition catches
+-- the entries written beyond them.
 CREATE TABLE nested_set_node_log(
     id bigserial,
+    log_partition int NOT NULL DEFAULT 0,
     tree_node_id bigint,
+    tree_id bigint NOT NULL DEFAULT 0,
     label varchar(256),
     lft int NOT NULL,
     rgt int NOT NULL,
     active boolean NOT NULL,
     created TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
     updated TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
+    txn_version bigint,
+    txn_row_count int,
+    coordinates_version bigint,
+    primary key (id)
+) PARTITION BY RANGE (id);
+
+CREATE INDEX nested_set_node_log_partition_idx ON nested_set_node_log (log_partition, id);
+
+CREATE TABLE nested_set_node_log_0 PARTITION OF nested_set_node_log FOR VALUES FROM (0) TO (1000000);
+CREATE TABLE nested_set_node_log_default PARTITION OF nested_set_node_log DEFAULT;
+
+-- alternative storage of the log entries where the entries of a partition consumed within a poll are
+-- binary encoded together into a single row. The batches share the ids with the nested_set_node_log table.
+CREATE TABLE nested_set_node_log_batch(
+    id bigint NOT NULL DEFAULT nextval('nested_set_node_log_id_seq'),
+    log_partition int NOT NULL DEFAULT 0,
+    node_count int NOT NULL,
+    compressed boolean NOT NULL,
+    nodes bytea NOT NULL,
     primary key (id)
 );
 
+CREATE INDEX nested_set_node_log_batch_partition_idx ON nested_set_node_log_batch (log_partition, id);
+
+CREATE TABLE nested_set_node_shift_log(
+    id bigserial,
+    log_partition int NOT NULL DEFAULT 0,
+    shift_id bigint NOT NULL,
+    tree_id bigint NOT NULL DEFAULT 0,
+    coordinate varchar(3) NOT NULL,
+    range_from int NOT NULL,
+    range_to int NOT NULL,
+    delta int NOT NULL,
+    txn_version bigint NOT NULL,
+    txn_row_count int NOT NULL,
+    primary key (id)
+);
+
+-- the offsets of the partitions, other than the partition 0, are suffixed with the partition number
+-- (e.g. : 'nested_set_node_log.1') and are created when the partition is synced for the first time
 CREATE TABLE log_offset(
     name varchar(256),
     value bigint,
     primary key (name)
 );
 
-INSERT INTO log_offset (name, value) VALUES ('nested_set_node_log', 0);
\ No newline at end of file
+INSERT INTO log_offset (name, value) VALUES ('nested_set_node_log', 0);
+INSERT INTO log_offset (name, value) VALUES ('nested_set_node_txn_version', 0);
+
+CREATE TABLE nested_set_operation_log(
+    id bigserial,
+    outbox_id bigint NOT NULL,
+    operation varchar(32) NOT NULL,
+    tree_id bigint NOT NULL DEFAULT 0,
+    node_id bigint NOT NULL,
+    parent_id bigint,
+    label varchar(256),
+    lft int,
+    rgt int,
+    txn_version bigint NOT NULL,
+    created TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
+    primary key (id)
+);
+
+INSERT INTO log_offset (name, value) VALUES ('nested_set_operation_txn_version', 0);
@@ -0,0 +1,84 @@
+package com.findinpath.sink.event;
+
+import com.findinpath.sink.model.NestedSetUpdatedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EventDispatcherTest {
+
+    @Test
+    public void propagateTheExceptionsOfTheInlineListenersAccuracy() {
+        var eventDispatcher = new EventDispatcher();
+        var receivedEvents = new ArrayList<NestedSetUpdatedEvent>();
+        eventDispatcher.register(NestedSetUpdatedEvent.class, event -> {
+            throw new IllegalStateException("failing listener");
+        });
+        eventDispatcher.register(NestedSetUpdatedEvent.class, receivedEvents::add);
+
+        // the listeners registered after the failing listener get the event as well
+        var event = new NestedSetUpdatedEvent();
+        assertThrows(IllegalStateException.class, () -> eventDispatcher.post(event));
+        assertThat(receivedEvents, equalTo(List.of(event)));
+
+        var metrics = eventDispatcher.getMetrics().get(NestedSetUpdatedEvent.class);
+        assertThat(metrics.getDispatchedCount(), equalTo(2L));
+        assertThat(metrics.getFailedCount(), equalTo(1L));
+
+        // the events of other types are not dispatched to the listeners
+        eventDispatcher.post("unrelated event");
+        assertThat(receivedEvents.size(), equalTo(1));
+    }
+
+    @Test
+    public void boundTheQueueOfTheListenersHavingTheirOwnExecutorAccuracy() throws InterruptedException {
+        var eventDispatcher = new EventDispatcher();
+        var executor = Executors.newSingleThreadExecutor();
+        var listenerBlocked = new CountDownLatch(1);
+        var handledEventsCount = new AtomicInteger();
+        var registration = eventDispatcher.register(NestedSetUpdatedEvent.class, event -> {
+            try {
+                listenerBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handledEventsCount.incrementAndGet();
+        }, executor, 2);
+        try {
+            eventDispatcher.post(new NestedSetUpdatedEvent());
+            await().atMost(1, TimeUnit.SECONDS).until(() -> registration.getMetrics().getDispatchedCount() == 1);
+            eventDispatcher.post(new NestedSetUpdatedEvent());
+            eventDispatcher.post(new NestedSetUpdatedEvent());
+            assertThat(registration.getMetrics().getQueuedCount(), equalTo(2L));
+
+            // the poster waits for room in the full queue of the listener
+            var posted = new CountDownLatch(1);
+            new Thread(() -> {
+                eventDispatcher.post(new NestedSetUpdatedEvent());
+                posted.countDown();
+            }).start();
+            assertThat(posted.await(200, TimeUnit.MILLISECONDS), equalTo(false));
+
+            listenerBlocked.countDown();
+            assertThat(posted.await(1, TimeUnit.SECONDS), equalTo(true));
+            await().atMost(1, TimeUnit.SECONDS).until(() -> handledEventsCount.get() == 4);
+            assertThat(registration.getMetrics().getQueuedCount(), equalTo(0L));
+
+            registration.unregister();
+            eventDispatcher.post(new NestedSetUpdatedEvent());
+            assertThat(registration.getMetrics().getDispatchedCount(), equalTo(4L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.service.NestedSetLogService;
+import com.findinpath.sink.service.NestedSetService;
+import com.findinpath.sink.service.NestedSetSyncService;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Testcontainers
+public class ConnectionProviderTest {
+
+    private static final String POSTGRES_DB_NAME = "findinpath";
+    private static final String POSTGRES_NETWORK_ALIAS = "postgres";
+    private static final String POSTGRES_DB_USERNAME = "sa";
+    private static final String POSTGRES_DB_PASSWORD = "p@ssw0rd!";
+    private static final String POSTGRES_DB_DRIVER_CLASS_NAME = "org.postgresql.Driver";
+
+    @Container
+    private static PostgreSQLContainer postgreSQLContainer = new PostgreSQLContainer<>("postgres:12")
+            .withNetworkAliases(POSTGRES_NETWORK_ALIAS)
+            .withInitScript("sink/postgres/init_postgres.sql")
+            .withDatabaseName(POSTGRES_DB_NAME)
+            .withUsername(POSTGRES_DB_USERNAME)
+            .withPassword(POSTGRES_DB_PASSWORD);
+
+    @Test
+    public void readFromTheAvailableReplicasAccuracy() throws Exception {
+        var connectionProvider = new ConnectionProvider(POSTGRES_DB_DRIVER_CLASS_NAME,
+                postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD
+        );
+        var eventDispatcher = new EventDispatcher();
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 2, true, now, now);
+        new NestedSetLogService(eventDispatcher, connectionProvider).saveAll(List.of(rootNode));
+        new NestedSetSyncService(connectionProvider, eventDispatcher).onNestedSetLogUpdate();
+
+        // the first replica is unreachable and gets skipped in favour of the second one
+        try (var pooledConnectionProvider = new ConnectionProvider(POSTGRES_DB_DRIVER_CLASS_NAME,
+                postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD,
+                2, 2, 2,
+                List.of("jdbc:postgresql://localhost:1/" + POSTGRES_DB_NAME, postgreSQLContainer.getJdbcUrl()))) {
+            var replicaNestedSetService = new NestedSetService(pooledConnectionProvider, new EventDispatcher());
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(replicaNestedSetService.getNestedSetNode(1), equalTo(Optional.of(rootNode)));
+            }
+            try (var connection = pooledConnectionProvider.getConnection(ConnectionPurpose.READ)) {
+                assertThat(connection.isReadOnly(), equalTo(true));
+            }
+        }
+    }
+}
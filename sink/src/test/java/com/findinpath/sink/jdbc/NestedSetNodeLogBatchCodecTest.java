@@ -0,0 +1,51 @@
+package com.findinpath.sink.jdbc;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class NestedSetNodeLogBatchCodecTest {
+
+    private static final Instant CREATED = Instant.parse("2020-03-01T10:00:00Z");
+
+    @Test
+    public void encodeDecodeAccuracy() {
+        encodeDecode(false);
+        encodeDecode(true);
+    }
+
+    private void encodeDecode(boolean compressed) {
+        var rootNode = new NestedSetNode(1, "Clothing", 1, 4, true, CREATED, CREATED);
+        rootNode.setTreeId(7);
+        var childNode = new NestedSetNode(2, null, 2, 3, false, CREATED, CREATED.plusMillis(1));
+        childNode.setTreeId(7);
+        var rootNodeLog = new NestedSetNodeLog(0, rootNode, 42L, 2);
+        rootNodeLog.setCoordinatesVersion(41L);
+        var childNodeLog = new NestedSetNodeLog(0, childNode);
+
+        var data = NestedSetNodeLogBatchCodec.encode(List.of(rootNodeLog, childNodeLog), compressed);
+        var decodedNestedSetNodeLogs = NestedSetNodeLogBatchCodec.decode(9, 3, data, compressed);
+
+        assertThat(decodedNestedSetNodeLogs.size(), equalTo(2));
+        var decodedRootNodeLog = decodedNestedSetNodeLogs.get(0);
+        assertThat(decodedRootNodeLog.getId(), equalTo(9));
+        assertThat(decodedRootNodeLog.getPartition(), equalTo(3));
+        assertThat(decodedRootNodeLog.isPacked(), equalTo(true));
+        assertThat(decodedRootNodeLog.getNestedSetNode(), equalTo(rootNode));
+        assertThat(decodedRootNodeLog.getTxnVersion(), equalTo(42L));
+        assertThat(decodedRootNodeLog.getTxnRowCount(), equalTo(2));
+        assertThat(decodedRootNodeLog.getCoordinatesVersion(), equalTo(41L));
+        var decodedChildNodeLog = decodedNestedSetNodeLogs.get(1);
+        assertThat(decodedChildNodeLog.getNestedSetNode(), equalTo(childNode));
+        assertThat(decodedChildNodeLog.getTxnVersion(), nullValue());
+        assertThat(decodedChildNodeLog.getTxnRowCount(), nullValue());
+        assertThat(decodedChildNodeLog.getCoordinatesVersion(), nullValue());
+    }
+}
@@ -0,0 +1,55 @@
+package com.findinpath.sink.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class JournalSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void recoverTheRecordsBeforeATornRecordAccuracy() throws IOException {
+        var payload1 = "first".getBytes(StandardCharsets.UTF_8);
+        var payload2 = "second".getBytes(StandardCharsets.UTF_8);
+        var segment = JournalSegment.create(directory, 100, 1024);
+        segment.append(payload1);
+        segment.append(payload2);
+        segment.force();
+        segment.close();
+
+        var segmentPath = Files.list(directory).findFirst().orElseThrow();
+        var recoveredSegment = JournalSegment.open(segmentPath);
+        assertThat(recoveredSegment.getStartPosition(), equalTo(100L));
+        assertThat(recoveredSegment.getEndPosition(),
+                equalTo(100L + 2 * JournalSegment.RECORD_HEADER_SIZE + payload1.length + payload2.length));
+        assertThat(getString(recoveredSegment.getPayload(0)), equalTo("first"));
+        recoveredSegment.close();
+
+        // corrupt the last byte of the second record as if the crash happened while writing it
+        try (var channel = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+            var lastBytePosition = 2 * JournalSegment.RECORD_HEADER_SIZE + payload1.length + payload2.length - 1;
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), lastBytePosition);
+        }
+        recoveredSegment = JournalSegment.open(segmentPath);
+        assertThat(recoveredSegment.getEndPosition(), equalTo(100L + JournalSegment.RECORD_HEADER_SIZE + payload1.length));
+        recoveredSegment.close();
+    }
+
+    private static String getString(ByteBuffer payload) {
+        var bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package com.findinpath.sink.memory;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.service.CoordinatesMode;
+import com.findinpath.sink.service.ExecutionMode;
+import com.findinpath.sink.service.NestedSetLogFormat;
+import com.findinpath.sink.service.NestedSetLogService;
+import com.findinpath.sink.service.NestedSetService;
+import com.findinpath.sink.service.NestedSetSyncService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InMemorySinkStorageTest {
+
+    private InMemorySinkStorage storage;
+    private NestedSetLogService nestedSetLogService;
+    private NestedSetSyncService nestedSetSyncService;
+    private NestedSetService nestedSetService;
+
+    @BeforeEach
+    public void beforeEach() {
+        var eventDispatcher = new EventDispatcher();
+        storage = new InMemorySinkStorage();
+        nestedSetLogService = new NestedSetLogService(eventDispatcher, storage, 0, NestedSetLogFormat.ROWS);
+        nestedSetSyncService = new NestedSetSyncService(storage, eventDispatcher);
+        nestedSetService = new NestedSetService(storage, eventDispatcher, CoordinatesMode.DENSE);
+    }
+
+    @Test
+    public void syncOutOfOrderUpdatesAccuracy() {
+        var rootNode1 = new NestedSetNode(1, "A", 1, 2, true,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        nestedSetLogService.saveAll(List.of(rootNode1));
+        nestedSetSyncService.onNestedSetLogUpdate();
+
+        // the second version of the root node comes without its corresponding child
+        var rootNode2 = new NestedSetNode(1, "A", 1, 4, true,
+                rootNode1.getCreated(),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        nestedSetLogService.saveAll(List.of(rootNode2));
+        nestedSetSyncService.onNestedSetLogUpdate();
+
+        assertThat(nestedSetService.getTree().orElseThrow().getNestedSetNode(), equalTo(rootNode1));
+
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        nestedSetLogService.saveAll(List.of(childNode2));
+        nestedSetSyncService.onNestedSetLogUpdate();
+
+        var rootNode = nestedSetService.getTree().orElseThrow();
+        assertThat(rootNode.getNestedSetNode(), equalTo(rootNode2));
+        assertThat(rootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+        assertThat(storage.beginTransaction().getNestedSetNodeLogStore().getNestedSetLogUpdates(0).size(), equalTo(1));
+    }
+
+    @Test
+    public void loadSeveralNestedSetNodesConcurrentlyAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 6, true, now, now);
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        var childNode3 = new NestedSetNode(3, "C", 4, 5, true, now, now);
+        nestedSetLogService.saveAll(List.of(rootNode, childNode2, childNode3));
+        nestedSetSyncService.onNestedSetLogUpdate();
+
+        // the nodes are loaded on platform threads when the JVM doesn't support virtual threads
+        var virtualThreadsNestedSetService = new NestedSetService(storage, new EventDispatcher(), CoordinatesMode.DENSE,
+                ExecutionMode.VIRTUAL_THREADS, 2);
+        assertThat(virtualThreadsNestedSetService.getNestedSetNodes(List.of(1L, 2L, 3L, 4L)),
+                equalTo(Map.of(1L, rootNode, 2L, childNode2, 3L, childNode3)));
+        // the second lookup is served by the cache
+        assertThat(virtualThreadsNestedSetService.getNestedSetNodes(List.of(3L, 4L)), equalTo(Map.of(3L, childNode3)));
+    }
+}
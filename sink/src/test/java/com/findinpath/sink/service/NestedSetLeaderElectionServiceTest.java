@@ -0,0 +1,100 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.JdbcSinkStorage;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import org.awaitility.core.ConditionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Testcontainers
+public class NestedSetLeaderElectionServiceTest {
+
+    private static final String POSTGRES_DB_NAME = "findinpath";
+    private static final String POSTGRES_NETWORK_ALIAS = "postgres";
+    private static final String POSTGRES_DB_USERNAME = "sa";
+    private static final String POSTGRES_DB_PASSWORD = "p@ssw0rd!";
+    private static final String POSTGRES_DB_DRIVER_CLASS_NAME = "org.postgresql.Driver";
+
+    private static final Duration CHECK_INTERVAL = Duration.ofMillis(100);
+    private static final ConditionFactory WAIT = await().atMost(5, TimeUnit.SECONDS);
+
+    @Container
+    private static PostgreSQLContainer postgreSQLContainer = new PostgreSQLContainer<>("postgres:12")
+            .withNetworkAliases(POSTGRES_NETWORK_ALIAS)
+            .withInitScript("sink/postgres/init_postgres.sql")
+            .withDatabaseName(POSTGRES_DB_NAME)
+            .withUsername(POSTGRES_DB_USERNAME)
+            .withPassword(POSTGRES_DB_PASSWORD);
+
+    private ConnectionProvider connectionProvider;
+
+    @BeforeEach
+    public void beforeEach() {
+        connectionProvider = new ConnectionProvider(POSTGRES_DB_DRIVER_CLASS_NAME,
+                postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD
+        );
+    }
+
+    @Test
+    public void leaderElectionFailoverAccuracy() {
+        var leaderElectionService = newLeaderElectionService(new EventDispatcher());
+        var followerElectionService = newLeaderElectionService(new EventDispatcher());
+        try {
+            leaderElectionService.start();
+            WAIT.until(leaderElectionService::isLeader);
+            followerElectionService.start();
+
+            WAIT.pollDelay(Duration.ofMillis(300)).until(() -> true);
+            assertThat(followerElectionService.isLeader(), equalTo(false));
+
+            leaderElectionService.stop();
+            WAIT.until(followerElectionService::isLeader);
+        } finally {
+            leaderElectionService.stop();
+            followerElectionService.stop();
+        }
+    }
+
+    @Test
+    public void fenceTheWritesOfTheFormerLeaderAccuracy() {
+        var eventDispatcher = new EventDispatcher();
+        var leaderElectionService = newLeaderElectionService(eventDispatcher);
+        var nestedSetLogService = new NestedSetLogService(eventDispatcher,
+                leaderElectionService.fence(new JdbcSinkStorage(connectionProvider)), 0, NestedSetLogFormat.ROWS);
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNodeLog = new NestedSetNodeLog(0, new NestedSetNode(1, "A", 1, 2, true, now, now));
+        try {
+            leaderElectionService.start();
+            WAIT.until(leaderElectionService::isLeader);
+            nestedSetLogService.saveAllLogs(List.of(rootNodeLog));
+        } finally {
+            leaderElectionService.stop();
+        }
+
+        assertThrows(LeadershipLostException.class, () -> nestedSetLogService.saveAllLogs(List.of(rootNodeLog)));
+    }
+
+    private NestedSetLeaderElectionService newLeaderElectionService(EventDispatcher eventDispatcher) {
+        return new NestedSetLeaderElectionService(connectionProvider, eventDispatcher,
+                NestedSetLeaderElectionService.DEFAULT_LOCK_NAME, CHECK_INTERVAL);
+    }
+}
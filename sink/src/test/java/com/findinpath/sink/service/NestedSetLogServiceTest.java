@@ -1,34 +1,44 @@
 package com.findinpath.sink.service;
 
 import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.journal.NestedSetNodeLogJournal;
 import com.findinpath.sink.kafka.NestedSetLogUpdatedEvent;
 import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetNodeLog;
+import com.findinpath.sink.model.NestedSetNodeShift;
 import com.findinpath.sink.model.NestedSetUpdatedEvent;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
 import org.awaitility.core.ConditionFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 @Testcontainers
 public class NestedSetLogServiceTest {
@@ -45,11 +55,19 @@ public class NestedSetLogServiceTest {
             "TRUNCATE nested_set_node";
 
     private static final String TRUNCATE_NESTED_SET_NODE_LOG_SQL =
-            "TRUNCATE nested_set_node_log";
+            "TRUNCATE nested_set_node_log, nested_set_node_log_batch, nested_set_node_shift_log";
 
     private static final String TRUNCATE_LOG_OFFSET_SQL =
             "TRUNCATE log_offset";
 
+    private static final String COUNT_NESTED_SET_NODE_LOG_SQL =
+            "SELECT COUNT(*) FROM nested_set_node_log";
+
+    private static final String COUNT_REPLACED_TABLES_SQL =
+            "SELECT COUNT(*) FROM pg_tables WHERE tablename LIKE 'nested_set_node_replaced_%'";
+    private static final String SELECT_NESTED_SET_NODE_TABLE_OID_SQL =
+            "SELECT 'nested_set_node'::regclass::oid::bigint";
+
     private static final ConditionFactory WAIT = await().atMost(5, TimeUnit.SECONDS);
 
     @Container
@@ -71,7 +89,7 @@ public class NestedSetLogServiceTest {
 
     private ConnectionProvider connectionProvider;
 
-    private EventBus eventBus;
+    private EventDispatcher eventDispatcher;
 
     private Optional<Instant> lastNestedSetNodeTableUpdate;
     private Optional<Instant> lastNestedSetNodeLogTableUpdate;
@@ -84,16 +102,17 @@ public class NestedSetLogServiceTest {
                 POSTGRES_DB_PASSWORD
         );
 
-        eventBus = new EventBus();
+        eventDispatcher = new EventDispatcher();
 
         resetLastNestedSetNodeTablesUpdateInstants();
-        eventBus.register(this);
+        eventDispatcher.register(NestedSetUpdatedEvent.class, this::onNestedSetUpdatedEvent);
+        eventDispatcher.register(NestedSetLogUpdatedEvent.class, this::onNestedSetLogUpdatedEvent);
 
-        nestedSetService = new NestedSetService(connectionProvider, eventBus);
-        nestedSetLogService = new NestedSetLogService(eventBus, connectionProvider);
-        nestedSetSyncService = new NestedSetSyncService(connectionProvider, eventBus);
+        nestedSetService = new NestedSetService(connectionProvider, eventDispatcher);
+        nestedSetLogService = new NestedSetLogService(eventDispatcher, connectionProvider);
+        nestedSetSyncService = new NestedSetSyncService(connectionProvider, eventDispatcher);
         squashingNestedSetLogUpdateListener = new SquashingNestedSetLogUpdateListener(
-                nestedSetLogUpdatedEvent -> nestedSetSyncService.onNestedSetLogUpdate(), eventBus);
+                nestedSetLogUpdatedEvent -> nestedSetSyncService.onNestedSetLogUpdate(), eventDispatcher);
 
 
         truncateTables();
@@ -210,14 +229,554 @@ public class NestedSetLogServiceTest {
         assertThat(retrievedChildNode.getNestedSetNode(), equalTo(childNode2));
     }
 
-    @Subscribe
+    @Test
+    public void saveTransactionVersionedUpdatesAccuracy() throws Exception {
+        var rootNode1 = new NestedSetNode(1, "A", 1, 2, true,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+
+        nestedSetLogService.saveAllLogs(List.of(new NestedSetNodeLog(0, rootNode1, 1L, 1)));
+
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+
+        // the second transaction has written two tuples, but only one of them has been received
+        var rootNode2 = new NestedSetNode(1, "A", 1, 4, true,
+                rootNode1.getCreated(),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAllLogs(List.of(new NestedSetNodeLog(0, rootNode2, 2L, 2)));
+        WAIT.until(() -> lastNestedSetNodeLogTableUpdate.isPresent());
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode1));
+
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true,
+                rootNode2.getUpdated(),
+                rootNode2.getUpdated());
+
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAllLogs(List.of(new NestedSetNodeLog(0, childNode2, 2L, 2)));
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode2));
+        var retrievedChildNode = retrievedRootNode.getChildren().get(0);
+        assertThat(retrievedChildNode.getNestedSetNode(), equalTo(childNode2));
+    }
+
+    @Test
+    public void saveShiftDeltasAccuracy() throws Exception {
+        var rootNode1 = new NestedSetNode(1, "A", 1, 2, true,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+
+        nestedSetLogService.saveAllLogs(List.of(new NestedSetNodeLog(0, rootNode1, 1L, 1)));
+
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+
+        // the second transaction has inserted a node and published the shift of the root node as delta records
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true,
+                Instant.now().truncatedTo(ChronoUnit.MILLIS),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAllLogs(List.of(new NestedSetNodeLog(0, childNode2, 2L, 3)));
+        WAIT.until(() -> lastNestedSetNodeLogTableUpdate.isPresent());
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getChildren().isEmpty(), equalTo(true));
+
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAllShifts(List.of(
+                new NestedSetNodeShift(1, NestedSetNodeShift.RIGHT_COORDINATE, 2, Integer.MAX_VALUE, 2, 2L, 3),
+                new NestedSetNodeShift(2, NestedSetNodeShift.LEFT_COORDINATE, 3, Integer.MAX_VALUE, 2, 2L, 3)));
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(new NestedSetNode(1, "A", 1, 4, true,
+                rootNode1.getCreated(), rootNode1.getUpdated())));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+    }
+
+    @Test
+    public void bootstrapFromSnapshotAccuracy() throws Exception {
+        var nestedSetBootstrapService = new NestedSetBootstrapService(connectionProvider, eventDispatcher);
+        assertThat(nestedSetBootstrapService.isBootstrapRequired(), equalTo(true));
+
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B \"quoted\", label", 2, 3, true, now, now);
+
+        // a snapshot containing only a part of the source transaction is rejected
+        assertThat(nestedSetBootstrapService.load(List.of(new NestedSetNodeLog(0, rootNode, 2L, 2))), equalTo(false));
+
+        assertThat(nestedSetBootstrapService.load(List.of(
+                new NestedSetNodeLog(0, rootNode, 2L, 2),
+                new NestedSetNodeLog(0, childNode, 2L, 2)), Map.of(0, 2L)), equalTo(true));
+        assertThat(nestedSetBootstrapService.isBootstrapRequired(), equalTo(false));
+        // the offsets of the topic are saved along with the snapshot
+        assertThat(nestedSetBootstrapService.getTopicOffsets(List.of(0, 1)), equalTo(Map.of(0, 2L)));
+
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode));
+
+        // the incremental sync continues after the version of the snapshot
+        var relabeledChildNode = new NestedSetNode(2, "C", 2, 3, true, now, now.plusMillis(1));
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAllLogs(List.of(
+                new NestedSetNodeLog(0, rootNode, 1L, 1),
+                new NestedSetNodeLog(0, relabeledChildNode, 3L, 1)));
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(relabeledChildNode));
+    }
+
+    @Test
+    public void syncPartitionsIndependentlyAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode1 = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        rootNode1.setTreeId(1);
+        var rootNode10 = new NestedSetNode(10, "X", 1, 2, true, now, now);
+        rootNode10.setTreeId(10);
+
+        // the transaction of the tree 1 is only partially received on the partition 0
+        var rootNode1Log = new NestedSetNodeLog(0, rootNode1, 1L, 2);
+        var rootNode10Log = new NestedSetNodeLog(0, rootNode10, 2L, 1);
+        rootNode10Log.setPartition(1);
+        nestedSetLogService.saveAllLogs(List.of(rootNode1Log));
+        nestedSetLogService.saveAllLogs(List.of(rootNode10Log));
+
+        nestedSetSyncService.onNestedSetLogUpdate(1);
+
+        var retrievedRootNode10 = nestedSetService.getTree(10)
+                .orElseThrow(() -> new IllegalStateException("the tree 10 hasn't been synced"));
+        assertThat(retrievedRootNode10.getNestedSetNode(), equalTo(rootNode10));
+        assertThat(nestedSetService.getTree(1).isPresent(), equalTo(false));
+    }
+
+    @Test
+    public void applyCoordinateNeutralUpdatesAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode1 = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode1 = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        nestedSetLogService.saveAll(List.of(rootNode1, childNode1));
+
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+
+        // the root makes space for a new child which has not been received yet
+        var rootNode2 = new NestedSetNode(1, "A", 1, 6, true, now, now);
+        var childNode2 = new NestedSetNode(2, "B2", 2, 3, false, now, now);
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAll(List.of(rootNode2, childNode2));
+
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode1));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+    }
+
+    @Test
+    public void skipUnchangedUpdatesAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        nestedSetLogService.saveAll(List.of(rootNode, childNode));
+
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+        assertThat(nestedSetSyncService.getSkippedUpdatesRatio(), equalTo(0.0));
+
+        // the child is received again unchanged while the root gets relabeled
+        var relabeledRootNode = new NestedSetNode(1, "A2", 1, 4, true, now, now);
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAll(List.of(relabeledRootNode, childNode));
+
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(relabeledRootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode));
+        assertThat(nestedSetSyncService.getSkippedUpdatesRatio(), equalTo(0.25));
+    }
+
+    @Test
+    public void dropDuplicatedLogEntriesAccuracy() {
+        var duplicateFilteringLogService = new NestedSetLogService(eventDispatcher, connectionProvider, 100);
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        duplicateFilteringLogService.saveAll(List.of(rootNode, childNode, childNode));
+        assertThat(count(COUNT_NESTED_SET_NODE_LOG_SQL), equalTo(2));
+
+        // redelivery of the same row versions along with a new version of the child
+        var relabeledChildNode = new NestedSetNode(2, "B2", 2, 3, true, now, now.plusMillis(1));
+        duplicateFilteringLogService.saveAll(List.of(rootNode, childNode, relabeledChildNode));
+        assertThat(count(COUNT_NESTED_SET_NODE_LOG_SQL), equalTo(3));
+
+        WAIT.until(() -> nestedSetService.getTree()
+                .map(retrievedRootNode -> retrievedRootNode.getChildren().get(0).getNestedSetNode())
+                .filter(relabeledChildNode::equals)
+                .isPresent());
+    }
+
+    @Test
+    public void dropSyncedLogPartitionsAccuracy() {
+        executeSql("ALTER SEQUENCE nested_set_node_log_id_seq RESTART WITH 1000000");
+        var retentionService = new NestedSetNodeLogRetentionService(connectionProvider, 2, 0);
+        retentionService.maintainPartitions();
+
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        nestedSetLogService.saveAll(List.of(rootNode, childNode));
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+
+        var relabeledChildNode = new NestedSetNode(2, "B2", 2, 3, true, now, now.plusMillis(1));
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAll(List.of(relabeledChildNode));
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        // the first two log entries are below the log offset and their partition gets dropped
+        assertThat(retentionService.maintainPartitions() > 0, equalTo(true));
+        assertThat(count(COUNT_NESTED_SET_NODE_LOG_SQL), equalTo(1));
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(relabeledChildNode));
+    }
+
+    @Test
+    public void compactPendingLogEntriesAccuracy() {
+        var compactingSyncService = new NestedSetSyncService(connectionProvider, eventDispatcher,
+                CoordinatesMode.DENSE, NestedSetSyncSettings.builder().compactionRatio(1.5).build());
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 6, true, now, now);
+        var childNode1 = new NestedSetNode(2, "B1", 2, 3, true, now, now);
+        var childNode2 = new NestedSetNode(2, "B2", 2, 3, true, now, now.plusMillis(1));
+        var childNode3 = new NestedSetNode(2, "B3", 2, 3, true, now, now.plusMillis(2));
+        var otherChildNode = new NestedSetNode(3, "C", 4, 5, true, now, now);
+
+        // the tree can't be validated as long as the second child is missing
+        saveLogs(5, List.of(rootNode, childNode1, childNode2, childNode3));
+        compactingSyncService.onNestedSetLogUpdate(5);
+        assertThat(nestedSetService.getTree().isPresent(), equalTo(false));
+        assertThat(count(COUNT_NESTED_SET_NODE_LOG_SQL), equalTo(2));
+
+        saveLogs(5, List.of(otherChildNode));
+        compactingSyncService.onNestedSetLogUpdate(5);
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode3));
+        assertThat(retrievedRootNode.getChildren().get(1).getNestedSetNode(), equalTo(otherChildNode));
+    }
+
+    @Test
+    public void savePackedLogBatchesAccuracy() {
+        var packingLogService = new NestedSetLogService(eventDispatcher, connectionProvider, 0,
+                NestedSetLogFormat.PACKED_COMPRESSED);
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode1 = new NestedSetNode(2, "B1", 2, 3, true, now, now);
+        var childNode2 = new NestedSetNode(2, "B2", 2, 3, true, now, now.plusMillis(1));
+
+        var nestedSetNodeLogs = new ArrayList<NestedSetNodeLog>();
+        for (var nestedSetNode : List.of(rootNode, childNode1, childNode2)) {
+            var nestedSetNodeLog = new NestedSetNodeLog(0, nestedSetNode);
+            nestedSetNodeLog.setPartition(6);
+            nestedSetNodeLogs.add(nestedSetNodeLog);
+        }
+        packingLogService.saveAllLogs(nestedSetNodeLogs);
+        assertThat(count(COUNT_NESTED_SET_NODE_LOG_SQL), equalTo(0));
+        nestedSetSyncService.onNestedSetLogUpdate(6);
+
+        // the latest version of a node within the batch wins
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+    }
+
+    @Test
+    public void flushTheJournalAccuracy(@TempDir Path journalDirectory) {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B", 2, 3, true, now, now);
+
+        var journal = new NestedSetNodeLogJournal(journalDirectory, "test", connectionProvider, eventDispatcher);
+        journal.start();
+        journal.append(List.of(new NestedSetNodeLog(0, rootNode), new NestedSetNodeLog(0, childNode)));
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+        journal.stop();
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode));
+
+        // the flushed log entries are not replayed when recovering the journal
+        var recoveredJournal = new NestedSetNodeLogJournal(journalDirectory, "test", connectionProvider, eventDispatcher);
+        recoveredJournal.start();
+        assertThat(recoveredJournal.getUnflushedSize(), equalTo(0L));
+        recoveredJournal.stop();
+        assertThat(count(COUNT_NESTED_SET_NODE_LOG_SQL), equalTo(2));
+    }
+
+    @Test
+    public void validateWithinTheDatabaseAccuracy() {
+        var databaseValidatingSyncService = new NestedSetSyncService(connectionProvider, eventDispatcher,
+                CoordinatesMode.DENSE, NestedSetSyncSettings.builder().validationMode(ValidationMode.DATABASE).build());
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        var overlappingNode = new NestedSetNode(3, "C", 3, 5, true, now, now);
+
+        var rootNodeLog = new NestedSetNodeLog(0, rootNode);
+        rootNodeLog.setPartition(3);
+        nestedSetLogService.saveAllLogs(List.of(rootNodeLog));
+        databaseValidatingSyncService.onNestedSetLogUpdate(3);
+        assertThat(nestedSetService.getTree().isPresent(), equalTo(false));
+
+        var childNodeLog = new NestedSetNodeLog(0, childNode);
+        childNodeLog.setPartition(3);
+        nestedSetLogService.saveAllLogs(List.of(childNodeLog));
+        databaseValidatingSyncService.onNestedSetLogUpdate(3);
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(childNode));
+
+        // the new node overlaps the existing child
+        var overlappingNodeLog = new NestedSetNodeLog(0, overlappingNode);
+        overlappingNodeLog.setPartition(3);
+        nestedSetLogService.saveAllLogs(List.of(overlappingNodeLog));
+        databaseValidatingSyncService.onNestedSetLogUpdate(3);
+
+        retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getChildren().size(), equalTo(1));
+    }
+
+    @Test
+    public void swapTheTableAccuracy() {
+        var tableSwappingSyncService = new NestedSetSyncService(connectionProvider, eventDispatcher,
+                CoordinatesMode.DENSE, NestedSetSyncSettings.builder().tableSwapThreshold(0.5).build());
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode1 = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode1 = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        saveLogs(4, List.of(rootNode1, childNode1));
+        tableSwappingSyncService.onNestedSetLogUpdate(4);
+        executeSql("ANALYZE nested_set_node");
+
+        // inserting a node before the existing child rewrites the whole tree
+        var rootNode2 = new NestedSetNode(1, "A", 1, 6, true, now, now);
+        var childNode2 = new NestedSetNode(2, "B", 4, 5, true, now, now);
+        var newChildNode = new NestedSetNode(3, "C", 2, 3, true, now, now);
+        saveLogs(4, List.of(rootNode2, childNode2, newChildNode));
+        tableSwappingSyncService.onNestedSetLogUpdate(4);
+
+        var retrievedRootNode = nestedSetService.getTree()
+                .orElseThrow(() -> new IllegalStateException("nested set hasn't been initialized"));
+        assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode2));
+        assertThat(retrievedRootNode.getChildren().get(0).getNestedSetNode(), equalTo(newChildNode));
+        assertThat(retrievedRootNode.getChildren().get(1).getNestedSetNode(), equalTo(childNode2));
+        WAIT.until(() -> countReplacedTables() == 0);
+    }
+
+    @Test
+    public void swapTheTableForTheWholeBatchAccuracy() {
+        var tableSwappingSyncService = new NestedSetSyncService(connectionProvider, eventDispatcher,
+                CoordinatesMode.DENSE, NestedSetSyncSettings.builder().tableSwapThreshold(1.0).build());
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNodes = new ArrayList<NestedSetNode>();
+        var batchUpdates = new ArrayList<NestedSetNode>();
+        for (long treeId : List.of(1L, 10L)) {
+            var rootNode1 = new NestedSetNode(treeId, "A" + treeId, 1, 4, true, now, now);
+            rootNode1.setTreeId(treeId);
+            var childNode1 = new NestedSetNode(treeId + 1, "B" + treeId, 2, 3, true, now, now);
+            childNode1.setTreeId(treeId);
+            saveLogs(5, List.of(rootNode1, childNode1));
+
+            // inserting a node before the existing child rewrites the tree, which holds only half of the rows
+            var rootNode2 = new NestedSetNode(treeId, "A" + treeId, 1, 6, true, now, now);
+            rootNode2.setTreeId(treeId);
+            var childNode2 = new NestedSetNode(treeId + 1, "B" + treeId, 4, 5, true, now, now);
+            childNode2.setTreeId(treeId);
+            var newChildNode = new NestedSetNode(treeId + 2, "C" + treeId, 2, 3, true, now, now);
+            newChildNode.setTreeId(treeId);
+            rootNodes.add(rootNode2);
+            batchUpdates.addAll(List.of(rootNode2, childNode2, newChildNode));
+        }
+        tableSwappingSyncService.onNestedSetLogUpdate(5);
+        executeSql("ANALYZE nested_set_node");
+        var tableOid = count(SELECT_NESTED_SET_NODE_TABLE_OID_SQL);
+
+        saveLogs(5, batchUpdates);
+        tableSwappingSyncService.onNestedSetLogUpdate(5);
+
+        // none of the trees reaches the threshold on its own, but the batch as a whole does
+        assertThat(count(SELECT_NESTED_SET_NODE_TABLE_OID_SQL) != tableOid, equalTo(true));
+        for (var rootNode : rootNodes) {
+            var retrievedRootNode = nestedSetService.getTree(rootNode.getTreeId())
+                    .orElseThrow(() -> new IllegalStateException("the tree " + rootNode.getTreeId() + " hasn't been synced"));
+            assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+            assertThat(retrievedRootNode.getChildren().size(), equalTo(2));
+        }
+        WAIT.until(() -> countReplacedTables() == 0);
+    }
+
+    @Test
+    public void syncTreeTransactionsIndependentlyAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode1 = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        rootNode1.setTreeId(1);
+        var rootNode10 = new NestedSetNode(10, "X", 1, 2, true, now, now);
+        rootNode10.setTreeId(10);
+
+        // the transaction of the tree 1 precedes the one of the tree 10, but it is only partially received
+        var rootNode1Log = new NestedSetNodeLog(0, rootNode1, 1L, 2);
+        rootNode1Log.setPartition(2);
+        var rootNode10Log = new NestedSetNodeLog(0, rootNode10, 2L, 1);
+        rootNode10Log.setPartition(2);
+        nestedSetLogService.saveAllLogs(List.of(rootNode1Log, rootNode10Log));
+
+        nestedSetSyncService.onNestedSetLogUpdate(2);
+
+        var retrievedRootNode10 = nestedSetService.getTree(10)
+                .orElseThrow(() -> new IllegalStateException("the tree 10 hasn't been synced"));
+        assertThat(retrievedRootNode10.getNestedSetNode(), equalTo(rootNode10));
+        assertThat(nestedSetService.getTree(1).isPresent(), equalTo(false));
+        assertThat(nestedSetSyncService.getTreeLags(), equalTo(Map.of(1L, 1)));
+
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        childNode2.setTreeId(1);
+        var childNode2Log = new NestedSetNodeLog(0, childNode2, 1L, 2);
+        childNode2Log.setPartition(2);
+        nestedSetLogService.saveAllLogs(List.of(childNode2Log));
+
+        nestedSetSyncService.onNestedSetLogUpdate(2);
+
+        var retrievedRootNode1 = nestedSetService.getTree(1)
+                .orElseThrow(() -> new IllegalStateException("the tree 1 hasn't been synced"));
+        assertThat(retrievedRootNode1.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+        assertThat(nestedSetSyncService.getTreeLags().isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void syncTreesIndependentlyAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode1 = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        rootNode1.setTreeId(1);
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        childNode2.setTreeId(1);
+        var rootNode10 = new NestedSetNode(10, "X", 1, 2, true, now, now);
+        rootNode10.setTreeId(10);
+
+        // the child of the tree 1 has not been received yet
+        nestedSetLogService.saveAll(List.of(rootNode1, rootNode10));
+
+        WAIT.until(() -> lastNestedSetNodeTableUpdate.isPresent());
+
+        var retrievedRootNode10 = nestedSetService.getTree(10)
+                .orElseThrow(() -> new IllegalStateException("the tree 10 hasn't been synced"));
+        assertThat(retrievedRootNode10.getNestedSetNode(), equalTo(rootNode10));
+        assertThat(nestedSetService.getTree(1).isPresent(), equalTo(false));
+
+        resetLastNestedSetNodeTablesUpdateInstants();
+        nestedSetLogService.saveAll(List.of(childNode2));
+
+        waitUntilNextNestedSetNodeTableUpdate();
+
+        var retrievedRootNode1 = nestedSetService.getTree(1)
+                .orElseThrow(() -> new IllegalStateException("the tree 1 hasn't been synced"));
+        assertThat(retrievedRootNode1.getNestedSetNode(), equalTo(rootNode1));
+        assertThat(retrievedRootNode1.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+    }
+
+    @Test
+    public void skipTheLogEntriesOfTheSyncedTreesAccuracy() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode1 = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        rootNode1.setTreeId(1);
+        var rootNode10 = new NestedSetNode(10, "X", 1, 2, true, now, now);
+        rootNode10.setTreeId(10);
+
+        // the child of the tree 1 has not been received yet
+        saveLogs(7, List.of(rootNode1, rootNode10));
+        nestedSetSyncService.onNestedSetLogUpdate(7);
+        assertThat(nestedSetSyncService.getTreeLags(), equalTo(Map.of(1L, 1)));
+
+        // the synced tree 10 is not diffed again while the tree 1 keeps the offset of the partition behind
+        nestedSetSyncService.onNestedSetLogUpdate(7);
+        assertThat(nestedSetSyncService.getSkippedUpdatesRatio(), equalTo(0.0));
+        assertThat(nestedSetSyncService.getTreeLags(), equalTo(Map.of(1L, 1)));
+
+        var childNode2 = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        childNode2.setTreeId(1);
+        saveLogs(7, List.of(childNode2));
+        nestedSetSyncService.onNestedSetLogUpdate(7);
+
+        var retrievedRootNode1 = nestedSetService.getTree(1)
+                .orElseThrow(() -> new IllegalStateException("the tree 1 hasn't been synced"));
+        assertThat(retrievedRootNode1.getChildren().get(0).getNestedSetNode(), equalTo(childNode2));
+        assertThat(nestedSetSyncService.getTreeLags().isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void syncMoreTreesThanSyncConnectionsAccuracy() throws Exception {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNodes = new ArrayList<NestedSetNode>();
+        for (long treeId = 1; treeId <= 8; treeId++) {
+            var rootNode = new NestedSetNode(treeId, "T" + treeId, 1, 2, true, now, now);
+            rootNode.setTreeId(treeId);
+            rootNodes.add(rootNode);
+        }
+        saveLogs(3, rootNodes);
+
+        // a single sync connection has to be enough for applying the trees in parallel
+        var forkJoinPool = new ForkJoinPool(4);
+        try (var pooledConnectionProvider = new ConnectionProvider(POSTGRES_DB_DRIVER_CLASS_NAME,
+                postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD,
+                1, 1, 1,
+                List.of())) {
+            var pooledSyncService = new NestedSetSyncService(pooledConnectionProvider, eventDispatcher,
+                    CoordinatesMode.DENSE, NestedSetSyncSettings.builder().forkJoinPool(forkJoinPool).build());
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> pooledSyncService.onNestedSetLogUpdate(3));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+
+        for (var rootNode : rootNodes) {
+            var retrievedRootNode = nestedSetService.getTree(rootNode.getTreeId())
+                    .orElseThrow(() -> new IllegalStateException("the tree " + rootNode.getTreeId() + " hasn't been synced"));
+            assertThat(retrievedRootNode.getNestedSetNode(), equalTo(rootNode));
+        }
+    }
+
     public void onNestedSetUpdatedEvent(NestedSetUpdatedEvent e) {
         var now = Instant.now();
         LOGGER.info("Received notification about new updates in the nested_set_node table at " + now);
         lastNestedSetNodeTableUpdate = Optional.of(now);
     }
 
-    @Subscribe
     public void onNestedSetLogUpdatedEvent(NestedSetLogUpdatedEvent e) {
         var now = Instant.now();
         LOGGER.info("Received notification about new entries in the nested_set_node_log table at " + now);
@@ -237,6 +796,41 @@ public class NestedSetLogServiceTest {
         lastNestedSetNodeLogTableUpdate = Optional.empty();
     }
 
+    private void saveLogs(int partition, List<NestedSetNode> nestedSetNodes) {
+        var nestedSetNodeLogs = new ArrayList<NestedSetNodeLog>();
+        for (var nestedSetNode : nestedSetNodes) {
+            var nestedSetNodeLog = new NestedSetNodeLog(0, nestedSetNode);
+            nestedSetNodeLog.setPartition(partition);
+            nestedSetNodeLogs.add(nestedSetNodeLog);
+        }
+        nestedSetLogService.saveAllLogs(nestedSetNodeLogs);
+    }
+
+    private void executeSql(String sql) {
+        try (Connection connection = connectionProvider.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.execute();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    private int countReplacedTables() {
+        return count(COUNT_REPLACED_TABLES_SQL);
+    }
+
+    private int count(String countSql) {
+        try (Connection connection = connectionProvider.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(countSql);
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return -1;
+        }
+    }
+
     private void truncateTables() {
         try (Connection connection = connectionProvider.getConnection();
              PreparedStatement pstmtNestedSetNode = connection.prepareStatement(TRUNCATE_NESTED_SET_NODE_SQL);
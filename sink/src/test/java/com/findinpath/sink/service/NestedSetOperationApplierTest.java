@@ -0,0 +1,132 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetOperation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NestedSetOperationApplierTest {
+
+    @Test
+    public void replayOperationsAccuracy() {
+        var id2NestedSetNode = new HashMap<Long, NestedSetNode>();
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT_ROOT, 1, null, "A", 1, 2));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 2, 1L, "B", 2, 3));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 3, 1L, "C", 4, 5));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 4, 2L, "D", 3, 4));
+        // A(1,8) -> B(2,5) -> D(3,4) ; A -> C(6,7)
+        assertCoordinates(id2NestedSetNode, 1, 1, 8);
+        assertCoordinates(id2NestedSetNode, 2, 2, 5);
+        assertCoordinates(id2NestedSetNode, 4, 3, 4);
+        assertCoordinates(id2NestedSetNode, 3, 6, 7);
+
+        var changedNodeIds = apply(id2NestedSetNode,
+                createOperation(NestedSetOperation.Type.MOVE, 2, 3L, null, 3, 6));
+        // A(1,8) -> C(2,7) -> B(3,6) -> D(4,5)
+        assertThat(changedNodeIds, equalTo(Set.of(2L, 3L, 4L)));
+        assertCoordinates(id2NestedSetNode, 3, 2, 7);
+        assertCoordinates(id2NestedSetNode, 2, 3, 6);
+        assertCoordinates(id2NestedSetNode, 4, 4, 5);
+
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.RELABEL, 4, null, "E", null, null));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.DEACTIVATE, 3, null, null, null, null));
+        assertThat(id2NestedSetNode.get(4L).getLabel(), equalTo("E"));
+        assertThat(id2NestedSetNode.get(3L).isActive(), equalTo(false));
+
+        assertThat(TreeUtils.isValidNestedSet(new ArrayList<>(id2NestedSetNode.values())), equalTo(true));
+    }
+
+    @Test
+    public void replaySparseInsertAccuracy() {
+        var id2NestedSetNode = new HashMap<Long, NestedSetNode>();
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT_ROOT, 1, null, "A", 1, 17));
+        var changedNodeIds = apply(id2NestedSetNode,
+                createOperation(NestedSetOperation.Type.INSERT, 2, 1L, "B", 6, 11));
+
+        assertThat(changedNodeIds, equalTo(Set.of(2L)));
+        assertCoordinates(id2NestedSetNode, 1, 1, 17);
+        assertCoordinates(id2NestedSetNode, 2, 6, 11);
+    }
+
+    @Test
+    public void replayOperationsOnSeveralTreesAccuracy() {
+        var id2NestedSetNode = new HashMap<Long, NestedSetNode>();
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT_ROOT, 1, 1, null, "A", 1, 2));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT_ROOT, 2, 2, null, "X", 1, 2));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 1, 3, 1L, "B", 2, 3));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 1, 4, 1L, "C", 4, 5));
+        var changedNodeIds = apply(id2NestedSetNode,
+                createOperation(NestedSetOperation.Type.INSERT, 2, 5, 2L, "Y", 2, 3));
+
+        // the insert shifts only the nodes of its own tree
+        assertThat(changedNodeIds, equalTo(Set.of(2L, 5L)));
+        assertThat(id2NestedSetNode.get(5L).getTreeId(), equalTo(2L));
+        assertCoordinates(id2NestedSetNode, 1, 1, 6);
+        assertCoordinates(id2NestedSetNode, 3, 2, 3);
+        assertCoordinates(id2NestedSetNode, 2, 1, 4);
+        assertCoordinates(id2NestedSetNode, 5, 2, 3);
+
+        changedNodeIds = apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.MOVE, 1, 3, 4L, null, 3, 4));
+        assertThat(changedNodeIds, equalTo(Set.of(3L, 4L)));
+        assertCoordinates(id2NestedSetNode, 5, 2, 3);
+
+        assertThrows(IllegalStateException.class, () -> apply(id2NestedSetNode,
+                createOperation(NestedSetOperation.Type.MOVE, 1, 5, 4L, null, 4, 5)));
+        assertThat(TreeUtils.buildForest(new ArrayList<>(id2NestedSetNode.values()), CoordinatesMode.DENSE)
+                .map(List::size), equalTo(Optional.of(2)));
+    }
+
+    @Test
+    public void inconsistentMoveIsRejected() {
+        var id2NestedSetNode = new HashMap<Long, NestedSetNode>();
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT_ROOT, 1, null, "A", 1, 2));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 2, 1L, "B", 2, 3));
+        apply(id2NestedSetNode, createOperation(NestedSetOperation.Type.INSERT, 3, 1L, "C", 4, 5));
+
+        assertThrows(IllegalStateException.class, () -> apply(id2NestedSetNode,
+                createOperation(NestedSetOperation.Type.MOVE, 2, 3L, null, 2, 3)));
+        // the nodes are left untouched
+        assertCoordinates(id2NestedSetNode, 2, 2, 3);
+        assertCoordinates(id2NestedSetNode, 3, 4, 5);
+    }
+
+    private static Set<Long> apply(Map<Long, NestedSetNode> id2NestedSetNode, NestedSetOperation operation) {
+        return NestedSetOperationApplier.apply(id2NestedSetNode, operation);
+    }
+
+    private static void assertCoordinates(Map<Long, NestedSetNode> id2NestedSetNode, long id, int left, int right) {
+        var nestedSetNode = id2NestedSetNode.get(id);
+        assertThat(nestedSetNode.getLeft(), equalTo(left));
+        assertThat(nestedSetNode.getRight(), equalTo(right));
+    }
+
+    private static NestedSetOperation createOperation(NestedSetOperation.Type type, long nodeId, Long parentId,
+                                                      String label, Integer left, Integer right) {
+        return createOperation(type, NestedSetNode.DEFAULT_TREE_ID, nodeId, parentId, label, left, right);
+    }
+
+    private static NestedSetOperation createOperation(NestedSetOperation.Type type, long treeId, long nodeId,
+                                                      Long parentId, String label, Integer left, Integer right) {
+        var nestedSetOperation = new NestedSetOperation();
+        nestedSetOperation.setType(type);
+        nestedSetOperation.setTreeId(treeId);
+        nestedSetOperation.setNodeId(nodeId);
+        nestedSetOperation.setParentId(parentId);
+        nestedSetOperation.setLabel(label);
+        nestedSetOperation.setLeft(left);
+        nestedSetOperation.setRight(right);
+        nestedSetOperation.setCreated(Instant.now());
+        return nestedSetOperation;
+    }
+}
@@ -0,0 +1,42 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.storage.SinkStorage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class NestedSetServiceTest {
+
+    private static final int MAX_CONCURRENT_LOADS = 2;
+
+    @Test
+    public void failedLoadsReleaseTheirPermits() {
+        SinkStorage storage = () -> {
+            throw new IllegalStateException("The storage is not available");
+        };
+        var nestedSetService = new NestedSetService(storage, new EventDispatcher(), CoordinatesMode.DENSE,
+                ExecutionMode.PLATFORM_THREADS, MAX_CONCURRENT_LOADS);
+        List<Long> nodeIds = LongStream.rangeClosed(1, 100).boxed().collect(Collectors.toList());
+
+        for (var i = 0; i < 10; i++) {
+            // a leaked permit would leave the subsequent reads blocked
+            assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(RuntimeException.class, () -> nestedSetService.getNestedSetNodes(nodeIds)));
+            await().atMost(1, TimeUnit.SECONDS)
+                    .until(() -> nestedSetService.getAvailableLoadPermits() == MAX_CONCURRENT_LOADS);
+        }
+
+        assertThat(nestedSetService.getAvailableLoadPermits(), equalTo(MAX_CONCURRENT_LOADS));
+    }
+}
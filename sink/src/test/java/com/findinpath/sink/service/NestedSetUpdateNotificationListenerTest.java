@@ -0,0 +1,128 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.Utils;
+import com.findinpath.sink.event.EventDispatcher;
+import com.findinpath.sink.jdbc.ConnectionProvider;
+import com.findinpath.sink.jdbc.SinkCoordinationRepository;
+import com.findinpath.sink.model.NestedSetNode;
+import com.findinpath.sink.model.NestedSetTreeUpdatedNotification;
+import org.awaitility.core.ConditionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@Testcontainers
+public class NestedSetUpdateNotificationListenerTest {
+
+    private static final String POSTGRES_DB_NAME = "findinpath";
+    private static final String POSTGRES_NETWORK_ALIAS = "postgres";
+    private static final String POSTGRES_DB_USERNAME = "sa";
+    private static final String POSTGRES_DB_PASSWORD = "p@ssw0rd!";
+    private static final String POSTGRES_DB_DRIVER_CLASS_NAME = "org.postgresql.Driver";
+
+    private static final ConditionFactory WAIT = await().atMost(5, TimeUnit.SECONDS);
+
+    @Container
+    private static PostgreSQLContainer postgreSQLContainer = new PostgreSQLContainer<>("postgres:12")
+            .withNetworkAliases(POSTGRES_NETWORK_ALIAS)
+            .withInitScript("sink/postgres/init_postgres.sql")
+            .withDatabaseName(POSTGRES_DB_NAME)
+            .withUsername(POSTGRES_DB_USERNAME)
+            .withPassword(POSTGRES_DB_PASSWORD);
+
+    private ConnectionProvider connectionProvider;
+
+    private NestedSetLogService nestedSetLogService;
+
+    private NestedSetSyncService nestedSetSyncService;
+
+    @BeforeEach
+    public void beforeEach() {
+        connectionProvider = new ConnectionProvider(POSTGRES_DB_DRIVER_CLASS_NAME,
+                postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD
+        );
+        var eventDispatcher = new EventDispatcher();
+        nestedSetLogService = new NestedSetLogService(eventDispatcher, connectionProvider);
+        nestedSetSyncService = new NestedSetSyncService(connectionProvider, eventDispatcher);
+    }
+
+    @Test
+    public void refreshCachesOnUpdatesNotifiedByOtherSinkProcessesAccuracy() throws Exception {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var rootNode = new NestedSetNode(1, "A", 1, 4, true, now, now);
+        var childNode = new NestedSetNode(2, "B", 2, 3, true, now, now);
+        nestedSetLogService.saveAll(List.of(rootNode, childNode));
+        nestedSetSyncService.onNestedSetLogUpdate();
+
+        var otherProcessEventDispatcher = new EventDispatcher();
+        var otherProcessNestedSetService = new NestedSetService(connectionProvider, otherProcessEventDispatcher);
+        var notificationListener = new NestedSetUpdateNotificationListener(connectionProvider, otherProcessEventDispatcher,
+                Duration.ofMillis(100));
+        try {
+            notificationListener.start();
+            assertThat(otherProcessNestedSetService.getTree().orElseThrow().getChildren().get(0).getNestedSetNode(),
+                    equalTo(childNode));
+
+            // the sync notifies the ids of the written nodes along with the commit
+            var relabeledChildNode = new NestedSetNode(2, "B2", 2, 3, true, now, now.plusMillis(1));
+            var notifications = new ArrayList<String>();
+            try (var listenerConnection = connectionProvider.getDedicatedConnection()) {
+                var coordinationRepository = new SinkCoordinationRepository(listenerConnection);
+                coordinationRepository.listen(NestedSetTreeUpdatedNotification.CHANNEL);
+                nestedSetLogService.saveAll(List.of(relabeledChildNode));
+                nestedSetSyncService.onNestedSetLogUpdate();
+                WAIT.until(() -> notifications.addAll(
+                        coordinationRepository.getNotifications(NestedSetTreeUpdatedNotification.CHANNEL)));
+            }
+            var notification = NestedSetTreeUpdatedNotification.fromPayload(notifications.get(0));
+            assertThat(notification.isLocal(), equalTo(true));
+            assertThat(notification.getNestedSetNodeIds(), equalTo(Optional.of(Set.of(2L))));
+
+            // the notifications of the current process are skipped by its own listener
+            assertThat(otherProcessNestedSetService.getTree().orElseThrow().getChildren().get(0).getNestedSetNode(),
+                    equalTo(childNode));
+
+            // the other process fetches only the notified node
+            executeSql("UPDATE nested_set_node SET label = 'B3' WHERE id = 2");
+            WAIT.until(() -> {
+                executeSql("SELECT pg_notify('" + NestedSetTreeUpdatedNotification.CHANNEL + "', 'other-process;0;1000;2')");
+                return otherProcessNestedSetService.getTree().orElseThrow()
+                        .getChildren().get(0).getNestedSetNode().getLabel().equals("B3");
+            });
+            assertThat(otherProcessNestedSetService.getNestedSetNode(2).map(NestedSetNode::getLabel),
+                    equalTo(Optional.of("B3")));
+            assertThat(notificationListener.getTreeVersion(NestedSetNode.DEFAULT_TREE_ID), equalTo(Optional.of(1000L)));
+        } finally {
+            notificationListener.stop();
+        }
+    }
+
+    private void executeSql(String sql) {
+        try (Connection connection = connectionProvider.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.execute();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+}
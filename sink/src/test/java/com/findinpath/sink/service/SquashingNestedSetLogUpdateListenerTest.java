@@ -1,7 +1,7 @@
 package com.findinpath.sink.service;
 
+import com.findinpath.sink.event.EventDispatcher;
 import com.findinpath.sink.kafka.NestedSetLogUpdatedEvent;
-import com.google.common.eventbus.EventBus;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -19,11 +19,11 @@ import static org.hamcrest.Matchers.equalTo;
 
 public class SquashingNestedSetLogUpdateListenerTest {
 
-    private EventBus eventBus;
+    private EventDispatcher eventDispatcher;
 
     @BeforeEach
     public void setup() {
-        eventBus = new EventBus();
+        eventDispatcher = new EventDispatcher();
     }
 
     @Test
@@ -31,10 +31,10 @@ public class SquashingNestedSetLogUpdateListenerTest {
         AtomicBoolean eventDispatchedToConsumer = new AtomicBoolean(false);
         Consumer<NestedSetLogUpdatedEvent> consumer = (nestedSetLogUpdatedEvent -> eventDispatchedToConsumer.set(true));
         var squashingNestedSetLogUpdateListener = new SquashingNestedSetLogUpdateListener(consumer,
-                eventBus);
+                eventDispatcher);
         try {
 
-            eventBus.post(new NestedSetLogUpdatedEvent());
+            eventDispatcher.post(new NestedSetLogUpdatedEvent());
             await().atMost(1, TimeUnit.SECONDS).until(eventDispatchedToConsumer::get);
         } finally {
             squashingNestedSetLogUpdateListener.stop();
@@ -53,7 +53,7 @@ public class SquashingNestedSetLogUpdateListenerTest {
             }
         });
         var squashingNestedSetLogUpdateListener = new SquashingNestedSetLogUpdateListener(consumer,
-                eventBus);
+                eventDispatcher);
         try {
 
             var nThreads = 20;
@@ -61,7 +61,7 @@ public class SquashingNestedSetLogUpdateListenerTest {
 
             IntStream.range(0, nThreads)
                     .parallel()
-                    .forEach(i -> executorService.execute(() -> eventBus.post(new NestedSetLogUpdatedEvent())));
+                    .forEach(i -> executorService.execute(() -> eventDispatcher.post(new NestedSetLogUpdatedEvent())));
 
             // wait until multiple handling cycles of the consumer would have completed.
             Thread.sleep(700);
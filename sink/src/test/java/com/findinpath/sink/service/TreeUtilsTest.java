@@ -0,0 +1,75 @@
+package com.findinpath.sink.service;
+
+import com.findinpath.sink.model.NestedSetNode;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class TreeUtilsTest {
+
+    @Test
+    public void denseNestedSetAccuracy() {
+        var nestedSetNodes = List.of(
+                createNestedSetNode(1, "A", 1, 6),
+                createNestedSetNode(2, "B", 2, 3),
+                createNestedSetNode(3, "C", 4, 5));
+
+        assertThat(TreeUtils.isValidNestedSet(nestedSetNodes), equalTo(true));
+        assertThat(TreeUtils.isValidSparseNestedSet(nestedSetNodes), equalTo(true));
+    }
+
+    @Test
+    public void sparseNestedSetAccuracy() {
+        var nestedSetNodes = List.of(
+                createNestedSetNode(1, "A", 1, 1025),
+                createNestedSetNode(2, "B", 342, 683),
+                createNestedSetNode(3, "C", 797, 911));
+
+        assertThat(TreeUtils.isValidNestedSet(nestedSetNodes), equalTo(false));
+        assertThat(TreeUtils.isValidSparseNestedSet(nestedSetNodes), equalTo(true));
+
+        var root = TreeUtils.buildTree(nestedSetNodes, CoordinatesMode.SPARSE)
+                .orElseThrow(() -> new IllegalStateException("The sparse nested set should be valid"));
+        assertThat(root.getNestedSetNode().getLabel(), equalTo("A"));
+        assertThat(root.getChildren().get(0).getNestedSetNode().getLabel(), equalTo("B"));
+        assertThat(root.getChildren().get(1).getNestedSetNode().getLabel(), equalTo("C"));
+    }
+
+    @Test
+    public void sparseNestedSetWithOverlappingNodes() {
+        var nestedSetNodes = List.of(
+                createNestedSetNode(1, "A", 10, 100),
+                createNestedSetNode(2, "B", 20, 50),
+                createNestedSetNode(3, "C", 40, 70));
+
+        assertThat(TreeUtils.isValidSparseNestedSet(nestedSetNodes), equalTo(false));
+    }
+
+    @Test
+    public void sparseNestedSetWithMultipleRoots() {
+        var nestedSetNodes = List.of(
+                createNestedSetNode(1, "A", 10, 100),
+                createNestedSetNode(2, "B", 200, 300));
+
+        assertThat(TreeUtils.isValidSparseNestedSet(nestedSetNodes), equalTo(false));
+    }
+
+    @Test
+    public void sparseNestedSetWithDuplicatedCoordinates() {
+        var nestedSetNodes = List.of(
+                createNestedSetNode(1, "A", 10, 100),
+                createNestedSetNode(2, "B", 20, 30),
+                createNestedSetNode(3, "C", 30, 40));
+
+        assertThat(TreeUtils.isValidSparseNestedSet(nestedSetNodes), equalTo(false));
+    }
+
+    private static NestedSetNode createNestedSetNode(long id, String label, int left, int right) {
+        var now = Instant.now();
+        return new NestedSetNode(id, label, left, right, true, now, now);
+    }
+}
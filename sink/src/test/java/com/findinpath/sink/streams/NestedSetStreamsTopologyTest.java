@@ -0,0 +1,181 @@
+package com.findinpath.sink.streams;
+
+import com.findinpath.sink.model.NestedSetNode;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class NestedSetStreamsTopologyTest {
+
+    private static final String INPUT_TOPIC = "findinpath.nested_set_node";
+    private static final String OUTPUT_TOPIC = "findinpath.nested_set_tree";
+
+    private static final Schema NESTED_SET_NODE_SCHEMA = SchemaBuilder.record("nested_set_node")
+            .fields()
+            .requiredLong("id")
+            .requiredLong("tree_id")
+            .requiredString("label")
+            .requiredInt("lft")
+            .requiredInt("rgt")
+            .requiredBoolean("active")
+            .requiredLong("created")
+            .requiredLong("updated")
+            .endRecord();
+    private static final long CREATED = Instant.parse("2020-03-01T10:00:00Z").toEpochMilli();
+
+    private TopologyTestDriver testDriver;
+    private ConsumerRecordFactory<String, GenericRecord> recordFactory;
+
+    @BeforeEach
+    public void setup() {
+        var avroSerde = createAvroSerde();
+        var topology = new NestedSetStreamsTopology(INPUT_TOPIC, OUTPUT_TOPIC, avroSerde).build();
+
+        var props = new Properties();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, "nested-set-streams-topology-test");
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:9092");
+        testDriver = new TopologyTestDriver(topology, props);
+        recordFactory = new ConsumerRecordFactory<>(INPUT_TOPIC, new StringSerializer(), avroSerde.serializer());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        testDriver.close();
+    }
+
+    @Test
+    public void validTreeVersionsAccuracy() {
+        pipe(1, "Clothing", 1, 2);
+        validateChangedTrees();
+        var treeVersion = readTreeVersion();
+        assertThat(treeVersion.getTreeId(), equalTo(1L));
+        assertThat(treeVersion.getVersion(), equalTo(1L));
+        assertThat(getLabels(treeVersion), contains("Clothing"));
+
+        // the root makes space for its child which has not been received yet
+        pipe(1, "Clothing", 1, 4);
+        validateChangedTrees();
+        assertThat(readTreeVersion(), nullValue());
+
+        pipe(2, "Men's", 2, 3);
+        validateChangedTrees();
+        treeVersion = readTreeVersion();
+        assertThat(treeVersion.getVersion(), equalTo(2L));
+        assertThat(getLabels(treeVersion), contains("Clothing", "Men's"));
+
+        // receiving again an unchanged node doesn't produce a new version of the tree
+        pipe(2, "Men's", 2, 3);
+        validateChangedTrees();
+        assertThat(readTreeVersion(), nullValue());
+
+        KeyValueStore<String, NestedSetNode> nodesStore = testDriver.getKeyValueStore(NestedSetStreamsTopology.NODES_STORE);
+        assertThat(nodesStore.get("1").getRight(), equalTo(4));
+        assertThat(nodesStore.get("2").getLabel(), equalTo("Men's"));
+    }
+
+    @Test
+    public void validateTheChangedTreesOncePerIntervalAccuracy() {
+        pipe(1, "Clothing", 1, 2);
+        pipe(1, "Clothing", 1, 4);
+        pipe(2, "Men's", 2, 3);
+        assertThat(readTreeVersion(), nullValue());
+
+        validateChangedTrees();
+        var treeVersion = readTreeVersion();
+        assertThat(treeVersion.getVersion(), equalTo(1L));
+        assertThat(getLabels(treeVersion), contains("Clothing", "Men's"));
+        assertThat(readTreeVersion(), nullValue());
+
+        // the nodes and the occupancy of the coordinates are kept per key
+        KeyValueStore<String, NestedSetNode> treeNodesStore =
+                testDriver.getKeyValueStore(NestedSetStreamsTopology.TREE_NODES_STORE);
+        assertThat(treeNodesStore.get("1:2").getLabel(), equalTo("Men's"));
+        KeyValueStore<String, Integer> treeCoordinatesStore =
+                testDriver.getKeyValueStore(NestedSetStreamsTopology.TREE_COORDINATES_STORE);
+        assertThat(treeCoordinatesStore.get("1:2"), equalTo(1));
+        assertThat(treeCoordinatesStore.get("1:4"), equalTo(1));
+    }
+
+    private void validateChangedTrees() {
+        testDriver.advanceWallClockTime(NestedSetStreamsTopology.DEFAULT_VALIDATION_INTERVAL.toMillis());
+    }
+
+    private void pipe(long id, String label, int left, int right) {
+        var record = new GenericData.Record(NESTED_SET_NODE_SCHEMA);
+        record.put("id", id);
+        record.put("tree_id", 1L);
+        record.put("label", label);
+        record.put("lft", left);
+        record.put("rgt", right);
+        record.put("active", true);
+        record.put("created", CREATED);
+        record.put("updated", CREATED);
+        testDriver.pipeInput(recordFactory.create(INPUT_TOPIC, String.valueOf(id), record));
+    }
+
+    private NestedSetTreeVersion readTreeVersion() {
+        var outputRecord = testDriver.readOutput(OUTPUT_TOPIC, Serdes.Long().deserializer(),
+                NestedSetSerdes.nestedSetTreeVersion().deserializer());
+        return outputRecord == null ? null : outputRecord.value();
+    }
+
+    private static List<String> getLabels(NestedSetTreeVersion treeVersion) {
+        return treeVersion.getNestedSetNodes().stream()
+                .map(NestedSetNode::getLabel)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Plain Avro binary serde over a fixed schema standing in for the schema registry based serde.
+     */
+    private static Serde<GenericRecord> createAvroSerde() {
+        return Serdes.serdeFrom(
+                (topic, record) -> {
+                    var out = new ByteArrayOutputStream();
+                    var encoder = EncoderFactory.get().binaryEncoder(out, null);
+                    try {
+                        new GenericDatumWriter<GenericRecord>(NESTED_SET_NODE_SCHEMA).write(record, encoder);
+                        encoder.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return out.toByteArray();
+                },
+                (topic, data) -> {
+                    var decoder = DecoderFactory.get().binaryDecoder(data, null);
+                    try {
+                        return new GenericDatumReader<GenericRecord>(NESTED_SET_NODE_SCHEMA).read(null, decoder);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+}
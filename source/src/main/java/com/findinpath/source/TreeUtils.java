@@ -22,6 +22,23 @@ public class TreeUtils {
     public static Optional<TreeNode> buildTree(List<NestedSetNode> nestedSetNodes) {
         if (!isValidNestedSet(nestedSetNodes)) return Optional.empty();
 
+        return buildValidatedTree(nestedSetNodes);
+    }
+
+    /**
+     * Builds the tree corresponding to a nested set model where gaps
+     * are allowed between the coordinates of the nodes.
+     *
+     * @param nestedSetNodes the nodes of the nested set model
+     * @return the root of the tree or empty if the nodes don't form a valid sparse nested set
+     */
+    public static Optional<TreeNode> buildSparseTree(List<NestedSetNode> nestedSetNodes) {
+        if (!isValidSparseNestedSet(nestedSetNodes)) return Optional.empty();
+
+        return buildValidatedTree(nestedSetNodes);
+    }
+
+    private static Optional<TreeNode> buildValidatedTree(List<NestedSetNode> nestedSetNodes) {
         var nestedSetNodeIterator = nestedSetNodes
                 .stream()
                 .sorted(Comparator.comparing(NestedSetNode::getLeft))
@@ -90,4 +107,44 @@ public class TreeUtils {
         return allCoordinates.get(allCoordinates.size() - 1) == nestedSetNodes.size() * 2;
     }
 
+    private static boolean isValidSparseNestedSet(List<NestedSetNode> nestedSetNodes) {
+        if (nestedSetNodes == null || nestedSetNodes.isEmpty()) return false;
+
+        var nestedSetNodeWithInvalidCoordinates = nestedSetNodes.stream()
+                .filter(nestedSetNode -> nestedSetNode.getLeft() >= nestedSetNode.getRight())
+                .findAny();
+        if (nestedSetNodeWithInvalidCoordinates.isPresent()) {
+            return false;
+        }
+
+        var allCoordinatesSorted = nestedSetNodes.stream()
+                .flatMap(nestedSetNode -> Stream.of(nestedSetNode.getLeft(), nestedSetNode.getRight()))
+                .sorted()
+                .collect(Collectors.toList());
+        // verify that there are no duplicated coordinates in the nested set
+        if (!isInStrictOrder(allCoordinatesSorted, Ordering.natural())) {
+            return false;
+        }
+
+        // verify that the nodes are properly nested within a single root node
+        var nestedSetNodesSortedByLeft = nestedSetNodes.stream()
+                .sorted(Comparator.comparing(NestedSetNode::getLeft))
+                .collect(Collectors.toList());
+        var rightCoordinatesStack = new Stack<Integer>();
+        for (var nestedSetNode : nestedSetNodesSortedByLeft) {
+            while (!rightCoordinatesStack.isEmpty() && rightCoordinatesStack.peek() < nestedSetNode.getLeft()) {
+                rightCoordinatesStack.pop();
+            }
+            if (rightCoordinatesStack.isEmpty() && nestedSetNode != nestedSetNodesSortedByLeft.get(0)) {
+                // there can be only one root node
+                return false;
+            }
+            if (!rightCoordinatesStack.isEmpty() && rightCoordinatesStack.peek() < nestedSetNode.getRight()) {
+                // the node overlaps its parent
+                return false;
+            }
+            rightCoordinatesStack.push(nestedSetNode.getRight());
+        }
+        return true;
+    }
 }
@@ -0,0 +1,155 @@
+package com.findinpath.source.cdc;
+
+import com.findinpath.source.Utils;
+import com.findinpath.source.model.NestedSetNodeTransaction;
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads the changes of the <code>nested_set_node</code> table from the PostgreSQL
+ * logical replication stream (<code>pgoutput</code> plugin) and hands them over to the
+ * listener grouped per committed transaction, in the commit order.
+ * <p>
+ * The database needs to be started with <code>wal_level=logical</code> and needs to contain
+ * a publication for the <code>nested_set_node</code> table. The replication slot gets
+ * created in case that it doesn't exist.
+ * <p>
+ * The position of the replication slot is advanced only after the listener has successfully
+ * processed a transaction, which means that, after a restart, the transactions which were
+ * not yet acknowledged are delivered once again.
+ */
+public class NestedSetNodeCdcReader implements Runnable {
+
+    public static final String DEFAULT_SLOT_NAME = "nested_set_node_slot";
+    public static final String DEFAULT_PUBLICATION_NAME = "nested_set_node_publication";
+
+    private static final String PGOUTPUT_PLUGIN = "pgoutput";
+    private static final long POLL_INTERVAL_MS = 10L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetNodeCdcReader.class);
+
+    private static final String SELECT_REPLICATION_SLOT_SQL =
+            "SELECT 1 FROM pg_replication_slots WHERE slot_name = ?";
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final String slotName;
+    private final String publicationName;
+    private final Consumer<NestedSetNodeTransaction> listener;
+
+    private volatile boolean stopping;   // indicates whether the reader has been asked to stop
+
+    public NestedSetNodeCdcReader(String jdbcUrl,
+                                  String username,
+                                  String password,
+                                  Consumer<NestedSetNodeTransaction> listener) {
+        this(jdbcUrl, username, password, DEFAULT_SLOT_NAME, DEFAULT_PUBLICATION_NAME, listener);
+    }
+
+    public NestedSetNodeCdcReader(String jdbcUrl,
+                                  String username,
+                                  String password,
+                                  String slotName,
+                                  String publicationName,
+                                  Consumer<NestedSetNodeTransaction> listener) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.slotName = slotName;
+        this.publicationName = publicationName;
+        this.listener = listener;
+    }
+
+    public void stop() {
+        stopping = true;
+    }
+
+    @Override
+    public void run() {
+        try (Connection connection = createReplicationConnection()) {
+            var pgConnection = connection.unwrap(PGConnection.class);
+            createReplicationSlotIfNotExists(pgConnection);
+
+            try (PGReplicationStream stream = pgConnection.getReplicationAPI()
+                    .replicationStream()
+                    .logical()
+                    .withSlotName(slotName)
+                    .withSlotOption("proto_version", 1)
+                    .withSlotOption("publication_names", publicationName)
+                    .withStatusInterval(10, TimeUnit.SECONDS)
+                    .start()) {
+                read(stream);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("The logical replication stream of the slot " + slotName + " failed", e);
+            Utils.sneakyThrow(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void read(PGReplicationStream stream) throws SQLException, InterruptedException {
+        var decoder = new PgOutputDecoder();
+        while (!stopping) {
+            var buffer = stream.readPending();
+            if (buffer == null) {
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MS);
+                continue;
+            }
+
+            var transaction = decoder.decode(buffer);
+            if (transaction.isPresent()) {
+                if (!transaction.get().getChanges().isEmpty()) {
+                    listener.accept(transaction.get());
+                }
+                var endLsn = LogSequenceNumber.valueOf(transaction.get().getEndLsn());
+                stream.setAppliedLSN(endLsn);
+                stream.setFlushedLSN(endLsn);
+            }
+        }
+        stream.forceUpdateStatus();
+    }
+
+    private void createReplicationSlotIfNotExists(PGConnection pgConnection) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+             PreparedStatement pstmt = connection.prepareStatement(SELECT_REPLICATION_SLOT_SQL)) {
+            pstmt.setString(1, slotName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+
+        LOGGER.info("Creating the logical replication slot " + slotName);
+        pgConnection.getReplicationAPI()
+                .createReplicationSlot()
+                .logical()
+                .withSlotName(slotName)
+                .withOutputPlugin(PGOUTPUT_PLUGIN)
+                .make();
+    }
+
+    private Connection createReplicationConnection() throws SQLException {
+        var properties = new Properties();
+        PGProperty.USER.set(properties, username);
+        PGProperty.PASSWORD.set(properties, password);
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "10");
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+        return DriverManager.getConnection(jdbcUrl, properties);
+    }
+}
@@ -0,0 +1,197 @@
+package com.findinpath.source.cdc;
+
+import com.findinpath.source.model.NestedSetNode;
+import com.findinpath.source.model.NestedSetNodeChange;
+import com.findinpath.source.model.NestedSetNodeTransaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decodes the messages of the <code>pgoutput</code> logical decoding plugin (protocol version 1)
+ * and groups the changes of the <code>nested_set_node</code> tuples per transaction.
+ * <p>
+ * The messages of a transaction are enclosed between a <i>Begin</i> and a <i>Commit</i> message.
+ * The transaction gets returned by {@link #decode(ByteBuffer)} only once its <i>Commit</i> message
+ * has been decoded. The tuples are transferred in text format.
+ *
+ * @see <a href="https://www.postgresql.org/docs/12/protocol-logicalrep-message-formats.html">Logical Replication Message Formats</a>
+ */
+public class PgOutputDecoder {
+
+    private static final String NESTED_SET_NODE_TABLE = "nested_set_node";
+
+    /**
+     * The PostgreSQL timestamps are expressed in microseconds since 2000-01-01.
+     */
+    private static final Instant POSTGRES_EPOCH = Instant.parse("2000-01-01T00:00:00Z");
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd HH:mm:ss")
+            .optionalStart()
+            .appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true)
+            .optionalEnd()
+            .toFormatter();
+
+    /**
+     * The column names of the relations, indexed by the relation id.
+     */
+    private final Map<Integer, List<String>> relationId2Columns = new HashMap<>();
+    private final Map<Integer, String> relationId2Name = new HashMap<>();
+
+    private int xid;
+    private Map<Long, NestedSetNodeChange> nodeId2Change;
+
+    /**
+     * @param buffer the content of a message from the replication stream
+     * @return the transaction in case that the message corresponds to its commit
+     */
+    public Optional<NestedSetNodeTransaction> decode(ByteBuffer buffer) {
+        var messageType = (char) buffer.get();
+        switch (messageType) {
+            case 'B':
+                buffer.getLong(); // final LSN of the transaction
+                buffer.getLong(); // commit timestamp
+                xid = buffer.getInt();
+                nodeId2Change = new LinkedHashMap<>();
+                break;
+            case 'C':
+                buffer.get(); // flags
+                var commitLsn = buffer.getLong();
+                var endLsn = buffer.getLong();
+                var commitTimestamp = POSTGRES_EPOCH.plus(buffer.getLong(), ChronoUnit.MICROS);
+                var transaction = new NestedSetNodeTransaction(xid, commitLsn, endLsn, commitTimestamp,
+                        new ArrayList<>(nodeId2Change.values()));
+                nodeId2Change = null;
+                return Optional.of(transaction);
+            case 'R':
+                decodeRelation(buffer);
+                break;
+            case 'I':
+                decodeChange(buffer, NestedSetNodeChange.Type.INSERT);
+                break;
+            case 'U':
+                decodeChange(buffer, NestedSetNodeChange.Type.UPDATE);
+                break;
+            case 'D':
+                decodeChange(buffer, NestedSetNodeChange.Type.DELETE);
+                break;
+            default:
+                // origin, type and truncate messages are not relevant for the nested set model
+                break;
+        }
+        return Optional.empty();
+    }
+
+    private void decodeRelation(ByteBuffer buffer) {
+        var relationId = buffer.getInt();
+        readString(buffer); // namespace
+        var relationName = readString(buffer);
+        buffer.get(); // replica identity
+        var columnsCount = buffer.getShort();
+        var columns = new ArrayList<String>(columnsCount);
+        for (int i = 0; i < columnsCount; i++) {
+            buffer.get(); // flags
+            columns.add(readString(buffer));
+            buffer.getInt(); // type oid
+            buffer.getInt(); // type modifier
+        }
+        relationId2Name.put(relationId, relationName);
+        relationId2Columns.put(relationId, columns);
+    }
+
+    private void decodeChange(ByteBuffer buffer, NestedSetNodeChange.Type type) {
+        var relationId = buffer.getInt();
+        var tupleType = (char) buffer.get();
+        if (type == NestedSetNodeChange.Type.UPDATE && (tupleType == 'K' || tupleType == 'O')) {
+            // skip the old tuple and continue with the new tuple
+            readTuple(buffer);
+            tupleType = (char) buffer.get();
+        }
+        var values = readTuple(buffer);
+        if (!NESTED_SET_NODE_TABLE.equals(relationId2Name.get(relationId))) {
+            return;
+        }
+
+        var columns = relationId2Columns.get(relationId);
+        var column2Value = new HashMap<String, String>();
+        for (int i = 0; i < columns.size() && i < values.size(); i++) {
+            column2Value.put(columns.get(i), values.get(i));
+        }
+
+        var nestedSetNode = new NestedSetNode();
+        nestedSetNode.setId(Long.parseLong(column2Value.get("id")));
+        if (type != NestedSetNodeChange.Type.DELETE) {
+            nestedSetNode.setTreeId(Long.parseLong(column2Value.get("tree_id")));
+            nestedSetNode.setLabel(column2Value.get("label"));
+            nestedSetNode.setLeft(Integer.parseInt(column2Value.get("lft")));
+            nestedSetNode.setRight(Integer.parseInt(column2Value.get("rgt")));
+            nestedSetNode.setActive("t".equals(column2Value.get("active")));
+            nestedSetNode.setCreated(parseTimestamp(column2Value.get("created")));
+            nestedSetNode.setUpdated(parseTimestamp(column2Value.get("updated")));
+        }
+        var txnVersion = column2Value.get("txn_version");
+        var txnRowCount = column2Value.get("txn_row_count");
+        var change = new NestedSetNodeChange(type, nestedSetNode,
+                txnVersion == null ? null : Long.valueOf(txnVersion),
+                txnRowCount == null ? null : Integer.valueOf(txnRowCount));
+
+        var previousChange = nodeId2Change.get(nestedSetNode.getId());
+        if (previousChange != null && previousChange.getType() == NestedSetNodeChange.Type.INSERT
+                && type == NestedSetNodeChange.Type.UPDATE) {
+            // the tuple has been inserted within the same transaction
+            change = new NestedSetNodeChange(NestedSetNodeChange.Type.INSERT, nestedSetNode,
+                    change.getTxnVersion(), change.getTxnRowCount());
+        }
+        // the position of the tuple within the transaction is given by its first change
+        nodeId2Change.put(nestedSetNode.getId(), change);
+    }
+
+    /**
+     * @return the text values of the columns of the tuple (<code>null</code> for the null
+     * values and for the unchanged TOASTed values)
+     */
+    private static List<String> readTuple(ByteBuffer buffer) {
+        var columnsCount = buffer.getShort();
+        var values = new ArrayList<String>(columnsCount);
+        for (int i = 0; i < columnsCount; i++) {
+            var kind = (char) buffer.get();
+            if (kind == 't') {
+                var bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                values.add(new String(bytes, StandardCharsets.UTF_8));
+            } else {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var start = buffer.position();
+        while (buffer.get() != 0) {
+        }
+        var bytes = new byte[buffer.position() - start - 1];
+        buffer.position(start);
+        buffer.get(bytes);
+        buffer.get(); // null terminator
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Instant parseTimestamp(String value) {
+        return value == null ? null : LocalDateTime.parse(value, TIMESTAMP_FORMATTER).toInstant(ZoneOffset.UTC);
+    }
+}
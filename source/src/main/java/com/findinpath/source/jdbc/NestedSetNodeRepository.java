@@ -8,13 +8,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TimeZone;
 
 public class NestedSetNodeRepository {
@@ -22,20 +23,68 @@ public class NestedSetNodeRepository {
     private static final Calendar TZ_UTC = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
 
     private static final String SELECT_NESTED_SET_NODES_SQL =
-            "SELECT id, label, lft, rgt, active, created, updated " +
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
                     "FROM nested_set_node ";
     private static final String SELECT_NESTED_SET_NODE_SQL =
-            "SELECT id, label, lft, rgt, active, created, updated " +
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
                     "FROM nested_set_node " +
                     "WHERE id = ?";
     private static final String INSERT_NESTED_SET_NODE_SQL =
-            "INSERT INTO nested_set_node (label, lft, rgt, active, created, updated) " +
-                    "VALUES (?, ?, ?, ?, ?, ?)";
+            "INSERT INTO nested_set_node (id, label, lft, rgt, active, created, updated, txn_version, tree_id) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_NEXT_NESTED_SET_NODE_ID_SQL =
+            "SELECT nextval(pg_get_serial_sequence('nested_set_node', 'id'))";
 
     private static final String UPDATE_RIGHT_TO_MAKE_SPACE_FOR_NEW_NODE_SQL =
-            "UPDATE nested_set_node SET rgt=rgt+2, updated = ? WHERE rgt>=?;";
+            "UPDATE nested_set_node SET rgt=rgt+2, updated = ?, txn_version = ? WHERE tree_id = ? AND rgt>=? RETURNING id";
     private static final String UPDATE_LEFT_TO_MAKE_SPACE_FOR_NEW_NODE_SQL =
-            "UPDATE nested_set_node SET lft=lft+2, updated = ? WHERE lft>?;";
+            "UPDATE nested_set_node SET lft=lft+2, updated = ?, txn_version = ? WHERE tree_id = ? AND lft>? RETURNING id";
+
+    private static final String UPDATE_RIGHT_TO_MAKE_SPACE_FOR_NEW_NODE_WITH_SHIFT_DELTA_SQL =
+            "UPDATE nested_set_node SET rgt=rgt+2, coordinates_version = ? WHERE tree_id = ? AND rgt>=?;";
+    private static final String UPDATE_LEFT_TO_MAKE_SPACE_FOR_NEW_NODE_WITH_SHIFT_DELTA_SQL =
+            "UPDATE nested_set_node SET lft=lft+2, coordinates_version = ? WHERE tree_id = ? AND lft>?;";
+    private static final String INSERT_NESTED_SET_NODE_SHIFT_SQL =
+            "INSERT INTO nested_set_node_shift (coordinate, range_from, range_to, delta, txn_version, created, tree_id, txn_row_count) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INCREMENT_TXN_VERSION_SQL =
+            "UPDATE nested_set_txn_version SET value = value + 1 RETURNING value";
+    private static final String UPDATE_TXN_ROW_COUNT_SQL =
+            "UPDATE nested_set_node SET txn_row_count = ? WHERE id = ANY(?)";
+
+    private static final String SELECT_MAX_COORDINATE_WITHIN_SQL =
+            "SELECT MAX(rgt) FROM nested_set_node WHERE tree_id = ? AND lft > ? AND rgt < ?";
+    private static final String SELECT_ANCESTORS_SQL =
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
+                    "FROM nested_set_node " +
+                    "WHERE tree_id = ? AND lft <= ? AND rgt >= ? " +
+                    "ORDER BY lft DESC";
+    private static final String SELECT_DESCENDANTS_SQL =
+            "SELECT id, label, lft, rgt, active, created, updated, tree_id " +
+                    "FROM nested_set_node " +
+                    "WHERE tree_id = ? AND lft > ? AND rgt < ? " +
+                    "ORDER BY lft";
+    private static final String UPDATE_COORDINATES_SQL =
+            "UPDATE nested_set_node SET lft = ?, rgt = ?, updated = ?, txn_version = ? WHERE id = ?";
+
+    private static final String UPDATE_COORDINATES_TO_MOVE_SUBTREE_SQL =
+            "UPDATE nested_set_node SET " +
+                    "lft = CASE WHEN lft BETWEEN ? AND ? THEN lft + ? WHEN lft BETWEEN ? AND ? THEN lft + ? ELSE lft END, " +
+                    "rgt = CASE WHEN rgt BETWEEN ? AND ? THEN rgt + ? WHEN rgt BETWEEN ? AND ? THEN rgt + ? ELSE rgt END, " +
+                    "updated = ?, txn_version = ? " +
+                    "WHERE tree_id = ? AND (lft BETWEEN ? AND ? OR rgt BETWEEN ? AND ?) " +
+                    "RETURNING id";
+    private static final String UPDATE_COORDINATES_TO_MOVE_SUBTREE_WITH_SHIFT_DELTA_SQL =
+            "UPDATE nested_set_node SET " +
+                    "lft = CASE WHEN lft BETWEEN ? AND ? THEN lft + ? WHEN lft BETWEEN ? AND ? THEN lft + ? ELSE lft END, " +
+                    "rgt = CASE WHEN rgt BETWEEN ? AND ? THEN rgt + ? WHEN rgt BETWEEN ? AND ? THEN rgt + ? ELSE rgt END, " +
+                    "coordinates_version = ? " +
+                    "WHERE tree_id = ? AND (lft BETWEEN ? AND ? OR rgt BETWEEN ? AND ?)";
+    private static final String UPDATE_LABEL_SQL =
+            "UPDATE nested_set_node SET label = ?, updated = ?, txn_version = ? WHERE id = ?";
+    private static final String UPDATE_DEACTIVATE_SQL =
+            "UPDATE nested_set_node SET active = false, updated = ?, txn_version = ? WHERE id = ?";
 
     private static final String SELECT_IS_TABLE_EMPTY =
             "SELECT CASE \n" +
@@ -45,9 +94,106 @@ public class NestedSetNodeRepository {
 
     private final Connection connection;
 
+    /**
+     * Whether the shifts of the coordinates are published as delta records in the
+     * <code>nested_set_node_shift</code> table instead of touching the <code>updated</code>
+     * timestamp of each of the shifted tuples.
+     */
+    private final boolean shiftDeltas;
+
+    /**
+     * The version of the transaction in which this repository writes
+     * along with the timestamp used for all the tuples written within the transaction.
+     */
+    private long txnVersion;
+    private Instant txnTimestamp;
+    /**
+     * The ids of the tuples stamped with the version of the current transaction, which spares
+     * counting and stamping them through a scan of the table by their (not indexed) version.
+     */
+    private final Set<Long> txnNestedSetNodeIds = new HashSet<>();
+    /**
+     * The shifts of the current transaction, inserted only once the row count of the transaction
+     * is known, so that they are written only once.
+     */
+    private final List<Shift> txnShifts = new ArrayList<>();
+
 
     public NestedSetNodeRepository(Connection connection) {
+        this(connection, false);
+    }
+
+    public NestedSetNodeRepository(Connection connection, boolean shiftDeltas) {
         this.connection = connection;
+        this.shiftDeltas = shiftDeltas;
+    }
+
+    /**
+     * Acquires the version of the current transaction. All the tuples subsequently
+     * written through this repository get stamped with this version and with the same
+     * <code>updated</code> timestamp.
+     * <p>
+     * The version tuple stays locked until the end of the transaction, which serializes
+     * the writing transactions and makes the versions increase in their commit order.
+     * The writes on the nested set model run therefore one at a time: a concurrent writer waits
+     * on the lock of the version tuple for the whole duration of the current transaction.
+     *
+     * @return the version of the current transaction
+     */
+    public long startTransactionVersion() {
+        try (PreparedStatement pstmt = connection.prepareStatement(INCREMENT_TXN_VERSION_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                txnVersion = rs.getLong(1);
+                txnTimestamp = Instant.now();
+                txnNestedSetNodeIds.clear();
+                txnShifts.clear();
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        return txnVersion;
+    }
+
+    /**
+     * Stamps all the tuples written within the current transaction with their total count
+     * in order to allow the downstream consumers to find out when they have received
+     * all the tuples of the transaction.
+     * <p>
+     * The count is known only at the end of the transaction, which is why each of the written
+     * <code>nested_set_node</code> tuples is written a second time (doubling their row versions and WAL volume).
+     * The shift tuples are written only here, already stamped with the count.
+     */
+    public void completeTransactionVersion() {
+        var txnRowCount = txnNestedSetNodeIds.size() + txnShifts.size();
+        if (!txnNestedSetNodeIds.isEmpty()) {
+            try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_TXN_ROW_COUNT_SQL)) {
+                pstmt.setInt(1, txnRowCount);
+                pstmt.setArray(2, connection.createArrayOf("bigint", txnNestedSetNodeIds.toArray()));
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                Utils.sneakyThrow(e);
+            }
+        }
+
+        if (!txnShifts.isEmpty()) {
+            try (PreparedStatement pstmt = connection.prepareStatement(INSERT_NESTED_SET_NODE_SHIFT_SQL)) {
+                for (var shift : txnShifts) {
+                    pstmt.setString(1, shift.coordinate);
+                    pstmt.setInt(2, shift.rangeFrom);
+                    pstmt.setInt(3, shift.rangeTo);
+                    pstmt.setInt(4, shift.delta);
+                    pstmt.setLong(5, txnVersion);
+                    pstmt.setTimestamp(6, new Timestamp(getTxnTimestamp().toEpochMilli()), TZ_UTC);
+                    pstmt.setLong(7, shift.treeId);
+                    pstmt.setInt(8, txnRowCount);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            } catch (SQLException e) {
+                Utils.sneakyThrow(e);
+            }
+        }
     }
 
     public List<NestedSetNode> getNestedSetNodes() {
@@ -63,6 +209,7 @@ public class NestedSetNodeRepository {
                 nestedSetNode.setActive(rs.getBoolean(5));
                 nestedSetNode.setCreated(rs.getTimestamp(6, TZ_UTC).toInstant());
                 nestedSetNode.setUpdated(rs.getTimestamp(7, TZ_UTC).toInstant());
+                nestedSetNode.setTreeId(rs.getLong(8));
                 result.add(nestedSetNode);
             }
 
@@ -88,6 +235,7 @@ public class NestedSetNodeRepository {
                     nestedSetNode.setActive(rs.getBoolean(5));
                     nestedSetNode.setCreated(rs.getTimestamp(6, TZ_UTC).toInstant());
                     nestedSetNode.setUpdated(rs.getTimestamp(7, TZ_UTC).toInstant());
+                    nestedSetNode.setTreeId(rs.getLong(8));
                     return Optional.of(nestedSetNode);
                 }
             }
@@ -98,40 +246,273 @@ public class NestedSetNodeRepository {
         return Optional.empty();
     }
 
-    public void makeSpaceForNewNode(int parentNodeRight) {
+    public void makeSpaceForNewNode(long treeId, int parentNodeRight) {
+        if (shiftDeltas) {
+            makeSpaceForNewNodeWithShiftDeltas(treeId, parentNodeRight);
+            return;
+        }
+
+        for (var sql : List.of(UPDATE_RIGHT_TO_MAKE_SPACE_FOR_NEW_NODE_SQL, UPDATE_LEFT_TO_MAKE_SPACE_FOR_NEW_NODE_SQL)) {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setTimestamp(1, new Timestamp(getTxnTimestamp().toEpochMilli()), TZ_UTC);
+                pstmt.setLong(2, txnVersion);
+                pstmt.setLong(3, treeId);
+                pstmt.setInt(4, parentNodeRight);
+                addTxnNestedSetNodeIds(pstmt);
+            } catch (SQLException e) {
+                Utils.sneakyThrow(e);
+            }
+        }
+
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_RIGHT_TO_MAKE_SPACE_FOR_NEW_NODE_SQL)) {
-            pstmt.setTimestamp(1, new Timestamp(Instant.now().toEpochMilli()), TZ_UTC);
-            pstmt.setInt(2, parentNodeRight);
+    /**
+     * Shifts the coordinates without touching the <code>updated</code> timestamp of the shifted
+     * tuples and records instead the shifts in the <code>nested_set_node_shift</code> table.
+     * The shifted tuples are stamped with the version of the transaction in the
+     * <code>coordinates_version</code> column in order to allow finding out whether their
+     * coordinates already contain the shift.
+     */
+    private void makeSpaceForNewNodeWithShiftDeltas(long treeId, int parentNodeRight) {
+        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_RIGHT_TO_MAKE_SPACE_FOR_NEW_NODE_WITH_SHIFT_DELTA_SQL)) {
+            pstmt.setLong(1, txnVersion);
+            pstmt.setLong(2, treeId);
+            pstmt.setInt(3, parentNodeRight);
             pstmt.executeUpdate();
         } catch (SQLException e) {
             Utils.sneakyThrow(e);
         }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_LEFT_TO_MAKE_SPACE_FOR_NEW_NODE_SQL)) {
-            pstmt.setTimestamp(1, new Timestamp(Instant.now().toEpochMilli()), TZ_UTC);
-            pstmt.setInt(2, parentNodeRight);
+        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_LEFT_TO_MAKE_SPACE_FOR_NEW_NODE_WITH_SHIFT_DELTA_SQL)) {
+            pstmt.setLong(1, txnVersion);
+            pstmt.setLong(2, treeId);
+            pstmt.setInt(3, parentNodeRight);
             pstmt.executeUpdate();
         } catch (SQLException e) {
             Utils.sneakyThrow(e);
         }
 
+        insertShift(treeId, "rgt", parentNodeRight, Integer.MAX_VALUE, 2);
+        insertShift(treeId, "lft", parentNodeRight + 1, Integer.MAX_VALUE, 2);
     }
 
-    public long insertNode(String data, int left, int right) {
-        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_NESTED_SET_NODE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+    /**
+     * Records a shift of the current transaction, which gets inserted when the transaction version is completed.
+     */
+    private void insertShift(long treeId, String coordinate, int rangeFrom, int rangeTo, int delta) {
+        txnShifts.add(new Shift(treeId, coordinate, rangeFrom, rangeTo, delta));
+    }
+
+    /**
+     * Executes a statement returning the ids of the tuples which it stamps with the version of the transaction.
+     */
+    private void addTxnNestedSetNodeIds(PreparedStatement pstmt) throws SQLException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                txnNestedSetNodeIds.add(rs.getLong(1));
+            }
+        }
+    }
 
-            pstmt.setString(1, data);
+    /**
+     * Retrieves the greatest coordinate used strictly within the specified interval of a tree.
+     * For a parent node this corresponds to the right coordinate of its last child.
+     *
+     * @param treeId the id of the tree
+     * @param left  the left coordinate of the interval (exclusive)
+     * @param right the right coordinate of the interval (exclusive)
+     * @return the greatest coordinate or empty if the interval doesn't contain any nodes
+     */
+    public Optional<Integer> getMaxCoordinateWithin(long treeId, int left, int right) {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_MAX_COORDINATE_WITHIN_SQL)) {
+            pstmt.setLong(1, treeId);
             pstmt.setInt(2, left);
             pstmt.setInt(3, right);
-            pstmt.setBoolean(4, true);
-            var now = Instant.now();
-            pstmt.setTimestamp(5, new Timestamp(now.toEpochMilli()), TZ_UTC);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    var maxCoordinate = rs.getInt(1);
+                    return rs.wasNull() ? Optional.empty() : Optional.of(maxCoordinate);
+                }
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves the node having the specified coordinates along with all its ancestors
+     * ordered from the innermost node up to the root node.
+     */
+    public List<NestedSetNode> getAncestors(long treeId, int left, int right) {
+        return getNestedSetNodesWithinCoordinates(SELECT_ANCESTORS_SQL, treeId, left, right);
+    }
+
+    /**
+     * Retrieves the descendants of the node having the specified coordinates
+     * in their preorder representation.
+     */
+    public List<NestedSetNode> getDescendants(long treeId, int left, int right) {
+        return getNestedSetNodesWithinCoordinates(SELECT_DESCENDANTS_SQL, treeId, left, right);
+    }
+
+    public void updateCoordinates(Iterable<NestedSetNode> nestedSetNodes) {
+        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_COORDINATES_SQL)) {
+            var now = getTxnTimestamp();
+            for (var nestedSetNode : nestedSetNodes) {
+                pstmt.setInt(1, nestedSetNode.getLeft());
+                pstmt.setInt(2, nestedSetNode.getRight());
+                pstmt.setTimestamp(3, new Timestamp(now.toEpochMilli()), TZ_UTC);
+                pstmt.setLong(4, txnVersion);
+                pstmt.setLong(5, nestedSetNode.getId());
+                pstmt.addBatch();
+                txnNestedSetNodeIds.add(nestedSetNode.getId());
+            }
+
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    /**
+     * Moves the subtree having the specified coordinates to become the last child
+     * of the node having the right coordinate <code>parentNodeRight</code>.
+     * The coordinates of the subtree and of the nodes found between the subtree
+     * and its new position get rotated, which keeps the model valid
+     * both for dense and for sparse coordinates.
+     *
+     * @param treeId          the id of the tree containing the subtree and the new parent node
+     * @param left            the left coordinate of the subtree
+     * @param right           the right coordinate of the subtree
+     * @param parentNodeRight the right coordinate of the new parent node
+     */
+    public void moveSubtree(long treeId, int left, int right, int parentNodeRight) {
+        var width = right - left + 1;
+        int subtreeShift, shiftedFrom, shiftedTo, shift;
+        if (parentNodeRight > right) {
+            subtreeShift = parentNodeRight - 1 - right;
+            shiftedFrom = right + 1;
+            shiftedTo = parentNodeRight - 1;
+            shift = -width;
+        } else {
+            subtreeShift = parentNodeRight - left;
+            shiftedFrom = parentNodeRight;
+            shiftedTo = left - 1;
+            shift = width;
+        }
+        var from = Math.min(left, shiftedFrom);
+        var to = Math.max(right, shiftedTo);
+
+        var sql = shiftDeltas ? UPDATE_COORDINATES_TO_MOVE_SUBTREE_WITH_SHIFT_DELTA_SQL : UPDATE_COORDINATES_TO_MOVE_SUBTREE_SQL;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            var index = 1;
+            for (int i = 0; i < 2; i++) {
+                pstmt.setInt(index++, left);
+                pstmt.setInt(index++, right);
+                pstmt.setInt(index++, subtreeShift);
+                pstmt.setInt(index++, shiftedFrom);
+                pstmt.setInt(index++, shiftedTo);
+                pstmt.setInt(index++, shift);
+            }
+            if (!shiftDeltas) {
+                pstmt.setTimestamp(index++, new Timestamp(getTxnTimestamp().toEpochMilli()), TZ_UTC);
+            }
+            pstmt.setLong(index++, txnVersion);
+            pstmt.setLong(index++, treeId);
+            pstmt.setInt(index++, from);
+            pstmt.setInt(index++, to);
+            pstmt.setInt(index++, from);
+            pstmt.setInt(index, to);
+            if (shiftDeltas) {
+                pstmt.executeUpdate();
+            } else {
+                addTxnNestedSetNodeIds(pstmt);
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+
+        if (shiftDeltas) {
+            for (var coordinate : List.of("lft", "rgt")) {
+                insertShift(treeId, coordinate, left, right, subtreeShift);
+                insertShift(treeId, coordinate, shiftedFrom, shiftedTo, shift);
+            }
+        }
+    }
+
+    public boolean updateLabel(long id, String label) {
+        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_LABEL_SQL)) {
+            pstmt.setString(1, label);
+            pstmt.setTimestamp(2, new Timestamp(getTxnTimestamp().toEpochMilli()), TZ_UTC);
+            pstmt.setLong(3, txnVersion);
+            pstmt.setLong(4, id);
+            return stampTxnNestedSetNode(pstmt, id);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    public boolean deactivateNode(long id) {
+        try (PreparedStatement pstmt = connection.prepareStatement(UPDATE_DEACTIVATE_SQL)) {
+            pstmt.setTimestamp(1, new Timestamp(getTxnTimestamp().toEpochMilli()), TZ_UTC);
+            pstmt.setLong(2, txnVersion);
+            pstmt.setLong(3, id);
+            return stampTxnNestedSetNode(pstmt, id);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return false;
+        }
+    }
+
+    public long insertNode(long treeId, String data, int left, int right) {
+        var id = getNextNestedSetNodeId();
+        insertNode(id, treeId, data, left, right);
+        return id;
+    }
+
+    /**
+     * Inserts the root node of a new tree. The id of the tree is the id of its root node.
+     */
+    public long insertRootNode(String data, int left, int right) {
+        var id = getNextNestedSetNodeId();
+        insertNode(id, id, data, left, right);
+        return id;
+    }
+
+    private void insertNode(long id, long treeId, String data, int left, int right) {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_NESTED_SET_NODE_SQL)) {
+
+            pstmt.setLong(1, id);
+            pstmt.setString(2, data);
+            pstmt.setInt(3, left);
+            pstmt.setInt(4, right);
+            pstmt.setBoolean(5, true);
+            var now = getTxnTimestamp();
             pstmt.setTimestamp(6, new Timestamp(now.toEpochMilli()), TZ_UTC);
+            pstmt.setTimestamp(7, new Timestamp(now.toEpochMilli()), TZ_UTC);
+            pstmt.setLong(8, txnVersion);
+            pstmt.setLong(9, treeId);
 
-            pstmt.executeUpdate();
+            stampTxnNestedSetNode(pstmt, id);
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
 
-            var rs = pstmt.getGeneratedKeys();
+    private boolean stampTxnNestedSetNode(PreparedStatement pstmt, long id) throws SQLException {
+        if (pstmt.executeUpdate() == 0) {
+            return false;
+        }
+        txnNestedSetNodeIds.add(id);
+        return true;
+    }
+
+    private long getNextNestedSetNodeId() {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NEXT_NESTED_SET_NODE_ID_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
             if (rs.next()) {
                 return rs.getLong(1);
             }
@@ -153,4 +534,59 @@ public class NestedSetNodeRepository {
         }
         return false;
     }
+
+    public long getTxnVersion() {
+        return txnVersion;
+    }
+
+    public Instant getTxnTimestamp() {
+        if (txnTimestamp == null) {
+            throw new IllegalStateException("The transaction version has not been started");
+        }
+        return txnTimestamp;
+    }
+
+    private List<NestedSetNode> getNestedSetNodesWithinCoordinates(String sql, long treeId, int left, int right) {
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, treeId);
+            pstmt.setInt(2, left);
+            pstmt.setInt(3, right);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                var result = new ArrayList<NestedSetNode>();
+                while (rs.next()) {
+                    var nestedSetNode = new NestedSetNode();
+                    nestedSetNode.setId(rs.getLong(1));
+                    nestedSetNode.setLabel(rs.getString(2));
+                    nestedSetNode.setLeft(rs.getInt(3));
+                    nestedSetNode.setRight(rs.getInt(4));
+                    nestedSetNode.setActive(rs.getBoolean(5));
+                    nestedSetNode.setCreated(rs.getTimestamp(6, TZ_UTC).toInstant());
+                    nestedSetNode.setUpdated(rs.getTimestamp(7, TZ_UTC).toInstant());
+                    nestedSetNode.setTreeId(rs.getLong(8));
+                    result.add(nestedSetNode);
+                }
+                return result;
+            }
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
+    private static class Shift {
+        private final long treeId;
+        private final String coordinate;
+        private final int rangeFrom;
+        private final int rangeTo;
+        private final int delta;
+
+        private Shift(long treeId, String coordinate, int rangeFrom, int rangeTo, int delta) {
+            this.treeId = treeId;
+            this.coordinate = coordinate;
+            this.rangeFrom = rangeFrom;
+            this.rangeTo = rangeTo;
+            this.delta = delta;
+        }
+    }
 }
@@ -0,0 +1,94 @@
+package com.findinpath.source.jdbc;
+
+import com.findinpath.source.Utils;
+import com.findinpath.source.model.NestedSetOperation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Repository for the transactional outbox of the operations performed on the nested set model.
+ * The outbox tuples are written in the same transaction as the changes of the
+ * <code>nested_set_node</code> table they describe.
+ */
+public class NestedSetOutboxRepository {
+
+    private static final Calendar TZ_UTC = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    private static final String INSERT_NESTED_SET_OPERATION_SQL =
+            "INSERT INTO nested_set_outbox (operation, tree_id, node_id, parent_id, label, lft, rgt, txn_version, created) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_NESTED_SET_OPERATIONS_SQL =
+            "SELECT id, operation, tree_id, node_id, parent_id, label, lft, rgt, txn_version, created " +
+                    "FROM nested_set_outbox " +
+                    "ORDER BY id";
+
+    private final Connection connection;
+
+    public NestedSetOutboxRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    public void save(NestedSetOperation nestedSetOperation) {
+        try (PreparedStatement pstmt = connection.prepareStatement(INSERT_NESTED_SET_OPERATION_SQL)) {
+            pstmt.setString(1, nestedSetOperation.getType().name());
+            pstmt.setLong(2, nestedSetOperation.getTreeId());
+            pstmt.setLong(3, nestedSetOperation.getNodeId());
+            if (nestedSetOperation.getParentId() != null) {
+                pstmt.setLong(4, nestedSetOperation.getParentId());
+            } else {
+                pstmt.setNull(4, Types.BIGINT);
+            }
+            pstmt.setString(5, nestedSetOperation.getLabel());
+            if (nestedSetOperation.getLeft() != null) {
+                pstmt.setInt(6, nestedSetOperation.getLeft());
+                pstmt.setInt(7, nestedSetOperation.getRight());
+            } else {
+                pstmt.setNull(6, Types.INTEGER);
+                pstmt.setNull(7, Types.INTEGER);
+            }
+            pstmt.setLong(8, nestedSetOperation.getTxnVersion());
+            pstmt.setTimestamp(9, new Timestamp(nestedSetOperation.getCreated().toEpochMilli()), TZ_UTC);
+
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    public List<NestedSetOperation> getNestedSetOperations() {
+        try (PreparedStatement pstmt = connection.prepareStatement(SELECT_NESTED_SET_OPERATIONS_SQL);
+             ResultSet rs = pstmt.executeQuery()) {
+            var result = new ArrayList<NestedSetOperation>();
+            while (rs.next()) {
+                var nestedSetOperation = new NestedSetOperation();
+                nestedSetOperation.setId(rs.getLong(1));
+                nestedSetOperation.setType(NestedSetOperation.Type.valueOf(rs.getString(2)));
+                nestedSetOperation.setTreeId(rs.getLong(3));
+                nestedSetOperation.setNodeId(rs.getLong(4));
+                var parentId = rs.getLong(5);
+                nestedSetOperation.setParentId(rs.wasNull() ? null : parentId);
+                nestedSetOperation.setLabel(rs.getString(6));
+                var left = rs.getInt(7);
+                nestedSetOperation.setLeft(rs.wasNull() ? null : left);
+                var right = rs.getInt(8);
+                nestedSetOperation.setRight(rs.wasNull() ? null : right);
+                nestedSetOperation.setTxnVersion(rs.getLong(9));
+                nestedSetOperation.setCreated(rs.getTimestamp(10, TZ_UTC).toInstant());
+                result.add(nestedSetOperation);
+            }
+            return result;
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+}
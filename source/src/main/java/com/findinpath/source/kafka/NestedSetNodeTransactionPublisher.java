@@ -0,0 +1,139 @@
+package com.findinpath.source.kafka;
+
+import com.findinpath.source.Utils;
+import com.findinpath.source.model.NestedSetNodeChange;
+import com.findinpath.source.model.NestedSetNodeTransaction;
+import io.confluent.kafka.serializers.AbstractKafkaAvroSerDeConfig;
+import io.confluent.kafka.serializers.KafkaAvroSerializer;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the changes of the <code>nested_set_node</code> tuples captured by the
+ * {@link com.findinpath.source.cdc.NestedSetNodeCdcReader} to Apache Kafka.
+ * <p>
+ * The records are keyed by the id of the nested set node and have the same Avro
+ * value schema as the records produced by the kafka-connect-jdbc source connector
+ * for the <code>nested_set_node</code> table, extended with the <code>commit_lsn</code>
+ * of the transaction. The sink can consume therefore the records without any changes.
+ * <p>
+ * All the records of a tree are published on the same partition of the topic, chosen
+ * by hashing the id of the tree. This keeps the order of the changes within each of the trees
+ * while allowing the sink to consume the partitions of the topic in parallel.
+ * <p>
+ * The method {@link #accept(NestedSetNodeTransaction)} returns only after all the
+ * records of the transaction have been acknowledged by the Kafka brokers.
+ * The deletes are not published because the sink doesn't support them.
+ */
+public class NestedSetNodeTransactionPublisher implements Consumer<NestedSetNodeTransaction>, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedSetNodeTransactionPublisher.class);
+
+    private static final Schema TIMESTAMP_SCHEMA = new Schema.Parser().parse(
+            "{\"type\":\"long\",\"connect.version\":1," +
+                    "\"connect.name\":\"org.apache.kafka.connect.data.Timestamp\",\"logicalType\":\"timestamp-millis\"}");
+
+    static final Schema NESTED_SET_NODE_SCHEMA = SchemaBuilder.record("nested_set_node")
+            .fields()
+            .requiredLong("id")
+            .requiredLong("tree_id")
+            .optionalString("label")
+            .requiredInt("lft")
+            .requiredInt("rgt")
+            .requiredBoolean("active")
+            .name("created").type().unionOf().nullType().and().type(TIMESTAMP_SCHEMA).endUnion().nullDefault()
+            .name("updated").type().unionOf().nullType().and().type(TIMESTAMP_SCHEMA).endUnion().nullDefault()
+            .optionalLong("txn_version")
+            .optionalInt("txn_row_count")
+            .requiredLong("commit_lsn")
+            .endRecord();
+
+    private final KafkaProducer<String, GenericRecord> producer;
+    private final String topicName;
+
+    public NestedSetNodeTransactionPublisher(String kafkaBootstrapServers,
+                                             String schemaRegistryUrl,
+                                             String topicName) {
+        this.producer = createKafkaProducer(kafkaBootstrapServers, schemaRegistryUrl);
+        this.topicName = topicName;
+    }
+
+    @Override
+    public void accept(NestedSetNodeTransaction transaction) {
+        var partitionsCount = producer.partitionsFor(topicName).size();
+        var futures = new ArrayList<Future<?>>();
+        for (var change : transaction.getChanges()) {
+            if (change.getType() == NestedSetNodeChange.Type.DELETE) {
+                LOGGER.warn("Skipping the delete of the nested set node " + change.getNestedSetNode().getId());
+                continue;
+            }
+            var nestedSetNode = change.getNestedSetNode();
+            var record = new GenericData.Record(NESTED_SET_NODE_SCHEMA);
+            record.put("id", nestedSetNode.getId());
+            record.put("tree_id", nestedSetNode.getTreeId());
+            record.put("label", nestedSetNode.getLabel());
+            record.put("lft", nestedSetNode.getLeft());
+            record.put("rgt", nestedSetNode.getRight());
+            record.put("active", nestedSetNode.isActive());
+            record.put("created", nestedSetNode.getCreated() == null ? null : nestedSetNode.getCreated().toEpochMilli());
+            record.put("updated", nestedSetNode.getUpdated() == null ? null : nestedSetNode.getUpdated().toEpochMilli());
+            record.put("txn_version", change.getTxnVersion());
+            record.put("txn_row_count", change.getTxnRowCount());
+            record.put("commit_lsn", transaction.getCommitLsn());
+
+            futures.add(producer.send(new ProducerRecord<>(topicName,
+                    getPartition(nestedSetNode.getTreeId(), partitionsCount),
+                    String.valueOf(nestedSetNode.getId()),
+                    record)));
+        }
+
+        try {
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Utils.sneakyThrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    static int getPartition(long treeId, int partitionsCount) {
+        var treeIdBytes = String.valueOf(treeId).getBytes(StandardCharsets.UTF_8);
+        return org.apache.kafka.common.utils.Utils.toPositive(
+                org.apache.kafka.common.utils.Utils.murmur2(treeIdBytes)) % partitionsCount;
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+    }
+
+    private static KafkaProducer<String, GenericRecord> createKafkaProducer(String bootstrapServers,
+                                                                           String schemaRegistryUrl) {
+        final Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+        props.put(AbstractKafkaAvroSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG, schemaRegistryUrl);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, KafkaAvroSerializer.class);
+        return new KafkaProducer<>(props);
+    }
+}
@@ -9,6 +9,10 @@ import java.time.Instant;
  */
 public class NestedSetNode {
     private long id;
+    /**
+     * The id of the root node of the tree to which the node belongs.
+     */
+    private long treeId;
     private String label;
 
     private int left;
@@ -35,6 +39,14 @@ public class NestedSetNode {
         this.id = id;
     }
 
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public void setTreeId(long treeId) {
+        this.treeId = treeId;
+    }
+
     public String getLabel() {
         return label;
     }
@@ -87,6 +99,7 @@ public class NestedSetNode {
     public String toString() {
         return "NestedSetNode{" +
                 "id=" + id +
+                ", treeId=" + treeId +
                 ", label=" + label +
                 ", left=" + left +
                 ", right=" + right +
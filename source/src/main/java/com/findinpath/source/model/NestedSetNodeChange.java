@@ -0,0 +1,56 @@
+package com.findinpath.source.model;
+
+/**
+ * Models the change of a <code>nested_set_node</code> tuple as captured from
+ * the PostgreSQL logical replication stream.
+ */
+public class NestedSetNodeChange {
+
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    private final Type type;
+    /**
+     * The state of the nested set node after the change. In case of a delete
+     * only the id of the node is available.
+     */
+    private final NestedSetNode nestedSetNode;
+    private final Long txnVersion;
+    private final Integer txnRowCount;
+
+    public NestedSetNodeChange(Type type, NestedSetNode nestedSetNode, Long txnVersion, Integer txnRowCount) {
+        this.type = type;
+        this.nestedSetNode = nestedSetNode;
+        this.txnVersion = txnVersion;
+        this.txnRowCount = txnRowCount;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public NestedSetNode getNestedSetNode() {
+        return nestedSetNode;
+    }
+
+    public Long getTxnVersion() {
+        return txnVersion;
+    }
+
+    public Integer getTxnRowCount() {
+        return txnRowCount;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetNodeChange{" +
+                "type=" + type +
+                ", nestedSetNode=" + nestedSetNode +
+                ", txnVersion=" + txnVersion +
+                ", txnRowCount=" + txnRowCount +
+                '}';
+    }
+}
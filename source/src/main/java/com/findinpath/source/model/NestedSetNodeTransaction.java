@@ -0,0 +1,63 @@
+package com.findinpath.source.model;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Groups the changes of the <code>nested_set_node</code> tuples performed within
+ * a committed PostgreSQL transaction. When a tuple is changed multiple times within
+ * the transaction, only its latest state is contained.
+ */
+public class NestedSetNodeTransaction {
+    private final int xid;
+    private final long commitLsn;
+    private final long endLsn;
+    private final Instant commitTimestamp;
+    private final List<NestedSetNodeChange> changes;
+
+    public NestedSetNodeTransaction(int xid, long commitLsn, long endLsn, Instant commitTimestamp,
+                                    List<NestedSetNodeChange> changes) {
+        this.xid = xid;
+        this.commitLsn = commitLsn;
+        this.endLsn = endLsn;
+        this.commitTimestamp = commitTimestamp;
+        this.changes = changes;
+    }
+
+    public int getXid() {
+        return xid;
+    }
+
+    /**
+     * @return the log sequence number of the commit record of the transaction
+     */
+    public long getCommitLsn() {
+        return commitLsn;
+    }
+
+    /**
+     * @return the log sequence number following the commit record of the transaction
+     */
+    public long getEndLsn() {
+        return endLsn;
+    }
+
+    public Instant getCommitTimestamp() {
+        return commitTimestamp;
+    }
+
+    public List<NestedSetNodeChange> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetNodeTransaction{" +
+                "xid=" + xid +
+                ", commitLsn=" + commitLsn +
+                ", endLsn=" + endLsn +
+                ", commitTimestamp=" + commitTimestamp +
+                ", changes=" + changes +
+                '}';
+    }
+}
@@ -0,0 +1,143 @@
+package com.findinpath.source.model;
+
+import java.time.Instant;
+
+/**
+ * Models a logical operation performed on the nested set model.
+ * <p>
+ * Along with the parameters of the operation, there are also stored the
+ * resulting coordinates of the node on which the operation has been performed
+ * and the version of the transaction in which the operation took place.
+ * The coordinates are relative to the tree of the node, each tree being numbered independently.
+ */
+public class NestedSetOperation {
+
+    public enum Type {
+        INSERT_ROOT,
+        INSERT,
+        MOVE,
+        RELABEL,
+        DEACTIVATE
+    }
+
+    private long id;
+    private Type type;
+    private long treeId;
+    private long nodeId;
+    private Long parentId;
+    private String label;
+    private Integer left;
+    private Integer right;
+    private long txnVersion;
+    private Instant created;
+
+    public NestedSetOperation() {
+    }
+
+    public NestedSetOperation(Type type, long treeId, long nodeId, Long parentId, String label,
+                              Integer left, Integer right) {
+        this.type = type;
+        this.treeId = treeId;
+        this.nodeId = nodeId;
+        this.parentId = parentId;
+        this.label = label;
+        this.left = left;
+        this.right = right;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public long getTreeId() {
+        return treeId;
+    }
+
+    public void setTreeId(long treeId) {
+        this.treeId = treeId;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public Integer getLeft() {
+        return left;
+    }
+
+    public void setLeft(Integer left) {
+        this.left = left;
+    }
+
+    public Integer getRight() {
+        return right;
+    }
+
+    public void setRight(Integer right) {
+        this.right = right;
+    }
+
+    public long getTxnVersion() {
+        return txnVersion;
+    }
+
+    public void setTxnVersion(long txnVersion) {
+        this.txnVersion = txnVersion;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public void setCreated(Instant created) {
+        this.created = created;
+    }
+
+    @Override
+    public String toString() {
+        return "NestedSetOperation{" +
+                "id=" + id +
+                ", type=" + type +
+                ", treeId=" + treeId +
+                ", nodeId=" + nodeId +
+                ", parentId=" + parentId +
+                ", label=" + label +
+                ", left=" + left +
+                ", right=" + right +
+                ", txnVersion=" + txnVersion +
+                ", created=" + created +
+                '}';
+    }
+}
@@ -3,19 +3,62 @@ package com.findinpath.source.service;
 import com.findinpath.source.Utils;
 import com.findinpath.source.jdbc.ConnectionProvider;
 import com.findinpath.source.jdbc.NestedSetNodeRepository;
+import com.findinpath.source.jdbc.NestedSetOutboxRepository;
 import com.findinpath.source.model.NestedSetNode;
+import com.findinpath.source.model.NestedSetOperation;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NestedSetService {
 
+    /**
+     * Gap corresponding to the classic nested set model where the coordinates
+     * of the nodes are the consecutive numbers <code>1..2n</code>.
+     */
+    public static final int DENSE_COORDINATES_GAP = 1;
+
     private final ConnectionProvider connectionProvider;
 
+    /**
+     * The distance left between the coordinates of the newly inserted nodes.
+     * When greater than {@link #DENSE_COORDINATES_GAP} the nested set model
+     * is kept in a sparse form: inserting a node makes use of the free coordinates
+     * within its parent and only when these are used up a local region of
+     * the tree gets renumbered. This avoids shifting the coordinates of all
+     * the nodes to the right of the new node on each insert.
+     */
+    private final int coordinatesGap;
+
+    /**
+     * Whether the shifts of the coordinates are published as delta records in the
+     * <code>nested_set_node_shift</code> table instead of republishing each of the shifted nodes.
+     */
+    private final boolean shiftDeltas;
+
+    private final AtomicLong renumberingsCount = new AtomicLong();
+
     public NestedSetService(ConnectionProvider connectionProvider) {
+        this(connectionProvider, DENSE_COORDINATES_GAP);
+    }
+
+    public NestedSetService(ConnectionProvider connectionProvider, int coordinatesGap) {
+        this(connectionProvider, coordinatesGap, false);
+    }
+
+    public NestedSetService(ConnectionProvider connectionProvider, int coordinatesGap, boolean shiftDeltas) {
+        if (coordinatesGap < DENSE_COORDINATES_GAP) {
+            throw new IllegalArgumentException("Invalid coordinates gap " + coordinatesGap);
+        }
         this.connectionProvider = connectionProvider;
+        this.coordinatesGap = coordinatesGap;
+        this.shiftDeltas = shiftDeltas;
     }
 
     public List<NestedSetNode> getNestedSetNodes() {
@@ -40,19 +83,143 @@ public class NestedSetService {
         }
     }
 
+    /**
+     * Retrieves how many times a region of the trees had to be renumbered for inserting a node
+     * with sparse coordinates.
+     */
+    long getRenumberingsCount() {
+        return renumberingsCount.get();
+    }
+
     public long insertNode(String data, long parentId) {
+        return executeInTransaction((nestedSetNodeRepository, nestedSetOutboxRepository) -> {
+            var parentNode = nestedSetNodeRepository.getNestedSetNode(parentId)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid parent id " + parentId));
+
+            long nodeId;
+            int left, right;
+            if (coordinatesGap == DENSE_COORDINATES_GAP) {
+                nestedSetNodeRepository.makeSpaceForNewNode(parentNode.getTreeId(), parentNode.getRight());
+
+                left = parentNode.getRight();
+                right = parentNode.getRight() + 1;
+                nodeId = nestedSetNodeRepository.insertNode(parentNode.getTreeId(), data, left, right);
+            } else {
+                nodeId = insertNodeWithSparseCoordinates(nestedSetNodeRepository, data, parentNode);
+                var node = nestedSetNodeRepository.getNestedSetNode(nodeId).orElseThrow();
+                left = node.getLeft();
+                right = node.getRight();
+            }
+
+            saveOperation(nestedSetNodeRepository, nestedSetOutboxRepository,
+                    new NestedSetOperation(NestedSetOperation.Type.INSERT, parentNode.getTreeId(), nodeId, parentId,
+                            data, left, right));
+            return nodeId;
+        });
+    }
+
+    public long insertRootNode(String data) {
+        return executeInTransaction((nestedSetNodeRepository, nestedSetOutboxRepository) -> {
+            var isTableEmpty = nestedSetNodeRepository.isTableEmpty();
+            if (!isTableEmpty) {
+                throw new IllegalStateException("The nested_set table already contains data");
+            }
+
+            return insertRootNode(nestedSetNodeRepository, nestedSetOutboxRepository, data);
+        });
+    }
+
+    /**
+     * Inserts the root node of a new tree next to the already existing trees.
+     * The trees are numbered independently of each other and their id is the id of their root node.
+     */
+    public long insertTree(String data) {
+        return executeInTransaction((nestedSetNodeRepository, nestedSetOutboxRepository) ->
+                insertRootNode(nestedSetNodeRepository, nestedSetOutboxRepository, data));
+    }
+
+    private long insertRootNode(NestedSetNodeRepository nestedSetNodeRepository,
+                                NestedSetOutboxRepository nestedSetOutboxRepository,
+                                String data) {
+        var nodeId = nestedSetNodeRepository.insertRootNode(data, 1, 1 + coordinatesGap);
+        saveOperation(nestedSetNodeRepository, nestedSetOutboxRepository,
+                new NestedSetOperation(NestedSetOperation.Type.INSERT_ROOT, nodeId, nodeId, null,
+                        data, 1, 1 + coordinatesGap));
+        return nodeId;
+    }
+
+    /**
+     * Moves the node along with its descendants to become the last child of the specified parent node.
+     */
+    public void moveNode(long id, long parentId) {
+        executeInTransaction((nestedSetNodeRepository, nestedSetOutboxRepository) -> {
+            var node = nestedSetNodeRepository.getNestedSetNode(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid node id " + id));
+            var parentNode = nestedSetNodeRepository.getNestedSetNode(parentId)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid parent id " + parentId));
+            if (parentNode.getTreeId() != node.getTreeId()) {
+                throw new IllegalArgumentException("The node " + id + " can't be moved to another tree");
+            }
+            if (parentNode.getLeft() >= node.getLeft() && parentNode.getRight() <= node.getRight()) {
+                throw new IllegalArgumentException("The node " + id + " can't be moved within its own subtree");
+            }
+
+            nestedSetNodeRepository.moveSubtree(node.getTreeId(), node.getLeft(), node.getRight(), parentNode.getRight());
+
+            var movedNode = nestedSetNodeRepository.getNestedSetNode(id).orElseThrow();
+            saveOperation(nestedSetNodeRepository, nestedSetOutboxRepository,
+                    new NestedSetOperation(NestedSetOperation.Type.MOVE, node.getTreeId(), id, parentId, null,
+                            movedNode.getLeft(), movedNode.getRight()));
+            return id;
+        });
+    }
+
+    public void relabelNode(long id, String label) {
+        executeInTransaction((nestedSetNodeRepository, nestedSetOutboxRepository) -> {
+            var node = nestedSetNodeRepository.getNestedSetNode(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid node id " + id));
+            nestedSetNodeRepository.updateLabel(id, label);
+            saveOperation(nestedSetNodeRepository, nestedSetOutboxRepository,
+                    new NestedSetOperation(NestedSetOperation.Type.RELABEL, node.getTreeId(), id, null,
+                            label, null, null));
+            return id;
+        });
+    }
+
+    public void deactivateNode(long id) {
+        executeInTransaction((nestedSetNodeRepository, nestedSetOutboxRepository) -> {
+            var node = nestedSetNodeRepository.getNestedSetNode(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid node id " + id));
+            nestedSetNodeRepository.deactivateNode(id);
+            saveOperation(nestedSetNodeRepository, nestedSetOutboxRepository,
+                    new NestedSetOperation(NestedSetOperation.Type.DEACTIVATE, node.getTreeId(), id, null,
+                            null, null, null));
+            return id;
+        });
+    }
+
+    /**
+     * Executes the write operation within a transaction having its own version.
+     * The transaction gets committed only when the operation succeeds, otherwise
+     * it is rolled back in order to avoid publishing partial changes.
+     */
+    private long executeInTransaction(WriteOperation operation) {
         try (Connection connection = connectionProvider.getConnection()) {
             connection.setAutoCommit(false);
             try {
-                var nestedSetNodeRepository = new NestedSetNodeRepository(connection);
-                var parentNode = nestedSetNodeRepository.getNestedSetNode(parentId)
-                        .orElseThrow(() -> new IllegalArgumentException("Invalid parent id " + parentId));
+                var nestedSetNodeRepository = new NestedSetNodeRepository(connection, shiftDeltas);
+                var nestedSetOutboxRepository = new NestedSetOutboxRepository(connection);
+                nestedSetNodeRepository.startTransactionVersion();
 
-                nestedSetNodeRepository.makeSpaceForNewNode(parentNode.getRight());
+                var result = operation.execute(nestedSetNodeRepository, nestedSetOutboxRepository);
 
-                return nestedSetNodeRepository.insertNode(data, parentNode.getRight(), parentNode.getRight() + 1);
-            } finally {
+                nestedSetNodeRepository.completeTransactionVersion();
                 connection.commit();
+                return result;
+            } catch (Throwable e) {
+                connection.rollback();
+                throw e;
+            } finally {
                 connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
@@ -61,25 +228,177 @@ public class NestedSetService {
         }
     }
 
-    public long insertRootNode(String data) {
-        try (Connection connection = connectionProvider.getConnection()) {
-            try {
-                connection.setAutoCommit(false);
-                var nestedSetNodeRepository = new NestedSetNodeRepository(connection);
+    private static void saveOperation(NestedSetNodeRepository nestedSetNodeRepository,
+                                      NestedSetOutboxRepository nestedSetOutboxRepository,
+                                      NestedSetOperation nestedSetOperation) {
+        nestedSetOperation.setTxnVersion(nestedSetNodeRepository.getTxnVersion());
+        nestedSetOperation.setCreated(nestedSetNodeRepository.getTxnTimestamp());
+        nestedSetOutboxRepository.save(nestedSetOperation);
+    }
+
+    private long insertNodeWithSparseCoordinates(NestedSetNodeRepository nestedSetNodeRepository,
+                                                 String data,
+                                                 NestedSetNode parentNode) {
+        var lastUsedCoordinate = nestedSetNodeRepository
+                .getMaxCoordinateWithin(parentNode.getTreeId(), parentNode.getLeft(), parentNode.getRight())
+                .orElse(parentNode.getLeft());
+        // the new node is spaced by the full gap as long as it fits within the parent
+        // and the step gets halved only when the free coordinates left after the last child run short
+        var freeCoordinatesCount = parentNode.getRight() - lastUsedCoordinate - 1;
+        var step = coordinatesGap;
+        while (step > 0 && 2 * step > freeCoordinatesCount) {
+            step /= 2;
+        }
+        if (step > 0) {
+            // there is still enough room for the new node after the last child of the parent
+            var left = lastUsedCoordinate + step;
+            return nestedSetNodeRepository.insertNode(parentNode.getTreeId(), data, left, left + step);
+        }
 
-                var isTableEmpty = nestedSetNodeRepository.isTableEmpty();
-                if (!isTableEmpty) {
-                    throw new IllegalStateException("The nested_set table already contains data");
-                }
+        var newNode = new NestedSetNode();
+        newNode.setLabel(data);
+        renumberRegionForNewNode(nestedSetNodeRepository, parentNode, newNode);
 
-                return nestedSetNodeRepository.insertNode(data, 1, 2);
-            } finally {
-                connection.commit();
-                connection.setAutoCommit(true);
+        return nestedSetNodeRepository.insertNode(parentNode.getTreeId(), data, newNode.getLeft(), newNode.getRight());
+    }
+
+    /**
+     * Spreads evenly the coordinates of the nodes from the innermost ancestor of the parent node
+     * which has enough room for containing its descendants along with the new node.
+     * In case that not even the root node has enough room, the right coordinate of the root node
+     * gets increased.
+     * <p>
+     * The parent is expected to receive further children, so that free coordinate slots as many as
+     * the coordinates of its descendants are reserved after the new node. The room of the parent
+     * is doubled in this way on each renumbering and inserting <code>n</code> siblings renumbers
+     * the region only <code>O(log n)</code> times.
+     */
+    private void renumberRegionForNewNode(NestedSetNodeRepository nestedSetNodeRepository,
+                                          NestedSetNode parentNode,
+                                          NestedSetNode newNode) {
+        renumberingsCount.incrementAndGet();
+        var ancestors = nestedSetNodeRepository.getAncestors(parentNode.getTreeId(), parentNode.getLeft(), parentNode.getRight());
+        for (var ancestor : ancestors) {
+            var descendants = nestedSetNodeRepository.getDescendants(parentNode.getTreeId(), ancestor.getLeft(), ancestor.getRight());
+            var reservedSlotsCount = getReservedSlotsCount(descendants, parentNode);
+            var coordinatesCount = 2 * (descendants.size() + 1) + reservedSlotsCount;
+            var availableCoordinatesCount = ancestor.getRight() - ancestor.getLeft() - 1;
+            // renumber the region only if it remains afterwards at most half full
+            if (availableCoordinatesCount >= 2 * coordinatesCount) {
+                var renumberedNodes = spreadCoordinates(ancestor.getLeft(), ancestor.getRight(),
+                        descendants, parentNode, newNode, reservedSlotsCount);
+                nestedSetNodeRepository.updateCoordinates(renumberedNodes);
+                return;
             }
-        } catch (SQLException e) {
-            Utils.sneakyThrow(e);
-            return 0;
+        }
+
+        var root = ancestors.get(ancestors.size() - 1);
+        var descendants = nestedSetNodeRepository.getDescendants(parentNode.getTreeId(), root.getLeft(), root.getRight());
+        var reservedSlotsCount = getReservedSlotsCount(descendants, parentNode);
+        var coordinatesCount = 2 * (descendants.size() + 1) + reservedSlotsCount;
+        var rootRight = getGrownRootRight(root, coordinatesCount);
+        var renumberedNodes = spreadCoordinates(root.getLeft(), rootRight,
+                descendants, parentNode, newNode, reservedSlotsCount);
+        root.setRight(rootRight);
+        renumberedNodes.add(root);
+        nestedSetNodeRepository.updateCoordinates(renumberedNodes);
+    }
+
+    /**
+     * Computes the right coordinate of the root node leaving the coordinates gap between the
+     * specified count of coordinates. The gap gets shrunk when the coordinates wouldn't fit
+     * otherwise within the <code>int</code> range of the <code>lft</code>/<code>rgt</code> columns.
+     */
+    private int getGrownRootRight(NestedSetNode root, int coordinatesCount) {
+        var rootRight = root.getLeft() + (coordinatesCount + 1L) * coordinatesGap;
+        if (rootRight <= Integer.MAX_VALUE) {
+            return (int) rootRight;
+        }
+        var shrunkCoordinatesGap = (Integer.MAX_VALUE - (long) root.getLeft()) / (coordinatesCount + 1L);
+        if (shrunkCoordinatesGap < DENSE_COORDINATES_GAP) {
+            throw new IllegalStateException("The coordinates of the tree " + root.getTreeId() +
+                    " exceed the maximum coordinate " + Integer.MAX_VALUE);
+        }
+        return (int) (root.getLeft() + (coordinatesCount + 1L) * shrunkCoordinatesGap);
+    }
+
+    /**
+     * The free coordinate slots reserved after the new node for the next children of the parent node:
+     * as many as the coordinates of the descendants of the parent along with the new node.
+     */
+    private static int getReservedSlotsCount(List<NestedSetNode> descendants, NestedSetNode parentNode) {
+        var parentDescendantsCount = descendants.stream()
+                .filter(descendant -> descendant.getLeft() > parentNode.getLeft() && descendant.getRight() < parentNode.getRight())
+                .count();
+        return (int) (2 * (parentDescendantsCount + 1));
+    }
+
+    /**
+     * Assigns evenly distributed coordinates within the interval <code>(left, right)</code>
+     * to the descendants of a node and to the new node which gets placed as last child of
+     * the parent node, followed by the specified count of free coordinate slots.
+     *
+     * @return the descendants which had their coordinates changed.
+     */
+    private static List<NestedSetNode> spreadCoordinates(int left, int right,
+                                                         List<NestedSetNode> descendants,
+                                                         NestedSetNode parentNode,
+                                                         NestedSetNode newNode,
+                                                         int reservedSlotsCount) {
+        // each coordinate slot is represented through the node and whether it is its left coordinate
+        var slots = new ArrayList<CoordinateSlot>();
+        for (var descendant : descendants) {
+            slots.add(new CoordinateSlot(descendant, true, descendant.getLeft()));
+            slots.add(new CoordinateSlot(descendant, false, descendant.getRight()));
+        }
+        slots.sort(Comparator.comparingInt(slot -> slot.coordinate));
+        var newNodeSlotsIndex = 0;
+        while (newNodeSlotsIndex < slots.size() && slots.get(newNodeSlotsIndex).coordinate < parentNode.getRight()) {
+            newNodeSlotsIndex++;
+        }
+        slots.add(newNodeSlotsIndex, new CoordinateSlot(newNode, true, 0));
+        slots.add(newNodeSlotsIndex + 1, new CoordinateSlot(newNode, false, 0));
+        for (var i = 0; i < reservedSlotsCount; i++) {
+            slots.add(newNodeSlotsIndex + 2, CoordinateSlot.RESERVED);
+        }
+
+        var renumberedNodes = new LinkedHashSet<NestedSetNode>();
+        var width = (long) right - left;
+        for (int i = 0; i < slots.size(); i++) {
+            var slot = slots.get(i);
+            var coordinate = left + (int) ((i + 1) * width / (slots.size() + 1));
+            if (slot == CoordinateSlot.RESERVED) {
+                continue;
+            }
+            if (slot.isLeft) {
+                slot.nestedSetNode.setLeft(coordinate);
+            } else {
+                slot.nestedSetNode.setRight(coordinate);
+            }
+            if (slot.nestedSetNode != newNode && slot.coordinate != coordinate) {
+                renumberedNodes.add(slot.nestedSetNode);
+            }
+        }
+        return new ArrayList<>(renumberedNodes);
+    }
+
+    @FunctionalInterface
+    private interface WriteOperation {
+        long execute(NestedSetNodeRepository nestedSetNodeRepository,
+                     NestedSetOutboxRepository nestedSetOutboxRepository);
+    }
+
+    private static class CoordinateSlot {
+        private static final CoordinateSlot RESERVED = new CoordinateSlot(null, false, 0);
+
+        private final NestedSetNode nestedSetNode;
+        private final boolean isLeft;
+        private final int coordinate;
+
+        CoordinateSlot(NestedSetNode nestedSetNode, boolean isLeft, int coordinate) {
+            this.nestedSetNode = nestedSetNode;
+            this.isLeft = isLeft;
+            this.coordinate = coordinate;
         }
     }
 }
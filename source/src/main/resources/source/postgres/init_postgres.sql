@@ -1,10 +1,62 @@
+-- the table may contain several trees numbered independently of each other.
+-- The id of a tree is the id of its root node.
 CREATE TABLE nested_set_node(
     id bigserial,
+    tree_id bigint NOT NULL,
     label varchar(256),
     lft int NOT NULL,
     rgt int NOT NULL,
     active boolean NOT NULL,
     created TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
     updated TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
+    txn_version bigint,
+    txn_row_count int,
+    coordinates_version bigint,
     primary key (id)
-);
\ No newline at end of file
+);
+
+CREATE INDEX nested_set_node_tree_id_idx ON nested_set_node (tree_id);
+
+-- delta records describing the shifts of the coordinates of the nested_set_node tuples.
+-- Each record stands for "add delta to the coordinate column for the values between range_from and range_to".
+-- The records of a transaction are to be applied simultaneously on the coordinates preceding the transaction.
+CREATE TABLE nested_set_node_shift(
+    id bigserial,
+    tree_id bigint NOT NULL,
+    coordinate varchar(3) NOT NULL,
+    range_from int NOT NULL,
+    range_to int NOT NULL,
+    delta int NOT NULL,
+    txn_version bigint NOT NULL,
+    txn_row_count int,
+    created TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
+    primary key (id)
+);
+
+-- single tuple holding the version of the latest transaction which wrote to the nested_set_node table.
+-- The tuple is locked by the writing transactions until their commit which makes the
+-- versions gapless and increasing in the commit order, at the cost of serializing the writing transactions.
+CREATE TABLE nested_set_txn_version(
+    value bigint NOT NULL
+);
+
+INSERT INTO nested_set_txn_version (value) VALUES (0);
+
+-- transactional outbox containing one tuple for each logical operation performed on the nested set model
+CREATE TABLE nested_set_outbox(
+    id bigserial,
+    operation varchar(32) NOT NULL,
+    tree_id bigint NOT NULL,
+    node_id bigint NOT NULL,
+    parent_id bigint,
+    label varchar(256),
+    lft int,
+    rgt int,
+    txn_version bigint NOT NULL,
+    created TIMESTAMP WITHOUT TIME ZONE DEFAULT timezone('utc' :: TEXT, now()),
+    primary key (id)
+);
+
+-- publication used for capturing the changes of the nested_set_node table through logical replication
+-- (requires the database to be started with wal_level=logical)
+CREATE PUBLICATION nested_set_node_publication FOR TABLE nested_set_node;
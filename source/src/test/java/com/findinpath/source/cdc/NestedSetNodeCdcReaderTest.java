@@ -0,0 +1,120 @@
+package com.findinpath.source.cdc;
+
+import com.findinpath.source.jdbc.ConnectionProvider;
+import com.findinpath.source.model.NestedSetNodeChange;
+import com.findinpath.source.model.NestedSetNodeTransaction;
+import com.findinpath.source.service.NestedSetService;
+import org.awaitility.core.ConditionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+@Testcontainers
+public class NestedSetNodeCdcReaderTest {
+
+    private static final String POSTGRES_DB_NAME = "findinpath";
+    private static final String POSTGRES_NETWORK_ALIAS = "postgres";
+    private static final String POSTGRES_DB_USERNAME = "sa";
+    private static final String POSTGRES_DB_PASSWORD = "p@ssw0rd!";
+    private static final String POSTGRES_DB_DRIVER_CLASS_NAME = "org.postgresql.Driver";
+
+    private static final ConditionFactory WAIT = await().atMost(10, TimeUnit.SECONDS);
+
+    @Container
+    private static PostgreSQLContainer postgreSQLContainer = new PostgreSQLContainer<>("postgres:12")
+            .withNetworkAliases(POSTGRES_NETWORK_ALIAS)
+            .withInitScript("source/postgres/init_postgres.sql")
+            .withDatabaseName(POSTGRES_DB_NAME)
+            .withUsername(POSTGRES_DB_USERNAME)
+            .withPassword(POSTGRES_DB_PASSWORD)
+            .withCommand("postgres", "-c", "wal_level=logical");
+
+    private ConnectionProvider connectionProvider;
+    private NestedSetService nestedSetService;
+    private NestedSetNodeCdcReader nestedSetNodeCdcReader;
+    private ExecutorService cdcReaderExecutorService;
+    private List<NestedSetNodeTransaction> transactions;
+
+    @BeforeEach
+    public void beforeEach() {
+        connectionProvider = new ConnectionProvider(POSTGRES_DB_DRIVER_CLASS_NAME,
+                postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD
+        );
+        nestedSetService = new NestedSetService(connectionProvider);
+
+        transactions = new CopyOnWriteArrayList<>();
+        nestedSetNodeCdcReader = new NestedSetNodeCdcReader(postgreSQLContainer.getJdbcUrl(),
+                POSTGRES_DB_USERNAME,
+                POSTGRES_DB_PASSWORD,
+                transactions::add);
+        cdcReaderExecutorService = Executors.newSingleThreadExecutor();
+        cdcReaderExecutorService.execute(nestedSetNodeCdcReader);
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        nestedSetNodeCdcReader.stop();
+        cdcReaderExecutorService.shutdown();
+        cdcReaderExecutorService.awaitTermination(5, TimeUnit.SECONDS);
+        connectionProvider.close();
+    }
+
+    @Test
+    public void changesAreGroupedPerTransaction() {
+        // wait for the replication slot to be created before changing the nested set model
+        WAIT.until(() -> isReplicationSlotCreated());
+
+        var rootNodeId = nestedSetService.insertRootNode("A");
+        var childNodeId = nestedSetService.insertNode("B", rootNodeId);
+
+        WAIT.until(() -> transactions.size() == 2);
+
+        var rootTransaction = transactions.get(0);
+        assertThat(rootTransaction.getChanges().size(), equalTo(1));
+        var rootChange = rootTransaction.getChanges().get(0);
+        assertThat(rootChange.getType(), equalTo(NestedSetNodeChange.Type.INSERT));
+        assertThat(rootChange.getNestedSetNode().getId(), equalTo(rootNodeId));
+        assertThat(rootChange.getTxnRowCount(), equalTo(1));
+
+        // the repeated updates of the tuples within the transaction are collapsed to their latest state
+        var childTransaction = transactions.get(1);
+        assertThat(childTransaction.getCommitLsn(), greaterThan(rootTransaction.getCommitLsn()));
+        assertThat(childTransaction.getChanges().size(), equalTo(2));
+        var shiftedRootChange = childTransaction.getChanges().get(0);
+        assertThat(shiftedRootChange.getType(), equalTo(NestedSetNodeChange.Type.UPDATE));
+        assertThat(shiftedRootChange.getNestedSetNode().getRight(), equalTo(4));
+        var childChange = childTransaction.getChanges().get(1);
+        assertThat(childChange.getType(), equalTo(NestedSetNodeChange.Type.INSERT));
+        assertThat(childChange.getNestedSetNode().getId(), equalTo(childNodeId));
+        assertThat(childChange.getNestedSetNode().getLabel(), equalTo("B"));
+        assertThat(childChange.getTxnRowCount(), equalTo(2));
+    }
+
+    private boolean isReplicationSlotCreated() {
+        try (var connection = connectionProvider.getConnection();
+             var pstmt = connection.prepareStatement("SELECT 1 FROM pg_replication_slots WHERE slot_name = ?")) {
+            pstmt.setString(1, NestedSetNodeCdcReader.DEFAULT_SLOT_NAME);
+            try (var rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
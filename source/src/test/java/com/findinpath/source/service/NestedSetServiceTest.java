@@ -3,6 +3,8 @@ package com.findinpath.source.service;
 import com.findinpath.source.TreeUtils;
 import com.findinpath.source.Utils;
 import com.findinpath.source.jdbc.ConnectionProvider;
+import com.findinpath.source.jdbc.NestedSetOutboxRepository;
+import com.findinpath.source.model.NestedSetOperation;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -11,10 +13,15 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @Testcontainers
 public class NestedSetServiceTest {
@@ -26,7 +33,7 @@ public class NestedSetServiceTest {
     private static final String POSTGRES_DB_DRIVER_CLASS_NAME = "org.postgresql.Driver";
 
     private static final String TRUNCATE_NESTED_SET_NODE_SQL =
-            "TRUNCATE nested_set_node";
+            "TRUNCATE nested_set_node, nested_set_outbox, nested_set_node_shift";
 
     @Container
     private static PostgreSQLContainer postgreSQLContainer = new PostgreSQLContainer<>("postgres:12")
@@ -115,6 +122,152 @@ public class NestedSetServiceTest {
 
     }
 
+    @Test
+    public void verifyAddingChildrenWithSparseCoordinates() {
+        var sparseNestedSetService = new NestedSetService(connectionProvider, 16);
+        var rootNodeId = sparseNestedSetService.insertRootNode("A");
+
+        // add enough children to use up the gaps left between the coordinates
+        var childrenCount = 20;
+        var childNodeId = rootNodeId;
+        for (int i = 0; i < childrenCount; i++) {
+            sparseNestedSetService.insertNode("B" + i, rootNodeId);
+            childNodeId = sparseNestedSetService.insertNode("C" + i, childNodeId);
+        }
+
+        var nestedSetNodes = sparseNestedSetService.getNestedSetNodes();
+        assertThat(nestedSetNodes.size(), equalTo(2 * childrenCount + 1));
+
+        var rootNode = TreeUtils.buildSparseTree(nestedSetNodes)
+                .orElseThrow(() -> new IllegalStateException("The nested_set_node content is not a valid sparse nested set"));
+        assertThat(rootNode.getNestedSetNode().getId(), equalTo(rootNodeId));
+        var lastChildNodeId = childNodeId;
+        var lastChildNode = sparseNestedSetService.getNestedSetNode(lastChildNodeId)
+                .orElseThrow(() -> new IllegalStateException("The node with ID " + lastChildNodeId + " should exist in the DB"));
+        assertThat(lastChildNode.getLabel(), equalTo("C" + (childrenCount - 1)));
+    }
+
+    @Test
+    public void verifyAddingSiblingsWithSparseCoordinatesRenumbersRarely() {
+        var sparseNestedSetService = new NestedSetService(connectionProvider, 16);
+        var rootNodeId = sparseNestedSetService.insertRootNode("A");
+
+        var siblingsCount = 200;
+        for (int i = 0; i < siblingsCount; i++) {
+            sparseNestedSetService.insertNode("B" + i, rootNodeId);
+        }
+
+        // the room of the parent is doubled on each renumbering
+        var maxRenumberingsCount = 2 * (64 - Long.numberOfLeadingZeros(siblingsCount));
+        assertThat(sparseNestedSetService.getRenumberingsCount(), lessThanOrEqualTo((long) maxRenumberingsCount));
+        var rootNode = TreeUtils.buildSparseTree(sparseNestedSetService.getNestedSetNodes())
+                .orElseThrow(() -> new IllegalStateException("The nested_set_node content is not a valid sparse nested set"));
+        assertThat(rootNode.getChildren().size(), equalTo(siblingsCount));
+        assertThat(rootNode.getChildren().get(siblingsCount - 1).getNestedSetNode().getLabel(),
+                equalTo("B" + (siblingsCount - 1)));
+    }
+
+    @Test
+    public void verifyOperationsAreRecordedInTheOutbox() {
+        var rootNodeId = nestedSetService.insertRootNode("A");
+        var childBNodeId = nestedSetService.insertNode("B", rootNodeId);
+        var childCNodeId = nestedSetService.insertNode("C", rootNodeId);
+        nestedSetService.moveNode(childBNodeId, childCNodeId);
+        nestedSetService.relabelNode(childCNodeId, "D");
+        nestedSetService.deactivateNode(childBNodeId);
+
+        var rootNode = TreeUtils.buildTree(nestedSetService.getNestedSetNodes())
+                .orElseThrow(() -> new IllegalStateException("The nested_set_node content is not a valid nested set"));
+        var childD = rootNode.getChildren().get(0);
+        assertThat(childD.getNestedSetNode().getLabel(), equalTo("D"));
+        assertThat(childD.getChildren().get(0).getNestedSetNode().getId(), equalTo(childBNodeId));
+        assertThat(childD.getChildren().get(0).getNestedSetNode().isActive(), equalTo(false));
+
+        var nestedSetOperations = getNestedSetOperations();
+        assertThat(nestedSetOperations.size(), equalTo(6));
+        var moveOperation = nestedSetOperations.get(3);
+        assertThat(moveOperation.getType(), equalTo(NestedSetOperation.Type.MOVE));
+        assertThat(moveOperation.getParentId(), equalTo(childCNodeId));
+        assertThat(moveOperation.getLeft(), equalTo(3));
+        assertThat(moveOperation.getRight(), equalTo(4));
+        for (var nestedSetOperation : nestedSetOperations) {
+            assertThat(nestedSetOperation.getTreeId(), equalTo(rootNodeId));
+        }
+        for (int i = 1; i < nestedSetOperations.size(); i++) {
+            assertThat(nestedSetOperations.get(i).getTxnVersion(),
+                    equalTo(nestedSetOperations.get(i - 1).getTxnVersion() + 1));
+        }
+    }
+
+    @Test
+    public void verifyMovingNodeWithinItsOwnSubtreeIsRejected() {
+        var rootNodeId = nestedSetService.insertRootNode("A");
+        var childBNodeId = nestedSetService.insertNode("B", rootNodeId);
+        var childCNodeId = nestedSetService.insertNode("C", childBNodeId);
+
+        assertThrows(IllegalArgumentException.class, () -> nestedSetService.moveNode(childBNodeId, childCNodeId));
+
+        // the failed operation is rolled back and leaves no trace in the outbox
+        assertThat(getNestedSetOperations().size(), equalTo(3));
+    }
+
+    @Test
+    public void verifyTreesAreNumberedIndependently() {
+        var rootANodeId = nestedSetService.insertRootNode("A");
+        var childBNodeId = nestedSetService.insertNode("B", rootANodeId);
+        var rootXNodeId = nestedSetService.insertTree("X");
+        var childYNodeId = nestedSetService.insertNode("Y", rootXNodeId);
+
+        var childYNode = nestedSetService.getNestedSetNode(childYNodeId).orElseThrow();
+        assertThat(childYNode.getTreeId(), equalTo(rootXNodeId));
+        assertThat(childYNode.getLeft(), equalTo(2));
+        assertThat(childYNode.getRight(), equalTo(3));
+        // the insert in the tree X doesn't shift the coordinates of the tree A
+        var rootANode = nestedSetService.getNestedSetNode(rootANodeId).orElseThrow();
+        assertThat(rootANode.getTreeId(), equalTo(rootANodeId));
+        assertThat(rootANode.getRight(), equalTo(4));
+
+        assertThrows(IllegalArgumentException.class, () -> nestedSetService.moveNode(childYNodeId, childBNodeId));
+    }
+
+    @Test
+    public void verifyShiftDeltasAreRecorded() {
+        var shiftDeltasNestedSetService = new NestedSetService(connectionProvider,
+                NestedSetService.DENSE_COORDINATES_GAP, true);
+        var rootNodeId = shiftDeltasNestedSetService.insertRootNode("A");
+        var rootNode = shiftDeltasNestedSetService.getNestedSetNode(rootNodeId).orElseThrow();
+        shiftDeltasNestedSetService.insertNode("B", rootNodeId);
+        shiftDeltasNestedSetService.insertNode("C", rootNodeId);
+
+        var shiftedRootNode = shiftDeltasNestedSetService.getNestedSetNode(rootNodeId).orElseThrow();
+        assertThat(shiftedRootNode.getRight(), equalTo(6));
+        // the shifted nodes are not republished
+        assertThat(shiftedRootNode.getUpdated(), equalTo(rootNode.getUpdated()));
+
+        try (Connection connection = connectionProvider.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(
+                     "SELECT coordinate, range_from, delta, txn_row_count FROM nested_set_node_shift ORDER BY id");
+             ResultSet rs = pstmt.executeQuery()) {
+            var shifts = new ArrayList<String>();
+            while (rs.next()) {
+                shifts.add(rs.getString(1) + ":" + rs.getInt(2) + ":" + rs.getInt(3) + ":" + rs.getInt(4));
+            }
+            // each insert transaction contains the new node along with two shift records
+            assertThat(shifts, equalTo(List.of("rgt:2:2:3", "lft:3:2:3", "rgt:4:2:3", "lft:5:2:3")));
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+        }
+    }
+
+    private List<NestedSetOperation> getNestedSetOperations() {
+        try (Connection connection = connectionProvider.getConnection()) {
+            return new NestedSetOutboxRepository(connection).getNestedSetOperations();
+        } catch (SQLException e) {
+            Utils.sneakyThrow(e);
+            return null;
+        }
+    }
+
     private void truncateNestedSetNodeTable() {
         try (Connection connection = connectionProvider.getConnection();
              PreparedStatement pstmt = connection.prepareStatement(TRUNCATE_NESTED_SET_NODE_SQL)) {